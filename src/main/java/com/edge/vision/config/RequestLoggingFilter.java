@@ -1,91 +1,319 @@
 package com.edge.vision.config;
 
+import com.edge.vision.util.RequestTimings;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 请求访问日志
+ * <p>
+ * 每个请求只输出一行计时日志（方法、路径、状态、总耗时、请求/响应大小、业务登记的分阶段耗时，见 {@link RequestTimings}），
+ * 耗时不低于 request-log-slow-ms 的以 INFO 输出，其余为 DEBUG；默认不缓存请求体和响应体，响应直接写给客户端。
+ * <p>
+ * 需要排查请求内容时，按 diagnostics.request-capture-sample-rate 抽样
+ * （或开启 request-capture-header-enabled 后请求带 X-Capture-Body: true 头），
+ * 只截取请求体/响应体的前 request-capture-max-bytes 字节，存入固定大小的环形缓冲区，
+ * 通过 /api/diagnostics/request-captures 查看。视频流不记录。
+ */
 @Component
 public class RequestLoggingFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(RequestLoggingFilter.class);
 
+    /**
+     * 强制截取本次请求内容的请求头
+     */
+    public static final String CAPTURE_HEADER = "X-Capture-Body";
+
+    @Autowired
+    private YamlConfig config;
+
+    private double sampleRate;
+    private boolean headerCapture;
+    private int maxCaptureBytes;
+    private long slowMillis;
+
+    // 环形缓冲区：最近截取的请求
+    private CapturedExchange[] captures;
+    private int nextCapture;
+    private final AtomicLong captureSeq = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        YamlConfig.DiagnosticsConfig diagnostics = config.getDiagnostics();
+        this.sampleRate = Math.max(0, Math.min(1, diagnostics.getRequestCaptureSampleRate()));
+        this.headerCapture = diagnostics.isRequestCaptureHeaderEnabled();
+        this.maxCaptureBytes = Math.max(0, diagnostics.getRequestCaptureMaxBytes());
+        this.slowMillis = Math.max(0, diagnostics.getRequestLogSlowMs());
+        this.captures = new CapturedExchange[Math.max(1, diagnostics.getRequestCaptureBufferSize())];
+        logger.info("Request logging: captureSampleRate={}, captureHeader={}, captureMaxBytes={}, captureBuffer={}, slowMs={}",
+                sampleRate, headerCapture, maxCaptureBytes, captures.length, slowMillis);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
         String path = request.getRequestURI();
 
-        // === 🚨 关键修改：如果是视频流，直接放行，不要缓存！ ===
+        // 视频流：长连接持续推送，直接放行，不记录
         if (path.contains("/api/camera/stream")) {
-            // 记录简单的开始日志
-            // logger.info(">>> Streaming Request: {}", path);
-
-            // 直接传递原始的 request 和 response，不使用 Wrapper
             filterChain.doFilter(request, response);
-
-            // 视频流结束后（用户关闭页面时）代码会走到这里
             return;
         }
-        // ==================================================
 
-        // 下面是针对普通 API (JSON) 的原有逻辑
-        ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(request);
-        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
-
-        long startTime = System.currentTimeMillis();
+        boolean capture = shouldCapture(request);
+        ContentCachingRequestWrapper requestWrapper = null;
+        CapturingResponseWrapper responseWrapper = null;
+        if (capture) {
+            requestWrapper = new ContentCachingRequestWrapper(request, maxCaptureBytes);
+            responseWrapper = new CapturingResponseWrapper(response, maxCaptureBytes);
+        }
 
+        RequestTimings timings = RequestTimings.begin();
+        long startNanos = System.nanoTime();
         try {
-            // 记录请求信息
-            logger.info("=== Incoming Request ===");
-            logger.info("Method: {} {}", request.getMethod(), request.getRequestURI());
-            // ... 其他日志逻辑 ...
+            filterChain.doFilter(requestWrapper != null ? requestWrapper : request,
+                    responseWrapper != null ? responseWrapper : response);
+        } finally {
+            RequestTimings.end();
+            if (responseWrapper != null) {
+                responseWrapper.flushWriter();
+            }
+            long durationMs = (System.nanoTime() - startNanos) / 1_000_000;
+            boolean async = request.isAsyncStarted();
 
-            // 执行请求 (使用 Wrapper)
-            filterChain.doFilter(requestWrapper, responseWrapper);
+            long responseBytes = responseWrapper != null ? responseWrapper.getTotalBytes() : contentLength(response);
+            String line = String.format("%s %s status=%s durationMs=%d reqBytes=%s respBytes=%s stages=%s",
+                    request.getMethod(), path, async ? "async" : String.valueOf(response.getStatus()), durationMs,
+                    sizeOf(request.getContentLengthLong()), sizeOf(responseBytes), timings.format());
+            if (capture && !async) {
+                long id = record(request, requestWrapper, response, responseWrapper, durationMs, timings);
+                line += " captureId=" + id;
+            }
+            if (durationMs >= slowMillis) {
+                logger.info(line);
+            } else {
+                logger.debug(line);
+            }
+        }
+    }
 
-        } finally {
-            long duration = System.currentTimeMillis() - startTime;
-
-            // ... 这里是你原有的日志逻辑 ...
-            // 记录请求体
-            if (request.getMethod().equalsIgnoreCase("POST") || request.getMethod().equalsIgnoreCase("PUT")) {
-                byte[] content = requestWrapper.getContentAsByteArray();
-                if (content.length > 0) {
-                    try {
-                        String body = new String(content, StandardCharsets.UTF_8);
-                        if (body.length() > 1000) body = body.substring(0, 1000) + "...";
-                        logger.info("Request Body: {}", body);
-                    } catch (Exception e) { /* 忽略 */ }
-                }
+    /**
+     * 最近截取的请求（新的在前）
+     */
+    public synchronized List<CapturedExchange> getCaptures() {
+        List<CapturedExchange> result = new ArrayList<>(captures.length);
+        for (int i = 1; i <= captures.length; i++) {
+            CapturedExchange exchange = captures[Math.floorMod(nextCapture - i, captures.length)];
+            if (exchange != null) {
+                result.add(exchange);
             }
+        }
+        return result;
+    }
+
+    public synchronized void clearCaptures() {
+        Arrays.fill(captures, null);
+    }
+
+    private boolean shouldCapture(HttpServletRequest request) {
+        if (maxCaptureBytes <= 0) {
+            return false;
+        }
+        if (headerCapture && "true".equalsIgnoreCase(request.getHeader(CAPTURE_HEADER))) {
+            return true;
+        }
+        return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    private long record(HttpServletRequest request, ContentCachingRequestWrapper requestWrapper,
+                        HttpServletResponse response, CapturingResponseWrapper responseWrapper,
+                        long durationMs, RequestTimings timings) {
+        CapturedExchange exchange = new CapturedExchange();
+        exchange.id = captureSeq.incrementAndGet();
+        exchange.timestamp = Instant.now().toString();
+        exchange.method = request.getMethod();
+        exchange.uri = request.getQueryString() == null
+                ? request.getRequestURI() : request.getRequestURI() + "?" + request.getQueryString();
+        exchange.status = response.getStatus();
+        exchange.durationMs = durationMs;
+        exchange.stages = new LinkedHashMap<>(timings.getStages());
+        exchange.requestContentType = request.getContentType();
+        exchange.requestBytes = request.getContentLengthLong();
+        exchange.requestBody = describe(requestWrapper.getContentAsByteArray(), exchange.requestBytes,
+                request.getContentType());
+        exchange.responseContentType = response.getContentType();
+        exchange.responseBytes = responseWrapper.getTotalBytes();
+        exchange.responseBody = describe(responseWrapper.getCaptured(), exchange.responseBytes,
+                response.getContentType());
+
+        synchronized (this) {
+            captures[nextCapture] = exchange;
+            nextCapture = (nextCapture + 1) % captures.length;
+        }
+        return exchange.id;
+    }
+
+    /**
+     * 文本内容按 UTF-8 输出（超出截取上限时标注总大小），二进制内容只记录大小
+     */
+    private static String describe(byte[] content, long totalBytes, String contentType) {
+        if (content.length == 0) {
+            return null;
+        }
+        if (contentType == null || !(contentType.contains("json") || contentType.contains("text")
+                || contentType.contains("xml") || contentType.contains("form-urlencoded"))) {
+            return "<binary " + Math.max(totalBytes, content.length) + " bytes>";
+        }
+        String body = new String(content, StandardCharsets.UTF_8);
+        if (totalBytes > content.length) {
+            body += "...<truncated, " + totalBytes + " bytes>";
+        }
+        return body;
+    }
+
+    private static long contentLength(HttpServletResponse response) {
+        String header = response.getHeader("Content-Length");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String sizeOf(long bytes) {
+        return bytes >= 0 ? String.valueOf(bytes) : "-";
+    }
+
+    /**
+     * 截取的一次请求
+     */
+    public static class CapturedExchange {
+        public long id;
+        public String timestamp;
+        public String method;
+        public String uri;
+        public int status;
+        public long durationMs;
+        public Map<String, Long> stages;
+        public String requestContentType;
+        public long requestBytes;
+        public String requestBody;
+        public String responseContentType;
+        public long responseBytes;
+        public String responseBody;
+    }
+
+    /**
+     * 响应直接写给客户端，同时保留前 limit 字节的副本并统计总字节数
+     */
+    private static class CapturingResponseWrapper extends HttpServletResponseWrapper {
+        private final int limit;
+        private final ByteArrayOutputStream captured;
+        private long totalBytes;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        CapturingResponseWrapper(HttpServletResponse response, int limit) {
+            super(response);
+            this.limit = limit;
+            this.captured = new ByteArrayOutputStream(Math.min(limit, 1024));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        totalBytes++;
+                        if (captured.size() < limit) {
+                            captured.write(b);
+                        }
+                    }
 
-            // 记录响应体
-            byte[] responseContent = responseWrapper.getContentAsByteArray();
-            if (responseContent.length > 0 && responseContent.length < 5000) {
-                try {
-                    String responseBody = new String(responseContent, StandardCharsets.UTF_8);
-                    // 只有 Content-Type 是文本时才打印，防止乱码
-                    String contentType = response.getContentType();
-                    if (contentType != null && (contentType.contains("json") || contentType.contains("text"))) {
-                        logger.info("Response Body: {}", responseBody);
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        totalBytes += len;
+                        int room = limit - captured.size();
+                        if (room > 0) {
+                            captured.write(b, off, Math.min(room, len));
+                        }
                     }
-                } catch (Exception e) { /* 忽略 */ }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
             }
+        }
 
-            // 复制响应到原始响应 (这是最重要的一步，如果没有这一步，客户端收不到数据)
-            responseWrapper.copyBodyToResponse();
+        long getTotalBytes() {
+            return totalBytes;
+        }
 
-            logger.info("Duration: {} ms | Status: {}", duration, response.getStatus());
-            logger.info("======================");
+        byte[] getCaptured() {
+            return captured.toByteArray();
         }
     }
-}
\ No newline at end of file
+}
@@ -18,6 +18,7 @@ public class YamlConfig {
     private RemoteConfig remote;
     private StitchingConfig stitching;
     private InspectionConfig inspection;
+    private DiagnosticsConfig diagnostics = new DiagnosticsConfig();
     private Map<String, Map<String, Integer>> qualityStandards;
 
     @Data
@@ -25,6 +26,18 @@ public class YamlConfig {
         private String deviceId;
         private int port;
         private boolean saveLocal = true;
+        // 检测记录组提交：每批最多写入的记录数
+        private int recordBatchSize = 32;
+        // 检测记录组提交：收到第一条记录后最多等待的毫秒数（凑批）
+        private long recordCommitIntervalMs = 20;
+        // 每批写入后是否刷盘（fsync）
+        private boolean recordFsync = true;
+        // 记录追加到意图日志后是否立即刷盘（关闭时意图日志只防进程退出，不防断电）
+        private boolean recordIntentFsync = false;
+        // 待写入记录的队列容量，队列满时保存记录的线程等待
+        private int recordQueueCapacity = 1024;
+        // 结果图写盘线程数
+        private int imageWriteThreads = 2;
     }
 
     @Data
@@ -52,6 +65,9 @@ public class YamlConfig {
         private String strategy = "simple";  // simple, auto, manual
         private int blendWidth = 100;
         private boolean enableBlend = true;
+        private String autoInterpolation = "linear";  // auto 模式逐帧插值: linear（快速）, lanczos4（高质量）
+        private int parallelism = 0;  // 拼接并行线程数，0 表示自动（CPU 核数 - 2，为推理预留核心）
+        private String autoFeatureBackend = "sift";  // auto 模式校准特征: sift, orb, akaze（快速后端内点不足时回退 sift）
     }
 
     @Data
@@ -62,10 +78,62 @@ public class YamlConfig {
         private double maxMatchDistance = 300.0;
         // 是否将未在模板中定义的检测对象视为错检
         private boolean treatExtraAsError = false;
+        // 坐标匹配旋转估计的 RANSAC 置信度（0 < p < 1 时按置信度提前结束迭代，其他值为固定迭代次数）
+        private double coordinateRansacConfidence = 0.0;
         // 默认容差值（像素），用于创建模板时的初始值
         private double defaultToleranceX = 20.0;
         private double defaultToleranceY = 20.0;
         // 四角匹配指纹容差，越小越严格
         private Double fingerprintTolerance = 0.5;
+        // 模板定位特征后端：sift、orb、akaze（模板可单独指定）
+        private String featureBackend = "sift";
+        // orb/akaze 定位内点数低于该值时回退 sift
+        private int featureMinInliers = 15;
+        // 模板点与检测点比对时在连通分量内求最优分配（默认按模板顺序贪心取最近）
+        private boolean optimalAssignment = false;
+        // 连续帧定位时序跟踪（光流验证上一帧单应性，失败再完整定位）
+        private boolean trackingEnabled = false;
+        // 连续跟踪帧数上限，超过后强制完整定位一次
+        private int trackingMaxFrames = 50;
+        // 多摄像头质检并行线程数，0 表示自动（CPU 核数 - 2，为推理预留核心）
+        private int cameraParallelism = 0;
+        // 推理的同时开始各摄像头的模板定位（与推理争抢 CPU，推理在 GPU 上时收益最大）
+        private boolean overlapLocalization = false;
+        // 质检接口默认异步渲染结果图（先返回判定结果，结果图通过 /api/result-images/{id} 获取），请求可单独指定
+        private boolean asyncImages = false;
+        // 结果图渲染线程数
+        private int renderThreads = 2;
+        // 结果图渲染队列容量，队列满时在请求线程中渲染
+        private int renderQueueCapacity = 32;
+        // 渲染完成的结果图在内存中保留的秒数
+        private int renderRetentionSeconds = 300;
+        // 内存中保留的结果图 JPEG 总大小上限（MB），超出时淘汰最旧的
+        private int renderMaxStoredMb = 128;
+        // 同步接口的图片传输方式：base64（内嵌 data URL）/ reference（只返回 /api/result-images/{id} 引用）
+        private String imageTransport = "base64";
+        // 检测统计按天保留的天数，启动时也只从最近这些天的记录重建统计
+        private int statsDays = 30;
+        // 启动重建统计时最多加载的记录条数（从最新的记录往前）
+        private int statsRebuildMaxRecords = 50000;
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class DiagnosticsConfig {
+        // 是否启用 Mat 原生内存追踪（浸泡测试/排查泄漏时开启）
+        private boolean matTracking = false;
+        // Mat 存活超过该秒数仍未释放则视为疑似泄漏
+        private long matLeakThresholdSeconds = 60;
+        // 是否记录 Mat 分配调用栈（开销较大，仅排查时开启）
+        private boolean matCaptureStack = false;
+        // 请求内容抽样截取比例（0 关闭，1 全部）
+        private double requestCaptureSampleRate = 0.0;
+        // 是否允许请求头 X-Capture-Body: true 强制截取单个请求
+        private boolean requestCaptureHeaderEnabled = false;
+        // 请求体/响应体各截取的最大字节数（0 表示完全不截取）
+        private int requestCaptureMaxBytes = 4096;
+        // 截取内容环形缓冲区大小（保留最近的 N 个请求）
+        private int requestCaptureBufferSize = 50;
+        // 耗时不低于该毫秒数的请求以 INFO 输出访问日志，其余为 DEBUG（0 表示全部 INFO）
+        private long requestLogSlowMs = 500;
+    }
+}
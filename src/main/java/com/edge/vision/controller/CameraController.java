@@ -13,12 +13,15 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +46,7 @@ public class CameraController {
     private static final int MIN_FRAME_INTERVAL_MS = 20; // 最小间隔
     private static final int MAX_FRAME_INTERVAL_MS = 100; // 最大间隔
     private static final int STREAM_TIMEOUT_MS = 0; // 流超时时间（0 表示不超时，持续推送）
+    private static final String MULTIPART_BOUNDARY = "camera-frame"; // multipart/mixed 分段边界
 
     @Autowired
     private CameraService cameraService;
@@ -494,6 +498,39 @@ public class CameraController {
         }
     }
 
+    /**
+     * 获取单个摄像头当前帧（JPEG 原始字节）
+     */
+    @GetMapping(value = "/frame/{cameraIndex}/jpeg")
+    @Operation(
+            summary = "获取单个摄像头当前帧（JPEG）",
+            description = """
+                    直接返回 JPEG 原始字节，比 /frame/{cameraIndex} 的 Base64 JSON 小约 25%，可直接用作 img 的 src。
+
+                    **使用方式**：
+                    ```html
+                    <img src="http://localhost:8000/api/camera/frame/0/jpeg" />
+                    ```
+                    """
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "JPEG 图片", content = @Content(mediaType = "image/jpeg")),
+            @ApiResponse(responseCode = "503", description = "摄像头不可用或没有画面")
+    })
+    public ResponseEntity<byte[]> getCameraFrameJpeg(
+            @Parameter(description = "摄像头索引（从 0 开始）", required = true, example = "0")
+            @PathVariable int cameraIndex) {
+        byte[] jpeg = cameraService.getCameraImageJpeg(cameraIndex);
+        if (jpeg == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .cacheControl(CacheControl.noStore())
+                .header("X-Frame-Timestamp", String.valueOf(System.currentTimeMillis()))
+                .body(jpeg);
+    }
+
     /**
      * 获取所有摄像头当前帧（同步版）
      */
@@ -544,6 +581,67 @@ public class CameraController {
         }
     }
 
+    /**
+     * 获取所有摄像头当前帧（multipart/mixed，JPEG 原始字节）
+     */
+    @GetMapping(value = "/frames/multipart")
+    @Operation(
+            summary = "获取所有摄像头当前帧（multipart/mixed）",
+            description = """
+                    与 /frames 相同的同步时间戳语义，但以 multipart/mixed 返回，每个摄像头一段 JPEG 原始字节，不经过 Base64 和 JSON。
+
+                    **每段的头**：
+                    - Content-Type: image/jpeg
+                    - X-Camera-Index: 摄像头索引
+                    - X-Frame-Timestamp: 同步时间戳
+
+                    没有画面的摄像头不输出对应的段
+                    """
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "多段 JPEG",
+                    content = @Content(mediaType = "multipart/mixed; boundary=" + MULTIPART_BOUNDARY)
+            ),
+            @ApiResponse(responseCode = "503", description = "没有可用的摄像头画面")
+    })
+    public void getAllCameraFramesMultipart(HttpServletResponse response) throws IOException {
+        long syncTimestamp = System.currentTimeMillis();
+        int cameraCount = cameraService.getCameraCount();
+        List<byte[]> frames = new ArrayList<>(cameraCount);
+        boolean any = false;
+        for (int i = 0; i < cameraCount; i++) {
+            byte[] jpeg = cameraService.getCameraImageJpeg(i);
+            frames.add(jpeg);
+            any |= jpeg != null;
+        }
+        if (!any) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "No camera frame available");
+            return;
+        }
+
+        response.setContentType("multipart/mixed; boundary=" + MULTIPART_BOUNDARY);
+        response.setHeader("Cache-Control", "no-store");
+        response.setHeader("X-Camera-Count", String.valueOf(cameraCount));
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < frames.size(); i++) {
+            byte[] jpeg = frames.get(i);
+            if (jpeg == null) {
+                continue;
+            }
+            out.write(("--" + MULTIPART_BOUNDARY + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("Content-Type: image/jpeg\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("Content-Length: " + jpeg.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("X-Camera-Index: " + i + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(("X-Frame-Timestamp: " + syncTimestamp + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(jpeg);
+            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(("--" + MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
     /**
      * 获取同步的多摄像头帧（按序列号）
      */
@@ -218,13 +218,12 @@ public class CropAreaTemplateController {
 //            String stitchedImageBase64 = cameraService.getStitchedImageBase64();
             String originalImagePath = Paths.get(uploadPath, "crop-area-temp", request.getTemplateId() + "_temp.jpg").toString();
             Mat base64ToMat = Imgcodecs.imread(originalImagePath);
-            String stitchedImageBase64 = matToBase64(base64ToMat);
             List<com.edge.vision.model.Detection> detections=detectionsTemp;
 //            Mat base64ToMat = base64ToMat(stitchedImageBase64);
             // 调用 YOLOInferenceEngine 识别
 //            List<com.edge.vision.model.Detection> detections = detailInferenceEngine.predict(base64ToMat);
             List<DetectedObject> detectedObjects = convertDetectionsToDetectedObjects(detections);
-            Template template = VisionTool.createTemplate(stitchedImageBase64, cropRect, detectedObjects, request.getTemplateId());
+            Template template = VisionTool.createTemplate(base64ToMat, cropRect, detectedObjects, request.getTemplateId());
             // 将裁剪区域信息存入 metadata
             java.util.Map<String, Object> metadata = new java.util.HashMap<>();
             metadata.put("cropWidth", base64ToMat.cols());
@@ -3,11 +3,34 @@ package com.edge.vision.controller;
 import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
+import com.edge.vision.config.RequestLoggingFilter;
 import com.edge.vision.config.YamlConfig;
 import com.edge.vision.core.infer.InferEngineTemplate;
 import com.edge.vision.core.infer.YOLOInferenceEngine;
+import com.edge.vision.core.stitcher.ManualStitchStrategy;
+import com.edge.vision.core.stitcher.SimpleStitchStrategy;
+import com.edge.vision.core.stitcher.StitchExecutor;
+import com.edge.vision.core.stitcher.StitchStrategy;
+import com.edge.vision.core.template.TemplateManager;
+import com.edge.vision.core.topology.AssignmentSolver;
+import com.edge.vision.core.topology.CompiledTemplateCache;
+import com.edge.vision.core.topology.HungarianAlgorithm;
+import com.edge.vision.core.topology.TopologyEdge;
+import com.edge.vision.core.topology.TopologyGraph;
+import com.edge.vision.core.template.model.DetectedObject;
+import com.edge.vision.core.template.model.Template;
+import com.edge.vision.repository.InspectionRepository;
+import com.edge.vision.service.MatMemoryMonitor;
+import com.edge.vision.service.PartCameraTemplateService;
+import com.edge.vision.service.RecordWriter;
+import com.edge.vision.service.ResultImageService;
+import com.edge.vision.util.FeatureBackend;
+import com.edge.vision.util.HomographyTracker;
+import com.edge.vision.util.VisionTool;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
@@ -19,6 +42,7 @@ import org.springframework.web.bind.annotation.*;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 系统诊断 API
@@ -32,9 +56,49 @@ public class DiagnosticsController {
 
     private static final Logger logger = LoggerFactory.getLogger(DiagnosticsController.class);
 
+    // 拼接性能测试的合成帧上限：单帧不超过现场相机分辨率，所有合成帧合计不超过两帧 5472x3648（约 120MB 原生内存）
+    private static final int STITCH_BENCHMARK_MAX_WIDTH = 5472;
+    private static final int STITCH_BENCHMARK_MAX_HEIGHT = 3648;
+    private static final int STITCH_BENCHMARK_MAX_CAMERAS = 6;
+    private static final long STITCH_BENCHMARK_MAX_PIXELS = 2L * 5472 * 3648;
+    private static final int STITCH_BENCHMARK_MAX_RUNS = 20;
+    // 同一时间只允许一个拼接性能测试
+    private final ReentrantLock stitchBenchmarkLock = new ReentrantLock();
+    // 分配算法性能测试上限：代价矩阵同时有一维和二维两份，n x m 不超过 4M（两份合计约 64MB）
+    private static final long ASSIGNMENT_BENCHMARK_MAX_CELLS = 4_000_000L;
+    private static final int ASSIGNMENT_BENCHMARK_MAX_SIZES = 10;
+    private static final int ASSIGNMENT_BENCHMARK_MAX_HUNGARIAN = 500;
+    private static final int ASSIGNMENT_BENCHMARK_MAX_RUNS = 20;
+    // 拓扑图构建性能测试上限：原建图方式每个节点对全部节点排序，耗时随 n² log n 增长
+    private static final int TOPOLOGY_BENCHMARK_MAX_NODES = 5000;
+    private static final int TOPOLOGY_BENCHMARK_MAX_SIZES = 10;
+    private static final int TOPOLOGY_BENCHMARK_MAX_K = 50;
+    private static final int TOPOLOGY_BENCHMARK_MAX_RUNS = 20;
+
     @Autowired
     private YamlConfig yamlConfig;
 
+    @Autowired
+    private MatMemoryMonitor matMemoryMonitor;
+
+    @Autowired
+    private TemplateManager templateManager;
+
+    @Autowired
+    private PartCameraTemplateService partCameraTemplateService;
+
+    @Autowired
+    private ResultImageService resultImageService;
+
+    @Autowired
+    private RequestLoggingFilter requestLoggingFilter;
+
+    @Autowired
+    private InspectionRepository inspectionRepository;
+
+    @Autowired
+    private RecordWriter recordWriter;
+
     /**
      * 列出所有可用的 CUDA 设备
      */
@@ -163,6 +227,517 @@ public class DiagnosticsController {
         }
     }
 
+    /**
+     * Mat 原生内存统计
+     */
+    @Operation(summary = "Mat 原生内存统计", description = "按分配位置统计存活的 OpenCV Mat 数量和字节数，并列出疑似泄漏（需开启 edge-vision.diagnostics.mat-tracking）")
+    @GetMapping("/mat-memory")
+    public ResponseEntity<Map<String, Object>> getMatMemory() {
+        return ResponseEntity.ok(matMemoryMonitor.getStatistics());
+    }
+
+    /**
+     * 拼接性能测试端点
+     * <p>
+     * 使用合成帧（默认 1368x912，现场分辨率的 1/4）分别测试 minCameras..maxCameras 路拼接耗时，
+     * 用于观察按摄像头并行后耗时随摄像头数量的变化。
+     * 合成帧占用原生内存，单帧尺寸、摄像头数和合成帧总像素都有上限，且同一时间只运行一个测试。
+     */
+    @Operation(summary = "拼接性能测试", description = "使用合成帧测试不同摄像头数量下的拼接耗时（manual / simple），单帧最大 5472x3648，最多 6 路，合成帧总像素不超过两帧 5472x3648")
+    @PostMapping("/stitch-benchmark")
+    public ResponseEntity<Map<String, Object>> runStitchBenchmark(@RequestParam(defaultValue = "manual") String strategy,
+                                                                   @RequestParam(defaultValue = "2") int minCameras,
+                                                                   @RequestParam(defaultValue = "4") int maxCameras,
+                                                                   @RequestParam(defaultValue = "1368") int width,
+                                                                   @RequestParam(defaultValue = "912") int height,
+                                                                   @RequestParam(defaultValue = "5") int testRuns) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (!"manual".equals(strategy) && !"simple".equals(strategy)) {
+            result.put("error", "Unsupported strategy: " + strategy + " (manual / simple)");
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (minCameras < 1 || maxCameras < minCameras || maxCameras > STITCH_BENCHMARK_MAX_CAMERAS
+                || testRuns < 1 || testRuns > STITCH_BENCHMARK_MAX_RUNS) {
+            result.put("error", "Invalid camera range or test runs (cameras 1.." + STITCH_BENCHMARK_MAX_CAMERAS
+                    + ", testRuns 1.." + STITCH_BENCHMARK_MAX_RUNS + ")");
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (width < 1 || height < 1 || width > STITCH_BENCHMARK_MAX_WIDTH || height > STITCH_BENCHMARK_MAX_HEIGHT) {
+            result.put("error", "Frame size must be within " + STITCH_BENCHMARK_MAX_WIDTH + "x" + STITCH_BENCHMARK_MAX_HEIGHT);
+            return ResponseEntity.badRequest().body(result);
+        }
+        if ((long) maxCameras * width * height > STITCH_BENCHMARK_MAX_PIXELS) {
+            result.put("error", "maxCameras x width x height exceeds " + STITCH_BENCHMARK_MAX_PIXELS + " pixels");
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (!stitchBenchmarkLock.tryLock()) {
+            result.put("error", "Another stitch benchmark is running");
+            return ResponseEntity.status(429).body(result);
+        }
+
+        result.put("strategy", strategy);
+        result.put("parallelism", StitchExecutor.getParallelism());
+        result.put("frame_size", width + "x" + height);
+        result.put("test_runs", testRuns);
+
+        List<Mat> frames = new ArrayList<>();
+        try {
+            List<Map<String, Object>> runs = new ArrayList<>();
+            for (int cameras = minCameras; cameras <= maxCameras; cameras++) {
+                while (frames.size() < cameras) {
+                    Mat frame = new Mat(height, width, CvType.CV_8UC3);
+                    Core.randu(frame, 0, 256);
+                    frames.add(frame);
+                }
+                List<Mat> input = frames.subList(0, cameras);
+
+                StitchStrategy stitcher;
+                if ("manual".equals(strategy)) {
+                    ManualStitchStrategy manual = new ManualStitchStrategy();
+                    manual.resetToDefault(cameras);
+                    stitcher = manual;
+                } else {
+                    stitcher = new SimpleStitchStrategy(true);
+                }
+
+                // 预热一次（manual 模式编译拼接计划）
+                Mat canvas = new Mat();
+                stitcher.stitchInto(input, canvas);
+
+                long[] times = new long[testRuns];
+                for (int i = 0; i < testRuns; i++) {
+                    long start = System.nanoTime();
+                    stitcher.stitchInto(input, canvas);
+                    times[i] = (System.nanoTime() - start) / 1_000_000;
+                }
+                canvas.release();
+
+                Arrays.sort(times);
+                long avg = Arrays.stream(times).sum() / testRuns;
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("cameras", cameras);
+                run.put("min_time_ms", times[0]);
+                run.put("max_time_ms", times[testRuns - 1]);
+                run.put("avg_time_ms", avg);
+                run.put("avg_time_per_camera_ms", avg / cameras);
+                runs.add(run);
+            }
+            result.put("results", runs);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            logger.error("Stitch benchmark failed", e);
+            result.put("error", e.getMessage());
+            return ResponseEntity.status(500).body(result);
+        } finally {
+            for (Mat frame : frames) {
+                frame.release();
+            }
+            stitchBenchmarkLock.unlock();
+        }
+    }
+
+    /**
+     * 模板定位性能测试端点
+     * <p>
+     * 在录制的现场图像上分别用 SIFT / ORB / AKAZE 定位模板，对比耗时和与 SIFT 结果的坐标偏差。
+     * 快速后端内点不足时会按线上逻辑回退 SIFT，耗时中包含回退开销。
+     * 每次计时前清除时序跟踪状态，保证测的是完整定位；最后单独给出跟踪命中时的耗时（TRACKED）。
+     */
+    @Operation(summary = "模板定位性能测试", description = "对比 SIFT / ORB / AKAZE 特征后端在录制图像上的定位耗时和坐标偏差")
+    @PostMapping("/localization-benchmark")
+    public ResponseEntity<Map<String, Object>> runLocalizationBenchmark(@RequestParam String templateId,
+                                                                         @RequestParam String imagePath,
+                                                                         @RequestParam(defaultValue = "5") int testRuns) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (testRuns < 1) {
+            result.put("error", "Invalid test runs");
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        Mat scene = Imgcodecs.imread(imagePath);
+        if (scene.empty()) {
+            result.put("error", "Cannot read image: " + imagePath);
+            return ResponseEntity.badRequest().body(result);
+        }
+
+        try {
+            Template original = templateManager.load(templateId);
+            result.put("template_id", templateId);
+            result.put("image_size", scene.cols() + "x" + scene.rows());
+            result.put("test_runs", testRuns);
+
+            List<DetectedObject> reference = null;
+            List<Map<String, Object>> runs = new ArrayList<>();
+            for (FeatureBackend backend : FeatureBackend.values()) {
+                // 浅拷贝模板，只替换特征后端（共享同一份特征缓存）
+                Template template = new Template(original.getTemplateId());
+                template.setImagePath(original.getImagePath());
+                template.setFeaturesPath(original.getFeaturesPath());
+                template.setFeatures(original.getFeatures());
+                template.setFeatureBackend(backend.name());
+
+                // 预热（构建该后端的模板索引）
+                HomographyTracker.invalidate(templateId);
+                List<DetectedObject> objects = VisionTool.calculateTemplateCoordinates(template, scene);
+
+                long[] times = new long[testRuns];
+                for (int i = 0; i < testRuns; i++) {
+                    HomographyTracker.invalidate(templateId);
+                    long start = System.nanoTime();
+                    objects = VisionTool.calculateTemplateCoordinates(template, scene);
+                    times[i] = (System.nanoTime() - start) / 1_000_000;
+                }
+                Arrays.sort(times);
+
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("backend", backend.name());
+                run.put("located", !objects.isEmpty());
+                run.put("min_time_ms", times[0]);
+                run.put("max_time_ms", times[testRuns - 1]);
+                run.put("avg_time_ms", Arrays.stream(times).sum() / testRuns);
+                if (backend == FeatureBackend.SIFT) {
+                    reference = objects;
+                } else if (reference != null && !reference.isEmpty() && objects.size() == reference.size()) {
+                    // 与 SIFT 定位结果的平均 / 最大坐标偏差
+                    double sum = 0;
+                    double max = 0;
+                    for (int i = 0; i < objects.size(); i++) {
+                        double dx = objects.get(i).getCenter().x - reference.get(i).getCenter().x;
+                        double dy = objects.get(i).getCenter().y - reference.get(i).getCenter().y;
+                        double d = Math.sqrt(dx * dx + dy * dy);
+                        sum += d;
+                        max = Math.max(max, d);
+                    }
+                    run.put("mean_deviation_px", String.format("%.2f", sum / objects.size()));
+                    run.put("max_deviation_px", String.format("%.2f", max));
+                }
+                runs.add(run);
+            }
+
+            // 时序跟踪命中时的耗时（同一场景重复定位，先完整定位一次建立跟踪状态）
+            if (HomographyTracker.isEnabled()) {
+                HomographyTracker.invalidate(templateId);
+                VisionTool.calculateTemplateCoordinates(original, scene);
+                long[] times = new long[testRuns];
+                List<DetectedObject> objects = Collections.emptyList();
+                for (int i = 0; i < testRuns; i++) {
+                    long start = System.nanoTime();
+                    objects = VisionTool.calculateTemplateCoordinates(original, scene);
+                    times[i] = (System.nanoTime() - start) / 1_000_000;
+                }
+                Arrays.sort(times);
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("backend", "TRACKED");
+                run.put("located", !objects.isEmpty());
+                run.put("min_time_ms", times[0]);
+                run.put("max_time_ms", times[testRuns - 1]);
+                run.put("avg_time_ms", Arrays.stream(times).sum() / testRuns);
+                runs.add(run);
+                HomographyTracker.invalidate(templateId);
+            }
+
+            result.put("results", runs);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            logger.error("Localization benchmark failed", e);
+            result.put("error", e.getMessage());
+            return ResponseEntity.status(500).body(result);
+        } finally {
+            scene.release();
+        }
+    }
+
+    /**
+     * 分配算法性能测试端点
+     * <p>
+     * 随机生成模板点（5000x5000 范围）和检测点（前 n 个为模板点加高斯噪声，其余为随机误检），
+     * 以欧氏距离为代价，对比原匈牙利算法、稠密最短增广路和 500px 门限稀疏求解的耗时、匹配数和总代价。
+     * 原匈牙利算法在大规模下非常慢，超过 hungarianMaxSize 时跳过。
+     * 代价矩阵按 n x m 分配，运行前校验全部规模，超过上限的请求直接拒绝。
+     */
+    @Operation(summary = "分配算法性能测试", description = "对比匈牙利算法、稠密最短增广路和门限稀疏求解在不同特征数量下的耗时与结果，最多 10 组规模，每组特征数 x 检测数不超过 4M，hungarianMaxSize 不超过 500")
+    @PostMapping("/assignment-benchmark")
+    public ResponseEntity<Map<String, Object>> runAssignmentBenchmark(@RequestParam(defaultValue = "50,200,1000") String sizes,
+                                                                      @RequestParam(defaultValue = "1.5") double detectionRatio,
+                                                                      @RequestParam(defaultValue = "200") int hungarianMaxSize,
+                                                                      @RequestParam(defaultValue = "3") int testRuns) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (testRuns < 1 || testRuns > ASSIGNMENT_BENCHMARK_MAX_RUNS || !(detectionRatio > 0)
+                || hungarianMaxSize > ASSIGNMENT_BENCHMARK_MAX_HUNGARIAN) {
+            result.put("error", "Invalid parameters (testRuns 1.." + ASSIGNMENT_BENCHMARK_MAX_RUNS + ", detectionRatio > 0, hungarianMaxSize <= "
+                    + ASSIGNMENT_BENCHMARK_MAX_HUNGARIAN + ")");
+            return ResponseEntity.badRequest().body(result);
+        }
+        int[] sizeValues;
+        try {
+            sizeValues = Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            result.put("error", "Invalid sizes: " + sizes);
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (sizeValues.length > ASSIGNMENT_BENCHMARK_MAX_SIZES) {
+            result.put("error", "At most " + ASSIGNMENT_BENCHMARK_MAX_SIZES + " sizes");
+            return ResponseEntity.badRequest().body(result);
+        }
+        for (int n : sizeValues) {
+            if (n < 1 || (double) n * Math.max(1, Math.round(n * detectionRatio)) > ASSIGNMENT_BENCHMARK_MAX_CELLS) {
+                result.put("error", "Size " + n + " out of range (n >= 1, n x detections <= "
+                        + ASSIGNMENT_BENCHMARK_MAX_CELLS + ")");
+                return ResponseEntity.badRequest().body(result);
+            }
+        }
+
+        double gate = 500.0;
+        Random random = new Random(42);
+        List<Map<String, Object>> runs = new ArrayList<>();
+        for (int n : sizeValues) {
+            int m = Math.max(1, (int) Math.round(n * detectionRatio));
+
+            double[] tx = new double[n], ty = new double[n];
+            for (int i = 0; i < n; i++) {
+                tx[i] = random.nextDouble() * 5000;
+                ty[i] = random.nextDouble() * 5000;
+            }
+            double[] cost = new double[n * m];
+            double[][] dense = new double[n][m];
+            for (int j = 0; j < m; j++) {
+                double x = j < n ? tx[j] + random.nextGaussian() * 10 : random.nextDouble() * 5000;
+                double y = j < n ? ty[j] + random.nextGaussian() * 10 : random.nextDouble() * 5000;
+                for (int i = 0; i < n; i++) {
+                    double d = Math.hypot(tx[i] - x, ty[i] - y);
+                    cost[i * m + j] = d;
+                    dense[i][j] = d;
+                }
+            }
+
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("template_features", n);
+            run.put("detections", m);
+            if (n <= hungarianMaxSize) {
+                putAssignmentRun(run, "hungarian", cost, m, testRuns,
+                        () -> HungarianAlgorithm.solve(dense));
+            }
+            putAssignmentRun(run, "dense", cost, m, testRuns, () -> AssignmentSolver.solve(cost, n, m));
+            putAssignmentRun(run, "sparse_gated", cost, m, testRuns, () -> AssignmentSolver.solveGated(cost, n, m, gate));
+            runs.add(run);
+        }
+        result.put("gate_px", gate);
+        result.put("test_runs", testRuns);
+        result.put("results", runs);
+        return ResponseEntity.ok(result);
+    }
+
+    private static void putAssignmentRun(Map<String, Object> run, String name, double[] cost, int cols,
+                                         int testRuns, java.util.function.Supplier<int[]> solver) {
+        int[] assignment = null;
+        long[] times = new long[testRuns];
+        for (int i = 0; i < testRuns; i++) {
+            long start = System.nanoTime();
+            assignment = solver.get();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        int matched = 0;
+        for (int j : assignment) {
+            if (j >= 0) matched++;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("min_time_ms", String.format("%.2f", times[0] / 1e6));
+        stats.put("median_time_ms", String.format("%.2f", times[testRuns / 2] / 1e6));
+        stats.put("matched", matched);
+        stats.put("total_cost", String.format("%.1f", AssignmentSolver.totalCost(cost, cols, assignment)));
+        run.put(name, stats);
+    }
+
+    /**
+     * 拓扑图构建性能测试端点
+     * <p>
+     * 随机生成 n 个检测点（5000x5000 范围），对比网格索引 k 近邻建图（当前实现）
+     * 与原"每个节点计算到所有节点的距离并整体排序"的耗时，并校验两者的邻居列表是否一致。
+     * 运行前校验全部规模，超过上限的请求直接拒绝。
+     */
+    @Operation(summary = "拓扑图构建性能测试", description = "对比网格 k 近邻建图与全排序建图在 100-2000 个节点下的耗时，最多 10 组规模，每组 1-5000 个节点，k 不超过 50")
+    @PostMapping("/topology-benchmark")
+    public ResponseEntity<Map<String, Object>> runTopologyBenchmark(@RequestParam(defaultValue = "100,500,1000,2000") String sizes,
+                                                                    @RequestParam(defaultValue = "10") int k,
+                                                                    @RequestParam(defaultValue = "3") int testRuns) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (testRuns < 1 || testRuns > TOPOLOGY_BENCHMARK_MAX_RUNS || k < 1 || k > TOPOLOGY_BENCHMARK_MAX_K) {
+            result.put("error", "Invalid parameters (testRuns 1.." + TOPOLOGY_BENCHMARK_MAX_RUNS
+                    + ", k 1.." + TOPOLOGY_BENCHMARK_MAX_K + ")");
+            return ResponseEntity.badRequest().body(result);
+        }
+        int[] sizeValues;
+        try {
+            sizeValues = Arrays.stream(sizes.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            result.put("error", "Invalid sizes: " + sizes);
+            return ResponseEntity.badRequest().body(result);
+        }
+        if (sizeValues.length > TOPOLOGY_BENCHMARK_MAX_SIZES) {
+            result.put("error", "At most " + TOPOLOGY_BENCHMARK_MAX_SIZES + " sizes");
+            return ResponseEntity.badRequest().body(result);
+        }
+        for (int n : sizeValues) {
+            if (n < 1 || n > TOPOLOGY_BENCHMARK_MAX_NODES) {
+                result.put("error", "Size " + n + " out of range (1.." + TOPOLOGY_BENCHMARK_MAX_NODES + ")");
+                return ResponseEntity.badRequest().body(result);
+            }
+        }
+
+        Random random = new Random(42);
+        List<Map<String, Object>> runs = new ArrayList<>();
+        for (int n : sizeValues) {
+            List<DetectedObject> objects = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                objects.add(new DetectedObject(random.nextInt(4),
+                        new com.edge.vision.core.template.model.Point(random.nextDouble() * 5000, random.nextDouble() * 5000),
+                        20, 20));
+            }
+
+            TopologyGraph graph = null;
+            long[] gridTimes = new long[testRuns];
+            for (int i = 0; i < testRuns; i++) {
+                long start = System.nanoTime();
+                graph = TopologyGraph.fromDetectedObjects(objects, "benchmark", k);
+                gridTimes[i] = System.nanoTime() - start;
+            }
+
+            int[][] legacy = null;
+            long[] sortTimes = new long[testRuns];
+            for (int i = 0; i < testRuns; i++) {
+                long start = System.nanoTime();
+                legacy = sortedNeighbors(graph.getNodeList(), k);
+                sortTimes[i] = System.nanoTime() - start;
+            }
+
+            // 校验邻居列表一致
+            Map<String, Integer> indexOf = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                indexOf.put(graph.getNodeList().get(i).getNodeId(), i);
+            }
+            int mismatches = 0;
+            for (int i = 0; i < n; i++) {
+                List<TopologyEdge> edges = graph.getEdges(graph.getNodeList().get(i).getNodeId());
+                boolean same = edges.size() == legacy[i].length;
+                for (int e = 0; same && e < edges.size(); e++) {
+                    same = indexOf.get(edges.get(e).getTargetId()) == legacy[i][e];
+                }
+                if (!same) mismatches++;
+            }
+
+            Arrays.sort(gridTimes);
+            Arrays.sort(sortTimes);
+            Map<String, Object> run = new LinkedHashMap<>();
+            run.put("nodes", n);
+            run.put("k", k);
+            run.put("grid_knn_graph_median_ms", String.format("%.2f", gridTimes[testRuns / 2] / 1e6));
+            run.put("full_sort_knn_median_ms", String.format("%.2f", sortTimes[testRuns / 2] / 1e6));
+            run.put("speedup", String.format("%.1fx", (double) sortTimes[testRuns / 2] / Math.max(1, gridTimes[testRuns / 2])));
+            run.put("neighbor_mismatches", mismatches);
+            runs.add(run);
+        }
+        result.put("test_runs", testRuns);
+        result.put("note", "grid_knn_graph 为完整建图（含边属性），full_sort_knn 仅为原实现的近邻选择部分");
+        result.put("results", runs);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 原建图方式的近邻选择：每个节点计算到所有其他节点的距离，稳定排序后取前 k 个
+     */
+    private static int[][] sortedNeighbors(List<com.edge.vision.core.topology.TopologyNode> nodes, int k) {
+        int n = nodes.size();
+        int actualK = Math.min(n - 1, k);
+        int[][] result = new int[n][];
+        for (int s = 0; s < n; s++) {
+            List<double[]> distances = new ArrayList<>(n - 1);
+            for (int t = 0; t < n; t++) {
+                if (t != s) {
+                    distances.add(new double[]{nodes.get(s).distanceTo(nodes.get(t)), t});
+                }
+            }
+            distances.sort(Comparator.comparingDouble(d -> d[0]));
+            result[s] = new int[Math.min(actualK, distances.size())];
+            for (int i = 0; i < result[s].length; i++) {
+                result[s][i] = (int) distances.get(i)[1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 模板定位时序跟踪统计
+     */
+    @Operation(summary = "定位跟踪统计", description = "连续帧模板定位的时序跟踪命中率、验证失败次数和强制重新定位次数")
+    @GetMapping("/localization-tracking")
+    public ResponseEntity<Map<String, Object>> getLocalizationTracking() {
+        return ResponseEntity.ok(HomographyTracker.getStatistics());
+    }
+
+    /**
+     * 编译模板缓存状态（命中/编译次数、各模板版本与编译耗时）
+     */
+    @Operation(summary = "编译模板缓存状态", description = "查看拓扑图、指纹库等预编译匹配结构的缓存情况")
+    @GetMapping("/compiled-templates")
+    public ResponseEntity<Map<String, Object>> getCompiledTemplates() {
+        return ResponseEntity.ok(CompiledTemplateCache.getStatistics());
+    }
+
+    /**
+     * 最近一次多摄像头质检的耗时分解
+     */
+    @Operation(summary = "多摄像头质检耗时", description = "最近一次多摄像头质检的加载、推理、各摄像头定位/比对/绘制耗时及关键路径")
+    @GetMapping("/inspection-timings")
+    public ResponseEntity<Map<String, Object>> getInspectionTimings() {
+        return ResponseEntity.ok(partCameraTemplateService.getLastInspectionTimings());
+    }
+
+    /**
+     * 异步结果图渲染队列状态
+     */
+    @Operation(summary = "结果图渲染队列", description = "异步结果图的队列深度、已完成/失败数、队列满时在请求线程渲染的次数、平均渲染耗时")
+    @GetMapping("/render-queue")
+    public ResponseEntity<Map<String, Object>> getRenderQueue() {
+        return ResponseEntity.ok(resultImageService.getStatistics());
+    }
+
+    /**
+     * 检测记录存储状态
+     */
+    @Operation(summary = "检测记录存储", description = "记录数、段文件数、索引重建耗时、状态日志条目数、原地状态更新/追加新版本次数、段文件刷盘次数、意图日志条目数/启动时补写数")
+    @GetMapping("/record-store")
+    public ResponseEntity<Map<String, Object>> getRecordStore() {
+        return ResponseEntity.ok(inspectionRepository.getStatistics());
+    }
+
+    /**
+     * 检测记录写入队列状态
+     */
+    @Operation(summary = "检测记录写入", description = "写入队列深度、未提交记录数、批次数与平均/最大批大小、每批提交耗时、排队到落盘耗时、结果图写入数/失败数")
+    @GetMapping("/record-writer")
+    public ResponseEntity<Map<String, Object>> getRecordWriter() {
+        return ResponseEntity.ok(recordWriter.getStatistics());
+    }
+
+    /**
+     * 最近截取的请求内容
+     */
+    @Operation(summary = "请求内容截取", description = "按 request-capture-sample-rate 抽样或（开启 request-capture-header-enabled 时）带 X-Capture-Body: true 头的请求，截取的请求体/响应体（前 N 字节）、状态、耗时和分阶段耗时，新的在前")
+    @GetMapping("/request-captures")
+    public ResponseEntity<List<RequestLoggingFilter.CapturedExchange>> getRequestCaptures() {
+        return ResponseEntity.ok(requestLoggingFilter.getCaptures());
+    }
+
+    @Operation(summary = "清空请求内容截取", description = "清空请求内容环形缓冲区")
+    @DeleteMapping("/request-captures")
+    public ResponseEntity<Void> clearRequestCaptures() {
+        requestLoggingFilter.clearCaptures();
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * 性能测试端点
      */
@@ -9,7 +9,11 @@ import com.edge.vision.model.*;
 import com.edge.vision.service.CameraService;
 import com.edge.vision.service.DataManager;
 import com.edge.vision.service.InferenceEngineService;
+import com.edge.vision.service.InspectionStatisticsService;
 import com.edge.vision.service.QualityStandardService;
+import com.edge.vision.service.ResultImageService;
+import com.edge.vision.util.MatTracker;
+import com.edge.vision.util.RequestTimings;
 import com.edge.vision.util.VisionTool;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -27,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -71,6 +76,15 @@ public class InspectController {
     @Autowired
     private InferenceEngineService inferenceEngineService;
 
+    @Autowired
+    private ResultImageService resultImageService;
+
+    @Autowired
+    private InspectionStatisticsService statisticsService;
+
+    @Autowired
+    private com.fasterxml.jackson.databind.ObjectMapper objectMapper;
+
     @Value("${upload.path:uploads}")
     private String uploadPath;
 
@@ -212,14 +226,17 @@ public class InspectController {
                 logger.debug("Type inference engine not available, skipping workpiece detection");
             }
 
-            // 转换为 base64 用于返回
-            String stitchedImageBase64 = matToBase64(stitchedMat);
+            // 编码预览图：reference 传输时只返回图片引用，否则内嵌 base64
+            byte[] previewJpeg = matToJpeg(stitchedMat);
             stitchedMat.release();
+            String previewImage = resultImageService.isReferenceTransport(null)
+                    ? resultImageService.store(previewJpeg).getUrl()
+                    : "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(previewJpeg);
 
             PreCheckResponse preCheckResponse = new PreCheckResponse();
             preCheckResponse.setRequestId(requestId);
             preCheckResponse.setSuggestedType(suggestedType);
-            preCheckResponse.setPreviewImage("data:image/jpeg;base64," + stitchedImageBase64);
+            preCheckResponse.setPreviewImage(previewImage);
             preCheckResponse.setCameraCount(cameraService.getCameraCount());
             preCheckResponse.setImageShape(imageShape);
             response.put("status", "success");
@@ -273,6 +290,10 @@ public class InspectController {
                         ↓
                     自动保存检测记录
                     ```
+
+                    **异步结果图**：请求中 `async_images` 为 true（或配置 edge-vision.inspection.async-images）时，
+                    判定结果立即返回，`result_image` 为 `/api/result-images/{id}`，结果图在后台渲染，
+                    可直接 GET 该地址（未完成返回 202）或订阅 `/api/result-images/events?ids={id}`；检测记录在结果图完成后保存。
                     """
     )
     @io.swagger.v3.oas.annotations.parameters.RequestBody(
@@ -345,7 +366,10 @@ public class InspectController {
     })
     public ResponseEntity<Map<String, Object>> confirm(@RequestBody ConfirmRequest request) {
         Map<String, Object> response = new HashMap<>();
+        long confirmStart = System.currentTimeMillis();
 
+        Mat stitchedMat = null;
+        Mat resultMat = null;
         try {
             if (request.getConfirmedPartName() == null) {
                 response.put("status", "error");
@@ -359,7 +383,6 @@ public class InspectController {
                 return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
             }
             // 获取拼接图像（增加重试次数和延迟）
-            Mat stitchedMat = null;
             for (int i = 0; i < 10; i++) {
                 stitchedMat = cameraService.getStitchedImage();
                 if (stitchedMat != null && !stitchedMat.empty()) {
@@ -394,7 +417,6 @@ public class InspectController {
                 if (template == null || template.getMetadata() == null) {
                     response.put("status", "error");
                     response.put("message", "CropArea template not found for: " + request.getConfirmedPartName());
-                    stitchedMat.release();
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
                 }
                 // 3. 使用 ObjectDetectionUtil 检测工件位置
@@ -402,7 +424,6 @@ public class InspectController {
                 if (!(templateObjects.size()>0)) {
                     response.put("status", "error");
                     response.put("message", "工件检测失败");
-                    stitchedMat.release();
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
                 }
                 long templateObjectsTime = System.currentTimeMillis() - inferenceStart;
@@ -416,6 +437,8 @@ public class InspectController {
 
             long inferenceTime = System.currentTimeMillis() - inferenceStart;
             logger.info("YOLO inference time: {} ms, Detections found: {}", inferenceTime, detailDetections.size());
+            RequestTimings.record("inference", inferenceTime);
+            statisticsService.recordLatency("confirm.inference", inferenceTime);
 
             List<DetectedObject> detectedObjects = convertDetectionsToDetectedObjects(detailDetections);
             try {
@@ -431,16 +454,45 @@ public class InspectController {
             } catch (Exception e) {
                 logger.warn("Template-based evaluation failed: {}", e.getMessage());
             }
-            // 绘制检测结果（包含模板比对结果）
-            long drawStart = System.currentTimeMillis();
-            Mat resultMat = drawInspectionResults(stitchedMat.clone(), detailDetections, evaluationResult);
-            long drawTime = System.currentTimeMillis() - drawStart;
-            logger.info("Draw results time: {} ms", drawTime);
-
-            long encodeStart = System.currentTimeMillis();
-            String resultImageBase64 = matToBase64(resultMat);
-            long encodeTime = System.currentTimeMillis() - encodeStart;
-            logger.info("Image encode time (images): {} ms", encodeTime);
+            boolean asyncImages = request.getAsyncImages() != null
+                    ? request.getAsyncImages() : resultImageService.isAsyncByDefault();
+            byte[] resultJpeg = null;
+            String resultImageDataUrl = null;
+            ResultImageService.RenderedImage renderedImage = null;
+            if (asyncImages) {
+                // 异步结果图：拼接图交给渲染任务（由渲染任务释放），判定结果立即返回
+                Mat renderSource = stitchedMat;
+                stitchedMat = null;
+                List<Detection> renderDetections = detailDetections;
+                QualityStandardService.QualityEvaluationResult renderEvaluation = evaluationResult;
+                renderedImage = resultImageService.submit(() -> {
+                    Mat rendered = drawInspectionResults(renderSource, renderDetections, renderEvaluation);
+                    try {
+                        return matToJpeg(rendered);
+                    } finally {
+                        MatTracker.release(rendered);
+                    }
+                });
+            } else {
+                // 绘制检测结果（包含模板比对结果）
+                long drawStart = System.currentTimeMillis();
+                resultMat = drawInspectionResults(stitchedMat.clone(), detailDetections, evaluationResult);
+                long drawTime = System.currentTimeMillis() - drawStart;
+                logger.info("Draw results time: {} ms", drawTime);
+                RequestTimings.record("draw", drawTime);
+
+                long encodeStart = System.currentTimeMillis();
+                resultJpeg = matToJpeg(resultMat);
+                if (resultImageService.isReferenceTransport(null)) {
+                    // 同步渲染，但响应中只返回图片引用
+                    renderedImage = resultImageService.store(resultJpeg);
+                } else {
+                    resultImageDataUrl = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(resultJpeg);
+                }
+                long encodeTime = System.currentTimeMillis() - encodeStart;
+                logger.info("Image encode time (images): {} ms", encodeTime);
+                RequestTimings.record("encode", encodeTime);
+            }
 
             // 构建结果
             ConfirmResponse.ConfirmData data = new ConfirmResponse.ConfirmData();
@@ -466,7 +518,12 @@ public class InspectController {
 
             data.setDeviceId(config.getSystem().getDeviceId());
             data.setTimestamp(System.currentTimeMillis() / 1000);
-            data.setResultImage("data:image/jpeg;base64," + resultImageBase64);
+            if (renderedImage != null) {
+                data.setResultImage(renderedImage.getUrl());
+                data.setResultImageId(renderedImage.getId());
+            } else {
+                data.setResultImage(resultImageDataUrl);
+            }
 
             // 保存记录
             InspectionEntity inspectionEntity = new InspectionEntity();
@@ -501,17 +558,28 @@ public class InspectController {
             }
             inspectionEntity.setMeta(meta);
 
-            long saveStart = System.currentTimeMillis();
-            dataManager.saveRecord(inspectionEntity, resultImageBase64);
-            long saveTime = System.currentTimeMillis() - saveStart;
-            logger.info("Save record time: {} ms", saveTime);
+            if (asyncImages) {
+                // 结果图渲染完成后再保存记录（渲染失败时保存不带图片的记录）
+                renderedImage.getFuture().whenComplete((jpeg, error) -> {
+                    try {
+                        dataManager.saveRecord(inspectionEntity, error == null ? jpeg : null);
+                    } catch (Exception e) {
+                        logger.error("Failed to save inspection record", e);
+                    }
+                });
+            } else {
+                // 记录和结果图由写入线程落盘，这里只计排队耗时
+                long saveStart = System.currentTimeMillis();
+                dataManager.saveRecord(inspectionEntity, resultJpeg);
+                long saveTime = System.currentTimeMillis() - saveStart;
+                logger.info("Save record time: {} ms", saveTime);
+                RequestTimings.record("save", saveTime);
+            }
+            statisticsService.recordLatency("confirm.total", System.currentTimeMillis() - confirmStart);
 
             response.put("status", "success");
             response.put("data", data);
 
-            stitchedMat.release();
-            resultMat.release();
-
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
@@ -519,6 +587,10 @@ public class InspectController {
             response.put("status", "error");
             response.put("message", "Inspection failed: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        } finally {
+            // 评估/绘制/保存任一步骤抛异常时也要释放原生内存
+            MatTracker.release(stitchedMat);
+            MatTracker.release(resultMat);
         }
     }
 
@@ -783,15 +855,20 @@ public class InspectController {
     @Operation(
             summary = "查询检测记录",
             description = """
-                    查询历史检测记录，支持按时间范围、批次ID过滤和分页。
+                    查询历史检测记录，支持按时间范围、批次ID、工件类型过滤和分页（时间倒序）。
+
+                    过滤在记录索引上完成，只读取当前页的记录。连续翻页建议使用游标：
+                    把上一页返回的 pagination.nextCursor 作为 cursor 传入，不受翻页期间新增记录影响。
 
                     **查询参数**：
 
                     | 参数 | 类型 | 必填 | 说明 |
                     |------|------|------|------|
-                    | startDate | string | 否 | 开始日期，格式：YYYY-MM-DD |
-                    | endDate | string | 否 | 结束日期，格式：YYYY-MM-DD |
+                    | startDateTime | string | 否 | 开始时间，格式：YYYY-MM-DD 或 YYYY-MM-DDTHH:mm:ss |
+                    | endDateTime | string | 否 | 结束时间，格式同上 |
                     | batchId | string | 否 | 批次ID |
+                    | partName | string | 否 | 工件类型 |
+                    | cursor | string | 否 | 游标（上一页的 nextCursor），指定时忽略 page |
                     | page | number | 否 | 页码，从1开始，默认1 |
                     | pageSize | number | 否 | 每页数量，默认20 |
 
@@ -801,6 +878,8 @@ public class InspectController {
                     - 查询日期范围：`GET /api/inspect/records?startDate=2024-01-01&endDate=2024-01-31`
                     - 查询特定批次：`GET /api/inspect/records?batchId=BATCH-001`
                     - 组合查询：`GET /api/inspect/records?startDate=2024-01-01&endDate=2024-01-31&batchId=BATCH-001&page=1&pageSize=10`
+                    - 下一页（游标）：`GET /api/inspect/records?batchId=BATCH-001&cursor=MjAyNC0wMS0xNVQxMDozMDowMHw1NTBl...`
+                    - 全量导出：`GET /api/inspect/records/export`（NDJSON，参数同上）
 
                     **记录存储位置**：`data/records/` 目录
                     """
@@ -836,7 +915,8 @@ public class InspectController {
                                                   "total": 100,
                                                   "totalPages": 5,
                                                   "hasNext": true,
-                                                  "hasPrevious": false
+                                                  "hasPrevious": false,
+                                                  "nextCursor": "MjAyNC0wMS0xNVQxMDozMDowMHw1NTBlODQwMC1lMjliLTQxZDQtYTcxNi00NDY2NTU0NDAwMDA"
                                                 }
                                               }
                                             }
@@ -864,6 +944,15 @@ public class InspectController {
             )
             @RequestParam(required = false) String batchId,
 
+            @Parameter(
+                    description = "工件类型",
+                    example = "EKS"
+            )
+            @RequestParam(required = false) String partName,
+
+            @Parameter(description = "游标（上一页返回的 nextCursor），指定时忽略 page")
+            @RequestParam(required = false) String cursor,
+
             @Parameter(
                     description = "页码（从1开始）",
                     example = "1"
@@ -880,41 +969,21 @@ public class InspectController {
 
         try {
             // 解析时间参数 - 支持日期和日期时间格式
-            java.time.LocalDateTime start = null;
-            java.time.LocalDateTime end = null;
-
-            if (startDateTime != null && !startDateTime.isEmpty()) {
-                try {
-                    // 尝试解析为日期时间格式 (YYYY-MM-DDTHH:mm:ss)
-                    start = java.time.LocalDateTime.parse(startDateTime);
-                } catch (Exception e) {
-                    try {
-                        // 如果失败，尝试解析为日期格式 (YYYY-MM-DD)，并设置为当天开始时间
-                        java.time.LocalDate date = java.time.LocalDate.parse(startDateTime);
-                        start = date.atStartOfDay();
-                    } catch (Exception e2) {
-                        response.put("status", "error");
-                        response.put("message", "Invalid startDateTime format. Use YYYY-MM-DD or YYYY-MM-DDTHH:mm:ss");
-                        return ResponseEntity.badRequest().body(response);
-                    }
-                }
+            java.time.LocalDateTime start;
+            java.time.LocalDateTime end;
+            try {
+                start = parseDateTime(startDateTime, false);
+            } catch (java.time.format.DateTimeParseException e) {
+                response.put("status", "error");
+                response.put("message", "Invalid startDateTime format. Use YYYY-MM-DD or YYYY-MM-DDTHH:mm:ss");
+                return ResponseEntity.badRequest().body(response);
             }
-
-            if (endDateTime != null && !endDateTime.isEmpty()) {
-                try {
-                    // 尝试解析为日期时间格式 (YYYY-MM-DDTHH:mm:ss)
-                    end = java.time.LocalDateTime.parse(endDateTime);
-                } catch (Exception e) {
-                    try {
-                        // 如果失败，尝试解析为日期格式 (YYYY-MM-DD)，并设置为当天结束时间
-                        java.time.LocalDate date = java.time.LocalDate.parse(endDateTime);
-                        end = date.atTime(23, 59, 59);
-                    } catch (Exception e2) {
-                        response.put("status", "error");
-                        response.put("message", "Invalid endDateTime format. Use YYYY-MM-DD or YYYY-MM-DDTHH:mm:ss");
-                        return ResponseEntity.badRequest().body(response);
-                    }
-                }
+            try {
+                end = parseDateTime(endDateTime, true);
+            } catch (java.time.format.DateTimeParseException e) {
+                response.put("status", "error");
+                response.put("message", "Invalid endDateTime format. Use YYYY-MM-DD or YYYY-MM-DDTHH:mm:ss");
+                return ResponseEntity.badRequest().body(response);
             }
 
             // 参数校验
@@ -927,7 +996,7 @@ public class InspectController {
 
             // 查询记录 - 使用支持精确时间的方法
             com.edge.vision.service.DataManager.PageResult pageResult =
-                    dataManager.queryRecords(start, end, batchId, page, pageSize);
+                    dataManager.queryRecords(start, end, batchId, partName, cursor, page, pageSize);
 
             // 构建响应
             Map<String, Object> pagination = new HashMap<>();
@@ -937,6 +1006,7 @@ public class InspectController {
             pagination.put("totalPages", pageResult.getTotalPages());
             pagination.put("hasNext", pageResult.hasNext());
             pagination.put("hasPrevious", pageResult.hasPrevious());
+            pagination.put("nextCursor", pageResult.getNextCursor());
 
             Map<String, Object> data = new HashMap<>();
             data.put("records", pageResult.getData());
@@ -951,6 +1021,10 @@ public class InspectController {
             response.put("status", "error");
             response.put("message", "日期格式错误，请使用 YYYY-MM-DD 格式");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
         } catch (Exception e) {
             logger.error("Failed to query records", e);
             response.put("status", "error");
@@ -959,6 +1033,60 @@ public class InspectController {
         }
     }
 
+    /**
+     * 导出检测记录（NDJSON）
+     */
+    @GetMapping(value = "/records/export", produces = "application/x-ndjson")
+    @Operation(
+            summary = "导出检测记录",
+            description = """
+                    按 /records 的过滤条件（startDateTime、endDateTime、batchId、partName）导出全部符合条件的记录，
+                    时间倒序，每行一条 JSON（application/x-ndjson），字段与 /records 中的记录一致。
+
+                    服务端按游标分批读取记录并边读边写，不会把结果集整体加载到内存。
+                    """
+    )
+    public ResponseEntity<?> exportRecords(
+            @Parameter(description = "开始时间（格式：YYYY-MM-DD 或 YYYY-MM-DDTHH:mm:ss）")
+            @RequestParam(required = false) String startDateTime,
+            @Parameter(description = "结束时间（格式：YYYY-MM-DD 或 YYYY-MM-DDTHH:mm:ss）")
+            @RequestParam(required = false) String endDateTime,
+            @Parameter(description = "批次ID")
+            @RequestParam(required = false) String batchId,
+            @Parameter(description = "工件类型")
+            @RequestParam(required = false) String partName) {
+
+        java.time.LocalDateTime start;
+        java.time.LocalDateTime end;
+        try {
+            start = parseDateTime(startDateTime, false);
+            end = parseDateTime(endDateTime, true);
+        } catch (java.time.format.DateTimeParseException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("status", "error");
+            response.put("message", "Invalid date format. Use YYYY-MM-DD or YYYY-MM-DDTHH:mm:ss");
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(response);
+        }
+
+        org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody body = outputStream -> {
+            java.io.Writer writer = new java.io.BufferedWriter(
+                    new java.io.OutputStreamWriter(outputStream, java.nio.charset.StandardCharsets.UTF_8));
+            long count = dataManager.exportRecords(start, end, batchId, partName, entity -> {
+                try {
+                    writer.write(objectMapper.writeValueAsString(entity));
+                    writer.write('\n');
+                } catch (java.io.IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+            logger.info("Exported {} records", count);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     /**
      * 获取系统统计信息
      */
@@ -968,14 +1096,22 @@ public class InspectController {
             description = """
                     获取系统运行状态和统计数据。
 
+                    统计在保存检测记录时增量更新，接口不加载历史记录；启动时从最近 stats-days 天的记录重建，
+                    检测数/合格数等为 since 日期以来的统计。
+
                     **返回字段说明**：
 
                     | 字段 | 类型 | 说明 |
                     |------|------|------|
-                    | totalInspections | number | 总检测次数 |
+                    | totalInspections | number | 总检测次数（since 以来） |
                     | passCount | number | 合格数量 |
                     | failCount | number | 不合格数量 |
                     | passRate | number | 合格率 |
+                    | since | string | 统计起始日期 |
+                    | today | object | 今天的 count/passCount/failCount/passRate |
+                    | byPart | object | 按工件类型的 count/passCount/failCount/passRate |
+                    | totalRecords | number | 全部检测记录数 |
+                    | uploadedRecords | number | 已上传的记录数 |
                     | cameraCount | number | 摄像头数量 |
                     | running | boolean | 摄像头是否运行 |
                     | typeModelEnabled | boolean | 类型识别是否启用 |
@@ -997,6 +1133,11 @@ public class InspectController {
                                                 "passCount": 135,
                                                 "failCount": 15,
                                                 "passRate": 0.9,
+                                                "since": "2024-01-01",
+                                                "today": {"count": 20, "passCount": 18, "failCount": 2, "passRate": 0.9},
+                                                "byPart": {"EKS": {"count": 150, "passCount": 135, "failCount": 15, "passRate": 0.9}},
+                                                "totalRecords": 1200,
+                                                "uploadedRecords": 1180,
                                                 "cameraCount": 2,
                                                 "running": true,
                                                 "typeModelEnabled": true,
@@ -1031,8 +1172,51 @@ public class InspectController {
         }
     }
 
+    /**
+     * 获取分组统计
+     */
+    @GetMapping("/stats/details")
+    @Operation(
+            summary = "获取分组统计",
+            description = """
+                    在 /stats 汇总的基础上返回全部分组统计，供看板使用：
+
+                    | 字段 | 说明 |
+                    |------|------|
+                    | byDay | 按天（最近 stats-days 天）的 count/passCount/failCount/passRate |
+                    | byHour | 按小时（最近 48 小时） |
+                    | byBatch | 按批次（最近 1000 个批次） |
+                    | byStatus | 按质检状态的检测数 |
+                    | defects | 未通过的特征比对，byClass 按类别、byStatus 按比对状态计数 |
+                    | latency | 最近 60 分钟各环节耗时：count/avgMs/maxMs/p50Ms/p95Ms/p99Ms 及分桶计数 |
+                    """
+    )
+    public ResponseEntity<Map<String, Object>> getStatsDetails() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("data", statisticsService.getDetails());
+        return ResponseEntity.ok(response);
+    }
+
     // 工具方法
 
+    /**
+     * 解析查询时间：YYYY-MM-DDTHH:mm:ss，或 YYYY-MM-DD（开始时间取当天零点，结束时间取当天 23:59:59）
+     *
+     * @return 空字符串或 null 返回 null
+     */
+    private static java.time.LocalDateTime parseDateTime(String value, boolean endOfDay) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return java.time.LocalDateTime.parse(value);
+        } catch (java.time.format.DateTimeParseException e) {
+            java.time.LocalDate date = java.time.LocalDate.parse(value);
+            return endOfDay ? date.atTime(23, 59, 59) : date.atStartOfDay();
+        }
+    }
+
     /**
      * 将 Detection 列表转换为 DetectedObject 列表
      * 用于模板比对模式
@@ -1121,6 +1305,10 @@ public class InspectController {
     }
 
     private String matToBase64(Mat mat) {
+        return Base64.getEncoder().encodeToString(matToJpeg(mat));
+    }
+
+    private byte[] matToJpeg(Mat mat) {
         MatOfByte mob = new MatOfByte();
         // 使用 JPEG 质量 80（默认 95），降低质量可加快编码速度
         MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 80);
@@ -1128,7 +1316,7 @@ public class InspectController {
         byte[] bytes = mob.toArray();
         mob.release();
         params.release();
-        return Base64.getEncoder().encodeToString(bytes);
+        return bytes;
     }
 
     /**
@@ -8,6 +8,7 @@ import com.edge.vision.dto.ManualMultiCameraRequest;
 import com.edge.vision.dto.ManualMultiCameraResponse;
 import com.edge.vision.service.CameraService;
 import com.edge.vision.service.PartCameraTemplateService;
+import com.edge.vision.service.ResultImageService;
 import com.edge.vision.util.VisionTool;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
@@ -17,10 +18,13 @@ import org.opencv.imgproc.Imgproc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -44,6 +48,9 @@ public class ManualTemplateController {
     @Autowired
     private CameraService cameraService;
 
+    @Autowired
+    private ResultImageService resultImageService;
+
     @Autowired
     private TemplateManager templateManager;
 
@@ -63,6 +70,10 @@ public class ManualTemplateController {
             if (partType == null || partType.isEmpty()) {
                 return ResponseEntity.ok(Response.error("请提供工件类型"));
             }
+            Path tempDir = manualTempDir(partType);
+            if (tempDir == null) {
+                return ResponseEntity.ok(Response.error("无效的工件类型"));
+            }
 
             if (!cameraService.isRunning()) {
                 return ResponseEntity.ok(Response.error("摄像头未启动"));
@@ -73,8 +84,9 @@ public class ManualTemplateController {
                 return ResponseEntity.ok(Response.error("没有可用的摄像头"));
             }
 
+            boolean referenceTransport = resultImageService.isReferenceTransport(request.get("imageTransport"));
+
             // 创建临时目录
-            Path tempDir = Paths.get(uploadPath, "manual-temp", partType);
             Files.createDirectories(tempDir);
 
             List<CameraImageData> cameras = new ArrayList<>();
@@ -83,9 +95,9 @@ public class ManualTemplateController {
             for (int i = 0; i < cameraCount; i++) {
                 Mat frame = null;
                 try {
-                    // 从CameraService获取当前帧
-                    String base64 = cameraService.getCameraImageBase64(i);
-                    if (base64 == null || base64.isEmpty()) {
+                    // 从CameraService获取当前帧（JPEG 原始字节）
+                    byte[] imageBytes = cameraService.getCameraImageJpeg(i);
+                    if (imageBytes == null || imageBytes.length == 0) {
                         logger.warn("Camera {} frame is null or empty", i);
                         continue;
                     }
@@ -93,16 +105,13 @@ public class ManualTemplateController {
                     // 保存临时图片
                     String filename = "camera_" + i + ".jpg";
                     Path filePath = tempDir.resolve(filename);
-
-                    // 解码base64并保存
-                    String base64Data = base64;
-                    if (base64.startsWith("data:image/")) {
-                        base64Data = base64.substring(base64.indexOf(',') + 1);
-                    }
-                    byte[] imageBytes = Base64.getDecoder().decode(base64Data);
                     Files.write(filePath, imageBytes);
 
-                    cameras.add(new CameraImageData(i, "data:image/jpeg;base64," + base64));
+                    // reference 传输时只返回图片引用，否则内嵌 data URL
+                    String imageUrl = referenceTransport
+                            ? resultImageService.store(imageBytes).getUrl()
+                            : "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageBytes);
+                    cameras.add(new CameraImageData(i, imageUrl));
 
                     logger.info("Captured frame from camera {}: {}", i, filePath);
 
@@ -127,6 +136,59 @@ public class ManualTemplateController {
         }
     }
 
+    /**
+     * 第一步（替代截图）：上传摄像头图片（multipart/form-data，图片原始字节）
+     * <p>
+     * 与截图写入相同的临时目录，之后的预览和保存流程不变；非 JPEG 图片转码为 JPEG 保存
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> uploadImage(@RequestParam("partType") String partType,
+                                         @RequestParam("cameraId") int cameraId,
+                                         @RequestParam("file") MultipartFile file) {
+        if (partType == null || partType.isEmpty()) {
+            return ResponseEntity.ok(Response.error("请提供工件类型"));
+        }
+        Path tempDir = manualTempDir(partType);
+        if (tempDir == null) {
+            return ResponseEntity.ok(Response.error("无效的工件类型"));
+        }
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.ok(Response.error("请上传图片"));
+        }
+
+        Mat image = null;
+        MatOfByte buffer = null;
+        try {
+            byte[] imageBytes = file.getBytes();
+            buffer = new MatOfByte(imageBytes);
+            image = Imgcodecs.imdecode(buffer, Imgcodecs.IMREAD_COLOR);
+            if (image == null || image.empty()) {
+                return ResponseEntity.ok(Response.error("无法解析图片"));
+            }
+            if (!isJpeg(imageBytes)) {
+                imageBytes = matToJpeg(image);
+            }
+
+            Files.createDirectories(tempDir);
+            Path filePath = tempDir.resolve("camera_" + cameraId + ".jpg");
+            Files.write(filePath, imageBytes);
+            logger.info("Uploaded image for camera {}: {} ({}x{}, {} bytes)",
+                cameraId, filePath, image.cols(), image.rows(), imageBytes.length);
+
+            String imageUrl = resultImageService.store(imageBytes).getUrl();
+            Response response = Response.success(partType, List.of(new CameraImageData(cameraId, imageUrl)));
+            response.setMessage("上传成功");
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("上传失败", e);
+            return ResponseEntity.ok(Response.error("上传失败: " + e.getMessage()));
+        } finally {
+            if (image != null) image.release();
+            if (buffer != null) buffer.release();
+        }
+    }
+
     /**
      * 第二步：预览 - 根据手动标注生成预览图片
      */
@@ -137,6 +199,10 @@ public class ManualTemplateController {
             if (partType == null || partType.isEmpty()) {
                 return ResponseEntity.ok(ManualMultiCameraResponse.error("请提供工件类型"));
             }
+            Path tempDir = manualTempDir(partType);
+            if (tempDir == null) {
+                return ResponseEntity.ok(ManualMultiCameraResponse.error("无效的工件类型"));
+            }
 
             if (request.getCameraTemplates() == null || request.getCameraTemplates().isEmpty()) {
                 return ResponseEntity.ok(ManualMultiCameraResponse.error("请提供摄像头数据"));
@@ -145,8 +211,6 @@ public class ManualTemplateController {
             logger.info("手动模板预览请求: partType={}, cameras={}",
                 partType, request.getCameraTemplates().size());
 
-            Path tempDir = Paths.get(uploadPath, "manual-temp", partType);
-
             List<ManualMultiCameraResponse.CameraPreviewData> previews = new ArrayList<>();
 
             for (ManualMultiCameraRequest.CameraTemplateData camData : request.getCameraTemplates()) {
@@ -226,6 +290,10 @@ public class ManualTemplateController {
             if (partType == null || partType.isEmpty()) {
                 return ResponseEntity.ok(ManualMultiCameraResponse.error("请提供工件类型"));
             }
+            Path tempDir = manualTempDir(partType);
+            if (tempDir == null) {
+                return ResponseEntity.ok(ManualMultiCameraResponse.error("无效的工件类型"));
+            }
 
             if (request.getCameraTemplates() == null || request.getCameraTemplates().isEmpty()) {
                 return ResponseEntity.ok(ManualMultiCameraResponse.error("请提供摄像头数据"));
@@ -239,8 +307,6 @@ public class ManualTemplateController {
             partCameraTemplateService.removePartTemplates(partType);
             logger.info("Cleared old templates and images for part: {}", partType);
 
-            Path tempDir = Paths.get(uploadPath, "manual-temp", partType);
-
             List<Template> templates = new ArrayList<>();
 
             for (ManualMultiCameraRequest.CameraTemplateData camData : request.getCameraTemplates()) {
@@ -257,9 +323,6 @@ public class ManualTemplateController {
                     continue;
                 }
 
-                // 读取图片为 base64
-                String base64Image = matToBase64(originalImage);
-
                 // 转换 cropRect，支持两种格式：
                 // - 4个数据：[x, y, width, height] 矩形格式
                 // - 8个数据：[x1, y1, x2, y2, x3, y3, x4, y4] 四角坐标格式
@@ -307,7 +370,7 @@ public class ManualTemplateController {
                 String templateId = partType + "_camera_" + camData.getCameraId();
 
                 // 使用 VisionTool 创建模板
-                Template template = VisionTool.createTemplate(base64Image, cropRect, detectedObjects, templateId);
+                Template template = VisionTool.createTemplate(originalImage, cropRect, detectedObjects, templateId);
 
                 // 设置元数据
                 Map<String, Object> metadata = new HashMap<>();
@@ -383,6 +446,24 @@ public class ManualTemplateController {
         }
     }
 
+    /**
+     * 工件类型对应的手动模板临时目录
+     * <p>
+     * 工件类型直接作为目录名，含路径分隔符、".." 或解析后不在 manual-temp 下时返回 null
+     */
+    private Path manualTempDir(String partType) {
+        if (partType.contains("/") || partType.contains("\\") || partType.contains("..")) {
+            return null;
+        }
+        try {
+            Path base = Paths.get(uploadPath, "manual-temp").toAbsolutePath().normalize();
+            Path dir = base.resolve(partType).normalize();
+            return dir.startsWith(base) && !dir.equals(base) ? dir : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
     /**
      * 删除指定工件类型的所有模板图片
      */
@@ -555,11 +636,22 @@ public class ManualTemplateController {
      * 将Mat转换为Base64字符串
      */
     private String matToBase64(Mat mat) {
+        return Base64.getEncoder().encodeToString(matToJpeg(mat));
+    }
+
+    /**
+     * 将Mat编码为JPEG字节
+     */
+    private byte[] matToJpeg(Mat mat) {
         MatOfByte mob = new MatOfByte();
         Imgcodecs.imencode(".jpg", mat, mob);
         byte[] bytes = mob.toArray();
         mob.release();
-        return Base64.getEncoder().encodeToString(bytes);
+        return bytes;
+    }
+
+    private static boolean isJpeg(byte[] bytes) {
+        return bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8;
     }
 
     /**
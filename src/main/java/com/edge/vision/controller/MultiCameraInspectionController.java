@@ -9,6 +9,7 @@ import com.edge.vision.model.InspectionEntity;
 import com.edge.vision.service.CameraService;
 import com.edge.vision.service.DataManager;
 import com.edge.vision.service.PartCameraTemplateService;
+import com.edge.vision.service.ResultImageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -35,6 +36,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 多摄像头质检控制器
@@ -61,6 +63,9 @@ public class MultiCameraInspectionController {
     @Autowired
     private DataManager dataManager;
 
+    @Autowired
+    private ResultImageService resultImageService;
+
     @Autowired
     private YamlConfig config;
 
@@ -92,6 +97,10 @@ public class MultiCameraInspectionController {
                     - 工件未对齐 → 返回 "请对齐到正确位置"
                     - 工件方向错误 → 返回 "请调整工件方向"
                     - 模板匹配失败 → 返回 "工件检测失败"
+
+                    **异步结果图**：`asyncImages` 为 true（或配置 edge-vision.inspection.async-images）时，
+                    判定结果和特征比对立即返回，各摄像头 `imageUrl` 为 `/api/result-images/{imageId}`，结果图在后台渲染；
+                    可直接 GET（未完成返回 202）或订阅 `/api/result-images/events?ids=...`。检测记录在结果图全部完成后保存。
                     """
     )
     @io.swagger.v3.oas.annotations.parameters.RequestBody(
@@ -189,8 +198,10 @@ public class MultiCameraInspectionController {
             logger.info("Starting multi-camera inspection for part: {}", partType);
 
             // 执行质检
+            boolean asyncImages = request.getAsyncImages() != null
+                ? request.getAsyncImages() : resultImageService.isAsyncByDefault();
             List<PartCameraTemplateService.CameraInspectionResult> inspectionResults =
-                partCameraTemplateService.inspect(partType);
+                partCameraTemplateService.inspect(partType, asyncImages);
 
             // 转换为响应格式
             List<MultiCameraInspectionResponse.CameraInspectionResult> cameraResults = new ArrayList<>();
@@ -216,14 +227,16 @@ public class MultiCameraInspectionController {
                     features.add(fc);
                 }
 
-                cameraResults.add(new MultiCameraInspectionResponse.CameraInspectionResult(
+                MultiCameraInspectionResponse.CameraInspectionResult cameraResult = new MultiCameraInspectionResponse.CameraInspectionResult(
                     result.cameraId,
                     result.templateId,
                     result.passed,
                     result.imageUrl,
                     result.errorMessage,
                     features,result.details
-                ));
+                );
+                cameraResult.setImageId(result.imageId);
+                cameraResults.add(cameraResult);
             }
 
             // 检查是否有错误信息（如：请调整工件方向、请对齐到正确位置）
@@ -247,8 +260,20 @@ public class MultiCameraInspectionController {
             logger.info("Multi-camera inspection completed: partType={}, allPassed={}, cameras={}",
                 partType, allPassed, cameraResults.size());
 
-            // 只有在没有错误时才保存检测记录
-            saveInspectionRecord(request, cameraResults, allPassed);
+            // 只有在没有错误时才保存检测记录（异步结果图全部渲染完成后再保存）
+            List<CompletableFuture<byte[]>> pendingImages = new ArrayList<>();
+            for (MultiCameraInspectionResponse.CameraInspectionResult result : cameraResults) {
+                ResultImageService.RenderedImage image = resultImageService.find(result.getImageId());
+                if (image != null) {
+                    pendingImages.add(image.getFuture());
+                }
+            }
+            if (pendingImages.isEmpty()) {
+                saveInspectionRecord(request, cameraResults, allPassed);
+            } else {
+                CompletableFuture.allOf(pendingImages.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((v, e) -> saveInspectionRecord(request, cameraResults, allPassed));
+            }
 
             return ResponseEntity.ok(MultiCameraInspectionResponse.success(partType, cameraResults,allPassed));
 
@@ -643,9 +668,16 @@ public class MultiCameraInspectionController {
             // 保存所有摄像头的图片，收集图片路径
             List<String> imagePathList = new ArrayList<>();
             for (MultiCameraInspectionResponse.CameraInspectionResult result : cameraResults) {
+                byte[] imageBytes = null;
                 if (result.getImageUrl() != null && result.getImageUrl().startsWith("data:image/jpeg;base64,")) {
                     String base64 = result.getImageUrl().substring("data:image/jpeg;base64,".length());
-                    String imagePath = saveCameraImage(entity, result.getCameraId(), base64);
+                    imageBytes = java.util.Base64.getDecoder().decode(base64);
+                } else if (result.getImageId() != null) {
+                    // 异步结果图（渲染失败或已淘汰时为 null）
+                    imageBytes = resultImageService.getIfReady(result.getImageId());
+                }
+                if (imageBytes != null) {
+                    String imagePath = saveCameraImage(entity, result.getCameraId(), imageBytes);
                     if (imagePath != null) {
                         imagePathList.add(imagePath);
                     }
@@ -672,7 +704,7 @@ public class MultiCameraInspectionController {
     /**
      * 保存单个摄像头的图片，返回图片访问路径
      */
-    private String saveCameraImage(InspectionEntity entity, int cameraId, String imageBase64) {
+    private String saveCameraImage(InspectionEntity entity, int cameraId, byte[] imageBytes) {
         try {
             // 创建目录: data/images/yyyy-MM-dd/partType/
             String partType = entity.getPartName() != null ? entity.getPartName() : "UNKNOWN";
@@ -687,8 +719,7 @@ public class MultiCameraInspectionController {
 
             java.nio.file.Path imagePath = dir.resolve(filename);
 
-            // 解码并保存
-            byte[] imageBytes = java.util.Base64.getDecoder().decode(imageBase64);
+            // 保存
             java.nio.file.Files.write(imagePath, imageBytes);
 
             // 存储相对路径（用于API访问）
@@ -8,6 +8,7 @@ import com.edge.vision.dto.MultiCameraTemplateRequest;
 import com.edge.vision.dto.MultiCameraTemplateResponse;
 import com.edge.vision.service.CameraService;
 import com.edge.vision.service.PartCameraTemplateService;
+import com.edge.vision.service.ResultImageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -59,6 +60,9 @@ public class MultiCameraTemplateController {
     @Autowired
     private CameraService cameraService;
 
+    @Autowired
+    private ResultImageService resultImageService;
+
     @Autowired
     private PartCameraTemplateService partCameraTemplateService;
 
@@ -152,6 +156,8 @@ public class MultiCameraTemplateController {
                 return ResponseEntity.ok(MultiCameraCaptureResponse.error("没有可用的摄像头"));
             }
 
+            boolean referenceTransport = resultImageService.isReferenceTransport(request.get("imageTransport"));
+
             // 创建临时目录
             Path tempDir = Paths.get(uploadPath, "multi-camera-temp", partType);
             Files.createDirectories(tempDir);
@@ -162,9 +168,9 @@ public class MultiCameraTemplateController {
             for (int i = 0; i < cameraCount; i++) {
                 Mat frame = null;
                 try {
-                    // 从CameraService获取当前帧
-                    String base64 = cameraService.getCameraImageBase64(i);
-                    if (base64 == null || base64.isEmpty()) {
+                    // 从CameraService获取当前帧（JPEG 原始字节）
+                    byte[] imageBytes = cameraService.getCameraImageJpeg(i);
+                    if (imageBytes == null || imageBytes.length == 0) {
                         logger.warn("Camera {} frame is null or empty", i);
                         continue;
                     }
@@ -172,16 +178,13 @@ public class MultiCameraTemplateController {
                     // 保存临时图片
                     String filename = "camera_" + i + ".jpg";
                     Path filePath = tempDir.resolve(filename);
-
-                    // 解码base64并保存
-                    String base64Data = base64;
-                    if (base64.startsWith("data:image/")) {
-                        base64Data = base64.substring(base64.indexOf(',') + 1);
-                    }
-                    byte[] imageBytes = Base64.getDecoder().decode(base64Data);
                     Files.write(filePath, imageBytes);
 
-                    cameras.add(new MultiCameraCaptureResponse.CameraImage(i, "data:image/jpeg;base64," + base64));
+                    // reference 传输时只返回图片引用，否则内嵌 data URL
+                    String imageUrl = referenceTransport
+                            ? resultImageService.store(imageBytes).getUrl()
+                            : "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageBytes);
+                    cameras.add(new MultiCameraCaptureResponse.CameraImage(i, imageUrl));
 
                     logger.info("Captured frame from camera {}: {}", i, filePath);
 
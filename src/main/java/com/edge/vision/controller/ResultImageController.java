@@ -0,0 +1,133 @@
+package com.edge.vision.controller;
+
+import com.edge.vision.service.ResultImageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步结果图 API
+ * <p>
+ * 质检接口使用异步结果图或 reference 传输方式时，响应中的图片字段是 /api/result-images/{id}（异步时图片在后台渲染）：
+ * - GET /api/result-images/{id}：已完成返回 image/jpeg；未完成返回 202（可用 wait 参数等待）
+ * - GET /api/result-images/events?ids=a,b：SSE，每张图完成时推送 ready/failed 事件，全部完成后结束
+ */
+@RestController
+@RequestMapping("/api/result-images")
+@Tag(name = "异步结果图", description = "获取后台渲染的质检结果图（JPEG 原始字节），或通过 SSE 订阅渲染完成事件")
+public class ResultImageController {
+    private static final Logger logger = LoggerFactory.getLogger(ResultImageController.class);
+
+    // 等待/订阅的最长时间
+    private static final long MAX_WAIT_MS = 30000;
+    private static final long SSE_TIMEOUT_MS = 60000;
+
+    @Autowired
+    private ResultImageService resultImageService;
+
+    @GetMapping("/{id}")
+    @Operation(summary = "获取结果图", description = "返回 JPEG 原始字节；渲染未完成时返回 202，wait 指定最多等待的毫秒数（上限 30000）")
+    public ResponseEntity<?> getImage(@PathVariable String id,
+                                      @Parameter(description = "渲染未完成时最多等待的毫秒数")
+                                      @RequestParam(defaultValue = "0") long wait) {
+        ResultImageService.RenderedImage image = resultImageService.find(id);
+        if (image == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(status(id, "missing"));
+        }
+
+        byte[] jpeg;
+        try {
+            if (wait > 0) {
+                jpeg = image.getFuture().get(Math.min(wait, MAX_WAIT_MS), TimeUnit.MILLISECONDS);
+            } else if (image.getFuture().isDone()) {
+                jpeg = image.getFuture().join();
+            } else {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(status(id, "pending"));
+            }
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(status(id, "pending"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(status(id, "pending"));
+        } catch (ExecutionException | CompletionException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(status(id, "failed"));
+        }
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.IMAGE_JPEG)
+            .cacheControl(CacheControl.maxAge(1, TimeUnit.HOURS).cachePrivate())
+            .body(jpeg);
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅结果图渲染完成事件", description = "SSE：每张图完成时推送 ready（data 含 id、url）或 failed 事件，不存在的 ID 推送 missing，全部结束后关闭连接")
+    public SseEmitter subscribe(@Parameter(description = "结果图ID，逗号分隔") @RequestParam String ids) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+        List<String> idList = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            if (!id.isBlank()) {
+                idList.add(id.trim());
+            }
+        }
+        if (idList.isEmpty()) {
+            emitter.complete();
+            return emitter;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(idList.size());
+        for (String id : idList) {
+            ResultImageService.RenderedImage image = resultImageService.find(id);
+            if (image == null) {
+                send(emitter, "missing", status(id, "missing"), remaining);
+                continue;
+            }
+            image.getFuture().whenComplete((jpeg, error) -> {
+                Map<String, Object> data = status(id, error == null ? "ready" : "failed");
+                if (error == null) {
+                    data.put("url", image.getUrl());
+                    data.put("size", jpeg.length);
+                }
+                send(emitter, error == null ? "ready" : "failed", data, remaining);
+            });
+        }
+        return emitter;
+    }
+
+    private void send(SseEmitter emitter, String name, Map<String, Object> data, AtomicInteger remaining) {
+        try {
+            synchronized (emitter) {
+                emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开或连接已超时
+            logger.debug("SSE send failed: {}", e.getMessage());
+        }
+        if (remaining.decrementAndGet() == 0) {
+            emitter.complete();
+        }
+    }
+
+    private static Map<String, Object> status(String id, String status) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("status", status);
+        return result;
+    }
+}
@@ -25,7 +25,7 @@ import java.util.Map;
  * 拼接配置控制器 (V6 通用版 - 每个摄像头支持左右切割)
  * <p>
  * 提供拼接策略配置和手动拼接参数调节的 API
- * 移除了 auto 策略，只保留 simple 和 manual
+ * 支持 simple、manual 和 auto 三种策略
  * manual 模式使用通用的数组切片方法，每个摄像头支持独立的左右切割参数
  */
 @RestController
@@ -49,7 +49,7 @@ public class StitchConfigController {
                     **返回字段说明**：
                     | 字段 | 类型 | 说明 |
                     |------|------|------|
-                    | currentStrategy | string | 当前拼接策略：simple/manual |
+                    | currentStrategy | string | 当前拼接策略：simple/manual/auto |
                     | availableStrategies | array | 可用的拼接策略列表 |
                     | blendWidth | number | 融合区域宽度（像素）|
                     | enableBlend | boolean | 是否启用融合 |
@@ -68,7 +68,7 @@ public class StitchConfigController {
                                               "status": "success",
                                               "data": {
                                                 "currentStrategy": "manual",
-                                                "availableStrategies": ["simple", "manual"],
+                                                "availableStrategies": ["simple", "manual", "auto"],
                                                 "blendWidth": 100,
                                                 "enableBlend": true,
                                                 "configFilePath": "/path/to/data/stitch-config.json"
@@ -109,6 +109,7 @@ public class StitchConfigController {
                     |------|------|----------|
                     | simple | 简单水平拼接，支持边缘融合 | 摄像头位置固定，无需对齐 |
                     | manual | 手动调节拼接参数（数组切片） | 需要精确控制拼接效果 |
+                    | auto | 特征匹配自动校准（仿射变换 + 距离加权融合） | 摄像头有重叠区域，不便手动调节 |
                     """
     )
     @ApiResponses(value = {
@@ -123,7 +124,7 @@ public class StitchConfigController {
                                               "status": "success",
                                               "data": {
                                                 "strategy": "manual",
-                                                "available": ["simple", "manual"]
+                                                "available": ["simple", "manual", "auto"]
                                               }
                                             }
                                             """
@@ -138,7 +139,7 @@ public class StitchConfigController {
             response.put("status", "success");
             Map<String, Object> data = new HashMap<>();
             data.put("strategy", strategy);
-            data.put("available", List.of("simple", "manual"));
+            data.put("available", StitchConfigService.AVAILABLE_STRATEGIES);
             response.put("data", data);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -164,12 +165,18 @@ public class StitchConfigController {
                     |------|------|------|------|
                     | simple | 简单水平拼接 | 快 | 一般 |
                     | manual | 手动调节参数（数组切片）| 快 | 可调 |
+                    | auto | 特征匹配自动校准 | 首帧慢，之后快 | 自动对齐 |
 
                     **切换到 manual 模式后**：
                     - 自动加载 `data/stitch-config.json` 中的配置
                     - 如果文件不存在，使用默认配置
                     - 可通过 `/api/stitch/manual` 接口调节参数
                     - 参数修改会自动保存到配置文件
+
+                    **切换到 auto 模式后**：
+                    - 有 `data/auto-stitch-calibration.json` 时直接加载校准结果
+                    - 否则首帧做特征匹配校准并保存
+                    - 切换策略不会删除校准文件，需要重新校准时调用 `/api/stitch/auto/reset`
                     """
     )
     @io.swagger.v3.oas.annotations.parameters.RequestBody(
@@ -194,6 +201,14 @@ public class StitchConfigController {
                                               "strategy": "manual"
                                             }
                                             """
+                            ),
+                            @ExampleObject(
+                                    name = "切换到自动拼接",
+                                    value = """
+                                            {
+                                              "strategy": "auto"
+                                            }
+                                            """
                             )
                     }
             )
@@ -653,6 +668,67 @@ public class StitchConfigController {
         }
     }
 
+    /**
+     * 重新校准自动拼接
+     */
+    @PostMapping("/auto/reset")
+    @Operation(
+            summary = "重新校准自动拼接",
+            description = """
+                    清空自动拼接的校准结果并删除 `data/auto-stitch-calibration.json`，下一帧重新做特征匹配校准。
+
+                    **使用场景**：
+                    - 摄像头位置调整后
+                    - 拼接出现错位
+
+                    仅在当前策略为 auto 时可用。
+                    """
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "重置成功",
+                    content = @Content(
+                            mediaType = "application/json",
+                            examples = @ExampleObject(
+                                    value = """
+                                            {
+                                              "status": "success",
+                                              "data": {
+                                                "message": "Auto calibration reset, will recalibrate on next frame"
+                                              }
+                                            }
+                                            """
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "当前策略不是 auto"
+            )
+    })
+    public ResponseEntity<Map<String, Object>> resetAutoCalibration() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            stitchConfigService.resetAutoCalibration();
+
+            response.put("status", "success");
+            Map<String, Object> data = new HashMap<>();
+            data.put("message", "Auto calibration reset, will recalibrate on next frame");
+            response.put("data", data);
+            return ResponseEntity.ok(response);
+        } catch (IllegalStateException e) {
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+        } catch (Exception e) {
+            logger.error("Failed to reset auto calibration", e);
+            response.put("status", "error");
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 获取拼接参数说明
      */
@@ -676,7 +752,8 @@ public class StitchConfigController {
                                               "data": {
                                                 "strategies": {
                                                   "simple": "简单水平拼接 - 适用于摄像头位置固定的场景",
-                                                  "manual": "手动拼接（数组切片）- 每个摄像头支持独立的左右切割参数"
+                                                  "manual": "手动拼接（数组切片）- 每个摄像头支持独立的左右切割参数",
+                                                  "auto": "自动拼接 - 特征匹配校准仿射变换，校准结果持久化"
                                                 },
                                                 "manualParams": {
                                                   "x1": "左切割线位置 - 保留从 x1 到右侧的区域",
@@ -700,6 +777,7 @@ public class StitchConfigController {
             Map<String, String> strategies = new HashMap<>();
             strategies.put("simple", "简单水平拼接 - 适用于摄像头位置固定的场景");
             strategies.put("manual", "手动拼接（数组切片）- 每个摄像头支持独立的左右切割参数");
+            strategies.put("auto", "自动拼接 - 特征匹配校准仿射变换，校准结果持久化");
             data.put("strategies", strategies);
 
             Map<String, String> manualParams = new HashMap<>();
@@ -749,7 +827,7 @@ public class StitchConfigController {
 
     @Schema(description = "设置拼接策略请求")
     public static class SetStrategyRequest {
-        @Schema(description = "拼接策略", example = "manual", allowableValues = {"simple", "manual"})
+        @Schema(description = "拼接策略", example = "manual", allowableValues = {"simple", "manual", "auto"})
         public String strategy;
     }
 
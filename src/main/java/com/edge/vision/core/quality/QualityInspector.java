@@ -141,6 +141,7 @@ public class QualityInspector {
         // 配置坐标匹配器
         coordinateBasedMatcher.setMatchDistanceThreshold(config.getMaxMatchDistance());
         coordinateBasedMatcher.setTreatExtraAsError(config.isTreatExtraAsError());
+        coordinateBasedMatcher.setRansacConfidence(config.getCoordinateRansacConfidence());
 
         // 配置拓扑匹配器
         topologyTemplateMatcher.setTreatExtraAsError(config.isTreatExtraAsError());
@@ -1,136 +1,367 @@
 package com.edge.vision.core.stitcher;
 
+import com.edge.vision.util.FeatureBackend;
+import com.edge.vision.util.MatTracker;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.*;
-import org.opencv.features2d.DescriptorMatcher;
-import org.opencv.features2d.Feature2D;
-import org.opencv.features2d.SIFT;
 import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 
 /**
  * 工业级自动拼接策略 (Industrial Auto Stitch)
  * 1:1 还原 Python 逻辑：使用仿射变换 (Affine) 替代透视变换，防止图像扭曲。
  * 适配 Java 业务接口 StitchStrategy。
+ * <p>
+ * 校准（特征匹配 + RANSAC，默认 SIFT，可配置 ORB/AKAZE）只在首次运行时执行，校准完成后：
+ * - 每个摄像头的仿射变换预编译为 remap 映射表（定点格式），只覆盖该摄像头在输出画布上的区域
+ * - 距离加权融合的权重预先计算并归一化，逐帧只需 remap + 乘权重 + 累加
+ * - 保留彩色输出，各摄像头的 remap/加权可并行执行
+ * - 校准结果可持久化到 JSON 文件，重启后直接加载，无需重新做 SIFT 匹配
  */
 public class AutoStitchStrategy implements StitchStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(AutoStitchStrategy.class);
 
     // --- 算法配置 (对应 Python __init__) ---
     private static final double OVERLAP_RATIO = 0.45;
     // 限制处理宽度，解决 Java 处理 4K 图卡死问题 (Python 底层优化好，Java 需要手动缩放)
     private static final int MAX_PROCESS_WIDTH = 1200;
+    // 校准文件格式版本
+    private static final int CALIBRATION_VERSION = 1;
+    // 快速特征后端低于该内点数时回退到 SIFT
+    private static final int MIN_AFFINE_INLIERS = 12;
 
     // --- 状态参数 ---
     private boolean isCalibrated = false;
     private final List<Mat> matrices = new ArrayList<>(); // 存 3x3 矩阵 (仿射变换也是 3x3 的一种特例)
     private Size canvasSize = new Size(0, 0);
     private Rect roiCrop = null;
-
-    // --- OpenCV 组件 ---
-    private Feature2D featureDetector;
-    private DescriptorMatcher matcher;
+    // 校准时的工作尺寸（缩放后），输入尺寸变化时需要重新校准
+    private int calibratedCameraCount = 0;
+    private int calibratedWidth = 0;
+    private int calibratedHeight = 0;
+
+    // --- 逐帧拼接配置 ---
+    // remap 插值方式：INTER_LINEAR（快速）或 INTER_LANCZOS4（高质量）
+    private final int interpolation;
+    // 校准结果持久化文件（为 null 时不持久化）
+    private final Path calibrationFile;
+    // 预编译的 remap 映射表和融合权重
+    private WarpCache warpCache;
+    // 校准时使用的特征后端
+    private final FeatureBackend featureBackend;
 
     public AutoStitchStrategy() {
         // 懒加载将在使用时初始化，防止类加载过慢
+        this(null, Imgproc.INTER_LINEAR);
+    }
+
+    /**
+     * @param calibrationFile 校准结果持久化文件，存在时启动即加载
+     * @param interpolation   逐帧 remap 插值方式
+     */
+    public AutoStitchStrategy(Path calibrationFile, int interpolation) {
+        this(calibrationFile, interpolation, FeatureBackend.SIFT);
+    }
+
+    /**
+     * @param calibrationFile 校准结果持久化文件，存在时启动即加载
+     * @param interpolation   逐帧 remap 插值方式
+     * @param featureBackend  校准时使用的特征后端（ORB/AKAZE 内点不足时自动回退 SIFT）
+     */
+    public AutoStitchStrategy(Path calibrationFile, int interpolation, FeatureBackend featureBackend) {
+        this.calibrationFile = calibrationFile;
+        this.interpolation = interpolation;
+        this.featureBackend = featureBackend;
+        loadCalibration();
     }
 
+    /**
+     * 拼接（线程安全：校准状态和预编译缓存由对象锁保护）
+     */
     @Override
-    public Mat stitch(List<Mat> frames) {
+    public synchronized Mat stitch(List<Mat> frames) {
         if (frames == null || frames.isEmpty()) {
             throw new IllegalArgumentException("Frames cannot be null or empty");
         }
         if (frames.size() == 1) return frames.get(0).clone();
 
         // 1. 智能预缩放 (解决 Java 卡顿的核心)
-        List<Mat> workingFrames = new ArrayList<>();
-        double scale = 1.0;
-        int originalWidth = frames.get(0).cols();
+        List<Mat> workingFrames = toWorkingScale(frames);
 
+        try {
+            // 2. 校准（第一次运行、重置后或输入尺寸变化时）并准备 remap 缓存
+            WarpCache cache = prepareWarpCache(workingFrames);
+            if (cache == null) {
+                logger.warn("Calibration failed, returning simple stitch.");
+                return workingFrames.get(0).clone(); // 失败降级
+            }
+
+            // 3. remap + 预计算权重融合
+            return blendWithCache(workingFrames, cache);
+
+        } finally {
+            // 清理临时资源
+            MatTracker.release(workingFrames);
+        }
+    }
+
+    /**
+     * 缩放到工作分辨率（各摄像头并行）
+     */
+    private List<Mat> toWorkingScale(List<Mat> frames) {
+        int originalWidth = frames.get(0).cols();
         // 如果图太大，缩小处理，既快又不影响拼接精度
-        if (originalWidth > MAX_PROCESS_WIDTH) {
-            scale = (double) MAX_PROCESS_WIDTH / originalWidth;
-            for (Mat frame : frames) {
-                Mat resized = new Mat();
+        double scale = originalWidth > MAX_PROCESS_WIDTH ? (double) MAX_PROCESS_WIDTH / originalWidth : 1.0;
+
+        Mat[] working = new Mat[frames.size()];
+        StitchExecutor.forEach(frames.size(), i -> {
+            Mat frame = frames.get(i);
+            if (scale < 1.0) {
+                Mat resized = MatTracker.newMat("AutoStitchStrategy.resize");
                 Imgproc.resize(frame, resized, new Size(), scale, scale, Imgproc.INTER_AREA);
-                workingFrames.add(resized);
+                working[i] = resized;
+            } else {
+                working[i] = MatTracker.track(frame.clone(), "AutoStitchStrategy.resize");
             }
-        } else {
-            for (Mat frame : frames) workingFrames.add(frame.clone());
+        });
+        return new ArrayList<>(Arrays.asList(working));
+    }
+
+    /**
+     * 确保已校准，并返回与当前输入类型匹配的 remap 缓存
+     *
+     * @return 缓存；校准失败返回 null
+     */
+    private WarpCache prepareWarpCache(List<Mat> workingFrames) {
+        Mat first = workingFrames.get(0);
+        if (isCalibrated && (calibratedCameraCount != workingFrames.size()
+                || calibratedWidth != first.cols() || calibratedHeight != first.rows())) {
+            logger.info("Input geometry changed ({} x {}x{} -> {} x {}x{}), recalibrating",
+                calibratedCameraCount, calibratedWidth, calibratedHeight,
+                workingFrames.size(), first.cols(), first.rows());
+            // 校准成功后覆盖校准文件，这里只清空内存状态
+            clearCalibration();
         }
 
-        try {
-            // 2. 转灰度 (工业标准)
+        if (!isCalibrated) {
             List<Mat> grayImages = toGrayScale(workingFrames);
-
-            // 3. 自动校准 (第一次运行或重置后运行)
-            if (!isCalibrated) {
-                boolean ok = calibrate(grayImages);
-                if (!ok) {
-                    System.err.println("Calibration failed, returning simple stitch.");
-                    return workingFrames.get(0).clone(); // 失败降级
+            try {
+                if (!calibrate(grayImages)) {
+                    return null;
                 }
+            } finally {
+                MatTracker.release(grayImages);
             }
+            calibratedCameraCount = workingFrames.size();
+            calibratedWidth = first.cols();
+            calibratedHeight = first.rows();
+            saveCalibration();
+        }
 
-            // 4. 极速变换 (Lanczos4 插值)
-            List<Mat> warpedImages = new ArrayList<>();
-            List<Mat> masks = new ArrayList<>();
-            int w = (int) canvasSize.width;
-            int h = (int) canvasSize.height;
+        if (warpCache == null || warpCache.type != first.type()) {
+            if (warpCache != null) warpCache.release();
+            warpCache = buildWarpCache(first.cols(), first.rows(), first.type());
+        }
+        return warpCache;
+    }
 
-            for (int i = 0; i < grayImages.size(); i++) {
-                // 取出仿射矩阵 (2x3)
-                Mat M = matrices.get(i).submat(0, 2, 0, 3);
+    /**
+     * 逐帧融合：各摄像头并行 remap 到自身区域并乘以预计算权重，再串行累加到输出画布
+     */
+    private Mat blendWithCache(List<Mat> workingFrames, WarpCache cache) {
+        int channels = CvType.channels(cache.type);
+        Mat accumulator = Mat.zeros(cache.outHeight, cache.outWidth, CvType.CV_32FC(channels));
+        Mat[] weighted = new Mat[cache.cameras.size()];
 
+        try {
+            StitchExecutor.forEach(cache.cameras.size(), j -> {
+                CameraWarp cw = cache.cameras.get(j);
                 Mat warped = new Mat();
-                // 重点：使用 warpAffine 而不是 warpPerspective
-                Imgproc.warpAffine(grayImages.get(i), warped, M, new Size(w, h), Imgproc.INTER_LANCZOS4);
-                warpedImages.add(warped);
-
-                // 生成 Mask (修复之前的类型崩溃问题，保持 CV_8U)
-                Mat mask = new Mat();
-                Core.compare(warped, new Scalar(0), mask, Core.CMP_GT);
-                masks.add(mask);
+                try {
+                    Imgproc.remap(workingFrames.get(cw.cameraIndex), warped, cw.map1, cw.map2,
+                        interpolation, Core.BORDER_CONSTANT, new Scalar(0, 0, 0, 0));
+                    Mat weightedImg = MatTracker.newMat("AutoStitchStrategy.weighted");
+                    warped.convertTo(weightedImg, CvType.CV_32F);
+                    Core.multiply(weightedImg, cw.weight, weightedImg);
+                    weighted[j] = weightedImg;
+                } finally {
+                    warped.release();
+                }
+            });
 
-                M.release();
+            // 重叠区域会写同一块累加器，累加必须串行
+            for (int j = 0; j < weighted.length; j++) {
+                Mat dst = accumulator.submat(cache.cameras.get(j).dstRect);
+                Core.add(dst, weighted[j], dst);
+                dst.release();
             }
 
-            // 5. 线性加权融合 (无鬼影)
-            Mat result = distanceBlend(warpedImages, masks);
+            Mat result = new Mat();
+            accumulator.convertTo(result, CvType.CV_8U);
+            return result;
 
-            // 6. 还原颜色 (如果原图是彩色的)
-            if (workingFrames.get(0).channels() == 3) {
-                Mat resultBGR = new Mat();
-                Imgproc.cvtColor(result, resultBGR, Imgproc.COLOR_GRAY2BGR);
-                result.release();
-                result = resultBGR;
+        } finally {
+            accumulator.release();
+            for (Mat m : weighted) MatTracker.release(m);
+        }
+    }
+
+    /**
+     * 预编译 remap 映射表与融合权重（每次校准后只执行一次）
+     * <p>
+     * 输出区域为智能裁剪框（没有时为整个画布）。每个摄像头只在其变换后的包围盒内生成映射，
+     * 权重 = 该摄像头的归一化距离变换 / 所有摄像头距离之和，与 distanceBlend 的结果一致。
+     */
+    private WarpCache buildWarpCache(int srcWidth, int srcHeight, int type) {
+        int canvasW = (int) canvasSize.width;
+        int canvasH = (int) canvasSize.height;
+        Rect canvasRect = new Rect(0, 0, canvasW, canvasH);
+        Rect outRect = roiCrop != null && roiCrop.width > 0 && roiCrop.height > 0
+            ? intersect(roiCrop, canvasRect) : canvasRect;
+        if (outRect.width <= 0 || outRect.height <= 0) outRect = canvasRect;
+
+        int channels = CvType.channels(type);
+        List<CameraWarp> cameras = new ArrayList<>();
+        List<Mat> dists = new ArrayList<>();
+        Mat weightSum = Mat.zeros(outRect.height, outRect.width, CvType.CV_32F);
+        Core.add(weightSum, new Scalar(1e-6), weightSum); // 防止除0
+
+        Mat ones = new Mat(srcHeight, srcWidth, CvType.CV_8U, new Scalar(255));
+        try {
+            for (int i = 0; i < matrices.size(); i++) {
+                double[] m = new double[9];
+                matrices.get(i).get(0, 0, m);
+
+                // 该摄像头在画布上的包围盒，外扩 1 像素保证掩码带有零边界（距离变换以此为边缘）
+                Rect bounds = transformedBounds(m, srcWidth, srcHeight);
+                Rect footprint = intersect(new Rect(bounds.x - 1, bounds.y - 1, bounds.width + 2, bounds.height + 2),
+                    canvasRect);
+                Rect visible = intersect(footprint, outRect);
+                if (visible.width <= 0 || visible.height <= 0) continue;
+
+                // 包围盒内每个画布像素对应的源坐标（逆仿射）
+                Mat mapX = new Mat();
+                Mat mapY = new Mat();
+                buildInverseAffineMaps(m, footprint, mapX, mapY);
+
+                // 覆盖掩码 -> 距离变换 -> 归一化
+                Mat mask = new Mat();
+                Imgproc.remap(ones, mask, mapX, mapY, Imgproc.INTER_NEAREST, Core.BORDER_CONSTANT, new Scalar(0));
+                Mat dist = new Mat();
+                Imgproc.distanceTransform(mask, dist, Imgproc.CV_DIST_L2, 3);
+                Core.normalize(dist, dist, 0, 1.0, Core.NORM_MINMAX);
+                mask.release();
+
+                // 裁剪到输出区域
+                Rect local = new Rect(visible.x - footprint.x, visible.y - footprint.y, visible.width, visible.height);
+                Rect dstRect = new Rect(visible.x - outRect.x, visible.y - outRect.y, visible.width, visible.height);
+
+                Mat distVisible = dist.submat(local).clone();
+                Mat mapXVisible = mapX.submat(local).clone();
+                Mat mapYVisible = mapY.submat(local).clone();
+                dist.release(); mapX.release(); mapY.release();
+
+                // 转为定点映射表，remap 更快
+                Mat map1 = new Mat();
+                Mat map2 = new Mat();
+                Imgproc.convertMaps(mapXVisible, mapYVisible, map1, map2, CvType.CV_16SC2, false);
+                mapXVisible.release(); mapYVisible.release();
+
+                Mat sumRoi = weightSum.submat(dstRect);
+                Core.add(sumRoi, distVisible, sumRoi);
+                sumRoi.release();
+
+                cameras.add(new CameraWarp(i, dstRect, map1, map2));
+                dists.add(distVisible);
             }
 
-            // 7. 智能裁剪
-            if (roiCrop != null && roiCrop.width > 0 && roiCrop.height > 0) {
-                // 安全检查
-                int safeX = Math.max(0, roiCrop.x);
-                int safeY = Math.max(0, roiCrop.y);
-                int safeW = Math.min(result.cols() - safeX, roiCrop.width);
-                int safeH = Math.min(result.rows() - safeY, roiCrop.height);
-
-                if (safeW > 0 && safeH > 0) {
-                    Mat cropped = new Mat(result, new Rect(safeX, safeY, safeW, safeH));
-                    // 必须 clone 返回，因为 result 即将释放
-                    Mat finalOutput = cropped.clone();
-                    cropped.release();
-                    result.release();
-                    return finalOutput;
+            // 归一化权重，并扩展到与图像相同的通道数
+            for (int j = 0; j < cameras.size(); j++) {
+                CameraWarp cw = cameras.get(j);
+                Mat sumRoi = weightSum.submat(cw.dstRect);
+                Mat weight = new Mat();
+                Core.divide(dists.get(j), sumRoi, weight);
+                sumRoi.release();
+                if (channels > 1) {
+                    Mat merged = new Mat();
+                    Core.merge(Collections.nCopies(channels, weight), merged);
+                    weight.release();
+                    weight = merged;
                 }
+                cw.weight = weight;
             }
+        } finally {
+            ones.release();
+            weightSum.release();
+            for (Mat d : dists) d.release();
+        }
 
-            return result;
+        logger.info("Built warp cache: {} cameras -> {}x{}, interpolation={}",
+            cameras.size(), outRect.width, outRect.height, interpolation);
+        return new WarpCache(type, outRect.width, outRect.height, cameras);
+    }
 
-        } finally {
-            // 清理临时资源
-            for (Mat m : workingFrames) m.release();
+    /**
+     * 生成逆仿射映射表：对包围盒内每个画布像素 (x, y)，计算其在源图中的坐标
+     */
+    private static void buildInverseAffineMaps(double[] m, Rect region, Mat mapX, Mat mapY) {
+        double a = m[0], b = m[1], c = m[2], d = m[3], e = m[4], f = m[5];
+        double det = a * e - b * d;
+        double ia = e / det, ib = -b / det, ic = (b * f - c * e) / det;
+        double id = -d / det, ie = a / det, iff = (c * d - a * f) / det;
+
+        int w = region.width;
+        int h = region.height;
+        float[] xs = new float[w * h];
+        float[] ys = new float[w * h];
+        for (int v = 0; v < h; v++) {
+            double y = region.y + v;
+            double rowX = ib * y + ic;
+            double rowY = ie * y + iff;
+            int offset = v * w;
+            for (int u = 0; u < w; u++) {
+                double x = region.x + u;
+                xs[offset + u] = (float) (ia * x + rowX);
+                ys[offset + u] = (float) (id * x + rowY);
+            }
         }
+        mapX.create(h, w, CvType.CV_32F);
+        mapY.create(h, w, CvType.CV_32F);
+        mapX.put(0, 0, xs);
+        mapY.put(0, 0, ys);
+    }
+
+    /**
+     * 源图四个角经仿射变换后的包围盒
+     */
+    private static Rect transformedBounds(double[] m, int width, int height) {
+        double[][] corners = {{0, 0}, {0, height}, {width, height}, {width, 0}};
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (double[] p : corners) {
+            double x = m[0] * p[0] + m[1] * p[1] + m[2];
+            double y = m[3] * p[0] + m[4] * p[1] + m[5];
+            minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+        }
+        int x0 = (int) Math.floor(minX);
+        int y0 = (int) Math.floor(minY);
+        return new Rect(x0, y0, (int) Math.ceil(maxX) - x0, (int) Math.ceil(maxY) - y0);
+    }
+
+    private static Rect intersect(Rect a, Rect b) {
+        int x1 = Math.max(a.x, b.x);
+        int y1 = Math.max(a.y, b.y);
+        int x2 = Math.min(a.x + a.width, b.x + b.width);
+        int y2 = Math.min(a.y + a.height, b.y + b.height);
+        return new Rect(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
     }
 
     /**
@@ -140,14 +371,22 @@ public class AutoStitchStrategy implements StitchStrategy {
         int n = grayImages.size();
         matrices.clear();
 
+        // 各相邻对的特征提取与匹配互不依赖，并行计算
+        Mat[] affines = new Mat[n - 1];
+        StitchExecutor.forEach(n - 1, i -> affines[i] = computeAffine(grayImages.get(i), grayImages.get(i + 1)));
+        for (Mat affine : affines) {
+            if (affine == null) {
+                for (Mat m : affines) {
+                    if (m != null) m.release();
+                }
+                return false;
+            }
+        }
+
         // 计算相对矩阵 (2x3 -> 3x3)
         List<Mat> relMats = new ArrayList<>();
         for (int i = 0; i < n - 1; i++) {
-            Mat affine2x3 = computeAffine(grayImages.get(i), grayImages.get(i + 1));
-            if (affine2x3 == null) {
-                for (Mat m : relMats) m.release();
-                return false;
-            }
+            Mat affine2x3 = affines[i];
             // 扩展为 3x3 用于矩阵乘法
             Mat m3x3 = Mat.eye(3, 3, CvType.CV_64F);
             Mat top = m3x3.submat(0, 2, 0, 3);
@@ -191,11 +430,22 @@ public class AutoStitchStrategy implements StitchStrategy {
 
     /**
      * Python: _get_affine (计算仿射矩阵，非透视)
+     * <p>
+     * 使用配置的特征后端；快速后端（ORB/AKAZE）内点不足时回退到 SIFT。
+     * 会被多个拼接线程同时调用，检测器按线程复用，匹配器每次单独创建（仅校准时执行）。
      */
     private Mat computeAffine(Mat ref, Mat mov) {
-        if (featureDetector == null) featureDetector = SIFT.create();
-        if (matcher == null) matcher = DescriptorMatcher.create(DescriptorMatcher.FLANNBASED);
+        AffineEstimate estimate = estimateAffine(ref, mov, featureBackend);
+        if (featureBackend != FeatureBackend.SIFT && (estimate == null || estimate.inliers < MIN_AFFINE_INLIERS)) {
+            logger.info("{} found {} inliers for stitch calibration, falling back to SIFT",
+                    featureBackend, estimate == null ? 0 : estimate.inliers);
+            if (estimate != null) estimate.affine.release();
+            estimate = estimateAffine(ref, mov, FeatureBackend.SIFT);
+        }
+        return estimate == null ? null : estimate.affine;
+    }
 
+    private AffineEstimate estimateAffine(Mat ref, Mat mov, FeatureBackend backend) {
         // 提取重叠区 ROI 提升速度
         int w = ref.cols();
         int overlapW = (int) (w * OVERLAP_RATIO);
@@ -204,41 +454,22 @@ public class AutoStitchStrategy implements StitchStrategy {
 
         Mat roiRef = new Mat(ref, refRect);
         Mat roiMov = new Mat(mov, movRect);
-
-        MatOfKeyPoint kpRef = new MatOfKeyPoint();
-        MatOfKeyPoint kpMov = new MatOfKeyPoint();
-        Mat desRef = new Mat();
-        Mat desMov = new Mat();
-
-        featureDetector.detectAndCompute(roiRef, new Mat(), kpRef, desRef);
-        featureDetector.detectAndCompute(roiMov, new Mat(), kpMov, desMov);
-
-        roiRef.release(); roiMov.release();
-
-        if (desRef.empty() || desMov.empty() || kpRef.rows() < 3 || kpMov.rows() < 3) return null;
-
-        List<MatOfDMatch> knnMatches = new ArrayList<>();
-        matcher.knnMatch(desRef, desMov, knnMatches, 2);
-
-        List<Point> srcPts = new ArrayList<>();
-        List<Point> dstPts = new ArrayList<>();
-        List<KeyPoint> kpRefList = kpRef.toList();
-        List<KeyPoint> kpMovList = kpMov.toList();
-
-        for (MatOfDMatch match : knnMatches) {
-            List<DMatch> m = match.toList();
-            if (m.size() >= 2 && m.get(0).distance < 0.75f * m.get(1).distance) {
-                srcPts.add(kpMovList.get(m.get(0).trainIdx).pt);
-                // 关键：加上 ROI 的偏移量
-                Point p = kpRefList.get(m.get(0).queryIdx).pt;
-                p.x += refRect.x;
-                dstPts.add(p);
-            }
+        FeatureBackend.Correspondences matches;
+        try {
+            matches = backend.match(roiRef, roiMov, 0.75f);
+        } finally {
+            roiRef.release();
+            roiMov.release();
         }
 
-        kpRef.release(); kpMov.release(); desRef.release(); desMov.release();
+        if (matches.size() < 8) return null;
 
-        if (srcPts.size() < 8) return null;
+        List<Point> srcPts = matches.getTrainPoints();
+        List<Point> dstPts = matches.getQueryPoints();
+        // 关键：加上 ROI 的偏移量
+        for (Point p : dstPts) {
+            p.x += refRect.x;
+        }
 
         MatOfPoint2f srcMat = new MatOfPoint2f();
         srcMat.fromList(srcPts);
@@ -248,9 +479,21 @@ public class AutoStitchStrategy implements StitchStrategy {
         // 重点：使用 estimateAffinePartial2D (对应 Python 的 affine)
         Mat inliers = new Mat();
         Mat affine = Calib3d.estimateAffinePartial2D(srcMat, dstMat, inliers, Calib3d.RANSAC, 3.0);
+        int inlierCount = inliers.empty() ? 0 : Core.countNonZero(inliers);
 
         srcMat.release(); dstMat.release(); inliers.release();
-        return affine.empty() ? null : affine;
+        if (affine.empty()) return null;
+        return new AffineEstimate(affine, inlierCount);
+    }
+
+    private static final class AffineEstimate {
+        final Mat affine;
+        final int inliers;
+
+        AffineEstimate(Mat affine, int inliers) {
+            this.affine = affine;
+            this.inliers = inliers;
+        }
     }
 
     private void calculateCanvasSize(List<Mat> images) {
@@ -423,26 +666,183 @@ public class AutoStitchStrategy implements StitchStrategy {
     }
 
     private List<Mat> toGrayScale(List<Mat> frames) {
-        List<Mat> grays = new ArrayList<>();
-        for (Mat f : frames) {
+        Mat[] grays = new Mat[frames.size()];
+        StitchExecutor.forEach(frames.size(), i -> {
+            Mat f = frames.get(i);
             Mat g = new Mat();
             if (f.channels() == 3) Imgproc.cvtColor(f, g, Imgproc.COLOR_BGR2GRAY);
             else if (f.channels() == 4) Imgproc.cvtColor(f, g, Imgproc.COLOR_BGRA2GRAY);
             else f.copyTo(g);
-            grays.add(g);
+            grays[i] = g;
+        });
+        return new ArrayList<>(Arrays.asList(grays));
+    }
+
+    /**
+     * 重新校准：清空内存中的校准结果并删除校准文件，下一帧重新做特征匹配
+     */
+    public synchronized void resetCalibration() {
+        clearCalibration();
+        if (calibrationFile != null) {
+            try {
+                Files.deleteIfExists(calibrationFile);
+            } catch (IOException e) {
+                logger.warn("Failed to delete calibration file {}: {}", calibrationFile, e.getMessage());
+            }
         }
-        return grays;
     }
 
-    public void resetCalibration() {
+    /**
+     * 释放仿射矩阵和 remap 缓存占用的本地内存，不删除校准文件（切换策略、关闭时调用）
+     */
+    public synchronized void release() {
+        clearCalibration();
+    }
+
+    private void clearCalibration() {
         isCalibrated = false;
+        for (Mat m : matrices) {
+            m.release();
+        }
         matrices.clear();
         roiCrop = null;
+        calibratedCameraCount = 0;
+        calibratedWidth = 0;
+        calibratedHeight = 0;
+        if (warpCache != null) {
+            warpCache.release();
+            warpCache = null;
+        }
+    }
+
+    // =========================================================
+    // 校准结果持久化
+    // =========================================================
+
+    /**
+     * 保存校准结果（仿射矩阵、画布尺寸、裁剪框、工作尺寸）
+     */
+    private void saveCalibration() {
+        if (calibrationFile == null) {
+            return;
+        }
+        try {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("version", CALIBRATION_VERSION);
+            data.put("updatedAt", System.currentTimeMillis());
+            data.put("cameraCount", calibratedCameraCount);
+            data.put("frameWidth", calibratedWidth);
+            data.put("frameHeight", calibratedHeight);
+            data.put("canvasWidth", canvasSize.width);
+            data.put("canvasHeight", canvasSize.height);
+            if (roiCrop != null) {
+                data.put("crop", new int[]{roiCrop.x, roiCrop.y, roiCrop.width, roiCrop.height});
+            }
+            List<double[]> mats = new ArrayList<>();
+            for (Mat m : matrices) {
+                double[] values = new double[9];
+                m.get(0, 0, values);
+                mats.add(values);
+            }
+            data.put("matrices", mats);
+
+            Files.createDirectories(calibrationFile.toAbsolutePath().getParent());
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(calibrationFile.toFile(), data);
+            logger.info("Saved auto stitch calibration to: {}", calibrationFile);
+        } catch (IOException e) {
+            logger.error("Failed to save auto stitch calibration: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 加载校准结果，文件不存在或格式不符时保持未校准状态
+     */
+    @SuppressWarnings("unchecked")
+    private void loadCalibration() {
+        if (calibrationFile == null || !Files.exists(calibrationFile)) {
+            return;
+        }
+        try {
+            Map<String, Object> data = new ObjectMapper().readValue(calibrationFile.toFile(), Map.class);
+            if (((Number) data.get("version")).intValue() != CALIBRATION_VERSION) {
+                logger.warn("Unsupported calibration version in {}, ignoring", calibrationFile);
+                return;
+            }
+
+            List<List<Number>> mats = (List<List<Number>>) data.get("matrices");
+            matrices.clear();
+            for (List<Number> values : mats) {
+                Mat m = new Mat(3, 3, CvType.CV_64F);
+                for (int k = 0; k < 9; k++) {
+                    m.put(k / 3, k % 3, values.get(k).doubleValue());
+                }
+                matrices.add(m);
+            }
+            canvasSize = new Size(((Number) data.get("canvasWidth")).doubleValue(),
+                ((Number) data.get("canvasHeight")).doubleValue());
+            List<Number> crop = (List<Number>) data.get("crop");
+            roiCrop = crop == null ? null : new Rect(crop.get(0).intValue(), crop.get(1).intValue(),
+                crop.get(2).intValue(), crop.get(3).intValue());
+            calibratedCameraCount = ((Number) data.get("cameraCount")).intValue();
+            calibratedWidth = ((Number) data.get("frameWidth")).intValue();
+            calibratedHeight = ((Number) data.get("frameHeight")).intValue();
+            isCalibrated = matrices.size() == calibratedCameraCount && calibratedCameraCount > 0;
+
+            logger.info("Loaded auto stitch calibration from {}: {} cameras, canvas {}x{}",
+                calibrationFile, calibratedCameraCount, (int) canvasSize.width, (int) canvasSize.height);
+        } catch (Exception e) {
+            logger.warn("Failed to load auto stitch calibration from {}: {}", calibrationFile, e.getMessage());
+            matrices.clear();
+            isCalibrated = false;
+        }
     }
 
-    public void release() {
-        resetCalibration();
-        featureDetector = null;
-        matcher = null;
+    // =========================================================
+    // 预编译缓存
+    // =========================================================
+
+    /**
+     * 所有摄像头的 remap 映射表和融合权重
+     */
+    private static final class WarpCache {
+        final int type;
+        final int outWidth;
+        final int outHeight;
+        final List<CameraWarp> cameras;
+
+        WarpCache(int type, int outWidth, int outHeight, List<CameraWarp> cameras) {
+            this.type = type;
+            this.outWidth = outWidth;
+            this.outHeight = outHeight;
+            this.cameras = cameras;
+        }
+
+        void release() {
+            for (CameraWarp cw : cameras) cw.release();
+        }
+    }
+
+    /**
+     * 单个摄像头的定点映射表（map1: CV_16SC2, map2: CV_16UC1）、权重及其在输出画布中的区域
+     */
+    private static final class CameraWarp {
+        final int cameraIndex;
+        final Rect dstRect;
+        final Mat map1;
+        final Mat map2;
+        Mat weight;
+
+        CameraWarp(int cameraIndex, Rect dstRect, Mat map1, Mat map2) {
+            this.cameraIndex = cameraIndex;
+            this.dstRect = dstRect;
+            this.map1 = map1;
+            this.map2 = map2;
+        }
+
+        void release() {
+            map1.release();
+            map2.release();
+            if (weight != null) weight.release();
+        }
     }
-}
\ No newline at end of file
+}
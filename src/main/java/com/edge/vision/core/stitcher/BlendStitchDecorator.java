@@ -4,6 +4,7 @@ import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Rect;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class BlendStitchDecorator {
@@ -16,40 +17,66 @@ public class BlendStitchDecorator {
 
     /**
      * 对拼接后的图像进行边缘渐变融合
+     * <p>
+     * 每条拼缝：左侧 BLEND_WIDTH 列与同一帧右侧 BLEND_WIDTH 列按线性渐变融合后写回左侧。
+     * 各拼缝读写区域互不重叠时并行处理；帧宽不足 2 * BLEND_WIDTH 时读写区域重叠，改为逐列顺序融合以保持原有结果。
+     *
      * @param stitched 拼接后的图像
      * @param originals 原始图像列表
      * @return 融合后的图像
      */
     public Mat blend(Mat stitched, List<Mat> originals) {
         Mat result = stitched.clone();
-        int x = 0;
 
+        // 收集需要融合的拼缝起点
+        List<int[]> seams = new ArrayList<>();
+        int x = 0;
         for (Mat src : originals) {
             int w = src.cols();
             if (x + w >= result.cols()) {
                 break;
             }
-
-            // 对每个拼接处进行渐变融合
-            for (int j = 0; j < BLEND_WIDTH; j++) {
-                double alpha = (double) j / BLEND_WIDTH;
-                
-                // 确保不越界
-                int leftX = x + j;
-                int rightX = x + w - BLEND_WIDTH + j;
-                
-                if (leftX >= 0 && leftX < result.cols() && 
-                    rightX >= 0 && rightX < result.cols()) {
-                    
-                    Mat left = result.submat(new Rect(leftX, 0, 1, result.rows()));
-                    Mat right = result.submat(new Rect(rightX, 0, 1, result.rows()));
-                    Core.addWeighted(left, 1 - alpha, right, alpha, 0, left);
-                }
-            }
-            
+            seams.add(new int[]{x, w});
             x += w;
         }
 
+        StitchExecutor.forEach(seams.size(), i -> {
+            int seamX = seams.get(i)[0];
+            int w = seams.get(i)[1];
+            if (w >= BLEND_WIDTH * 2) {
+                Mat left = result.submat(new Rect(seamX, 0, BLEND_WIDTH, result.rows()));
+                Mat right = result.submat(new Rect(seamX + w - BLEND_WIDTH, 0, BLEND_WIDTH, result.rows()));
+                SeamBlender.blend(left, right, left);
+                left.release();
+                right.release();
+            } else {
+                blendColumns(result, seamX, w);
+            }
+        });
+
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * 逐列融合（仅用于读写区域重叠的窄帧）
+     */
+    private void blendColumns(Mat result, int x, int w) {
+        for (int j = 0; j < BLEND_WIDTH; j++) {
+            double alpha = (double) j / BLEND_WIDTH;
+
+            // 确保不越界
+            int leftX = x + j;
+            int rightX = x + w - BLEND_WIDTH + j;
+
+            if (leftX >= 0 && leftX < result.cols() &&
+                rightX >= 0 && rightX < result.cols()) {
+
+                Mat left = result.submat(new Rect(leftX, 0, 1, result.rows()));
+                Mat right = result.submat(new Rect(rightX, 0, 1, result.rows()));
+                Core.addWeighted(left, 1 - alpha, right, alpha, 0, left);
+                left.release();
+                right.release();
+            }
+        }
+    }
+}
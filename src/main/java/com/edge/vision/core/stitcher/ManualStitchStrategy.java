@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 手动拼接策略 (V6 通用版 - 每个摄像头支持左右切割)
@@ -35,6 +36,11 @@ public class ManualStitchStrategy implements StitchStrategy {
     // 线程安全的配置存储
     private final Map<Integer, CameraConfig> cameraConfigs = new ConcurrentHashMap<>();
 
+    // 配置版本号，每次修改配置时递增，用于判断拼接计划是否失效
+    private final AtomicLong configVersion = new AtomicLong();
+    // 当前编译好的拼接计划（不可变，可跨线程共享）
+    private volatile StitchPlan currentPlan;
+
     public ManualStitchStrategy() {
         // 默认构造
     }
@@ -49,208 +55,152 @@ public class ManualStitchStrategy implements StitchStrategy {
 
     @Override
     public Mat stitch(List<Mat> frames) {
+        return stitchInto(frames, new Mat());
+    }
+
+    /**
+     * 拼接到调用方提供的画布中
+     * <p>
+     * 裁剪几何由 {@link StitchPlan} 预先编译，每个摄像头的 ROI 直接 copyTo 到画布对应区域，
+     * 不产生中间 clone 和 hconcat 临时结果，各摄像头的拷贝在 {@link StitchExecutor} 中并行执行。画布尺寸、类型与上次一致时 create() 不会重新分配内存，
+     * 因此调用方可以跨帧复用同一个画布。
+     *
+     * @param frames 图像帧列表
+     * @param canvas 输出画布（尺寸不符时自动重新分配）
+     * @return canvas 本身；切片无效或拼接失败时释放画布数据后返回 canvas（empty() 为 true），
+     *         不另外分配 Mat，画布仍由调用方释放
+     */
+    @Override
+    public Mat stitchInto(List<Mat> frames, Mat canvas) {
         if (frames == null || frames.isEmpty()) {
             throw new IllegalArgumentException("Frames cannot be null or empty");
         }
 
-        // 即使只有一张图，也返回原图
-        if (frames.size() == 1) {
-            return cropFrame(frames.get(0), 0);
-        }
-
         try {
-            // 阶段一：计算统一的目标高度
-            // 需要同时考虑：1. 配置的 h 值，2. 实际图像可用高度 (frame.rows() - startY)
-            // 取所有摄像头中 实际可用高度 的最小值
-            int targetHeight = Integer.MAX_VALUE;
-            for (int i = 0; i < frames.size(); i++) {
-                Mat frame = frames.get(i);
-                CameraConfig config = cameraConfigs.getOrDefault(i, new CameraConfig(i));
-                int startY = config.y;
-                int configH = config.h;
-
-                // 实际可用高度（不超过图像边界）
-                int availableHeight = frame.rows() - startY;
-                // 两者取最小值
-                int effectiveHeight = Math.min(configH, availableHeight);
-
-                if (effectiveHeight > 0 && effectiveHeight < targetHeight) {
-                    targetHeight = effectiveHeight;
-                }
-
-                logger.debug("Camera {}: config.h={}, availableHeight={}, effectiveHeight={}",
-                    i, configH, availableHeight, effectiveHeight);
-            }
-
-            // 如果没有有效的 h 值，使用第一帧的高度
-            if (targetHeight == Integer.MAX_VALUE) {
-                targetHeight = frames.get(0).rows();
+            StitchPlan plan = getOrCompilePlan(frames);
+            if (plan.isEmpty()) {
+                canvas.release();
+                return canvas;
             }
 
-            logger.info("Target height for stitching: {}", targetHeight);
-
-            // 阶段二：切片处理（所有图像使用相同的目标高度）
-            List<Mat> slicedParts = new ArrayList<>();
+            canvas.create(plan.height, plan.width, plan.type);
+            // 各摄像头目标区域互不重叠，按摄像头并行拷贝
+            StitchExecutor.forEach(plan.cameraIndices.length, i -> {
+                Mat src = frames.get(plan.cameraIndices[i]).submat(plan.srcRects[i]);
+                Mat dst = canvas.submat(plan.dstRects[i]);
+                src.copyTo(dst);
+                src.release();
+                dst.release();
+            });
 
-            for (int i = 0; i < frames.size(); i++) {
-                Mat frame = frames.get(i);
-                Mat cropped = cropFrameWithHeight(frame, i, targetHeight);
-                if (!cropped.empty()) {
-                    // 验证高度是否一致
-                    if (cropped.rows() != targetHeight) {
-                        logger.warn("Camera {} cropped height {} != targetHeight {}, this should not happen!",
-                            i, cropped.rows(), targetHeight);
-                    }
-                    slicedParts.add(cropped);
-                }
-            }
-
-            if (slicedParts.isEmpty()) {
-                logger.warn("No valid frames after cropping");
-                return new Mat();
-            }
-
-            // 阶段三：验证所有切片高度一致后再拼接
-            int firstHeight = slicedParts.get(0).rows();
-            for (int i = 1; i < slicedParts.size(); i++) {
-                if (slicedParts.get(i).rows() != firstHeight) {
-                    logger.error("Height mismatch detected! slice[0].rows()={}, slice[{}].rows()={}",
-                        firstHeight, i, slicedParts.get(i).rows());
-                    // 清理资源
-                    for (Mat mat : slicedParts) {
-                        mat.release();
-                    }
-                    return new Mat();
-                }
-            }
-
-            // 阶段四：直接水平拼接
-            Mat result = new Mat();
-            Core.hconcat(slicedParts, result);
-
-            // 清理临时 Mat
-            for (Mat mat : slicedParts) {
-                mat.release();
-            }
-
-            logger.debug("Stitched {} frames into result: {}x{}",
-                frames.size(), result.cols(), result.rows());
-
-            return result;
+            logger.trace("Stitched {} frames into canvas: {}x{}", frames.size(), plan.width, plan.height);
+            return canvas;
 
         } catch (Exception e) {
             logger.error("Stitch process failed", e);
-            return new Mat();
+            canvas.release();
+            return canvas;
         }
     }
 
     /**
-     * 对单帧进行切片处理（使用指定的目标高度）
-     * <p>
-     * 每个摄像头保留 [y, y+h] 行，[x1, x2) 列
-     *
-     * @param frame         原始图像帧
-     * @param cameraIndex   当前摄像头索引
-     * @param targetHeight  目标高度（确保所有切片高度一致）
-     * @return 切片后的图像
+     * 获取当前配置版本与输入尺寸对应的拼接计划，不匹配时重新编译
      */
-    private Mat cropFrameWithHeight(Mat frame, int cameraIndex, int targetHeight) {
-        CameraConfig config = cameraConfigs.getOrDefault(cameraIndex, new CameraConfig(cameraIndex));
-
-        int x1 = config.x1;
-        int x2 = config.x2;
-        int startY = config.y;
-
-        // 边界检查
-        if (x1 < 0 || x1 >= frame.cols()) {
-            logger.warn("Invalid x1 {} for camera {}, frame width: {}",
-                x1, cameraIndex, frame.cols());
-            return new Mat();
-        }
-
-        if (x2 <= x1 || x2 > frame.cols()) {
-            logger.warn("Invalid x2 {} for camera {}, frame width: {}, x1={}",
-                x2, cameraIndex, frame.cols(), x1);
-            return new Mat();
-        }
-
-        // 使用目标高度，但确保不超过图像边界
-        int height = Math.min(targetHeight, frame.rows() - startY);
-        if (height <= 0) {
-            logger.warn("Invalid height for camera {}, startY={}, targetHeight={}, frame rows={}",
-                cameraIndex, startY, targetHeight, frame.rows());
-            return new Mat();
-        }
-
-        try {
-            // 每个摄像头都保留 [x1, x2) 列
-            int roiWidth = x2 - x1;
-            Rect roi = new Rect(x1, startY, roiWidth, height);
-
-            logger.debug("Camera {}: crop region - x={}, y={}, w={}, h={}",
-                cameraIndex, roi.x, roi.y, roi.width, roi.height);
-
-            return new Mat(frame, roi).clone();
-
-        } catch (Exception e) {
-            logger.error("Failed to crop frame for camera {}", cameraIndex, e);
-            return new Mat();
+    private StitchPlan getOrCompilePlan(List<Mat> frames) {
+        StitchPlan plan = currentPlan;
+        long version = configVersion.get();
+        if (plan != null && plan.matches(version, frames)) {
+            return plan;
         }
+        plan = compilePlan(version, frames);
+        currentPlan = plan;
+        return plan;
     }
 
     /**
-     * 对单帧进行切片处理
+     * 编译拼接计划（仅在配置变更或输入分辨率变化时执行）
+     * <p>
+     * 阶段一：计算统一的目标高度 —— 取所有摄像头 min(配置 h, 实际可用高度) 的最小值
+     * 阶段二：计算每个摄像头保留 [y, y+targetHeight) 行、[x1, x2) 列的源区域，及其在画布中的目标区域
      */
-    private Mat cropFrame(Mat frame, int cameraIndex) {
-        CameraConfig config = cameraConfigs.getOrDefault(cameraIndex, new CameraConfig(cameraIndex));
-
-        int x1 = config.x1;
-        int x2 = config.x2;
-        int startY = config.y;
-        int height = config.h;
-
-        // 边界检查
-        if (x1 < 0 || x1 >= frame.cols()) {
-            logger.warn("Invalid x1 {} for camera {}, frame width: {}",
-                x1, cameraIndex, frame.cols());
-            return new Mat();
+    private StitchPlan compilePlan(long version, List<Mat> frames) {
+        int n = frames.size();
+        int[] frameCols = new int[n];
+        int[] frameRows = new int[n];
+        int type = frames.get(0).type();
+        for (int i = 0; i < n; i++) {
+            frameCols[i] = frames.get(i).cols();
+            frameRows[i] = frames.get(i).rows();
         }
 
-        if (x2 <= x1 || x2 > frame.cols()) {
-            logger.warn("Invalid x2 {} for camera {}, frame width: {}, x1={}",
-                x2, cameraIndex, frame.cols(), x1);
-            return new Mat();
+        // 阶段一：计算统一的目标高度
+        int targetHeight = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            CameraConfig config = cameraConfigs.getOrDefault(i, new CameraConfig(i));
+            int availableHeight = frameRows[i] - config.y;
+            int effectiveHeight = Math.min(config.h, availableHeight);
+            if (effectiveHeight > 0 && effectiveHeight < targetHeight) {
+                targetHeight = effectiveHeight;
+            }
+            logger.debug("Camera {}: config.h={}, availableHeight={}, effectiveHeight={}",
+                i, config.h, availableHeight, effectiveHeight);
         }
-
-        if (startY < 0 || startY >= frame.rows()) {
-            logger.warn("Invalid startY {} for camera {}, frame height: {}",
-                startY, cameraIndex, frame.rows());
-            return new Mat();
+        // 如果没有有效的 h 值，使用第一帧的高度
+        if (targetHeight == Integer.MAX_VALUE) {
+            targetHeight = frameRows[0];
         }
 
-        if (height <= 0 || startY + height > frame.rows()) {
-            // 自动调整高度
-            height = frame.rows() - startY;
-            if (height <= 0) {
-                logger.warn("Invalid height for camera {}, auto-adjust failed", cameraIndex);
-                return new Mat();
+        // 阶段二：每个摄像头的源/目标区域
+        List<Integer> indices = new ArrayList<>();
+        List<Rect> srcRects = new ArrayList<>();
+        List<Rect> dstRects = new ArrayList<>();
+        int xOffset = 0;
+        for (int i = 0; i < n; i++) {
+            CameraConfig config = cameraConfigs.getOrDefault(i, new CameraConfig(i));
+            int x1 = config.x1;
+            int x2 = config.x2;
+            int startY = config.y;
+
+            if (x1 < 0 || x1 >= frameCols[i]) {
+                logger.warn("Invalid x1 {} for camera {}, frame width: {}", x1, i, frameCols[i]);
+                continue;
+            }
+            if (x2 <= x1 || x2 > frameCols[i]) {
+                logger.warn("Invalid x2 {} for camera {}, frame width: {}, x1={}", x2, i, frameCols[i], x1);
+                continue;
+            }
+            int height = Math.min(targetHeight, frameRows[i] - startY);
+            if (startY < 0 || height <= 0) {
+                logger.warn("Invalid height for camera {}, startY={}, targetHeight={}, frame rows={}",
+                    i, startY, targetHeight, frameRows[i]);
+                continue;
+            }
+            if (height != targetHeight) {
+                logger.error("Height mismatch detected! camera {} height {} != targetHeight {}", i, height, targetHeight);
+                return StitchPlan.empty(version, frameCols, frameRows, type);
+            }
+            if (frames.get(i).type() != type) {
+                logger.error("Type mismatch detected! camera {} type {} != {}", i, frames.get(i).type(), type);
+                return StitchPlan.empty(version, frameCols, frameRows, type);
             }
-        }
 
-        try {
-            // 每个摄像头都保留 [x1, x2) 列
             int roiWidth = x2 - x1;
-            Rect roi = new Rect(x1, startY, roiWidth, height);
-
-            logger.debug("Camera {}: crop region - x={}, y={}, w={}, h={}",
-                cameraIndex, roi.x, roi.y, roi.width, roi.height);
-
-            return new Mat(frame, roi).clone();
+            indices.add(i);
+            srcRects.add(new Rect(x1, startY, roiWidth, height));
+            dstRects.add(new Rect(xOffset, 0, roiWidth, height));
+            xOffset += roiWidth;
+        }
 
-        } catch (Exception e) {
-            logger.error("Failed to crop frame for camera {}", cameraIndex, e);
-            return new Mat();
+        if (indices.isEmpty()) {
+            logger.warn("No valid frames after cropping");
+            return StitchPlan.empty(version, frameCols, frameRows, type);
         }
+
+        StitchPlan plan = new StitchPlan(version, frameCols, frameRows, type,
+            indices.stream().mapToInt(Integer::intValue).toArray(),
+            srcRects.toArray(new Rect[0]), dstRects.toArray(new Rect[0]), xOffset, targetHeight);
+        logger.info("Compiled stitch plan v{}: {} cameras -> {}x{}", version, indices.size(), xOffset, targetHeight);
+        return plan;
     }
 
     // =========================================================
@@ -270,11 +220,19 @@ public class ManualStitchStrategy implements StitchStrategy {
     public void updateCameraConfig(CameraConfig config) {
         if (config != null) {
             cameraConfigs.put(config.index, config);
+            configVersion.incrementAndGet();
             logger.info("Updated config for camera {}: x1={}, x2={}, y={}, h={}",
                 config.index, config.x1, config.x2, config.y, config.h);
         }
     }
 
+    /**
+     * 获取当前配置版本号
+     */
+    public long getConfigVersion() {
+        return configVersion.get();
+    }
+
     /**
      * 获取所有摄像头配置
      */
@@ -292,6 +250,7 @@ public class ManualStitchStrategy implements StitchStrategy {
                 cameraConfigs.put(config.index, config);
             }
         }
+        configVersion.incrementAndGet();
         logger.info("Set configs for {} cameras", configs != null ? configs.size() : 0);
     }
 
@@ -303,9 +262,65 @@ public class ManualStitchStrategy implements StitchStrategy {
         for (int i = 0; i < cameraCount; i++) {
             cameraConfigs.put(i, new CameraConfig(i, cameraCount));
         }
+        configVersion.incrementAndGet();
         logger.info("Reset to default config for {} cameras", cameraCount);
     }
 
+    // =========================================================
+    // 拼接计划
+    // =========================================================
+
+    /**
+     * 编译后的拼接计划（不可变）
+     * <p>
+     * 由配置版本号 + 各输入帧尺寸/类型唯一确定，记录每个有效摄像头的源 ROI 和其在输出画布中的位置。
+     */
+    private static final class StitchPlan {
+        final long version;
+        final int[] frameCols;
+        final int[] frameRows;
+        final int type;
+        final int[] cameraIndices;
+        final Rect[] srcRects;
+        final Rect[] dstRects;
+        final int width;
+        final int height;
+
+        StitchPlan(long version, int[] frameCols, int[] frameRows, int type,
+                   int[] cameraIndices, Rect[] srcRects, Rect[] dstRects, int width, int height) {
+            this.version = version;
+            this.frameCols = frameCols;
+            this.frameRows = frameRows;
+            this.type = type;
+            this.cameraIndices = cameraIndices;
+            this.srcRects = srcRects;
+            this.dstRects = dstRects;
+            this.width = width;
+            this.height = height;
+        }
+
+        static StitchPlan empty(long version, int[] frameCols, int[] frameRows, int type) {
+            return new StitchPlan(version, frameCols, frameRows, type, new int[0], new Rect[0], new Rect[0], 0, 0);
+        }
+
+        boolean isEmpty() {
+            return cameraIndices.length == 0;
+        }
+
+        boolean matches(long currentVersion, List<Mat> frames) {
+            if (version != currentVersion || frames.size() != frameCols.length) {
+                return false;
+            }
+            for (int i = 0; i < frameCols.length; i++) {
+                Mat frame = frames.get(i);
+                if (frame.cols() != frameCols[i] || frame.rows() != frameRows[i] || frame.type() != type) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     // =========================================================
     // 配置实体类
     // =========================================================
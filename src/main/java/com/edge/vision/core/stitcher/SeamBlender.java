@@ -0,0 +1,85 @@
+package com.edge.vision.core.stitcher;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 拼缝线性渐变融合
+ * <p>
+ * 权重渐变表按 (宽, 高) 缓存，左图权重从 1 线性降到 0，右图从 0 升到 1。
+ * 融合使用 Imgproc.blendLinear：8 位多通道数据一次遍历完成加权，不需要转 float / 分离通道 / 合并，
+ * 并且 dst 可以与 left 为同一块区域（原地融合）。
+ * <p>
+ * 缓存中的权重 Mat 只读，可被多个拼接线程同时使用。
+ */
+final class SeamBlender {
+
+    // 缓存上限（拼缝尺寸通常只有一两种，超过说明分辨率频繁变化，直接清空重建）
+    private static final int MAX_CACHED_RAMPS = 16;
+
+    private static final Map<Long, Ramp> ramps = new ConcurrentHashMap<>();
+
+    private SeamBlender() {
+    }
+
+    /**
+     * 融合两个同尺寸、同类型的拼缝区域
+     *
+     * @param left  拼缝左侧图像区域（权重 1 → 0）
+     * @param right 拼缝右侧图像区域（权重 0 → 1）
+     * @param dst   输出，可以是 left 本身
+     */
+    static void blend(Mat left, Mat right, Mat dst) {
+        Ramp ramp = getRamp(left.cols(), left.rows());
+        Imgproc.blendLinear(left, right, ramp.leftWeight, ramp.rightWeight, dst);
+    }
+
+    private static Ramp getRamp(int width, int height) {
+        long key = ((long) width << 32) | (height & 0xffffffffL);
+        Ramp ramp = ramps.get(key);
+        if (ramp != null) {
+            return ramp;
+        }
+        if (ramps.size() >= MAX_CACHED_RAMPS) {
+            // 不主动 release：其它线程可能仍在使用，交给 GC 回收
+            ramps.clear();
+        }
+        return ramps.computeIfAbsent(key, k -> new Ramp(width, height));
+    }
+
+    /**
+     * 一组渐变权重（CV_32FC1）
+     */
+    private static final class Ramp {
+        final Mat leftWeight;
+        final Mat rightWeight;
+
+        Ramp(int width, int height) {
+            float[] left = new float[width];
+            float[] right = new float[width];
+            for (int x = 0; x < width; x++) {
+                right[x] = (float) x / width;
+                left[x] = 1.0f - right[x];
+            }
+
+            // 先构造一行，再纵向复制，避免逐列 setTo
+            Mat leftRow = new Mat(1, width, CvType.CV_32F);
+            Mat rightRow = new Mat(1, width, CvType.CV_32F);
+            leftRow.put(0, 0, left);
+            rightRow.put(0, 0, right);
+
+            leftWeight = new Mat();
+            rightWeight = new Mat();
+            Core.repeat(leftRow, height, 1, leftWeight);
+            Core.repeat(rightRow, height, 1, rightWeight);
+
+            leftRow.release();
+            rightRow.release();
+        }
+    }
+}
@@ -3,9 +3,8 @@ package com.edge.vision.core.stitcher;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 简单水平拼接策略
@@ -35,22 +34,29 @@ public class SimpleStitchStrategy implements StitchStrategy {
             throw new IllegalArgumentException("Invalid frame dimensions");
         }
 
-        // 调整所有图像到相同高度
-        List<Mat> resized = frames.stream()
-                .map(f -> f.rows() == minH ? f.clone() : resize(f, minH))
-                .collect(Collectors.toList());
+        // 调整所有图像到相同高度（各摄像头并行缩放，高度一致的帧直接使用原图）
+        Mat[] resized = new Mat[frames.size()];
+        StitchExecutor.forEach(frames.size(), i -> {
+            Mat f = frames.get(i);
+            resized[i] = f.rows() == minH ? f : resize(f, minH);
+        });
+        List<Mat> aligned = Arrays.asList(resized);
 
         // 水平拼接
         Mat out;
-        if (blend && resized.size() >= 2) {
-            out = blendStitch(resized);
-        } else {
-            out = simpleStitch(resized);
-        }
-
-        // 清理
-        for (Mat m : resized) {
-            m.release();
+        try {
+            if (blend && aligned.size() >= 2) {
+                out = blendStitch(aligned);
+            } else {
+                out = simpleStitch(aligned);
+            }
+        } finally {
+            // 清理（只释放缩放产生的 Mat）
+            for (int i = 0; i < resized.length; i++) {
+                if (resized[i] != null && resized[i] != frames.get(i)) {
+                    resized[i].release();
+                }
+            }
         }
 
         return out;
@@ -67,146 +73,94 @@ public class SimpleStitchStrategy implements StitchStrategy {
 
         Mat result = new Mat(height, totalWidth, type, new Scalar(0));
 
-        int xOffset = 0;
-        for (Mat frame : frames) {
-            Mat roi = new Mat(result, new Rect(xOffset, 0, frame.cols(), frame.rows()));
+        int[] xOffsets = new int[frames.size()];
+        for (int i = 1; i < frames.size(); i++) {
+            xOffsets[i] = xOffsets[i - 1] + frames.get(i - 1).cols();
+        }
+
+        // 各帧目标区域互不重叠，可并行拷贝
+        StitchExecutor.forEach(frames.size(), i -> {
+            Mat frame = frames.get(i);
+            Mat roi = new Mat(result, new Rect(xOffsets[i], 0, frame.cols(), frame.rows()));
             frame.copyTo(roi);
             roi.release();
-            xOffset += frame.cols();
-        }
+        });
 
         return result;
     }
 
     /**
      * 带渐变融合的水平拼接
+     * <p>
+     * 分两个阶段：
+     * 1. 并行放置每帧的非融合部分（第一帧完整放置，其余帧跳过左侧重叠区）
+     * 2. 并行融合每条拼缝：结果中已是前一帧右侧重叠区，与当前帧左侧重叠区加权融合
+     * 帧宽不足两倍重叠宽度时相邻拼缝会重叠，此时第二阶段按顺序执行，结果与逐帧拼接一致。
      */
     private Mat blendStitch(List<Mat> frames) {
         // 计算总宽度（考虑重叠）
-        int totalWidth = 0;
         int overlapWidth = Math.min(BLEND_WIDTH, frames.get(0).cols() / 3);
-
-        for (int i = 0; i < frames.size(); i++) {
-            if (i == 0) {
-                totalWidth += frames.get(i).cols();
-            } else {
-                totalWidth += frames.get(i).cols() - overlapWidth;
+        int[] xOffsets = new int[frames.size()];
+        boolean seamsDisjoint = true;
+        for (int i = 1; i < frames.size(); i++) {
+            xOffsets[i] = xOffsets[i - 1] + frames.get(i - 1).cols() - overlapWidth;
+            if (frames.get(i).cols() < overlapWidth * 2) {
+                seamsDisjoint = false;
             }
         }
+        Mat last = frames.get(frames.size() - 1);
+        int totalWidth = xOffsets[frames.size() - 1] + last.cols();
 
         int height = frames.get(0).rows();
         int type = frames.get(0).type();
         Mat result = new Mat(height, totalWidth, type, new Scalar(0));
 
-        // 放置第一张图片
-        Mat roi1 = new Mat(result, new Rect(0, 0, frames.get(0).cols(), height));
-        frames.get(0).copyTo(roi1);
-        roi1.release();
-
-        int currentX = frames.get(0).cols();
-
-        // 拼接剩余图片（带融合）
-        for (int i = 1; i < frames.size(); i++) {
-            Mat currentFrame = frames.get(i);
-            int frameWidth = currentFrame.cols();
-
-            // 融合区域在结果中的位置
-            int blendStartX = currentX - overlapWidth;
-            int blendEndX = currentX;
-
-            // 获取融合区域
-            Mat resultBlend = new Mat(result, new Rect(blendStartX, 0, overlapWidth, height));
-            Mat frameBlend = new Mat(currentFrame, new Rect(0, 0, overlapWidth, height));
-
-            // 创建渐变权重
-            Mat alpha1 = new Mat();
-            Mat alpha2 = new Mat();
-            createBlendWeights(overlapWidth, height, alpha1, alpha2);
-
-            // 融合
-            Mat blended = new Mat();
-            addWeighted(resultBlend, alpha1, frameBlend, alpha2, blended);
-
-            // 将融合结果写回
-            blended.copyTo(resultBlend);
-
-            // 放置非融合部分
-            if (frameWidth > overlapWidth) {
-                Mat roiNonBlend = new Mat(result, new Rect(currentX, 0, frameWidth - overlapWidth, height));
-                Mat frameNonBlend = new Mat(currentFrame, new Rect(overlapWidth, 0, frameWidth - overlapWidth, height));
-                frameNonBlend.copyTo(roiNonBlend);
-                roiNonBlend.release();
-                frameNonBlend.release();
+        // 阶段 1：放置非融合部分
+        StitchExecutor.forEach(frames.size(), i -> {
+            Mat frame = frames.get(i);
+            int skip = i == 0 ? 0 : overlapWidth;
+            if (frame.cols() > skip) {
+                Mat roi = new Mat(result, new Rect(xOffsets[i] + skip, 0, frame.cols() - skip, height));
+                Mat src = new Mat(frame, new Rect(skip, 0, frame.cols() - skip, height));
+                src.copyTo(roi);
+                roi.release();
+                src.release();
             }
+        });
 
-            // 清理
-            resultBlend.release();
-            frameBlend.release();
-            alpha1.release();
-            alpha2.release();
-            blended.release();
-
-            currentX += frameWidth - overlapWidth;
+        // 阶段 2：融合拼缝
+        if (seamsDisjoint) {
+            StitchExecutor.forEach(frames.size() - 1,
+                    s -> blendSeam(result, frames.get(s + 1), xOffsets[s + 1], overlapWidth));
+        } else {
+            for (int i = 1; i < frames.size(); i++) {
+                blendSeam(result, frames.get(i), xOffsets[i], overlapWidth);
+            }
         }
 
         return result;
     }
 
     /**
-     * 创建渐变权重图
+     * 融合一条拼缝（原地写回结果）
+     *
+     * @param result       拼接结果
+     * @param currentFrame 拼缝右侧的帧
+     * @param blendStartX  融合区域在结果中的起始 x（即当前帧的放置位置）
      */
-    private void createBlendWeights(int width, int height, Mat alpha1, Mat alpha2) {
-        alpha1.create(height, width, CvType.CV_32F);
-        alpha2.create(height, width, CvType.CV_32F);
-
-        // 创建渐变：从左到右，alpha1 从 1 到 0，alpha2 从 0 到 1
-        for (int x = 0; x < width; x++) {
-            float a1 = 1.0f - (float) x / width;
-            float a2 = (float) x / width;
-            alpha1.col(x).setTo(new Scalar(a1));
-            alpha2.col(x).setTo(new Scalar(a2));
-        }
-    }
-
-    /**
-     * 带权重的图像融合
-     */
-    private void addWeighted(Mat src1, Mat alpha1, Mat src2, Mat alpha2, Mat dst) {
-        // 转换为 float
-        Mat src1f = new Mat();
-        Mat src2f = new Mat();
-        src1.convertTo(src1f, CvType.CV_32F);
-        src2.convertTo(src2f, CvType.CV_32F);
-
-        // 分离通道
-        List<Mat> channels1 = new ArrayList<>();
-        List<Mat> channels2 = new ArrayList<>();
-        Core.split(src1f, channels1);
-        Core.split(src2f, channels2);
-
-        List<Mat> resultChannels = new ArrayList<>();
-
-        // 对每个通道进行加权融合
-        for (int c = 0; c < channels1.size(); c++) {
-            Mat weighted = new Mat();
-            Core.multiply(channels1.get(c), alpha1, weighted);
-            Core.multiply(channels2.get(c), alpha2, channels2.get(c));
-            Core.add(weighted, channels2.get(c), weighted);
-            resultChannels.add(weighted);
-        }
+    private void blendSeam(Mat result, Mat currentFrame, int blendStartX, int overlapWidth) {
+        int height = result.rows();
 
-        // 合并通道
-        Core.merge(resultChannels, dst);
+        // 获取融合区域
+        Mat resultBlend = new Mat(result, new Rect(blendStartX, 0, overlapWidth, height));
+        Mat frameBlend = new Mat(currentFrame, new Rect(0, 0, overlapWidth, height));
 
-        // 转换回原始类型
-        dst.convertTo(dst, src1.type());
+        // 融合并写回
+        SeamBlender.blend(resultBlend, frameBlend, resultBlend);
 
         // 清理
-        src1f.release();
-        src2f.release();
-        for (Mat m : channels1) m.release();
-        for (Mat m : channels2) m.release();
-        for (Mat m : resultChannels) m.release();
+        resultBlend.release();
+        frameBlend.release();
     }
 
     /**
@@ -0,0 +1,91 @@
+package com.edge.vision.core.stitcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.IntConsumer;
+
+/**
+ * 拼接并行执行器
+ * <p>
+ * 所有拼接策略共享一个有界 ForkJoinPool，用于按摄像头/按拼缝并行处理。
+ * 线程数默认为 CPU 核数 - 2（至少 1），给推理引擎预留核心；parallelism = 1 时退化为串行执行。
+ * <p>
+ * 不使用 parallel stream 的公共池，避免与 Web 请求中的其它并行任务争抢，也便于限制总线程数。
+ */
+public final class StitchExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(StitchExecutor.class);
+
+    // 为推理预留的核心数
+    private static final int RESERVED_CORES = 2;
+
+    private static volatile ForkJoinPool pool = createPool(defaultParallelism());
+
+    private StitchExecutor() {
+    }
+
+    /**
+     * 设置并行度
+     *
+     * @param parallelism 线程数，<= 0 表示自动（CPU 核数 - 2，至少 1）
+     */
+    public static synchronized void configure(int parallelism) {
+        int target = parallelism > 0 ? parallelism : defaultParallelism();
+        if (target == pool.getParallelism()) {
+            return;
+        }
+        ForkJoinPool old = pool;
+        pool = createPool(target);
+        old.shutdown();
+        logger.info("Stitch executor parallelism set to {}", target);
+    }
+
+    /**
+     * 当前并行度
+     */
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * 并行执行 task(0) .. task(count - 1)，全部完成后返回
+     * <p>
+     * 任一任务抛出的异常会在调用线程重新抛出。
+     */
+    public static void forEach(int count, IntConsumer task) {
+        ForkJoinPool current = pool;
+        if (count <= 1 || current.getParallelism() <= 1) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks.add(current.submit(() -> task.accept(index)));
+        }
+        for (ForkJoinTask<?> t : tasks) {
+            t.join();
+        }
+    }
+
+    private static int defaultParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - RESERVED_CORES);
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        return new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("Stitch-Worker-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+}
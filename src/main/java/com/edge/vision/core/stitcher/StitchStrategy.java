@@ -11,4 +11,22 @@ public interface StitchStrategy {
      * @return 拼接后的图像
      */
     Mat stitch(List<Mat> frames);
-}
\ No newline at end of file
+
+    /**
+     * 拼接到调用方提供的画布中，画布尺寸、类型一致时不会重新分配内存
+     * <p>
+     * 默认实现为 stitch() + copyTo，支持直接写入画布的策略应覆盖此方法
+     * @param frames 图像帧列表
+     * @param canvas 输出画布
+     * @return 拼接后的图像（通常就是 canvas）
+     */
+    default Mat stitchInto(List<Mat> frames, Mat canvas) {
+        Mat stitched = stitch(frames);
+        try {
+            stitched.copyTo(canvas);
+            return canvas;
+        } finally {
+            stitched.release();
+        }
+    }
+}
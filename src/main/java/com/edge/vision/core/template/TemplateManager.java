@@ -1,6 +1,9 @@
 package com.edge.vision.core.template;
 
 import com.edge.vision.core.template.model.Template;
+import com.edge.vision.core.topology.CompiledTemplateCache;
+import com.edge.vision.util.FeatureBackend;
+import com.edge.vision.util.HomographyTracker;
 import com.edge.vision.util.VisionTool;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -27,12 +30,30 @@ import java.util.concurrent.ConcurrentHashMap;
 public class TemplateManager {
     private static final Logger logger = LoggerFactory.getLogger(TemplateManager.class);
 
+    // 模板特征金字塔文件后缀（与模板 JSON 同目录）
+    private static final String FEATURES_SUFFIX = ".features";
+
     @Value("${edge-vision.template.directory:templates}")
     private String templateDirectory;
 
     @Value("${edge-vision.template.auto-load:true}")
     private boolean autoLoad;
 
+    @Value("${edge-vision.inspection.feature-backend:sift}")
+    private String featureBackend;
+
+    @Value("${edge-vision.inspection.feature-min-inliers:15}")
+    private int featureMinInliers;
+
+    @Value("${edge-vision.inspection.optimal-assignment:false}")
+    private boolean optimalAssignment;
+
+    @Value("${edge-vision.inspection.tracking-enabled:false}")
+    private boolean trackingEnabled;
+
+    @Value("${edge-vision.inspection.tracking-max-frames:50}")
+    private int trackingMaxFrames;
+
     private final ObjectMapper objectMapper;
     private final Map<String, Template> templateCache;
     private Template currentTemplate;
@@ -46,6 +67,9 @@ public class TemplateManager {
 
     @PostConstruct
     public void init() {
+        VisionTool.configureFeatureBackend(FeatureBackend.parse(featureBackend, FeatureBackend.SIFT), featureMinInliers);
+        HomographyTracker.configure(trackingEnabled, trackingMaxFrames);
+        VisionTool.configureMatchAssignment(optimalAssignment);
         if (autoLoad) {
             loadAllTemplates();
             templateCache.values().forEach(v-> VisionTool.getOrComputeTemplateFeatures(v));
@@ -73,6 +97,7 @@ public class TemplateManager {
 
         Template template = objectMapper.readValue(path.toFile(), Template.class);
         templateCache.put(templateId, template);
+        CompiledTemplateCache.compile(template);
         logger.info("Loaded template: {} from {}", templateId, path);
         return template;
     }
@@ -89,6 +114,7 @@ public class TemplateManager {
 
         // 添加到缓存
         templateCache.put(template.getTemplateId(), template);
+        CompiledTemplateCache.compile(template);
         logger.info("Loaded template from file: {}", templatePath);
         return template;
     }
@@ -177,12 +203,24 @@ public class TemplateManager {
             Files.createDirectories(dirPath);
         }
 
+        // 预计算多尺度特征并持久化（同 ID 的模板图片可能已变化，旧的特征/FLANN 索引一并替换）
+        Path featuresPath = dirPath.resolve(template.getTemplateId() + FEATURES_SUFFIX);
+        try {
+            VisionTool.saveTemplateFeatures(template, featuresPath);
+            template.setFeaturesPath(featuresPath.toString());
+        } catch (Exception e) {
+            logger.warn("Failed to precompute features for template {}: {}", template.getTemplateId(), e.getMessage());
+            template.setFeaturesPath(null);
+            VisionTool.clearCache(template.getTemplateId());
+        }
+
         // 保存到文件
         Path path = dirPath.resolve(template.getTemplateId() + ".json");
         objectMapper.writeValue(path.toFile(), template);
 
-        // 更新缓存
+        // 更新缓存（拓扑图、指纹库等匹配结构一并重新编译）
         templateCache.put(template.getTemplateId(), template);
+        CompiledTemplateCache.compile(template);
         logger.info("Saved template: {} (partType: {}) to {}", template.getTemplateId(), partType, path);
 
         // 如果是多摄像头模板，自动设置当前工件类型
@@ -212,6 +250,7 @@ public class TemplateManager {
                 try {
                     Template template = objectMapper.readValue(file, Template.class);
                     templateCache.put(template.getTemplateId(), template);
+                    CompiledTemplateCache.compile(template);
                     logger.debug("Loaded template: {}", template.getTemplateId());
                 } catch (IOException e) {
                     logger.error("Failed to load template from {}", file, e);
@@ -281,6 +320,8 @@ public class TemplateManager {
     public void removeTemplate(String templateId) {
         // 先从缓存移除
         templateCache.remove(templateId);
+        VisionTool.clearCache(templateId);
+        CompiledTemplateCache.invalidate(templateId);
 
         // 如果删除的是当前激活的模板，清空
         if (currentTemplate != null &&
@@ -297,6 +338,7 @@ public class TemplateManager {
             } else {
                 logger.warn("Template file not found: {}", path);
             }
+            Files.deleteIfExists(Paths.get(templateDirectory, templateId + FEATURES_SUFFIX));
         } catch (IOException e) {
             logger.error("Failed to delete template file for: {}", templateId, e);
         }
@@ -309,6 +351,8 @@ public class TemplateManager {
      */
     public void clearCache() {
         templateCache.clear();
+        VisionTool.clearAllCaches();
+        CompiledTemplateCache.clear();
         currentTemplate = null;
         currentPartType = null;
         logger.info("Template cache cleared");
@@ -25,6 +25,10 @@ public class Template {
     private LocalDateTime createdAt;
     private ImageSize imageSize;
     private String imagePath;
+    // 多尺度 SIFT 特征文件（保存模板时生成，与模板 JSON 放在同一目录）
+    private String featuresPath;
+    // 定位特征后端：sift / orb / akaze，为空时使用全局配置 edge-vision.inspection.feature-backend
+    private String featureBackend;
     private BoundingBox boundingBox;
 
     // 核心数据：特征列表
@@ -68,6 +72,12 @@ public class Template {
     public String getImagePath() { return imagePath; }
     public void setImagePath(String imagePath) { this.imagePath = imagePath; }
 
+    public String getFeaturesPath() { return featuresPath; }
+    public void setFeaturesPath(String featuresPath) { this.featuresPath = featuresPath; }
+
+    public String getFeatureBackend() { return featureBackend; }
+    public void setFeatureBackend(String featureBackend) { this.featureBackend = featureBackend; }
+
     public BoundingBox getBoundingBox() { return boundingBox; }
     public void setBoundingBox(BoundingBox boundingBox) { this.boundingBox = boundingBox; }
 
@@ -0,0 +1,361 @@
+package com.edge.vision.core.topology;
+
+import java.util.Arrays;
+
+/**
+ * 线性分配求解器（最短增广路 + 对偶势，Jonker-Volgenant 系列算法）
+ * <p>
+ * 与 {@link HungarianAlgorithm} 相比：
+ * - 保证最优：每一行都沿最短增广路加入，不依赖迭代上限
+ * - 矩形矩阵无需补成方阵：行数 ≤ 列数时直接求解，行数 > 列数时转置求解
+ * - 代价矩阵为一维 double 数组（行优先），避免 double[][] 的逐行对象
+ * <p>
+ * 时间复杂度: O(r² · c)，r = min(行, 列)，c = max(行, 列)
+ * 空间复杂度: O(行 + 列)（不含输入）
+ * <p>
+ * 稀疏版本 {@link #solveSparse} 只在候选边（例如距离在门限内的点对）上求解：
+ * 每行用 Dijkstra 在候选边上找最短增广路（二叉堆，只访问可达的列），没有可用候选的行不分配。
+ * 结果是候选边上匹配数最多的方案中总代价最小的一个，复杂度约 O(r · E · log E)，E 为候选边数。
+ */
+public final class AssignmentSolver {
+
+    private AssignmentSolver() {
+    }
+
+    /**
+     * 求解最小代价分配
+     *
+     * @param costMatrix 代价矩阵，costMatrix[i][j] 表示将行 i 分配给列 j 的代价
+     * @return result[i] = j 表示行 i 分配到列 j；行数多于列数时多出的行为 -1
+     */
+    public static int[] solve(double[][] costMatrix) {
+        if (costMatrix == null || costMatrix.length == 0 || costMatrix[0].length == 0) {
+            return costMatrix == null ? new int[0] : filled(costMatrix.length);
+        }
+        int rows = costMatrix.length;
+        int cols = costMatrix[0].length;
+        double[] flat = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(costMatrix[i], 0, flat, i * cols, cols);
+        }
+        return solve(flat, rows, cols);
+    }
+
+    /**
+     * 求解最小代价分配（行优先一维代价数组）
+     *
+     * @param cost 代价，cost[i * cols + j] 为行 i 分配给列 j 的代价（不会被修改）
+     * @param rows 行数
+     * @param cols 列数
+     * @return result[i] = j 表示行 i 分配到列 j；行数多于列数时多出的行为 -1
+     */
+    public static int[] solve(double[] cost, int rows, int cols) {
+        if (rows == 0 || cols == 0) {
+            return filled(rows);
+        }
+        if (rows <= cols) {
+            return solveWide(cost, rows, cols, false);
+        }
+        // 行多于列：按转置求解（列 → 行），再反向映射
+        int[] colToRow = solveWide(cost, cols, rows, true);
+        int[] result = filled(rows);
+        for (int j = 0; j < cols; j++) {
+            if (colToRow[j] >= 0) {
+                result[colToRow[j]] = j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 行数 n ≤ 列数 m 的最短增广路求解
+     *
+     * @param transposed true 时 cost 按 m 行 n 列存储，读取 cost[j * n + i]
+     */
+    private static int[] solveWide(double[] cost, int n, int m, boolean transposed) {
+        // 下标从 1 开始，0 号列作为增广起点的哨兵
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] p = new int[m + 1];      // p[j] = 分配给列 j 的行（0 表示空闲）
+        int[] way = new int[m + 1];    // 最短路树中列 j 的前驱列
+        double[] minv = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                int base = (i0 - 1) * m;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) continue;
+                    double c = transposed ? cost[(j - 1) * n + (i0 - 1)] : cost[base + j - 1];
+                    double cur = c - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            // 沿最短路翻转分配
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] result = filled(n);
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                result[p[j] - 1] = j - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 稀疏最小代价分配（候选边以 CSR 格式给出，代价须非负）
+     *
+     * @param rows     行数
+     * @param cols     列数
+     * @param rowStart 长度 rows + 1，行 i 的候选边为 [rowStart[i], rowStart[i + 1])
+     * @param colIndex 候选边的列下标
+     * @param cost     候选边的代价（≥ 0）
+     * @return result[i] = j 表示行 i 分配到列 j，-1 表示未分配（没有可用候选）
+     */
+    public static int[] solveSparse(int rows, int cols, int[] rowStart, int[] colIndex, double[] cost) {
+        int[] rowMatch = filled(rows);
+        if (rows == 0 || cols == 0 || colIndex.length == 0) {
+            return rowMatch;
+        }
+
+        // 每行额外有一个只属于自己的"不分配"列（下标 cols + i），代价大于任意一组真实匹配的代价之和：
+        // 所有行都能完成增广，且最优解先保证真实匹配数最多，再使真实代价最小
+        double maxCost = 0;
+        for (double c : cost) maxCost = Math.max(maxCost, c);
+        double unassignedCost = (maxCost + 1) * (Math.min(rows, cols) + 1);
+
+        int totalCols = cols + rows;
+        int[] colMatch = filled(totalCols);
+        double[] u = new double[rows];
+        // 对偶势从 0 开始（代价非负，约简代价 c - u - v ≥ 0 成立）；
+        // 空闲列的势始终为 0，增广终点之间才可以直接比较
+        double[] v = new double[totalCols];
+
+        double[] dist = new double[totalCols];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] predRow = new int[totalCols];
+        boolean[] done = new boolean[totalCols];
+        int[] touched = new int[totalCols];
+        int[] finalized = new int[totalCols];
+        Heap heap = new Heap(colIndex.length + totalCols);
+
+        for (int s = 0; s < rows; s++) {
+            int touchedCount = 0;
+            int finalizedCount = 0;
+            heap.clear();
+            for (int e = rowStart[s]; e <= rowStart[s + 1]; e++) {
+                int j = e < rowStart[s + 1] ? colIndex[e] : cols + s;
+                double c = e < rowStart[s + 1] ? cost[e] : unassignedCost;
+                double d = c - u[s] - v[j];
+                if (d < dist[j]) {
+                    if (dist[j] == Double.POSITIVE_INFINITY) touched[touchedCount++] = j;
+                    dist[j] = d;
+                    predRow[j] = s;
+                    heap.push(d, j);
+                }
+            }
+
+            // Dijkstra：第一个出堆的空闲列即为最短增广路终点（行自己的"不分配"列保证一定存在）
+            int freeCol = -1;
+            while (!heap.isEmpty()) {
+                double d = heap.peekKey();
+                int j = heap.pop();
+                if (done[j] || d > dist[j]) continue;
+                done[j] = true;
+                finalized[finalizedCount++] = j;
+                if (colMatch[j] < 0) {
+                    freeCol = j;
+                    break;
+                }
+                int i = colMatch[j];
+                for (int e = rowStart[i]; e <= rowStart[i + 1]; e++) {
+                    int k = e < rowStart[i + 1] ? colIndex[e] : cols + i;
+                    if (done[k]) continue;
+                    double c = e < rowStart[i + 1] ? cost[e] : unassignedCost;
+                    double nd = d + c - u[i] - v[k];
+                    if (nd < dist[k]) {
+                        if (dist[k] == Double.POSITIVE_INFINITY) touched[touchedCount++] = k;
+                        dist[k] = nd;
+                        predRow[k] = i;
+                        heap.push(nd, k);
+                    }
+                }
+            }
+
+            // 更新对偶势，保持约简代价非负、已匹配边约简代价为 0
+            double total = dist[freeCol];
+            u[s] += total;
+            for (int f = 0; f < finalizedCount; f++) {
+                int j = finalized[f];
+                double shift = total - dist[j];
+                v[j] -= shift;
+                if (j != freeCol) u[colMatch[j]] += shift;
+            }
+            // 沿前驱翻转
+            int j = freeCol;
+            while (true) {
+                int i = predRow[j];
+                int prev = rowMatch[i];
+                colMatch[j] = i;
+                rowMatch[i] = j;
+                if (i == s) break;
+                j = prev;
+            }
+
+            for (int t = 0; t < touchedCount; t++) {
+                dist[touched[t]] = Double.POSITIVE_INFINITY;
+                done[touched[t]] = false;
+            }
+        }
+
+        for (int i = 0; i < rows; i++) {
+            if (rowMatch[i] >= cols) rowMatch[i] = -1;
+        }
+        return rowMatch;
+    }
+
+    /**
+     * 按门限构建稀疏分配：只保留 cost ≤ gate 的点对
+     *
+     * @param cost 行优先稠密代价（只读取，不要求预先过滤）
+     * @param gate 门限，超过门限的点对不作为候选
+     */
+    public static int[] solveGated(double[] cost, int rows, int cols, double gate) {
+        int[] rowStart = new int[rows + 1];
+        int nnz = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (cost[i * cols + j] <= gate) nnz++;
+            }
+            rowStart[i + 1] = nnz;
+        }
+        int[] colIndex = new int[nnz];
+        double[] edgeCost = new double[nnz];
+        int e = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                double c = cost[i * cols + j];
+                if (c <= gate) {
+                    colIndex[e] = j;
+                    edgeCost[e++] = c;
+                }
+            }
+        }
+        return solveSparse(rows, cols, rowStart, colIndex, edgeCost);
+    }
+
+    /**
+     * 最小堆（键为距离，值为列下标），允许重复插入，出堆时按 dist 过滤过期项
+     */
+    private static final class Heap {
+        private double[] keys;
+        private int[] values;
+        private int size;
+
+        Heap(int capacity) {
+            keys = new double[Math.max(4, capacity)];
+            values = new int[keys.length];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int result = values[0];
+            size--;
+            if (size > 0) {
+                double key = keys[size];
+                int value = values[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                    if (keys[child] >= key) break;
+                    keys[i] = keys[child];
+                    values[i] = values[child];
+                    i = child;
+                }
+                keys[i] = key;
+                values[i] = value;
+            }
+            return result;
+        }
+    }
+
+    private static int[] filled(int n) {
+        int[] result = new int[n];
+        Arrays.fill(result, -1);
+        return result;
+    }
+
+    /**
+     * 计算分配的总代价（未分配的行不计）
+     */
+    public static double totalCost(double[] cost, int cols, int[] assignment) {
+        double total = 0.0;
+        for (int i = 0; i < assignment.length; i++) {
+            if (assignment[i] >= 0) {
+                total += cost[i * cols + assignment[i]];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,240 @@
+package com.edge.vision.core.topology;
+
+import com.edge.vision.core.template.model.ImageSize;
+import com.edge.vision.core.template.model.Point;
+import com.edge.vision.core.template.model.Template;
+import com.edge.vision.core.template.model.TemplateFeature;
+
+import java.util.*;
+
+/**
+ * 编译后的模板（只读）
+ * <p>
+ * 把各匹配器每次调用都要从模板重建的结构预先算好：
+ * - 模板拓扑图（k 近邻边，{@link TopologyTemplateMatcher}）
+ * - 交比指纹库与指纹计算器（{@link CrossRatioMatcher}）
+ * - 按类别分组的特征（全部 / 仅必需特征）
+ * - 必需特征的空间索引（整体一个，按类别各一个，{@link CoordinateBasedMatcher}）
+ * <p>
+ * 构建完成后不再修改，可以被多个线程同时使用；模板内容变化后由 {@link CompiledTemplateCache} 按版本重建。
+ */
+public final class CompiledTemplate {
+
+    // 模板未指定画布尺寸时指纹参考系使用的默认尺寸
+    private static final int DEFAULT_CANVAS_WIDTH = 1920;
+    private static final int DEFAULT_CANVAS_HEIGHT = 1080;
+
+    private final String templateId;
+    private final long version;
+    private final TopologyGraph graph;
+    private final ImageSize canvasSize;
+    private final boolean defaultCanvas;
+    private final CrossRatioFingerprint.Calculator fingerprintCalculator;
+    private final Map<String, CrossRatioFingerprint> fingerprints;
+    private final Map<Integer, List<TemplateFeature>> featuresByClass;
+    private final Map<Integer, List<TemplateFeature>> requiredFeaturesByClass;
+    private final List<TemplateFeature> requiredFeatures;
+    private final FeatureIndex requiredIndex;
+    private final Map<Integer, FeatureIndex> requiredIndexByClass;
+    private final long compileTimeMs;
+
+    private CompiledTemplate(Template template, long version) {
+        long start = System.currentTimeMillis();
+        this.templateId = template.getTemplateId();
+        this.version = version;
+
+        // 1. 拓扑图
+        this.graph = TopologyGraph.fromTemplate(template);
+
+        // 2. 交比指纹（五点参考系由画布尺寸决定）
+        ImageSize size = template.getImageSize();
+        this.defaultCanvas = size == null;
+        this.canvasSize = size != null ? new ImageSize(size.getWidth(), size.getHeight())
+                : new ImageSize(DEFAULT_CANVAS_WIDTH, DEFAULT_CANVAS_HEIGHT);
+        this.fingerprintCalculator = new CrossRatioFingerprint.Calculator(
+                new CrossRatioFingerprint.ReferencePoints(canvasSize.getWidth(), canvasSize.getHeight()));
+        Map<String, CrossRatioFingerprint> fps = new LinkedHashMap<>();
+        for (TemplateFeature feature : template.getFeatures()) {
+            if (feature.getPosition() != null) {
+                fps.put(feature.getId(), fingerprintCalculator.calculate(feature.getPosition(), feature.getId()));
+            }
+        }
+        this.fingerprints = Collections.unmodifiableMap(fps);
+
+        // 3. 类别分组（组内保持模板顺序）
+        Map<Integer, List<TemplateFeature>> all = new HashMap<>();
+        Map<Integer, List<TemplateFeature>> required = new HashMap<>();
+        List<TemplateFeature> requiredList = new ArrayList<>();
+        for (TemplateFeature feature : template.getFeatures()) {
+            all.computeIfAbsent(feature.getClassId(), k -> new ArrayList<>()).add(feature);
+            if (feature.isRequired()) {
+                required.computeIfAbsent(feature.getClassId(), k -> new ArrayList<>()).add(feature);
+                requiredList.add(feature);
+            }
+        }
+        this.featuresByClass = freeze(all);
+        this.requiredFeaturesByClass = freeze(required);
+        this.requiredFeatures = Collections.unmodifiableList(requiredList);
+
+        // 4. 空间索引
+        this.requiredIndex = new FeatureIndex(requiredList);
+        Map<Integer, FeatureIndex> byClass = new HashMap<>();
+        for (Map.Entry<Integer, List<TemplateFeature>> entry : requiredFeaturesByClass.entrySet()) {
+            byClass.put(entry.getKey(), new FeatureIndex(entry.getValue()));
+        }
+        this.requiredIndexByClass = Collections.unmodifiableMap(byClass);
+
+        this.compileTimeMs = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 编译模板
+     */
+    public static CompiledTemplate compile(Template template) {
+        return new CompiledTemplate(template, versionOf(template));
+    }
+
+    static CompiledTemplate compile(Template template, long version) {
+        return new CompiledTemplate(template, version);
+    }
+
+    /**
+     * 模板内容版本
+     * <p>
+     * 模板没有显式版本号，且可能在内存中被直接修改（例如接口更新特征），
+     * 因此按编译结果依赖的内容计算签名：k 值、画布尺寸、每个特征的对象身份、ID、类别、位置、是否必需。
+     * 计算代价 O(n)，远小于重建 k 近邻图。
+     */
+    public static long versionOf(Template template) {
+        long h = 1125899906842597L;
+        h = 31 * h + template.getTopologyK();
+        ImageSize size = template.getImageSize();
+        h = 31 * h + (size == null ? -1 : ((long) size.getWidth() << 32 | size.getHeight()));
+        List<TemplateFeature> features = template.getFeatures();
+        h = 31 * h + System.identityHashCode(features);
+        for (TemplateFeature feature : features) {
+            h = 31 * h + System.identityHashCode(feature);
+            h = 31 * h + Objects.hashCode(feature.getId());
+            h = 31 * h + feature.getClassId();
+            h = 31 * h + (feature.isRequired() ? 1 : 0);
+            Point p = feature.getPosition();
+            if (p == null) {
+                h = 31 * h - 1;
+            } else {
+                h = 31 * h + Double.doubleToLongBits(p.x);
+                h = 31 * h + Double.doubleToLongBits(p.y);
+            }
+        }
+        return h;
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 距离最近的同类必需特征（距离相同时取模板顺序靠前的）
+     */
+    public TemplateFeature nearestRequired(int classId, Point p) {
+        FeatureIndex index = requiredIndexByClass.get(classId);
+        if (index == null) {
+            return null;
+        }
+        int i = index.grid.nearest(p.x, p.y);
+        return i >= 0 ? index.features[i] : null;
+    }
+
+    /**
+     * 距离严格小于 radius 的必需特征中模板顺序最靠前的一个
+     */
+    public TemplateFeature firstRequiredWithin(Point p, double radius) {
+        int i = requiredIndex.grid.firstWithin(p.x, p.y, radius);
+        return i >= 0 ? requiredIndex.features[i] : null;
+    }
+
+    // ==================== Getters ====================
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 模板拓扑图（只读，调用方不得修改）
+     */
+    public TopologyGraph getGraph() {
+        return graph;
+    }
+
+    public ImageSize getCanvasSize() {
+        return canvasSize;
+    }
+
+    public boolean isDefaultCanvas() {
+        return defaultCanvas;
+    }
+
+    public CrossRatioFingerprint.Calculator getFingerprintCalculator() {
+        return fingerprintCalculator;
+    }
+
+    public Map<String, CrossRatioFingerprint> getFingerprints() {
+        return fingerprints;
+    }
+
+    public Map<Integer, List<TemplateFeature>> getFeaturesByClass() {
+        return featuresByClass;
+    }
+
+    public Map<Integer, List<TemplateFeature>> getRequiredFeaturesByClass() {
+        return requiredFeaturesByClass;
+    }
+
+    public List<TemplateFeature> getRequiredFeatures() {
+        return requiredFeatures;
+    }
+
+    public long getCompileTimeMs() {
+        return compileTimeMs;
+    }
+
+    private static Map<Integer, List<TemplateFeature>> freeze(Map<Integer, List<TemplateFeature>> map) {
+        Map<Integer, List<TemplateFeature>> frozen = new HashMap<>();
+        for (Map.Entry<Integer, List<TemplateFeature>> entry : map.entrySet()) {
+            frozen.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(frozen);
+    }
+
+    /**
+     * 有位置的特征 + 网格索引（网格下标即 features 下标，保持模板顺序）
+     */
+    private static final class FeatureIndex {
+        final TemplateFeature[] features;
+        final PointGrid grid;
+
+        FeatureIndex(List<TemplateFeature> source) {
+            List<TemplateFeature> located = new ArrayList<>(source.size());
+            for (TemplateFeature feature : source) {
+                if (feature.getPosition() != null) {
+                    located.add(feature);
+                }
+            }
+            this.features = located.toArray(new TemplateFeature[0]);
+            double[] xs = new double[features.length];
+            double[] ys = new double[features.length];
+            for (int i = 0; i < features.length; i++) {
+                xs[i] = features[i].getPosition().x;
+                ys[i] = features[i].getPosition().y;
+            }
+            this.grid = new PointGrid(xs, ys, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompiledTemplate[%s, v=%016x, %d features, %d classes, %dms]",
+                templateId, version, fingerprints.size(), featuresByClass.size(), compileTimeMs);
+    }
+}
@@ -0,0 +1,109 @@
+package com.edge.vision.core.topology;
+
+import com.edge.vision.core.template.model.Template;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编译模板缓存
+ * <p>
+ * 以 模板 ID + 版本（{@link CompiledTemplate#versionOf}）为键，每个模板 ID 只保留最新版本。
+ * TemplateManager 在保存/加载模板时预先编译；匹配器通过 {@link #get} 取用，
+ * 如果模板在内存中被修改过（版本不一致）或从未编译，会在这里重新编译一次。
+ * <p>
+ * 编译结果是只读的，多线程共享；同一模板并发请求时只编译一次。
+ */
+public final class CompiledTemplateCache {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledTemplateCache.class);
+
+    private static final Map<String, CompiledTemplate> cache = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong compiles = new AtomicLong();
+    private static final AtomicLong compileTimeMs = new AtomicLong();
+
+    private CompiledTemplateCache() {
+    }
+
+    /**
+     * 获取模板的编译结果（版本不一致时重新编译）
+     */
+    public static CompiledTemplate get(Template template) {
+        String id = template.getTemplateId();
+        long version = CompiledTemplate.versionOf(template);
+        if (id == null) {
+            // 没有 ID 的临时模板不缓存
+            return record(CompiledTemplate.compile(template, version));
+        }
+
+        CompiledTemplate cached = cache.get(id);
+        if (cached != null && cached.getVersion() == version) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        return cache.compute(id, (k, old) -> {
+            if (old != null && old.getVersion() == version) {
+                hits.incrementAndGet();
+                return old;
+            }
+            return record(CompiledTemplate.compile(template, version));
+        });
+    }
+
+    /**
+     * 预编译模板（模板保存/加载时调用）
+     */
+    public static CompiledTemplate compile(Template template) {
+        return get(template);
+    }
+
+    /**
+     * 移除某模板的编译结果（模板删除时调用）
+     */
+    public static void invalidate(String templateId) {
+        if (templateId != null) {
+            cache.remove(templateId);
+        }
+    }
+
+    /**
+     * 清空全部编译结果
+     */
+    public static void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 缓存统计
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("templates", cache.size());
+        result.put("hits", hits.get());
+        result.put("compiles", compiles.get());
+        result.put("totalCompileTimeMs", compileTimeMs.get());
+        Map<String, Object> entries = new LinkedHashMap<>();
+        for (CompiledTemplate compiled : cache.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("version", String.format("%016x", compiled.getVersion()));
+            entry.put("features", compiled.getFingerprints().size());
+            entry.put("classes", compiled.getFeaturesByClass().size());
+            entry.put("graphNodes", compiled.getGraph().getNodeCount());
+            entry.put("compileTimeMs", compiled.getCompileTimeMs());
+            entries.put(compiled.getTemplateId(), entry);
+        }
+        result.put("entries", entries);
+        return result;
+    }
+
+    private static CompiledTemplate record(CompiledTemplate compiled) {
+        compiles.incrementAndGet();
+        compileTimeMs.addAndGet(compiled.getCompileTimeMs());
+        logger.debug("编译模板: {}", compiled);
+        return compiled;
+    }
+}
@@ -38,6 +38,9 @@ public class CoordinateBasedMatcher {
     // 最小内点比例（RANSAC，低于此比例拒绝旋转）
     private double minInlierRatio = 0.5;
 
+    // RANSAC 自适应迭代置信度（0 < p < 1 时按置信度提前结束，其他值表示固定迭代次数）
+    private double ransacConfidence = 0.0;
+
     // 最大允许遮挡率（超过此比例拒绝匹配）
     private double maxOcclusionRate = 0.7;
 
@@ -64,10 +67,13 @@ public class CoordinateBasedMatcher {
         // 按类别分组检测对象
         Map<Integer, List<DetectedObject>> detectedByClass = groupDetectedByClass(detectedObjects);
 
+        // 模板侧的类别分组与空间索引取自编译缓存
+        CompiledTemplate compiled = CompiledTemplateCache.get(template);
+
         // ========== 步骤1：基于所有点计算全局变换（迭代优化法） ==========
         AffineTransform transform = null;
         try {
-            transform = calculateTransformFromAllPoints(template, detectedObjects);
+            transform = calculateTransformFromAllPoints(template, compiled, detectedObjects);
 
             if (transform != null) {
                 logger.info("计算得到全局变换: dx={}, dy={}, angle={}°",
@@ -240,7 +246,7 @@ public class CoordinateBasedMatcher {
                 if (!matchedDetectedObjects.contains(obj)) {
                     // 找最近的同类模板特征作为 expectedPosition
                     Point nearestTemplatePos = findNearestTemplateFeature(
-                        template, obj.getClassId(), obj.getCenter());
+                        compiled, obj.getClassId(), obj.getCenter());
 
                     FeatureComparison comp = FeatureComparison.extra(
                         "detected_" + i,
@@ -254,7 +260,7 @@ public class CoordinateBasedMatcher {
                     if (nearestTemplatePos != null) {
                         comp.setExpectedPosition(nearestTemplatePos);
                         comp.setExpectedFeatureName(
-                            getFeatureNameAtPosition(template, nearestTemplatePos));
+                            getFeatureNameAtPosition(compiled, nearestTemplatePos));
                     }
                     result.addComparison(comp);
                     logger.info("错检: 检测[{}] ({}) at ({}, {}), 最近的模板特征在 ({}, {})",
@@ -286,16 +292,10 @@ public class CoordinateBasedMatcher {
      *
      * @throws IllegalStateException 当遮挡严重或匹配质量过低时抛出异常
      */
-    private AffineTransform calculateTransformFromAllPoints(Template template, List<DetectedObject> detectedObjects) {
-        // 按类别分组
-        Map<Integer, List<TemplateFeature>> templateFeaturesByClass = new HashMap<>();
-        for (TemplateFeature feature : template.getFeatures()) {
-            if (feature.isRequired()) {
-                templateFeaturesByClass
-                    .computeIfAbsent(feature.getClassId(), k -> new ArrayList<>())
-                    .add(feature);
-            }
-        }
+    private AffineTransform calculateTransformFromAllPoints(Template template, CompiledTemplate compiled,
+                                                           List<DetectedObject> detectedObjects) {
+        // 按类别分组（必需特征，编译时已分好）
+        Map<Integer, List<TemplateFeature>> templateFeaturesByClass = compiled.getRequiredFeaturesByClass();
 
         Map<Integer, List<DetectedObject>> detectedByClass = new HashMap<>();
         for (DetectedObject obj : detectedObjects) {
@@ -613,25 +613,53 @@ public class CoordinateBasedMatcher {
      * 3. 计算有多少匹配对与这个旋转角度一致（在阈值内）
      * 4. 重复多次，选择支持点最多的旋转角度
      * 5. 用所有内点重新计算最终的旋转角度
+     * <p>
+     * 每个匹配对相对质心的旋转角与假设无关，预先算入 double[]，每次迭代只做一遍计数，不分配内存。
+     * 迭代提前结束的条件：
+     * - 所有匹配对都是内点（之后的假设不可能更优，结果与跑满迭代相同）
+     * - 配置了 ransacConfidence = p 时，按标准 RANSAC 置信度：当前最佳内点率为 w，
+     *   至少一次抽到两个内点的概率达到 p 所需的次数为 log(1-p) / log(1-w²)。
+     *   假设取两个带噪声内点的平均值，多采样会得到内点更多、更准的假设，
+     *   提前结束会使结果略有差异，因此默认关闭
      *
      * @param pairs 匹配对列表
      * @return 旋转角度（度），如果没有足够的匹配对则返回 null
      */
     private Double calculateRotationAngle(List<MatchPair> pairs) {
+        return calculateRotationAngle(pairs, ransacConfidence, true);
+    }
+
+    /**
+     * 估计检测点相对模板点的旋转角度（测试用，不输出日志，不修改匹配器配置）
+     *
+     * @param templatePositions 模板点
+     * @param detectedPositions 检测点（与模板点一一对应）
+     * @param confidence        RANSAC 置信度，含义同 ransacConfidence
+     * @return 旋转角度（度），规则同匹配流程：匹配对不足返回 null，内点不足或角度小于 0.5° 返回 0
+     */
+    Double estimateRotationAngle(List<Point> templatePositions, List<Point> detectedPositions, double confidence) {
+        List<MatchPair> pairs = new ArrayList<>(templatePositions.size());
+        for (int i = 0; i < templatePositions.size(); i++) {
+            pairs.add(new MatchPair(templatePositions.get(i), detectedPositions.get(i)));
+        }
+        return calculateRotationAngle(pairs, confidence, false);
+    }
+
+    private Double calculateRotationAngle(List<MatchPair> pairs, double confidence, boolean log) {
         if (pairs.size() < 3) {
             // 需要至少3个匹配对才能进行RANSAC
             return null;
         }
 
         // RANSAC参数
-        final int maxIterations = Math.min(100, pairs.size() * 10);
+        final int n = pairs.size();
+        int maxIterations = Math.min(100, n * 10);
         final double angleThreshold = Math.toRadians(3.0); // 3度阈值（更严格）
         final double requiredInlierRatio = this.minInlierRatio; // 使用配置的内点比例
 
         Random random = new Random(42); // 使用固定种子保证可重复性
         double bestRotation = 0.0;
         int maxInliers = 0;
-        List<MatchPair> bestInliers = new ArrayList<>();
 
         // 计算质心（用于角度计算）
         double templateCx = 0.0, templateCy = 0.0;
@@ -642,71 +670,69 @@ public class CoordinateBasedMatcher {
             detectedCx += pair.detectedPos.x;
             detectedCy += pair.detectedPos.y;
         }
-        templateCx /= pairs.size();
-        templateCy /= pairs.size();
-        detectedCx /= pairs.size();
-        detectedCy /= pairs.size();
+        templateCx /= n;
+        templateCy /= n;
+        detectedCx /= n;
+        detectedCy /= n;
+
+        // 预先计算每个匹配对的旋转角（[-π, π]）
+        double[] rotations = new double[n];
+        for (int i = 0; i < n; i++) {
+            rotations[i] = calculateRotationForPair(pairs.get(i), templateCx, templateCy, detectedCx, detectedCy);
+        }
 
         // RANSAC迭代
+        int iterations = 0;
         for (int iter = 0; iter < maxIterations; iter++) {
+            iterations++;
             // 1. 随机选择2个不同的匹配对
-            int idx1 = random.nextInt(pairs.size());
+            int idx1 = random.nextInt(n);
             int idx2;
             do {
-                idx2 = random.nextInt(pairs.size());
+                idx2 = random.nextInt(n);
             } while (idx2 == idx1);
 
-            MatchPair pair1 = pairs.get(idx1);
-            MatchPair pair2 = pairs.get(idx2);
-
-            // 2. 计算这两个匹配对的旋转角度
-            Double rotationFromPair = calculateRotationFromTwoPairs(
-                pair1, pair2, templateCx, templateCy, detectedCx, detectedCy);
+            // 2. 计算这两个匹配对的旋转角度（取平均值）
+            double rotationFromPair = (rotations[idx1] + rotations[idx2]) / 2.0;
 
-            if (rotationFromPair == null) {
-                continue;
-            }
+            // 3. 统计内点数（与这个旋转角度一致的匹配对）
+            int inliers = countRotationInliers(rotations, rotationFromPair, angleThreshold);
 
-            // 3. 计算内点（与这个旋转角度一致的匹配对）
-            List<MatchPair> inliers = new ArrayList<>();
-            for (MatchPair pair : pairs) {
-                double pairRotation = calculateRotationForPair(
-                    pair, templateCx, templateCy, detectedCx, detectedCy);
-
-                double angleDiff = pairRotation - rotationFromPair;
-                // 归一化到 [-π, π]
-                while (angleDiff > Math.PI) angleDiff -= 2 * Math.PI;
-                while (angleDiff < -Math.PI) angleDiff += 2 * Math.PI;
-
-                if (Math.abs(angleDiff) < angleThreshold) {
-                    inliers.add(pair);
-                }
-            }
-
-            // 4. 更新最佳模型
-            if (inliers.size() > maxInliers) {
-                maxInliers = inliers.size();
-                bestInliers = inliers;
+            // 4. 更新最佳模型，并按当前内点率收紧迭代次数
+            if (inliers > maxInliers) {
+                maxInliers = inliers;
                 bestRotation = rotationFromPair;
+                if (inliers == n) {
+                    break;
+                }
+                if (confidence > 0 && confidence < 1) {
+                    maxIterations = Math.min(maxIterations, adaptiveIterations((double) inliers / n, confidence));
+                }
             }
         }
 
         // 检查是否有足够的内点
-        double inlierRatio = (double) maxInliers / pairs.size();
+        double inlierRatio = (double) maxInliers / n;
         if (inlierRatio < requiredInlierRatio) {
-            logger.info("RANSAC: 内点比例不足 (" + String.format("%.1f%%", inlierRatio * 100) + " < " + String.format("%.1f%%", requiredInlierRatio * 100) + ")，忽略旋转");
+            if (log) logger.info("RANSAC: 内点比例不足 (" + String.format("%.1f%%", inlierRatio * 100) + " < " + String.format("%.1f%%", requiredInlierRatio * 100) + ")，忽略旋转");
             return 0.0;
         }
 
-        // 5. 用所有内点重新计算最终的旋转角度
-        double finalRotation = calculateRotationFromInliers(bestInliers, templateCx, templateCy, detectedCx, detectedCy);
+        // 5. 用所有内点重新计算最终的旋转角度（中位数）
+        List<Double> inlierRotations = new ArrayList<>(maxInliers);
+        for (double rotation : rotations) {
+            if (Math.abs(normalizeAngle(rotation - bestRotation)) < angleThreshold) {
+                inlierRotations.add(rotation);
+            }
+        }
+        double finalRotation = median(inlierRotations);
         double rotationDeg = Math.toDegrees(finalRotation);
 
-        logger.info("RANSAC旋转计算: " + maxInliers + "/" + pairs.size() + " 个内点 (" + String.format("%.1f%%", inlierRatio * 100) + "), 旋转角度=" + String.format("%.2f", rotationDeg) + "°");
+        if (log) logger.info("RANSAC旋转计算: " + maxInliers + "/" + n + " 个内点 (" + String.format("%.1f%%", inlierRatio * 100) + "), 迭代" + iterations + "次, 旋转角度=" + String.format("%.2f", rotationDeg) + "°");
 
         // 只有当旋转角度足够大时才应用
         if (Math.abs(rotationDeg) < 0.5) {
-            logger.info("旋转角度很小 (" + String.format("%.2f", rotationDeg) + "°)，忽略旋转");
+            if (log) logger.info("旋转角度很小 (" + String.format("%.2f", rotationDeg) + "°)，忽略旋转");
             return 0.0;
         }
 
@@ -714,17 +740,40 @@ public class CoordinateBasedMatcher {
     }
 
     /**
-     * 从两个匹配对计算旋转角度
+     * 统计与假设角度相差小于阈值的旋转角个数
+     * <p>
+     * 旋转角和假设角都在 [-π, π] 内，差值在 [-2π, 2π]，归一化只需加减一次 2π
+     */
+    private static int countRotationInliers(double[] rotations, double hypothesis, double threshold) {
+        int count = 0;
+        for (double rotation : rotations) {
+            double diff = rotation - hypothesis;
+            if (diff > Math.PI) diff -= 2 * Math.PI;
+            else if (diff < -Math.PI) diff += 2 * Math.PI;
+            if (Math.abs(diff) < threshold) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 达到指定置信度所需的迭代次数（样本大小为 2）
      */
-    private Double calculateRotationFromTwoPairs(MatchPair pair1, MatchPair pair2,
-                                                  double templateCx, double templateCy,
-                                                  double detectedCx, double detectedCy) {
-        double rot1 = calculateRotationForPair(pair1, templateCx, templateCy, detectedCx, detectedCy);
-        double rot2 = calculateRotationForPair(pair2, templateCx, templateCy, detectedCx, detectedCy);
-
-        // 取平均值
-        double avg = (rot1 + rot2) / 2.0;
-        return avg;
+    private static int adaptiveIterations(double inlierRatio, double confidence) {
+        double allInliers = inlierRatio * inlierRatio;
+        if (allInliers >= 1.0) {
+            return 1;
+        }
+        if (allInliers <= 0.0) {
+            return Integer.MAX_VALUE;
+        }
+        double needed = Math.log(1 - confidence) / Math.log(1 - allInliers);
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(needed));
+    }
+
+    private static double normalizeAngle(double angle) {
+        while (angle > Math.PI) angle -= 2 * Math.PI;
+        while (angle < -Math.PI) angle += 2 * Math.PI;
+        return angle;
     }
 
     /**
@@ -753,22 +802,6 @@ public class CoordinateBasedMatcher {
         return angleDiff;
     }
 
-    /**
-     * 从所有内点计算最终的旋转角度（中位数）
-     */
-    private double calculateRotationFromInliers(List<MatchPair> inliers,
-                                                 double templateCx, double templateCy,
-                                                 double detectedCx, double detectedCy) {
-        List<Double> rotations = new ArrayList<>();
-        for (MatchPair pair : inliers) {
-            Double rot = calculateRotationForPair(pair, templateCx, templateCy, detectedCx, detectedCy);
-            if (rot != null) {
-                rotations.add(rot);
-            }
-        }
-        return median(rotations);
-    }
-
     /**
      * 第二步：应用粗略变换，找出可靠的匹配对
      * <p>
@@ -999,28 +1032,11 @@ public class CoordinateBasedMatcher {
     }
 
     /**
-     * 找最近的同类模板特征
+     * 找最近的同类模板特征（网格索引，距离相同时取模板顺序靠前的）
      */
-    private Point findNearestTemplateFeature(Template template, int classId, Point detectedPos) {
-        Point nearest = null;
-        double minDistance = Double.MAX_VALUE;
-
-        for (TemplateFeature feature : template.getFeatures()) {
-            if (!feature.isRequired() || feature.getClassId() != classId) {
-                continue;
-            }
-
-            double dx = detectedPos.x - feature.getPosition().x;
-            double dy = detectedPos.y - feature.getPosition().y;
-            double distance = Math.sqrt(dx * dx + dy * dy);
-
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearest = feature.getPosition();
-            }
-        }
-
-        return nearest;
+    private Point findNearestTemplateFeature(CompiledTemplate compiled, int classId, Point detectedPos) {
+        TemplateFeature nearest = compiled.nearestRequired(classId, detectedPos);
+        return nearest != null ? nearest.getPosition() : null;
     }
 
     /**
@@ -1071,23 +1087,12 @@ public class CoordinateBasedMatcher {
 
     /**
      * 获取指定位置的模板特征名称
+     * <p>
+     * 距离很近（小于10像素）认为是同一个位置，多个时取模板顺序靠前的
      */
-    private String getFeatureNameAtPosition(Template template, Point pos) {
-        for (TemplateFeature feature : template.getFeatures()) {
-            if (!feature.isRequired()) {
-                continue;
-            }
-            Point featurePos = feature.getPosition();
-            double dx = pos.x - featurePos.x;
-            double dy = pos.y - featurePos.y;
-            double distance = Math.sqrt(dx * dx + dy * dy);
-
-            // 如果距离很近（小于10像素），认为是同一个位置
-            if (distance < 10) {
-                return feature.getName();
-            }
-        }
-        return null;
+    private String getFeatureNameAtPosition(CompiledTemplate compiled, Point pos) {
+        TemplateFeature feature = compiled.firstRequiredWithin(pos, 10);
+        return feature != null ? feature.getName() : null;
     }
 
     /**
@@ -1176,6 +1181,14 @@ public class CoordinateBasedMatcher {
         this.minInlierRatio = minInlierRatio;
     }
 
+    public double getRansacConfidence() {
+        return ransacConfidence;
+    }
+
+    public void setRansacConfidence(double ransacConfidence) {
+        this.ransacConfidence = ransacConfidence;
+    }
+
     public double getMaxOcclusionRate() {
         return maxOcclusionRate;
     }
@@ -39,6 +39,9 @@ import java.util.stream.Collectors;
 public class CrossRatioMatcher {
     private static final Logger logger = LoggerFactory.getLogger(CrossRatioMatcher.class);
 
+    // 类别内匹配的距离门限（像素），距离太大认为是无效匹配
+    private static final double MAX_MATCH_DISTANCE = 500.0;
+
     // ==================== 可配置参数 ====================
 
     /**
@@ -72,9 +75,14 @@ public class CrossRatioMatcher {
     private boolean enableKalmanFilter = true;
 
     /**
-     * 卡尔曼滤波器管理器
+     * 卡尔曼轨迹过期时间（毫秒），≤ 0 表示不过期
      */
-    private KalmanFilter.Manager kalmanManager;
+    private long kalmanTrackTtlMillis = 0;
+
+    /**
+     * 卡尔曼滤波器组（结构数组、线程安全）
+     */
+    private KalmanFilterBank kalmanManager;
 
     /**
      * 指纹计算器
@@ -87,7 +95,7 @@ public class CrossRatioMatcher {
     private ImageSize canvasSize;
 
     /**
-     * 指纹数据库：特征ID -> 指纹
+     * 指纹数据库：特征ID -> 指纹（来自编译模板，只读）
      */
     private Map<String, CrossRatioFingerprint> fingerprintDatabase;
 
@@ -102,9 +110,9 @@ public class CrossRatioMatcher {
      * 创建默认配置的射影几何指纹匹配器
      */
     public CrossRatioMatcher() {
-        this.fingerprintDatabase = new HashMap<>();
+        this.fingerprintDatabase = Collections.emptyMap();
         this.observationCache = new HashMap<>();
-        this.kalmanManager = new KalmanFilter.Manager();
+        this.kalmanManager = newKalmanBank();
     }
 
     /**
@@ -150,14 +158,12 @@ public class CrossRatioMatcher {
         logger.info("开始射影几何指纹匹配: 模板{}个特征 vs 检测{}个对象",
                 template.getFeatures().size(), detectedObjects.size());
 
-        // 初始化
-        initializeMatchingContext(template);
-
-        // 离线注册阶段：构建指纹数据库
-        registerTemplateFeatures(template);
+        // 离线注册阶段：指纹数据库与类别分组取自编译缓存（模板保存/加载时已构建）
+        CompiledTemplate compiled = CompiledTemplateCache.get(template);
+        initializeMatchingContext(compiled);
 
         // 在线识别阶段：匹配检测对象
-        InspectionResult result = matchDetectedObjects(template, detectedObjects);
+        InspectionResult result = matchDetectedObjects(template, compiled, detectedObjects);
 
         long elapsed = System.currentTimeMillis() - startTime;
         result.setProcessingTimeMs(elapsed);
@@ -176,70 +182,21 @@ public class CrossRatioMatcher {
     /**
      * 初始化匹配上下文
      * <p>
-     * 设置画布尺寸、参考点、指纹计算器
+     * 画布尺寸、五点参考系、指纹计算器和指纹数据库都来自编译结果，这里只做引用切换
      */
-    private void initializeMatchingContext(Template template) {
-        // 获取画布尺寸
-        this.canvasSize = template.getImageSize();
-        if (this.canvasSize == null) {
+    private void initializeMatchingContext(CompiledTemplate compiled) {
+        if (compiled.isDefaultCanvas()) {
             logger.warn("模板未指定画布尺寸，使用默认值1920x1080");
-            this.canvasSize = new ImageSize(1920, 1080);
-        }
-
-        // 创建五点参考系
-        CrossRatioFingerprint.ReferencePoints refPoints =
-                new CrossRatioFingerprint.ReferencePoints(
-                        this.canvasSize.getWidth(),
-                        this.canvasSize.getHeight()
-                );
-
-        logger.debug("初始化五点参考系: {}", refPoints);
-
-        // 创建指纹计算器
-        this.fingerprintCalculator = new CrossRatioFingerprint.Calculator(refPoints);
-
-        // 重置卡尔曼滤波器（新的一帧）
-        if (enableKalmanFilter && kalmanManager != null) {
-            // 保留滤波器状态以实现跨帧平滑
-            // 如果需要完全重置，调用 kalmanManager.clear()
         }
+        this.canvasSize = compiled.getCanvasSize();
+        this.fingerprintCalculator = compiled.getFingerprintCalculator();
+        this.fingerprintDatabase = compiled.getFingerprints();
 
         // 清空观测缓存
         this.observationCache = new HashMap<>();
-    }
-
-    /**
-     * 离线注册阶段：构建指纹数据库
-     * <p>
-     * 对每个模板特征：
-     * 1. 获取其标准位置坐标
-     * 2. 计算理想指纹 F_ref
-     * 3. 存储到数据库
-     */
-    private void registerTemplateFeatures(Template template) {
-        fingerprintDatabase.clear();
-
-        for (TemplateFeature feature : template.getFeatures()) {
-            Point position = feature.getPosition();
-            String featureId = feature.getId();
-
-            // 计算理想指纹
-            CrossRatioFingerprint fingerprint =
-                    fingerprintCalculator.calculate(position, featureId);
-
-            if (fingerprint.isValid()) {
-                fingerprintDatabase.put(featureId, fingerprint);
-                logger.debug("注册特征 {}: {} 位置={}",
-                        featureId, fingerprint, position);
-            } else {
-                logger.warn("特征 {} 的指纹无效（可能位于参考点射线上），位置={}",
-                        featureId, position);
-                // 仍然存储，但标记为无效
-                fingerprintDatabase.put(featureId, fingerprint);
-            }
-        }
 
-        logger.info("指纹数据库构建完成: {} 个特征", fingerprintDatabase.size());
+        logger.debug("指纹数据库: {} 个特征（编译版本 {}）",
+                fingerprintDatabase.size(), Long.toHexString(compiled.getVersion()));
     }
 
     /**
@@ -253,13 +210,12 @@ public class CrossRatioMatcher {
      * 5. 置信度阈值过滤
      */
     private InspectionResult matchDetectedObjects(Template template,
+                                                  CompiledTemplate compiled,
                                                   List<DetectedObject> detectedObjects) {
         InspectionResult result = new InspectionResult(template.getTemplateId());
 
-        // 按类别分组
-        Map<Integer, List<TemplateFeature>> templateByClass =
-                template.getFeatures().stream()
-                        .collect(Collectors.groupingBy(TemplateFeature::getClassId));
+        // 按类别分组（模板侧已预先分组）
+        Map<Integer, List<TemplateFeature>> templateByClass = compiled.getFeaturesByClass();
 
         Map<Integer, List<DetectedObject>> detectedByClass =
                 detectedObjects.stream()
@@ -288,9 +244,9 @@ public class CrossRatioMatcher {
     /**
      * 类别内匹配
      * <p>
-     * 使用匈牙利算法（全局最优二分匹配）：
-     * 1. 构建代价矩阵：距离越小，代价越低
-     * 2. 找到总代价最小的匹配方案
+     * 使用稀疏最优分配（全局最优二分匹配）：
+     * 1. 只把距离不超过 MAX_MATCH_DISTANCE 的点对作为候选，距离即代价
+     * 2. 在候选中找匹配数最多、总代价最小的方案
      * 3. 确保一对一映射，避免交叉匹配问题
      */
     private void matchClass(List<TemplateFeature> templateFeatures,
@@ -307,27 +263,43 @@ public class CrossRatioMatcher {
             return;
         }
 
-        // 构建代价矩阵（距离代价，越小越好）
-        // 简化策略：直接用欧氏距离作为代价，让匈牙利算法自动找最优匹配
-        double[][] costMatrix = new double[n][m];
+        // 构建候选边（CSR：行 = 模板特征，列 = 检测对象），只保留门限内的点对
+        // 直接用欧氏距离作为代价，距离越小，匹配概率越高
+        // 检测点按门限大小的网格索引，每个模板特征只检查附近格子，不再计算全部 T×D 距离
+        double[] dx = new double[m];
+        double[] dy = new double[m];
+        for (int d = 0; d < m; d++) {
+            dx[d] = detectedObjects.get(d).getCenter().x;
+            dy[d] = detectedObjects.get(d).getCenter().y;
+        }
+        PointGrid detectedIndex = new PointGrid(dx, dy, MAX_MATCH_DISTANCE);
+        int[] nearby = new int[m];
 
+        int[] rowStart = new int[n + 1];
+        int[] colIndex = new int[n * Math.min(m, 16)];
+        double[] edgeCost = new double[colIndex.length];
+        int edges = 0;
         for (int t = 0; t < n; t++) {
-            TemplateFeature feature = templateFeatures.get(t);
-            Point templatePosition = feature.getPosition();
-
-            for (int d = 0; d < m; d++) {
-                DetectedObject detected = detectedObjects.get(d);
-                Point detectedPosition = detected.getCenter();
-
-                // 直接使用欧氏距离作为代价
-                // 距离越小，匹配概率越高
-                double euclideanDistance = templatePosition.distanceTo(detectedPosition);
-                costMatrix[t][d] = euclideanDistance;
+            Point templatePosition = templateFeatures.get(t).getPosition();
+            // 半径稍放大，门限判断仍以下面的距离为准
+            int found = detectedIndex.within(templatePosition.x, templatePosition.y,
+                    MAX_MATCH_DISTANCE * (1 + 1e-9), nearby);
+            for (int f = 0; f < found; f++) {
+                int d = nearby[f];
+                double euclideanDistance = templatePosition.distanceTo(detectedObjects.get(d).getCenter());
+                if (euclideanDistance > MAX_MATCH_DISTANCE) continue;
+                if (edges == colIndex.length) {
+                    colIndex = Arrays.copyOf(colIndex, edges * 2);
+                    edgeCost = Arrays.copyOf(edgeCost, edges * 2);
+                }
+                colIndex[edges] = d;
+                edgeCost[edges++] = euclideanDistance;
             }
+            rowStart[t + 1] = edges;
         }
 
-        // 使用匈牙利算法找全局最优匹配
-        int[] assignment = HungarianAlgorithm.solve(costMatrix);
+        // 稀疏最优分配（超出门限的点对不参与，也不会挤占门限内的匹配）
+        int[] assignment = AssignmentSolver.solveSparse(n, m, rowStart, colIndex, edgeCost);
 
         // 跟踪已匹配的检测对象索引（用于错检判断）
         Set<Integer> matchedDetectedIndices = new HashSet<>();
@@ -348,15 +320,7 @@ public class CrossRatioMatcher {
                 continue;
             }
 
-            double distance = costMatrix[t][d];
-
-            // 设置合理的距离阈值（像素）- 距离太大认为是无效匹配
-            double MAX_MATCH_DISTANCE = 500.0;
-            if (distance > MAX_MATCH_DISTANCE) {
-                logger.debug("模板特征 {} 匹配距离过大 ({:.1f}px > {:.1f}px)，跳过",
-                        feature.getId(), distance, MAX_MATCH_DISTANCE);
-                continue;
-            }
+            double distance = feature.getPosition().distanceTo(detectedObjects.get(d).getCenter());
 
             // 有效匹配
             DetectedObject detected = detectedObjects.get(d);
@@ -426,14 +390,17 @@ public class CrossRatioMatcher {
      * 1. 形态学中心提取（简化版）
      * 2. 卡尔曼滤波平滑
      * 3. 指纹计算
+     *
+     * @param smoothed 调用方复用的缓冲区（长度 ≥ 2），接收卡尔曼平滑后的位置
      */
-    private CrossRatioFingerprint computeDetectedFingerprint(DetectedObject detected, int index) {
+    private CrossRatioFingerprint computeDetectedFingerprint(DetectedObject detected, int index, double[] smoothed) {
         Point center = detected.getCenter();
 
-        // 应用卡尔曼滤波平滑
+        // 应用卡尔曼滤波平滑（基本类型重载，不创建中间对象）
         if (enableKalmanFilter && kalmanManager != null) {
             String objectId = "detected_" + index;
-            center = kalmanManager.smooth(objectId, center);
+            kalmanManager.smooth(objectId, center.x, center.y, smoothed);
+            center = new Point(smoothed[0], smoothed[1]);
         }
 
         // 计算指纹
@@ -595,17 +562,31 @@ public class CrossRatioMatcher {
         if (!enableKalmanFilter) {
             this.kalmanManager = null;
         } else if (this.kalmanManager == null) {
-            this.kalmanManager = new KalmanFilter.Manager();
+            this.kalmanManager = newKalmanBank();
+        }
+    }
+
+    /**
+     * 设置卡尔曼轨迹过期时间（重建滤波器组，已有轨迹清空）
+     */
+    public void setKalmanTrackTtlMillis(long kalmanTrackTtlMillis) {
+        this.kalmanTrackTtlMillis = kalmanTrackTtlMillis;
+        if (this.kalmanManager != null) {
+            this.kalmanManager = newKalmanBank();
         }
     }
 
+    private KalmanFilterBank newKalmanBank() {
+        return new KalmanFilterBank(0.033, 0.1, 5.0, kalmanTrackTtlMillis);
+    }
+
     // ==================== 调试和分析方法 ====================
 
     /**
      * 获取指纹数据库（用于调试）
      */
     public Map<String, CrossRatioFingerprint> getFingerprintDatabase() {
-        return Collections.unmodifiableMap(fingerprintDatabase);
+        return fingerprintDatabase;
     }
 
     /**
@@ -11,6 +11,9 @@ import org.slf4j.LoggerFactory;
  * <p>
  * 时间复杂度: O(n^3)，其中n是矩阵维度
  * 空间复杂度: O(n^2)
+ * <p>
+ * 注意：迭代有上限且停滞时提前退出，大规模时可能得不到完整/最优匹配。
+ * 匹配器已改用 {@link AssignmentSolver}，此类保留用于性能对比（/api/diagnostics/assignment-benchmark）。
  */
 public class HungarianAlgorithm {
     private static final Logger logger = LoggerFactory.getLogger(HungarianAlgorithm.class);
@@ -157,8 +157,8 @@ public class KalmanFilter {
 
         // 协方差预测: P_pred = F * P * F^T + Q
         double[][] FP = matrixMultiply(F, P);
-        double[][] FPT = matrixTranspose(FP);
-        double[][] P_pred = matrixAdd(FPT, Q);
+        double[][] FPFT = matrixMultiply(FP, matrixTranspose(F));
+        double[][] P_pred = matrixAdd(FPFT, Q);
 
         // 更新状态和协方差
         this.x = x_pred;
@@ -380,19 +380,20 @@ public class KalmanFilter {
     /**
      * 批量滤波器管理器
      * <p>
-     * 用于管理多个对象的卡尔曼滤波器
+     * 用于管理多个对象的卡尔曼滤波器，内部委托给 {@link KalmanFilterBank}（结构数组、线程安全）
      */
     public static class Manager {
-        private final java.util.Map<String, KalmanFilter> filters;
-        private final double dt;
-        private final double processNoise;
-        private final double measureNoise;
+        private final KalmanFilterBank bank;
+
+        /**
+         * @param ttlMillis 轨迹过期时间（毫秒），≤ 0 表示不过期
+         */
+        public Manager(double dt, double processNoise, double measureNoise, long ttlMillis) {
+            this.bank = new KalmanFilterBank(dt, processNoise, measureNoise, ttlMillis);
+        }
 
         public Manager(double dt, double processNoise, double measureNoise) {
-            this.filters = new java.util.HashMap<>();
-            this.dt = dt;
-            this.processNoise = processNoise;
-            this.measureNoise = measureNoise;
+            this(dt, processNoise, measureNoise, 0);
         }
 
         public Manager() {
@@ -403,49 +404,42 @@ public class KalmanFilter {
          * 更新指定对象的滤波器并返回平滑后的位置
          */
         public Point smooth(String objectId, Point measurement) {
-            KalmanFilter filter = filters.get(objectId);
-            if (filter == null) {
-                filter = new KalmanFilter(dt, processNoise, measureNoise);
-                filter.init(measurement);
-                filters.put(objectId, filter);
-                return measurement;
-            }
-
-            filter.update(measurement);
-            return filter.getEstimatedPosition();
+            return bank.smooth(objectId, measurement);
         }
 
         /**
          * 预测指定对象的下一位置
          */
         public Point predict(String objectId) {
-            KalmanFilter filter = filters.get(objectId);
-            if (filter == null || !filter.initialized) {
-                return null;
-            }
-            filter.predict();
-            return filter.getEstimatedPosition();
+            return bank.predict(objectId);
         }
 
         /**
          * 移除指定对象的滤波器
          */
         public void remove(String objectId) {
-            filters.remove(objectId);
+            bank.remove(objectId);
         }
 
         /**
          * 清空所有滤波器
          */
         public void clear() {
-            filters.clear();
+            bank.clear();
         }
 
         /**
          * 获取滤波器数量
          */
         public int size() {
-            return filters.size();
+            return bank.size();
+        }
+
+        /**
+         * 底层滤波器组
+         */
+        public KalmanFilterBank getBank() {
+            return bank;
         }
     }
 }
@@ -0,0 +1,279 @@
+package com.edge.vision.core.topology;
+
+import com.edge.vision.core.template.model.Point;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二维匀速模型卡尔曼滤波器组
+ * <p>
+ * 与 {@link KalmanFilter} 的模型完全相同（状态 [px, py, vx, vy]，只观测位置），区别在于：
+ * - 结构数组：N 条轨迹的状态分别存放在 px/py/vx/vy 等 double[] 中，槽位可复用
+ * - 闭式更新：F、H、Q、R 都是按坐标轴分块的，且两个轴的噪声参数和初始协方差相同，
+ *   因此 4x4 协方差恒为两个相同的 2x2 对称块，每条轨迹只需保存 3 个数（pp, pv, vv），
+ *   预测/更新都是几次标量运算，不分配内存
+ * - 线程安全：所有操作在滤波器组上加锁，单次操作只有几十纳秒，竞争可以忽略
+ * - 过期淘汰：指定 ttlMillis 时，超过该时间未更新的轨迹被回收（每 {@value #EVICT_INTERVAL} 次操作或扩容前检查一次）；
+ *   默认不过期，与原 HashMap 实现一致，轨迹只由 remove / clear 移除
+ * <p>
+ * 闭式推导（单轴，P = [[pp, pv], [pv, vv]]）：
+ * 预测：x += dt·v；pp += 2dt·pv + dt²·vv + q00；pv += dt·vv + q01；vv += q11
+ * 更新：S = pp + r；K = [pp/S, pv/S]；x += K0·y；v += K1·y；
+ * pp' = (1-K0)·pp；pv' = (1-K0)·pv；vv' = vv - K1·pv
+ */
+public final class KalmanFilterBank {
+
+    // 与 KalmanFilter.init 一致的初始协方差（对角 10）
+    private static final double INITIAL_VARIANCE = 10.0;
+    private static final int EVICT_INTERVAL = 1024;
+
+    private final double dt;
+    private final double q00;
+    private final double q01;
+    private final double q11;
+    private final double r;
+    private final long ttlNanos;
+
+    // 轨迹ID -> 槽位
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    // 结构数组状态
+    private String[] ids;
+    private double[] px;
+    private double[] py;
+    private double[] vx;
+    private double[] vy;
+    private double[] pp;
+    private double[] pv;
+    private double[] vv;
+    private long[] lastSeen;
+
+    // 空闲槽位栈
+    private int[] freeSlots;
+    private int freeCount;
+    private int used;
+    private int opsSinceEvict;
+    private long evicted;
+
+    /**
+     * @param dt           时间步长（秒）
+     * @param processNoise 过程噪声标准差
+     * @param measureNoise 观测噪声标准差
+     * @param ttlMillis    轨迹过期时间（毫秒），≤ 0 表示不过期
+     */
+    public KalmanFilterBank(double dt, double processNoise, double measureNoise, long ttlMillis) {
+        this.dt = dt;
+        double q = processNoise * processNoise;
+        this.q00 = q * dt * dt * dt * dt / 4;
+        this.q01 = q * dt * dt * dt / 2;
+        this.q11 = q * dt * dt;
+        this.r = measureNoise * measureNoise;
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000L : Long.MAX_VALUE;
+        allocate(64);
+    }
+
+    /**
+     * 默认参数（与 KalmanFilter 默认值一致，轨迹不过期）
+     */
+    public KalmanFilterBank() {
+        this(0.033, 0.1, 5.0, 0);
+    }
+
+    /**
+     * 更新指定轨迹并返回平滑后的位置（第一次出现时直接返回观测值）
+     */
+    public Point smooth(String id, Point measurement) {
+        double[] out = new double[2];
+        smooth(id, measurement.x, measurement.y, out);
+        return new Point(out[0], out[1]);
+    }
+
+    /**
+     * 更新指定轨迹，平滑后的位置写入 out[0], out[1]（不分配内存）
+     *
+     * @return true 表示已有轨迹被更新，false 表示新建轨迹
+     */
+    public synchronized boolean smooth(String id, double mx, double my, double[] out) {
+        long now = System.nanoTime();
+        maybeEvict(now);
+
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            int s = acquire(id, now);
+            px[s] = mx;
+            py[s] = my;
+            vx[s] = 0;
+            vy[s] = 0;
+            pp[s] = INITIAL_VARIANCE;
+            pv[s] = 0;
+            vv[s] = INITIAL_VARIANCE;
+            out[0] = mx;
+            out[1] = my;
+            return false;
+        }
+
+        int s = slot;
+        predictSlot(s);
+
+        // 观测更新（两个轴共用同一组增益）
+        double S = pp[s] + r;
+        double k0 = pp[s] / S;
+        double k1 = pv[s] / S;
+        double yx = mx - px[s];
+        double yy = my - py[s];
+        px[s] += k0 * yx;
+        py[s] += k0 * yy;
+        vx[s] += k1 * yx;
+        vy[s] += k1 * yy;
+        double newVv = vv[s] - k1 * pv[s];
+        pp[s] = (1 - k0) * pp[s];
+        pv[s] = (1 - k0) * pv[s];
+        vv[s] = newVv;
+
+        lastSeen[s] = now;
+        out[0] = px[s];
+        out[1] = py[s];
+        return true;
+    }
+
+    /**
+     * 预测指定轨迹的下一位置（推进状态），写入 out
+     *
+     * @return false 表示轨迹不存在
+     */
+    public synchronized boolean predict(String id, double[] out) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return false;
+        }
+        predictSlot(slot);
+        out[0] = px[slot];
+        out[1] = py[slot];
+        return true;
+    }
+
+    /**
+     * 预测指定轨迹的下一位置，轨迹不存在时返回 null
+     */
+    public Point predict(String id) {
+        double[] out = new double[2];
+        return predict(id, out) ? new Point(out[0], out[1]) : null;
+    }
+
+    /**
+     * 位置不确定性标准差 sqrt(P00 + P11)，轨迹不存在时返回 NaN
+     */
+    public synchronized double getPositionUncertainty(String id) {
+        Integer slot = slots.get(id);
+        return slot == null ? Double.NaN : Math.sqrt(2 * pp[slot]);
+    }
+
+    public synchronized void remove(String id) {
+        Integer slot = slots.remove(id);
+        if (slot != null) {
+            release(slot);
+        }
+    }
+
+    public synchronized void clear() {
+        slots.clear();
+        Arrays.fill(ids, null);
+        freeCount = 0;
+        used = 0;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * 立即淘汰过期轨迹
+     *
+     * @return 本次淘汰数量
+     */
+    public synchronized int evictStale() {
+        return evict(System.nanoTime());
+    }
+
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void predictSlot(int s) {
+        px[s] += dt * vx[s];
+        py[s] += dt * vy[s];
+        double p = pp[s], c = pv[s], v = vv[s];
+        pp[s] = p + 2 * dt * c + dt * dt * v + q00;
+        pv[s] = c + dt * v + q01;
+        vv[s] = v + q11;
+    }
+
+    private void maybeEvict(long now) {
+        if (++opsSinceEvict >= EVICT_INTERVAL) {
+            evict(now);
+        }
+    }
+
+    private int evict(long now) {
+        opsSinceEvict = 0;
+        if (ttlNanos == Long.MAX_VALUE) {
+            return 0;
+        }
+        int count = 0;
+        for (int s = 0; s < used; s++) {
+            if (ids[s] != null && now - lastSeen[s] > ttlNanos) {
+                slots.remove(ids[s]);
+                release(s);
+                count++;
+            }
+        }
+        evicted += count;
+        return count;
+    }
+
+    private int acquire(String id, long now) {
+        // 扩容前先回收过期槽位
+        if (freeCount == 0 && used == ids.length) {
+            evict(now);
+        }
+        int s;
+        if (freeCount > 0) {
+            s = freeSlots[--freeCount];
+        } else {
+            if (used == ids.length) {
+                allocate(ids.length * 2);
+            }
+            s = used++;
+        }
+        slots.put(id, s);
+        ids[s] = id;
+        lastSeen[s] = now;
+        return s;
+    }
+
+    private void release(int s) {
+        ids[s] = null;
+        freeSlots[freeCount++] = s;
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new String[capacity] : Arrays.copyOf(ids, capacity);
+        px = grow(px, capacity);
+        py = grow(py, capacity);
+        vx = grow(vx, capacity);
+        vy = grow(vy, capacity);
+        pp = grow(pp, capacity);
+        pv = grow(pv, capacity);
+        vv = grow(vv, capacity);
+        lastSeen = lastSeen == null ? new long[capacity] : Arrays.copyOf(lastSeen, capacity);
+        freeSlots = freeSlots == null ? new int[capacity] : Arrays.copyOf(freeSlots, capacity);
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
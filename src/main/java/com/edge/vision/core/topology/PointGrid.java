@@ -0,0 +1,314 @@
+package com.edge.vision.core.topology;
+
+import java.util.Arrays;
+
+/**
+ * 二维点的均匀网格索引（只读）
+ * <p>
+ * 点按格子排序后以 CSR 形式存放（cellStart / cellItems），构建 O(n)，查询只访问附近格子。
+ * 格子边长默认按"平均每格约一个点"自动选取，也可以指定（例如取匹配距离阈值）。
+ * <p>
+ * 查询结果都是点的原始下标；距离相同时返回下标较小的点，与逐个扫描的结果一致。
+ * 构建完成后不再修改，可以被多个线程同时查询。
+ */
+public final class PointGrid {
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int gridW;
+    private final int gridH;
+    // 格子 c 的点为 cellItems[cellStart[c] .. cellStart[c + 1])，格内按下标升序
+    private final int[] cellStart;
+    private final int[] cellItems;
+
+    /**
+     * @param xs       点的 x 坐标（不复制，调用方不得再修改）
+     * @param ys       点的 y 坐标（不复制，调用方不得再修改）
+     * @param cellSize 格子边长，≤ 0 时自动选取
+     */
+    public PointGrid(double[] xs, double[] ys, double cellSize) {
+        this.xs = xs;
+        this.ys = ys;
+        int n = xs.length;
+
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            x0 = Math.min(x0, xs[i]);
+            y0 = Math.min(y0, ys[i]);
+            x1 = Math.max(x1, xs[i]);
+            y1 = Math.max(y1, ys[i]);
+        }
+        if (n == 0) {
+            x0 = y0 = x1 = y1 = 0;
+        }
+        double w = x1 - x0;
+        double h = y1 - y0;
+        if (cellSize <= 0) {
+            double area = w * h;
+            cellSize = area > 0 ? Math.sqrt(area / Math.max(1, n)) : Math.max(w, h) / Math.max(1, n);
+        }
+        // 格子数不超过点数的 4 倍（避免阈值很小时网格过密）
+        double minCell = Math.sqrt(Math.max(w * h, 1e-12) / (4.0 * Math.max(1, n)));
+        cellSize = Math.max(cellSize, Math.max(minCell, Math.max(w, h) / (4.0 * Math.max(1, n))));
+        if (!(cellSize > 0)) {
+            cellSize = 1.0;
+        }
+
+        this.minX = x0;
+        this.minY = y0;
+        this.cellSize = cellSize;
+        this.gridW = (int) Math.min(Integer.MAX_VALUE / 2, Math.floor(w / cellSize) + 1);
+        this.gridH = (int) Math.min(Integer.MAX_VALUE / 2, Math.floor(h / cellSize) + 1);
+
+        // 计数排序：按格子分桶
+        int cells = gridW * gridH;
+        int[] cellOf = new int[n];
+        this.cellStart = new int[cells + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = cellX(xs[i]) + cellY(ys[i]) * gridW;
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        this.cellItems = new int[n];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < n; i++) {
+            cellItems[fill[cellOf[i]]++] = i;
+        }
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * 最近点（距离相同时取下标小的）
+     *
+     * @return 点下标，没有点时返回 -1
+     */
+    public int nearest(double x, double y) {
+        if (xs.length == 0) {
+            return -1;
+        }
+        // 查询点在网格外时以最近的边界格子为中心（到中心格子的切比雪夫环数只会更小，下界仍然成立）
+        int cx = cellX(x);
+        int cy = cellY(y);
+        int maxRing = Math.max(Math.max(cx, gridW - 1 - cx), Math.max(cy, gridH - 1 - cy));
+
+        int best = -1;
+        double bestD2 = Double.POSITIVE_INFINITY;
+        for (int r = 0; r <= maxRing; r++) {
+            // 第 r 环以外的点距离至少 r * cellSize
+            if (best >= 0) {
+                double bound = r > 0 ? (r - 1) * cellSize : 0;
+                if (bestD2 < bound * bound) {
+                    break;
+                }
+            }
+            int gx0 = cx - r, gx1 = cx + r, gy0 = cy - r, gy1 = cy + r;
+            for (int gy = Math.max(0, gy0); gy <= Math.min(gridH - 1, gy1); gy++) {
+                boolean edgeRow = gy == gy0 || gy == gy1;
+                int step = edgeRow ? 1 : Math.max(1, gx1 - gx0);
+                for (int gx = gx0; gx <= gx1; gx += step) {
+                    if (gx < 0 || gx >= gridW) continue;
+                    int c = gx + gy * gridW;
+                    for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                        int i = cellItems[p];
+                        double dx = xs[i] - x;
+                        double dy = ys[i] - y;
+                        double d2 = dx * dx + dy * dy;
+                        if (d2 < bestD2 || (d2 == bestD2 && i < best)) {
+                            bestD2 = d2;
+                            best = i;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * k 近邻（按 距离、下标 升序，排除指定点）
+     * <p>
+     * 逐环扩展格子，用容量为 k 的最大堆做部分选择；堆满且堆顶距离小于下一环的距离下界时停止。
+     * 结果写入调用方提供的数组，不分配内存。
+     *
+     * @param exclude 排除的点下标（通常为查询点自身），-1 表示不排除
+     * @param outIdx  输出：近邻下标，长度 ≥ k
+     * @param outDist 输出：对应距离，长度 ≥ k
+     * @return 实际找到的近邻数（≤ k）
+     */
+    public int kNearest(double x, double y, int k, int exclude, int[] outIdx, double[] outDist) {
+        if (k <= 0 || xs.length == 0) {
+            return 0;
+        }
+        int cx = cellX(x);
+        int cy = cellY(y);
+        int maxRing = Math.max(Math.max(cx, gridW - 1 - cx), Math.max(cy, gridH - 1 - cy));
+
+        int count = 0;
+        for (int r = 0; r <= maxRing; r++) {
+            if (count == k) {
+                double bound = r > 0 ? (r - 1) * cellSize : 0;
+                if (outDist[0] < bound) {
+                    break;
+                }
+            }
+            int gx0 = cx - r, gx1 = cx + r, gy0 = cy - r, gy1 = cy + r;
+            for (int gy = Math.max(0, gy0); gy <= Math.min(gridH - 1, gy1); gy++) {
+                boolean edgeRow = gy == gy0 || gy == gy1;
+                int step = edgeRow ? 1 : Math.max(1, gx1 - gx0);
+                for (int gx = gx0; gx <= gx1; gx += step) {
+                    if (gx < 0 || gx >= gridW) continue;
+                    int c = gx + gy * gridW;
+                    for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                        int i = cellItems[p];
+                        if (i == exclude) continue;
+                        double dx = xs[i] - x;
+                        double dy = ys[i] - y;
+                        double d = Math.sqrt(dx * dx + dy * dy);
+                        if (count < k) {
+                            siftUp(outIdx, outDist, count++, i, d);
+                        } else if (d < outDist[0] || (d == outDist[0] && i < outIdx[0])) {
+                            siftDown(outIdx, outDist, k, i, d);
+                        }
+                    }
+                }
+            }
+        }
+
+        // 堆排序：依次把堆顶（最远）移到末尾
+        for (int end = count - 1; end > 0; end--) {
+            int topIdx = outIdx[0];
+            double topDist = outDist[0];
+            siftDown(outIdx, outDist, end, outIdx[end], outDist[end]);
+            outIdx[end] = topIdx;
+            outDist[end] = topDist;
+        }
+        return count;
+    }
+
+    // 最大堆比较：距离大者在上，距离相同时下标大者在上
+    private static boolean after(int i1, double d1, int i2, double d2) {
+        return d1 > d2 || (d1 == d2 && i1 > i2);
+    }
+
+    private static void siftUp(int[] idx, double[] dist, int pos, int i, double d) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!after(i, d, idx[parent], dist[parent])) break;
+            idx[pos] = idx[parent];
+            dist[pos] = dist[parent];
+            pos = parent;
+        }
+        idx[pos] = i;
+        dist[pos] = d;
+    }
+
+    /**
+     * 用 (i, d) 替换堆顶并下沉，堆大小为 size
+     */
+    private static void siftDown(int[] idx, double[] dist, int size, int i, double d) {
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && after(idx[child + 1], dist[child + 1], idx[child], dist[child])) child++;
+            if (!after(idx[child], dist[child], i, d)) break;
+            idx[pos] = idx[child];
+            dist[pos] = dist[child];
+            pos = child;
+        }
+        idx[pos] = i;
+        dist[pos] = d;
+    }
+
+    /**
+     * 距离严格小于 radius 的点中下标最小的一个
+     *
+     * @return 点下标，没有时返回 -1
+     */
+    public int firstWithin(double x, double y, double radius) {
+        if (xs.length == 0 || !(radius > 0)) {
+            return -1;
+        }
+        double r2 = radius * radius;
+        int gx0 = cellX(x - radius), gx1 = cellX(x + radius);
+        int gy0 = cellY(y - radius), gy1 = cellY(y + radius);
+        int best = -1;
+        for (int gy = gy0; gy <= gy1; gy++) {
+            for (int gx = gx0; gx <= gx1; gx++) {
+                int c = gx + gy * gridW;
+                for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                    int i = cellItems[p];
+                    if (best >= 0 && i >= best) break;  // 格内下标升序
+                    double dx = xs[i] - x;
+                    double dy = ys[i] - y;
+                    if (dx * dx + dy * dy < r2) {
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 距离不超过 radius 的所有点
+     *
+     * @param out 输出下标（升序），长度 ≥ size()
+     * @return 命中数量
+     */
+    public int within(double x, double y, double radius, int[] out) {
+        if (xs.length == 0 || !(radius >= 0)) {
+            return 0;
+        }
+        double r2 = radius * radius;
+        int gx0 = cellX(x - radius), gx1 = cellX(x + radius);
+        int gy0 = cellY(y - radius), gy1 = cellY(y + radius);
+        int count = 0;
+        for (int gy = gy0; gy <= gy1; gy++) {
+            for (int gx = gx0; gx <= gx1; gx++) {
+                int c = gx + gy * gridW;
+                for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                    int i = cellItems[p];
+                    double dx = xs[i] - x;
+                    double dy = ys[i] - y;
+                    if (dx * dx + dy * dy <= r2) {
+                        out[count++] = i;
+                    }
+                }
+            }
+        }
+        Arrays.sort(out, 0, count);
+        return count;
+    }
+
+    private int cellX(double x) {
+        double c = Math.floor((x - minX) / cellSize);
+        return c <= 0 ? 0 : (int) Math.min(gridW - 1, c);
+    }
+
+    private int cellY(double y) {
+        double c = Math.floor((y - minY) / cellSize);
+        return c <= 0 ? 0 : (int) Math.min(gridH - 1, c);
+    }
+}
@@ -121,6 +121,9 @@ public class TopologyGraph {
      * <p>
      * 为每个节点连接到其k个最近邻节点
      * 边属性包含相对角度、相对距离比等
+     * <p>
+     * 近邻用网格索引（{@link PointGrid}）+ 容量为 k 的堆查找，整体约 O(n·k·log k)；
+     * 邻居顺序与"按距离稳定排序后取前 k 个"一致（距离相同时按节点顺序）。
      */
     public void buildEdges() {
         if (nodes.isEmpty()) {
@@ -132,35 +135,50 @@ public class TopologyGraph {
 
         // 2. 为每个节点找到其k个最近邻
         int actualK = Math.min(nodes.size() - 1, this.k);  // 使用配置的k值
+        int n = nodeList.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = nodeList.get(i).getX();
+            ys[i] = nodeList.get(i).getY();
+        }
+        PointGrid grid = new PointGrid(xs, ys, 0);
+
+        // 节点 ID 重复时（nodes 比 nodeList 少），同 ID 的节点也不作为邻居：多取几个再过滤
+        Map<String, Integer> idCounts = null;
+        if (nodes.size() != n) {
+            idCounts = new HashMap<>();
+            for (TopologyNode node : nodeList) {
+                idCounts.merge(node.getNodeId(), 1, Integer::sum);
+            }
+        }
+
+        int capacity = Math.max(0, actualK) + (idCounts == null ? 0 : n - nodes.size());
+        int[] neighborIdx = new int[capacity];
+        double[] neighborDist = new double[capacity];
 
-        for (TopologyNode source : nodeList) {
+        for (int s = 0; s < n; s++) {
+            TopologyNode source = nodeList.get(s);
             // 计算源节点到参考点的距离
             double sourceToRef = distanceToReference(source, referencePoint);
 
-            // 计算源节点到所有其他节点的距离
-            List<NeighborDistance> distances = new ArrayList<>();
-            for (TopologyNode target : nodeList) {
-                if (!source.getNodeId().equals(target.getNodeId())) {
-                    double dist = source.distanceTo(target);
-                    distances.add(new NeighborDistance(target, dist));
-                }
-            }
-
-            // 按距离排序
-            distances.sort(Comparator.comparingDouble(NeighborDistance::getDistance));
+            int extra = idCounts == null ? 0 : idCounts.get(source.getNodeId()) - 1;
+            int found = grid.kNearest(xs[s], ys[s], Math.max(0, actualK) + extra, s, neighborIdx, neighborDist);
 
             // 为前k个邻居创建边
-            List<TopologyEdge> sourceEdges = new ArrayList<>();
-            for (int i = 0; i < Math.min(actualK, distances.size()); i++) {
-                NeighborDistance nd = distances.get(i);
-                TopologyEdge edge = new TopologyEdge(
+            List<TopologyEdge> sourceEdges = new ArrayList<>(Math.max(0, actualK));
+            for (int i = 0; i < found && sourceEdges.size() < actualK; i++) {
+                TopologyNode target = nodeList.get(neighborIdx[i]);
+                if (extra > 0 && source.getNodeId().equals(target.getNodeId())) {
+                    continue;
+                }
+                sourceEdges.add(new TopologyEdge(
                     source,
-                    nd.node,
+                    target,
                     referencePoint,
                     sourceToRef,
-                    i
-                );
-                sourceEdges.add(edge);
+                    sourceEdges.size()
+                ));
             }
 
             edges.put(source.getNodeId(), sourceEdges);
@@ -347,21 +365,4 @@ public class TopologyGraph {
             graphId, nodes.size(), countEdges(edges),
             isTemplateGraph ? "template" : "detected");
     }
-
-    /**
-     * 邻居距离（用于排序）
-     */
-    private static class NeighborDistance {
-        final TopologyNode node;
-        final double distance;
-
-        NeighborDistance(TopologyNode node, double distance) {
-            this.node = node;
-            this.distance = distance;
-        }
-
-        double getDistance() {
-            return distance;
-        }
-    }
 }
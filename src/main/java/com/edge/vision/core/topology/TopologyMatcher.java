@@ -224,39 +224,52 @@ public class TopologyMatcher {
             return new ClassMatchResult(matches, unmatchedTemplate, unmatchedDetected, totalCost);
         }
 
-        // 构建当前类别的代价矩阵
-        double[][] costMatrix = new double[templateNodes.size()][detectedNodes.size()];
-        for (int i = 0; i < templateNodes.size(); i++) {
+        // 只保留代价低于 maxMatchCost 的点对作为候选边（行压缩稀疏格式），超过阈值的点对不参与分配
+        int rows = templateNodes.size();
+        int[] rowStart = new int[rows + 1];
+        int[] colIndex = new int[Math.max(4, rows)];
+        double[] edgeCost = new double[colIndex.length];
+        int edges = 0;
+        for (int i = 0; i < rows; i++) {
             for (int j = 0; j < detectedNodes.size(); j++) {
-                costMatrix[i][j] = calculateMatchCost(
+                double cost = calculateMatchCost(
                     templateNodes.get(i), detectedNodes.get(j),
                     templateGraph, detectedGraph
                 );
+                if (cost < maxMatchCost) {
+                    if (edges == colIndex.length) {
+                        colIndex = Arrays.copyOf(colIndex, edges * 2);
+                        edgeCost = Arrays.copyOf(edgeCost, edges * 2);
+                    }
+                    colIndex[edges] = j;
+                    edgeCost[edges++] = cost;
+                }
             }
+            rowStart[i + 1] = edges;
         }
+        colIndex = Arrays.copyOf(colIndex, edges);
+        edgeCost = Arrays.copyOf(edgeCost, edges);
 
-        // 执行匈牙利算法
-        int[] assignment = HungarianAlgorithm.solve(costMatrix);
+        // 稀疏最优分配：候选边上匹配数最多、总代价最小；没有候选的模板节点视为漏检
+        int[] assignment = AssignmentSolver.solveSparse(rows, detectedNodes.size(), rowStart, colIndex, edgeCost);
 
         // 解析匹配结果
         Set<Integer> matchedDetectedIndices = new HashSet<>();
-        for (int i = 0; i < templateNodes.size(); i++) {
+        for (int i = 0; i < rows; i++) {
             int j = assignment[i];
             TopologyNode templateNode = templateNodes.get(i);
 
             if (j >= 0 && j < detectedNodes.size()) {
                 TopologyNode detectedNode = detectedNodes.get(j);
-                double cost = costMatrix[i][j];
+                double cost = edgeCostOf(rowStart, colIndex, edgeCost, i, j);
 
                 matches.add(new MatchPair(templateNode, detectedNode, cost, maxMatchCost));
                 matchedDetectedIndices.add(j);
                 totalCost += cost;
 
-                if (cost < maxMatchCost) {
-                    logger.debug("匹配: {} -> {}, 代价={}",
-                        templateNode.getNodeId(), detectedNode.getNodeId(),
-                        String.format("%.3f", cost));
-                }
+                logger.debug("匹配: {} -> {}, 代价={}",
+                    templateNode.getNodeId(), detectedNode.getNodeId(),
+                    String.format("%.3f", cost));
             } else {
                 unmatchedTemplate.add(templateNode);
                 logger.debug("模板节点 {} (类别 {}) 未找到匹配",
@@ -277,6 +290,18 @@ public class TopologyMatcher {
         return new ClassMatchResult(matches, unmatchedTemplate, unmatchedDetected, totalCost);
     }
 
+    /**
+     * 在行压缩稀疏格式中查找候选边 (i, j) 的代价
+     */
+    private static double edgeCostOf(int[] rowStart, int[] colIndex, double[] edgeCost, int i, int j) {
+        for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+            if (colIndex[e] == j) {
+                return edgeCost[e];
+            }
+        }
+        throw new IllegalStateException("Assigned pair (" + i + ", " + j + ") is not a candidate edge");
+    }
+
     /**
      * 单个类别的匹配结果
      */
@@ -69,8 +69,8 @@ public class TopologyTemplateMatcher {
             String.format("%.1f", toleranceY),
             String.format("%.2f", topologyThreshold));
 
-        // 1. 构建拓扑图（使用模板中的k值）
-        TopologyGraph templateGraph = TopologyGraph.fromTemplate(template);
+        // 1. 构建拓扑图（使用模板中的k值，模板图取自编译缓存）
+        TopologyGraph templateGraph = CompiledTemplateCache.get(template).getGraph();
         TopologyGraph detectedGraph = TopologyGraph.fromDetectedObjects(
             detectedObjects,
             "detected_" + template.getTemplateId(),
@@ -7,6 +7,8 @@ public class MultiCameraInspectionRequest {
     private String partType;
     private String batchId;
     private String operator;
+    // 异步结果图：true 时立即返回判定结果，imageUrl 为 /api/result-images/{id}；不指定时使用配置默认值
+    private Boolean asyncImages;
 
     public String getPartType() {
         return partType;
@@ -31,4 +33,12 @@ public class MultiCameraInspectionRequest {
     public void setOperator(String operator) {
         this.operator = operator;
     }
+
+    public Boolean getAsyncImages() {
+        return asyncImages;
+    }
+
+    public void setAsyncImages(Boolean asyncImages) {
+        this.asyncImages = asyncImages;
+    }
 }
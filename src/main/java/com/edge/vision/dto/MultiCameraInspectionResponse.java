@@ -82,6 +82,7 @@ public class MultiCameraInspectionResponse {
         private String templateId;
         private boolean passed;
         private String imageUrl;  // 带框的图片
+        private String imageId;  // 异步结果图ID（仅异步模式，imageUrl 为 /api/result-images/{id}）
         private String errorMessage;  // 错误信息
         private List<FeatureComparison> templateComparisons;
 
@@ -147,6 +148,14 @@ public class MultiCameraInspectionResponse {
             this.imageUrl = imageUrl;
         }
 
+        public String getImageId() {
+            return imageId;
+        }
+
+        public void setImageId(String imageId) {
+            this.imageId = imageId;
+        }
+
         public String getErrorMessage() {
             return errorMessage;
         }
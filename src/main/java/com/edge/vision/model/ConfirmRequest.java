@@ -15,4 +15,10 @@ public class ConfirmRequest {
     private String batchId;
 
     private String operator;
+
+    /**
+     * 异步结果图：true 时立即返回判定结果，result_image 为 /api/result-images/{id}；不指定时使用配置默认值
+     */
+    @JsonProperty("async_images")
+    private Boolean asyncImages;
 }
\ No newline at end of file
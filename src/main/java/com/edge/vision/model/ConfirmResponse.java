@@ -34,6 +34,12 @@ public class ConfirmResponse {
 
         @JsonProperty("result_image")
         private String resultImage;
+
+        /**
+         * 异步结果图ID（仅异步结果图模式）
+         */
+        @JsonProperty("result_image_id")
+        private String resultImageId;
     }
 
     @Data
@@ -4,27 +4,88 @@ import com.edge.vision.model.InspectionEntity;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
+/**
+ * 检测记录存储
+ * <p>
+ * 存储格式：
+ * - 段文件：按日期分文件 records/2024-01-15.jsonl，每行一条记录，只追加不改写
+ * - 状态日志：records/status.log，记录上传状态变化和删除标记（按 段+偏移 定位到具体的记录行），只追加
+ * - 意图日志：records/intent.log，异步写入的记录排队时先追加到这里（见 {@link #logIntent}），
+ *   全部写入段文件后清空；启动时把其中段文件里还没有的记录补写回去。
+ *   默认不刷盘（只防进程异常退出），record-intent-fsync 开启时每条都刷盘（断电也不丢）
+ * - 索引快照：records/index.snapshot，每个段已建索引的文件长度和其中记录的索引字段，
+ *   启动时快照覆盖的部分不再解析，只扫描之后追加的内容（段文件比快照记录的短时整段重新扫描）
+ * <p>
+ * 每个记录行带写入序号（writeSeq），同一 ID 有多个版本时以序号最大的为准，与版本所在的段无关。
+ * <p>
+ * 内存索引（启动时读取快照、扫描段文件新增部分并重放状态日志建立）：
+ * - ID -> 记录位置（段、偏移、长度）
+ * - 按日期排列的段内有效记录（文件顺序）及各段的记录数，配合每条记录的时间戳完成时间范围查询
+ * - 批次ID、工件类型 -> 记录集合
+ * - 上传状态（以状态日志为准）
+ * <p>
+ * 查询只按索引定位后读取命中的行，不再逐行解析整个文件；
+ * 只改上传状态的 update 追加一条状态日志，其他内容变化时追加新版本（旧版本作废）；delete 追加删除标记。
+ * 对外接口和查询语义（包括批次/工件类型只查最近 30 天、按日期范围最多 365 天）与原实现一致。
+ */
 @Repository
 public class InspectionRepository {
+    private static final Logger logger = LoggerFactory.getLogger(InspectionRepository.class);
+
     private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    private static final String SEGMENT_SUFFIX = ".jsonl";
+    private static final String STATUS_LOG = "status.log";
+    private static final String INTENT_LOG = "intent.log";
+    private static final String SNAPSHOT = "index.snapshot";
+    private static final int SNAPSHOT_VERSION = 1;
+    // 上次写快照后段文件追加超过该字节数时重写快照，限制异常退出后启动时需要扫描的数据量
+    private static final long SNAPSHOT_INTERVAL_BYTES = 64L << 20;
+    // 记录行中的写入序号字段
+    private static final String SEQ_FIELD = "writeSeq";
+    private static final int RECENT_DAYS = 30;
+    private static final int MAX_SCAN_DAYS = 365;
+    // 状态日志中失效条目超过该数量时，启动时压缩
+    private static final int STATUS_COMPACT_THRESHOLD = 1024;
+
+    private static final Comparator<RecordRef> RECENT_SEGMENT_FIRST =
+            Comparator.comparing((RecordRef r) -> r.segment).reversed().thenComparingLong(r -> r.offset);
+    // 分页查询的排序：时间倒序，时间相同按 ID 倒序
+    private static final Comparator<RecordRef> NEWEST_FIRST =
+            Comparator.comparing(RecordRef::sortTime).thenComparing(r -> r.id).reversed();
+
     private final Gson gson = new GsonBuilder()
             .registerTypeAdapter(LocalDateTime.class, (JsonSerializer<LocalDateTime>) (src, type, context) ->
                     new com.google.gson.JsonPrimitive(src.format(ISO_FORMATTER)))
@@ -35,14 +96,60 @@ public class InspectionRepository {
     @Value("${edge-vision.system.save-local:true}")
     private boolean saveLocal;
 
+    @Value("${edge-vision.system.record-intent-fsync:false}")
+    private boolean intentFsync;
+
     private Path dataDir;
     private Path recordsDir;  // 按日期分文件存储: records/2024-01-15.jsonl
+    private Path statusLog;
+    private Path intentLog;
+    private Path snapshotFile;
+
+    // 意图日志（受 intentLock 保护，首次写入时打开）
+    private final Object intentLock = new Object();
+    private FileChannel intentChannel;
+    private long intentEntries;
+    private long intentsRecovered;
+
+    // 索引（受 lock 保护；RecordRef 除 uploaded/live 外不可变）
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, RecordRef> byId = new HashMap<>();
+    private final TreeMap<LocalDate, Segment> bySegment = new TreeMap<>();
+    private final Map<String, Set<RecordRef>> byBatchId = new HashMap<>();
+    private final Map<String, Set<RecordRef>> byPartName = new HashMap<>();
+    private long uploadedCount;
+    private long nextSeq = 1;
+
+    // 索引快照（写快照时持有 snapshotLock）
+    private final Object snapshotLock = new Object();
+    private final AtomicLong bytesSinceSnapshot = new AtomicLong();
+
+    // 记录被替换或删除后的回调（在索引锁之外调用）
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    private long indexBuildMs;
+    private long indexScannedBytes;
+    private long statusLogEntries;
+    private final AtomicLong statusUpdates = new AtomicLong();
+    private final AtomicLong versionAppends = new AtomicLong();
+    private final AtomicLong recordReads = new AtomicLong();
+    private final AtomicLong segmentSyncs = new AtomicLong();
 
     @PostConstruct
     public void init() {
+        init(Paths.get("data"));
+    }
+
+    /**
+     * 以指定的数据目录初始化（测试使用临时目录）
+     */
+    void init(Path dataDir) {
         if (saveLocal) {
-            dataDir = Paths.get("data");
+            this.dataDir = dataDir;
             recordsDir = dataDir.resolve("records");
+            statusLog = recordsDir.resolve(STATUS_LOG);
+            intentLog = recordsDir.resolve(INTENT_LOG);
+            snapshotFile = recordsDir.resolve(SNAPSHOT);
 
             try {
                 Files.createDirectories(dataDir);
@@ -54,6 +161,7 @@ public class InspectionRepository {
             } catch (IOException e) {
                 throw new RuntimeException("Failed to initialize data store at: " + recordsDir.toAbsolutePath(), e);
             }
+            rebuildIndex();
         }
     }
 
@@ -61,7 +169,7 @@ public class InspectionRepository {
      * 获取指定日期的记录文件路径
      */
     private Path getRecordsFileForDate(LocalDate date) {
-        return recordsDir.resolve(date.toString() + ".jsonl");
+        return recordsDir.resolve(date.toString() + SEGMENT_SUFFIX);
     }
 
     /**
@@ -73,231 +181,279 @@ public class InspectionRepository {
         }
 
         if (saveLocal) {
-            appendToFile(entity);
+            lock.writeLock().lock();
+            try {
+                index(appendToFile(entity));
+            } finally {
+                lock.writeLock().unlock();
+            }
+            checkpointIfDue();
         }
     }
 
-    private void appendToFile(InspectionEntity entity) {
+    /**
+     * 批量插入记录（组提交）
+     * <p>
+     * 同一天的记录一次写入对应的段文件；force 为 true 时每个段文件写完后刷盘一次，
+     * 刷盘在索引锁之外进行，刷盘完成后记录才对查询可见。
+     */
+    public void insertAll(List<InspectionEntity> entities, boolean force) {
+        for (InspectionEntity entity : entities) {
+            if (entity.getId() == null) {
+                entity.setId(UUID.randomUUID().toString());
+            }
+        }
+        if (!saveLocal || entities.isEmpty()) {
+            return;
+        }
+
+        Map<LocalDate, List<InspectionEntity>> groups = new TreeMap<>();
+        for (InspectionEntity entity : entities) {
+            groups.computeIfAbsent(segmentOf(entity), k -> new ArrayList<>()).add(entity);
+        }
+        List<RecordRef> refs = new ArrayList<>(entities.size());
+        lock.writeLock().lock();
         try {
-            LocalDate date = entity.getTimestamp() != null
-                    ? entity.getTimestamp().toLocalDate()
-                    : LocalDate.now();
-            Path targetFile = getRecordsFileForDate(date);
+            for (Map.Entry<LocalDate, List<InspectionEntity>> group : groups.entrySet()) {
+                List<RecordRef> appended = appendToFile(group.getKey(), group.getValue());
+                // 刷盘期间这些行已在文件里但还没建索引，快照不能越过它们
+                segment(group.getKey()).beginAppend(appended.get(0).offset);
+                refs.addAll(appended);
+            }
+        } catch (RuntimeException e) {
+            // 已追加的行直接建索引，避免段长度停在未建索引的位置；重试时写入的新版本序号更大
+            for (RecordRef ref : refs) {
+                index(ref);
+            }
+            endAppends(refs);
+            throw e;
+        } finally {
+            lock.writeLock().unlock();
+        }
 
-            // 确保目录存在（防止运行时目录被删除）
-            Files.createDirectories(recordsDir);
+        if (force) {
+            for (LocalDate date : groups.keySet()) {
+                try (FileChannel channel = FileChannel.open(getRecordsFileForDate(date), StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                    segmentSyncs.incrementAndGet();
+                } catch (IOException e) {
+                    // 数据已写入系统缓存，只是未确认落盘
+                    logger.error("Failed to sync records file for {}", date, e);
+                }
+            }
+        }
 
-            String json = gson.toJson(entity);
-            try (BufferedWriter writer = Files.newBufferedWriter(targetFile,
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-                writer.write(json);
-                writer.newLine();
+        lock.writeLock().lock();
+        try {
+            for (RecordRef ref : refs) {
+                index(ref);
+            }
+            endAppends(refs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        checkpointIfDue();
+    }
+
+    private void endAppends(List<RecordRef> refs) {
+        Set<LocalDate> dates = new HashSet<>();
+        for (RecordRef ref : refs) {
+            if (dates.add(ref.segment)) {
+                segment(ref.segment).endAppend();
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to write to records file", e);
         }
     }
 
     /**
-     * 根据 ID 查找（遍历最近的日期文件）
+     * 追加记录写入意图（默认不刷盘，进程崩溃后仍可从系统缓存恢复；record-intent-fsync 开启时立即刷盘）
+     * <p>
+     * 异步写入的记录在排队前调用；重启时意图日志中段文件里没有（也未被删除）的记录会被补写。
      */
-    public Optional<InspectionEntity> findById(String id) {
+    public void logIntent(InspectionEntity entity) {
+        if (entity.getId() == null) {
+            entity.setId(UUID.randomUUID().toString());
+        }
         if (!saveLocal) {
-            return Optional.empty();
+            return;
         }
 
-        // 搜索最近 30 天的文件
-        LocalDate today = LocalDate.now();
-        for (int i = 0; i < 30; i++) {
-            LocalDate date = today.minusDays(i);
-            Path targetFile = getRecordsFileForDate(date);
-            if (!Files.exists(targetFile)) {
-                continue;
-            }
-
-            try (Stream<String> lines = Files.lines(targetFile)) {
-                Optional<InspectionEntity> result = lines
-                        .filter(line -> !line.trim().isEmpty())
-                        .map(line -> {
-                            try {
-                                return gson.fromJson(line, InspectionEntity.class);
-                            } catch (Exception e) {
-                                return null;
-                            }
-                        })
-                        .filter(entity -> entity != null && id.equals(entity.getId()))
-                        .findFirst();
-                if (result.isPresent()) {
-                    return result;
+        ByteBuffer buffer = ByteBuffer.wrap((gson.toJson(entity) + "\n").getBytes(StandardCharsets.UTF_8));
+        synchronized (intentLock) {
+            try {
+                if (intentChannel == null) {
+                    intentChannel = FileChannel.open(intentLog,
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                while (buffer.hasRemaining()) {
+                    intentChannel.write(buffer);
                 }
+                if (intentFsync) {
+                    intentChannel.force(false);
+                }
+                intentEntries++;
             } catch (IOException e) {
-                // 继续搜索下一个文件
+                throw new RuntimeException("Failed to write intent log", e);
             }
         }
-        return Optional.empty();
     }
 
     /**
-     * 查找所有记录（按日期倒序，带限制）
+     * 清空意图日志（其中的记录都已写入段文件后调用）
      */
-    public List<InspectionEntity> findAll() {
-        return findAll(1000);
+    public void clearIntents() {
+        synchronized (intentLock) {
+            if (intentChannel == null || intentEntries == 0) {
+                return;
+            }
+            try {
+                intentChannel.truncate(0);
+                intentEntries = 0;
+            } catch (IOException e) {
+                logger.warn("Failed to truncate intent log: {}", e.getMessage());
+            }
+        }
     }
 
-    public List<InspectionEntity> findAll(int limit) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
-            return Collections.emptyList();
+    /**
+     * 把意图日志重写为给定的记录（先写临时文件再替换），用于只保留仍待提交的记录
+     *
+     * @return 重写成功返回 true，失败时原意图日志保持不变
+     */
+    public boolean replaceIntents(List<InspectionEntity> entities) {
+        if (!saveLocal) {
+            return true;
         }
-
-        try (Stream<Path> files = Files.list(recordsDir)) {
-            List<Path> dateFiles = files
-                    .filter(p -> p.toString().endsWith(".jsonl"))
-                    .sorted(Comparator.reverseOrder())
-                    .collect(Collectors.toList());
-
-            List<InspectionEntity> results = new ArrayList<>();
-            for (Path file : dateFiles) {
-                if (results.size() >= limit) break;
-
-                try (Stream<String> lines = Files.lines(file)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
-
-                    int needed = limit - results.size();
-                    if (batch.size() <= needed) {
-                        results.addAll(batch);
-                    } else {
-                        results.addAll(batch.subList(Math.max(0, batch.size() - needed), batch.size()));
+        synchronized (intentLock) {
+            Path tmp = recordsDir.resolve(INTENT_LOG + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    StringBuilder lines = new StringBuilder();
+                    for (InspectionEntity entity : entities) {
+                        lines.append(gson.toJson(entity)).append('\n');
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
                     }
+                    channel.force(false);
+                }
+                if (intentChannel != null) {
+                    intentChannel.close();
+                    intentChannel = null;
                 }
+                Files.move(tmp, intentLog, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                intentEntries = entities.size();
+                return true;
+            } catch (IOException e) {
+                logger.warn("Failed to rewrite intent log: {}", e.getMessage());
+                return false;
             }
-            return results;
-        } catch (IOException e) {
-            return Collections.emptyList();
         }
     }
 
     /**
-     * 根据日期查找
+     * 注册记录变更回调（内容更新产生新版本、删除记录时调用；只改上传状态不回调）
      */
-    public List<InspectionEntity> findByDate(LocalDate date) {
-        if (!saveLocal) {
-            return Collections.emptyList();
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (saveLocal && bytesSinceSnapshot.get() > 0) {
+            writeSnapshot();
+        }
+        synchronized (intentLock) {
+            if (intentChannel != null) {
+                try {
+                    intentChannel.close();
+                } catch (IOException ignored) {
+                    // 忽略
+                }
+                intentChannel = null;
+            }
         }
+    }
 
-        Path targetFile = getRecordsFileForDate(date);
-        if (!Files.exists(targetFile)) {
-            return Collections.emptyList();
+    /**
+     * 根据 ID 查找
+     */
+    public Optional<InspectionEntity> findById(String id) {
+        if (!saveLocal || id == null) {
+            return Optional.empty();
         }
 
-        try (Stream<String> lines = Files.lines(targetFile)) {
-            return lines
-                    .filter(line -> !line.trim().isEmpty())
-                    .map(line -> {
-                        try {
-                            return gson.fromJson(line, InspectionEntity.class);
-                        } catch (Exception e) {
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            return Collections.emptyList();
+        RecordRef ref;
+        lock.readLock().lock();
+        try {
+            ref = byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (ref == null) {
+            return Optional.empty();
         }
+        List<InspectionEntity> loaded = load(Collections.singletonList(ref));
+        return loaded.isEmpty() ? Optional.empty() : Optional.of(loaded.get(0));
     }
 
     /**
-     * 根据批次 ID 查找（遍历最近的日期文件）
+     * 查找所有记录（按日期倒序，带限制）
      */
-    public List<InspectionEntity> findByBatchId(String batchId) {
+    public List<InspectionEntity> findAll() {
+        return findAll(1000);
+    }
+
+    public List<InspectionEntity> findAll(int limit) {
         if (!saveLocal) {
             return Collections.emptyList();
         }
 
-        List<InspectionEntity> results = new ArrayList<>();
-        LocalDate today = LocalDate.now();
-
-        // 搜索最近 30 天的文件
-        for (int i = 0; i < 30; i++) {
-            LocalDate date = today.minusDays(i);
-            Path targetFile = getRecordsFileForDate(date);
-            if (!Files.exists(targetFile)) {
-                continue;
-            }
-
-            try (Stream<String> lines = Files.lines(targetFile)) {
-                List<InspectionEntity> batch = lines
-                        .filter(line -> !line.trim().isEmpty())
-                        .map(line -> {
-                            try {
-                                return gson.fromJson(line, InspectionEntity.class);
-                            } catch (Exception e) {
-                                return null;
-                            }
-                        })
-                        .filter(Objects::nonNull)
-                        .filter(entity -> batchId.equals(entity.getBatchId()))
-                        .collect(Collectors.toList());
-                results.addAll(batch);
-            } catch (IOException e) {
-                // 继续搜索
+        // 从最新的日期开始，每天取文件末尾的记录（段内保持文件顺序）
+        List<RecordRef> refs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Segment segment : bySegment.descendingMap().values()) {
+                if (refs.size() >= limit) break;
+                List<RecordRef> live = live(segment.refs, r -> true);
+                int needed = limit - refs.size();
+                refs.addAll(live.size() <= needed ? live : live.subList(live.size() - needed, live.size()));
             }
+        } finally {
+            lock.readLock().unlock();
         }
-        return results;
+        return load(refs);
     }
 
     /**
-     * 根据工件类型查找（遍历最近的日期文件）
+     * 根据日期查找
      */
-    public List<InspectionEntity> findByPartType(String partType) {
+    public List<InspectionEntity> findByDate(LocalDate date) {
         if (!saveLocal) {
             return Collections.emptyList();
         }
+        return collect(date, date, false, r -> true);
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
-        LocalDate today = LocalDate.now();
+    /**
+     * 根据批次 ID 查找（最近 30 天）
+     */
+    public List<InspectionEntity> findByBatchId(String batchId) {
+        return findRecent(byBatchId, batchId);
+    }
 
-        // 搜索最近 30 天的文件
-        for (int i = 0; i < 30; i++) {
-            LocalDate date = today.minusDays(i);
-            Path targetFile = getRecordsFileForDate(date);
-            if (!Files.exists(targetFile)) {
-                continue;
-            }
-
-            try (Stream<String> lines = Files.lines(targetFile)) {
-                List<InspectionEntity> batch = lines
-                        .filter(line -> !line.trim().isEmpty())
-                        .map(line -> {
-                            try {
-                                return gson.fromJson(line, InspectionEntity.class);
-                            } catch (Exception e) {
-                                return null;
-                            }
-                        })
-                        .filter(Objects::nonNull)
-                        .filter(entity -> partType.equals(entity.getPartName()))
-                        .collect(Collectors.toList());
-                results.addAll(batch);
-            } catch (IOException e) {
-                // 继续搜索
-            }
-        }
-        return results;
+    /**
+     * 根据工件类型查找（最近 30 天）
+     */
+    public List<InspectionEntity> findByPartType(String partType) {
+        return findRecent(byPartName, partType);
     }
 
     /**
-     * 更新记录（重写对应日期的文件）
+     * 更新记录
+     * <p>
+     * 只有上传状态变化时追加一条状态日志；其他内容变化时追加新版本，旧版本作废
      */
     public void update(InspectionEntity entity) {
         if (entity.getId() == null) {
@@ -308,456 +464,1134 @@ public class InspectionRepository {
             return;
         }
 
+        InspectionEntity previous = null;
+        lock.writeLock().lock();
         try {
-            LocalDate date = entity.getTimestamp() != null
-                    ? entity.getTimestamp().toLocalDate()
-                    : LocalDate.now();
-            Path targetFile = getRecordsFileForDate(date);
-
-            if (!Files.exists(targetFile)) {
-                appendToFile(entity);
-                return;
-            }
-
-            List<String> lines;
-            try {
-                lines = Files.readAllLines(targetFile);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read records file", e);
-            }
-
-            try (BufferedWriter writer = Files.newBufferedWriter(targetFile)) {
-                boolean found = false;
-                for (String line : lines) {
-                    if (line.trim().isEmpty()) {
-                        continue;
-                    }
-                    InspectionEntity existing = gson.fromJson(line, InspectionEntity.class);
-                    if (existing != null && entity.getId().equals(existing.getId())) {
-                        writer.write(gson.toJson(entity));
-                        writer.newLine();
-                        found = true;
-                    } else {
-                        writer.write(line);
-                        writer.newLine();
-                    }
-                }
-                if (!found) {
-                    writer.write(gson.toJson(entity));
-                    writer.newLine();
+            RecordRef ref = byId.get(entity.getId());
+            if (ref != null && ref.segment.equals(segmentOf(entity)) && sameExceptUploaded(ref, entity)) {
+                if (ref.uploaded != entity.isUploaded()) {
+                    appendStatus(StatusEntry.uploaded(ref, entity.isUploaded()));
+                    setUploaded(ref, entity.isUploaded());
                 }
+                statusUpdates.incrementAndGet();
+                return;
             }
+            previous = loadForListeners(ref);
+            index(appendToFile(entity));
+            versionAppends.incrementAndGet();
         } catch (IOException e) {
-            throw new RuntimeException("Failed to rewrite records file", e);
+            throw new RuntimeException("Failed to update record", e);
+        } finally {
+            lock.writeLock().unlock();
         }
+        notifyChange(previous, entity);
+        checkpointIfDue();
     }
 
     /**
-     * 删除记录
+     * 删除记录（追加删除标记）
      */
     public void delete(String id) {
-        if (!saveLocal) {
-            return;
-        }
-
-        // 先找到记录
-        Optional<InspectionEntity> entityOpt = findById(id);
-        if (entityOpt.isEmpty()) {
+        if (!saveLocal || id == null) {
             return;
         }
 
+        InspectionEntity previous;
+        lock.writeLock().lock();
         try {
-            InspectionEntity entity = entityOpt.get();
-            LocalDate date = entity.getTimestamp() != null
-                    ? entity.getTimestamp().toLocalDate()
-                    : LocalDate.now();
-            Path targetFile = getRecordsFileForDate(date);
-
-            if (!Files.exists(targetFile)) {
+            RecordRef ref = byId.get(id);
+            if (ref == null) {
                 return;
             }
-
-            List<String> lines;
-            try {
-                lines = Files.readAllLines(targetFile);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to read records file", e);
-            }
-
-            try (BufferedWriter writer = Files.newBufferedWriter(targetFile)) {
-                for (String line : lines) {
-                    if (line.trim().isEmpty()) {
-                        continue;
-                    }
-                    InspectionEntity existing = gson.fromJson(line, InspectionEntity.class);
-                    if (existing == null || !id.equals(existing.getId())) {
-                        writer.write(line);
-                        writer.newLine();
-                    }
-                }
-            }
+            previous = loadForListeners(ref);
+            appendStatus(StatusEntry.delete(ref));
+            markDeleted(ref);
         } catch (IOException e) {
-            throw new RuntimeException("Failed to rewrite records file", e);
+            throw new RuntimeException("Failed to delete record", e);
+        } finally {
+            lock.writeLock().unlock();
         }
+        notifyChange(previous, null);
     }
 
     /**
      * 统计记录数
      */
     public long count() {
-        if (!saveLocal || !Files.exists(recordsDir)) {
+        if (!saveLocal) {
             return 0;
         }
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        try (Stream<Path> files = Files.list(recordsDir)) {
-            return files
-                    .filter(p -> p.toString().endsWith(".jsonl"))
-                    .mapToLong(file -> {
-                        try (Stream<String> lines = Files.lines(file)) {
-                            return lines.filter(line -> !line.trim().isEmpty()).count();
-                        } catch (IOException e) {
-                            return 0;
-                        }
-                    })
-                    .sum();
-        } catch (IOException e) {
+    /**
+     * 统计已上传的记录数
+     */
+    public long countUploaded() {
+        if (!saveLocal) {
             return 0;
         }
+        lock.readLock().lock();
+        try {
+            return uploadedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
      * 按时间范围查询
      */
     public List<InspectionEntity> findByTimeRange(LocalDateTime start, LocalDateTime end) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
+        return findByTimestampBetween(start, end);
+    }
+
+    /**
+     * 按日期范围查询
+     */
+    public List<InspectionEntity> findByDateBetween(LocalDate startDate, LocalDate endDate) {
+        if (!saveLocal) {
+            return Collections.emptyList();
+        }
+        return collect(startDate, endDate, false, r -> true);
+    }
+
+    /**
+     * 查询指定日期之后的记录
+     */
+    public List<InspectionEntity> findByDateAfter(LocalDate date) {
+        if (!saveLocal) {
             return Collections.emptyList();
         }
 
+        // 查询从指定日期到今天（最多365天）
+        LocalDate last = min(LocalDate.now(), date.plusDays(MAX_SCAN_DAYS - 1));
+        return collect(date, last, false,
+                r -> r.timestamp != null && !r.timestamp.toLocalDate().isBefore(date));
+    }
+
+    /**
+     * 查询指定日期之前的记录
+     */
+    public List<InspectionEntity> findByDateBefore(LocalDate date) {
+        if (!saveLocal) {
+            return Collections.emptyList();
+        }
+
+        // 从指定日期往前查（最多365天）
+        return collect(date.minusDays(MAX_SCAN_DAYS - 1), date, true,
+                r -> r.timestamp != null && r.timestamp.toLocalDate().isBefore(date));
+    }
+
+    /**
+     * 查询指定时间范围内的记录（精确到时分秒）
+     */
+    public List<InspectionEntity> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
+        if (!saveLocal) {
+            return Collections.emptyList();
+        }
+        return collect(start.toLocalDate(), end.toLocalDate(), false,
+                r -> r.timestamp != null && !r.timestamp.isBefore(start) && !r.timestamp.isAfter(end));
+    }
+
+    /**
+     * 查询指定时间之后的记录（精确到时分秒）
+     */
+    public List<InspectionEntity> findByTimestampAfter(LocalDateTime start) {
+        if (!saveLocal) {
+            return Collections.emptyList();
+        }
+
+        // 查询从 startDate 开始到今天（最多365天）
         LocalDate startDate = start.toLocalDate();
+        LocalDate last = min(LocalDate.now(), startDate.plusDays(MAX_SCAN_DAYS - 1));
+        return collect(startDate, last, false,
+                r -> r.timestamp != null && !r.timestamp.isBefore(start));
+    }
+
+    /**
+     * 查询指定时间之前的记录（精确到时分秒）
+     */
+    public List<InspectionEntity> findByTimestampBefore(LocalDateTime end) {
+        if (!saveLocal) {
+            return Collections.emptyList();
+        }
+
+        // 从 endDate 往前查（最多365天）
         LocalDate endDate = end.toLocalDate();
+        return collect(endDate.minusDays(MAX_SCAN_DAYS - 1), endDate, true,
+                r -> r.timestamp != null && !r.timestamp.isAfter(end));
+    }
 
-        List<LocalDate> datesToQuery = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            datesToQuery.add(current);
-            current = current.plusDays(1);
+    /**
+     * 查询指定日期未上传的记录
+     */
+    public List<InspectionEntity> findUnuploadedByDate(LocalDate date) {
+        if (!saveLocal) {
+            return Collections.emptyList();
         }
+        return collect(date, date, false, r -> !r.uploaded);
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
-        for (LocalDate date : datesToQuery) {
-            Path targetFile = getRecordsFileForDate(date);
-            if (!Files.exists(targetFile)) {
-                continue;
-            }
-
-            try (Stream<String> lines = Files.lines(targetFile)) {
-                List<InspectionEntity> batch = lines
-                        .filter(line -> !line.trim().isEmpty())
-                        .map(line -> {
-                            try {
-                                return gson.fromJson(line, InspectionEntity.class);
-                            } catch (Exception e) {
-                                return null;
-                            }
-                        })
-                        .filter(entity -> entity != null && entity.getTimestamp() != null)
-                        .filter(entity -> !entity.getTimestamp().isBefore(start) && !entity.getTimestamp().isAfter(end))
-                        .collect(Collectors.toList());
-                results.addAll(batch);
-            } catch (IOException e) {
-                // 跳过读取失败的文件
+    /**
+     * 按条件分页查询（时间倒序，时间相同按 ID 倒序）
+     * <p>
+     * 时间范围、批次ID、工件类型都在索引上过滤，只读取并解析返回的记录：
+     * 指定批次/工件类型时从对应的索引集合取候选，否则从最新的段往前逐段取，凑满 skip + limit 条即停止。
+     * 时间范围不设上下限时不限制天数。
+     *
+     * @param afterTimestamp 游标：只返回排在 (afterTimestamp, afterId) 之后的记录，null 表示从头开始；
+     *                       取上一页最后一条记录的 {@link #sortTimeOf}
+     * @param skip           游标之后跳过的条数（页码分页）
+     */
+    public List<InspectionEntity> findPage(LocalDateTime start, LocalDateTime end, String batchId, String partName,
+                                           LocalDateTime afterTimestamp, String afterId, int skip, int limit) {
+        if (!saveLocal || limit <= 0) {
+            return Collections.emptyList();
+        }
+        RecordRef cursor = afterTimestamp != null && afterId != null
+                ? new RecordRef(afterId, afterTimestamp.toLocalDate(), -1, 0, 0, afterTimestamp, null, null, false)
+                : null;
+        Predicate<RecordRef> filter = queryFilter(start, end, batchId, partName, cursor);
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, skip) + limit);
+
+        List<RecordRef> refs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<RecordRef> candidates = candidates(batchId, partName);
+            if (candidates != null) {
+                for (RecordRef ref : candidates) {
+                    if (filter.test(ref)) refs.add(ref);
+                }
+                refs.sort(NEWEST_FIRST);
+            } else {
+                // 段按记录时间的日期划分，从新到旧逐段排序即为全局顺序
+                for (Segment segment : segmentRange(start, end, cursor).descendingMap().values()) {
+                    if (refs.size() >= wanted) break;
+                    List<RecordRef> matches = live(segment.refs, filter);
+                    matches.sort(NEWEST_FIRST);
+                    refs.addAll(matches);
+                }
             }
+        } finally {
+            lock.readLock().unlock();
         }
-        return results;
+
+        int from = Math.min(Math.max(0, skip), refs.size());
+        return load(refs.subList(from, Math.min(refs.size(), wanted)));
     }
 
     /**
-     * 按日期范围查询
+     * 记录在分页查询中的排序时间（没有时间戳的记录为所在段的零点），用于生成 findPage 的游标
+     *
+     * @return 记录已不在索引中时返回 null
      */
-    public List<InspectionEntity> findByDateBetween(LocalDate startDate, LocalDate endDate) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
+    public LocalDateTime sortTimeOf(InspectionEntity entity) {
+        if (entity.getTimestamp() != null) {
+            return entity.getTimestamp();
+        }
+        if (!saveLocal || entity.getId() == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            RecordRef ref = byId.get(entity.getId());
+            return ref != null ? ref.sortTime() : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 统计符合条件的记录数（只查索引）
+     * <p>
+     * 未指定批次/工件类型时，完整落在时间范围内的段直接取段内记录数，只有范围两端的段逐条判断。
+     */
+    public long countMatching(LocalDateTime start, LocalDateTime end, String batchId, String partName) {
+        if (!saveLocal) {
+            return 0;
+        }
+        Predicate<RecordRef> filter = queryFilter(start, end, batchId, partName, null);
+        long count = 0;
+        lock.readLock().lock();
+        try {
+            Set<RecordRef> candidates = candidates(batchId, partName);
+            if (candidates != null) {
+                for (RecordRef ref : candidates) {
+                    if (filter.test(ref)) count++;
+                }
+            } else {
+                for (Map.Entry<LocalDate, Segment> entry : segmentRange(start, end, null).entrySet()) {
+                    Segment segment = entry.getValue();
+                    if (covers(start, end, entry.getKey())) {
+                        // 指定了时间范围时没有时间戳的记录不计入
+                        count += start == null && end == null ? segment.refs.size() : segment.refs.size() - segment.untimed;
+                        continue;
+                    }
+                    for (RecordRef ref : segment.refs) {
+                        if (filter.test(ref)) count++;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return count;
+    }
+
+    /**
+     * 存储统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            result.put("records", byId.size());
+            result.put("uploaded", uploadedCount);
+            result.put("segments", bySegment.size());
+            result.put("batchIds", byBatchId.size());
+            result.put("partNames", byPartName.size());
+            result.put("statusLogEntries", statusLogEntries);
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.put("indexBuildMs", indexBuildMs);
+        result.put("indexScannedBytes", indexScannedBytes);
+        result.put("statusUpdates", statusUpdates.get());
+        result.put("versionAppends", versionAppends.get());
+        result.put("recordReads", recordReads.get());
+        result.put("segmentSyncs", segmentSyncs.get());
+        synchronized (intentLock) {
+            result.put("intentEntries", intentEntries);
+        }
+        result.put("intentsRecovered", intentsRecovered);
+        return result;
+    }
+
+    // ==================== 查询辅助 ====================
+
+    /**
+     * 按索引查最近 30 天的记录（新的日期在前，同一天内按文件顺序）
+     */
+    private List<InspectionEntity> findRecent(Map<String, Set<RecordRef>> index, String key) {
+        if (!saveLocal || key == null) {
             return Collections.emptyList();
         }
 
-        List<InspectionEntity> results = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+        LocalDate earliest = LocalDate.now().minusDays(RECENT_DAYS - 1);
+        List<RecordRef> refs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<RecordRef> matches = index.get(key);
+            if (matches != null) {
+                for (RecordRef ref : matches) {
+                    if (!ref.segment.isBefore(earliest) && !ref.segment.isAfter(LocalDate.now())) {
+                        refs.add(ref);
+                    }
                 }
             }
-            current = current.plusDays(1);
+        } finally {
+            lock.readLock().unlock();
         }
-        return results;
+        refs.sort(RECENT_SEGMENT_FIRST);
+        return load(refs);
     }
 
     /**
-     * 查询指定日期之后的记录
+     * 按日期范围收集段内记录（段内按文件顺序）
+     *
+     * @param descending true 表示从 last 往前
      */
-    public List<InspectionEntity> findByDateAfter(LocalDate date) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
+    private List<InspectionEntity> collect(LocalDate first, LocalDate last, boolean descending,
+                                           Predicate<RecordRef> filter) {
+        if (first.isAfter(last)) {
             return Collections.emptyList();
         }
+        List<RecordRef> refs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableMap<LocalDate, Segment> range = bySegment.subMap(first, true, last, true);
+            for (Segment segment : (descending ? range.descendingMap() : range).values()) {
+                refs.addAll(live(segment.refs, filter));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return load(refs);
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
+    /**
+     * 分页查询的候选集合：批次/工件类型索引中较小的一个，都未指定时返回 null（按段遍历）
+     */
+    private Set<RecordRef> candidates(String batchId, String partName) {
+        Set<RecordRef> byBatch = batchId != null ? byBatchId.getOrDefault(batchId, Collections.emptySet()) : null;
+        Set<RecordRef> byPart = partName != null ? byPartName.getOrDefault(partName, Collections.emptySet()) : null;
+        if (byBatch != null && byPart != null) {
+            return byBatch.size() <= byPart.size() ? byBatch : byPart;
+        }
+        return byBatch != null ? byBatch : byPart;
+    }
 
-        // 查询从指定日期到今天（最多365天）
-        LocalDate today = LocalDate.now();
-        LocalDate current = date;
-        int daysSearched = 0;
-        int maxDays = 365;
-
-        while (!current.isAfter(today) && daysSearched < maxDays) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .filter(entity -> entity.getTimestamp() != null)
-                            .filter(entity -> !entity.getTimestamp().toLocalDate().isBefore(date))
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+    private NavigableMap<LocalDate, Segment> segmentRange(LocalDateTime start, LocalDateTime end,
+                                                          RecordRef cursor) {
+        NavigableMap<LocalDate, Segment> range = bySegment;
+        if (start != null) {
+            range = range.tailMap(start.toLocalDate(), true);
+        }
+        LocalDate last = end != null ? end.toLocalDate() : null;
+        if (cursor != null && (last == null || cursor.segment.isBefore(last))) {
+            last = cursor.segment;
+        }
+        if (last != null) {
+            range = range.headMap(last, true);
+        }
+        return range;
+    }
+
+    private static Predicate<RecordRef> queryFilter(LocalDateTime start, LocalDateTime end, String batchId,
+                                                    String partName, RecordRef cursor) {
+        return ref -> ref.live
+                && (start == null || ref.timestamp != null && !ref.timestamp.isBefore(start))
+                && (end == null || ref.timestamp != null && !ref.timestamp.isAfter(end))
+                && (batchId == null || batchId.equals(ref.batchId))
+                && (partName == null || partName.equals(ref.partName))
+                && (cursor == null || NEWEST_FIRST.compare(ref, cursor) > 0);
+    }
+
+    /**
+     * 时间范围是否覆盖整个段（段按记录时间戳的日期划分）
+     */
+    private static boolean covers(LocalDateTime start, LocalDateTime end, LocalDate segment) {
+        return (start == null || !start.isAfter(segment.atStartOfDay()))
+                && (end == null || !end.isBefore(segment.atTime(LocalTime.MAX)));
+    }
+
+    private static List<RecordRef> live(Collection<RecordRef> segment, Predicate<RecordRef> filter) {
+        List<RecordRef> result = new ArrayList<>();
+        for (RecordRef ref : segment) {
+            if (ref.live && filter.test(ref)) {
+                result.add(ref);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取并解析索引命中的记录行（上传状态以索引为准）
+     */
+    private List<InspectionEntity> load(List<RecordRef> refs) {
+        List<InspectionEntity> results = new ArrayList<>(refs.size());
+        LocalDate openSegment = null;
+        FileChannel channel = null;
+        try {
+            for (RecordRef ref : refs) {
+                if (!ref.segment.equals(openSegment)) {
+                    if (channel != null) channel.close();
+                    channel = FileChannel.open(getRecordsFileForDate(ref.segment), StandardOpenOption.READ);
+                    openSegment = ref.segment;
+                }
+                try {
+                    InspectionEntity entity = gson.fromJson(readLine(channel, ref), InspectionEntity.class);
+                    if (entity != null) {
+                        entity.setUploaded(ref.uploaded);
+                        results.add(entity);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Skip unreadable record {} at {}:{}", ref.id, ref.segment, ref.offset);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to read records", e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 忽略
                 }
             }
-            current = current.plusDays(1);
-            daysSearched++;
         }
         return results;
     }
 
     /**
-     * 查询指定日期之前的记录
+     * 读取将被替换或删除的记录（没有变更回调时不读取）
      */
-    public List<InspectionEntity> findByDateBefore(LocalDate date) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
-            return Collections.emptyList();
+    private InspectionEntity loadForListeners(RecordRef ref) {
+        if (ref == null || changeListeners.isEmpty()) {
+            return null;
         }
+        List<InspectionEntity> loaded = load(Collections.singletonList(ref));
+        return loaded.isEmpty() ? null : loaded.get(0);
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
-
-        // 查询从最早记录到指定日期（最多365天）
-        LocalDate current = date;
-        int daysSearched = 0;
-        int maxDays = 365;
-
-        while (daysSearched < maxDays) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .filter(entity -> entity.getTimestamp() != null)
-                            .filter(entity -> entity.getTimestamp().toLocalDate().isBefore(date))
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+    private void notifyChange(InspectionEntity previous, InspectionEntity current) {
+        if (previous == null) {
+            return;
+        }
+        for (ChangeListener listener : changeListeners) {
+            try {
+                listener.onChange(previous, current);
+            } catch (RuntimeException e) {
+                logger.warn("Record change listener failed for {}: {}", previous.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private String readLine(FileChannel channel, RecordRef ref) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ref.length);
+        long position = ref.offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException("Record truncated: " + ref.id);
+            position += n;
+        }
+        recordReads.incrementAndGet();
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 新内容与已存记录是否只有上传状态不同
+     */
+    private boolean sameExceptUploaded(RecordRef ref, InspectionEntity entity) throws IOException {
+        String stored;
+        try (FileChannel channel = FileChannel.open(getRecordsFileForDate(ref.segment), StandardOpenOption.READ)) {
+            stored = readLine(channel, ref);
+        }
+        JsonElement storedJson = JsonParser.parseString(stored);
+        JsonElement newJson = gson.toJsonTree(entity);
+        if (!storedJson.isJsonObject() || !newJson.isJsonObject()) {
+            return false;
+        }
+        JsonObject storedObject = storedJson.getAsJsonObject();
+        storedObject.remove(SEQ_FIELD);
+        JsonObject newObject = newJson.getAsJsonObject();
+        newObject.add("uploaded", storedObject.get("uploaded"));
+        return storedJson.equals(newObject);
+    }
+
+    // ==================== 写入 ====================
+
+    private static LocalDate segmentOf(InspectionEntity entity) {
+        return entity.getTimestamp() != null ? entity.getTimestamp().toLocalDate() : LocalDate.now();
+    }
+
+    private RecordRef appendToFile(InspectionEntity entity) {
+        return appendToFile(segmentOf(entity), List.of(entity)).get(0);
+    }
+
+    /**
+     * 把同一天的记录一次追加到段文件（调用方持有写锁，每行带上递增的写入序号）
+     */
+    private List<RecordRef> appendToFile(LocalDate date, List<InspectionEntity> entities) {
+        try {
+            Path targetFile = getRecordsFileForDate(date);
+
+            // 确保目录存在（防止运行时目录被删除）
+            Files.createDirectories(recordsDir);
+
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            int[] lengths = new int[entities.size()];
+            long[] seqs = new long[entities.size()];
+            for (int i = 0; i < entities.size(); i++) {
+                JsonObject json = gson.toJsonTree(entities.get(i)).getAsJsonObject();
+                seqs[i] = nextSeq++;
+                json.addProperty(SEQ_FIELD, seqs[i]);
+                byte[] line = gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+                lengths[i] = line.length;
+                lines.write(line);
+                lines.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            try (FileChannel channel = FileChannel.open(targetFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long offset = channel.size();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                List<RecordRef> refs = new ArrayList<>(entities.size());
+                for (int i = 0; i < entities.size(); i++) {
+                    InspectionEntity entity = entities.get(i);
+                    refs.add(new RecordRef(entity.getId(), date, offset, lengths[i], seqs[i], entity.getTimestamp(),
+                            entity.getBatchId(), entity.getPartName(), entity.isUploaded()));
+                    offset += lengths[i] + 1;
                 }
+                bytesSinceSnapshot.addAndGet(buffer.limit());
+                return refs;
             }
-            current = current.minusDays(1);
-            daysSearched++;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to records file", e);
         }
-        return results;
     }
 
+    private void appendStatus(StatusEntry entry) throws IOException {
+        Files.write(statusLog, (gson.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        statusLogEntries++;
+    }
+
+    // ==================== 索引维护 ====================
+
     /**
-     * 查询指定时间范围内的记录（精确到时分秒）
+     * 加入索引；同一 ID 已有记录时写入序号小的版本作废
      */
-    public List<InspectionEntity> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
-            return Collections.emptyList();
+    private void index(RecordRef ref) {
+        Segment segment = segment(ref.segment);
+        segment.end = Math.max(segment.end, ref.offset + ref.length + 1);
+        nextSeq = Math.max(nextSeq, ref.seq + 1);
+        RecordRef previous = byId.get(ref.id);
+        if (previous != null) {
+            if (previous.seq > ref.seq) {
+                // 更新的版本已先建索引（重建索引时新版本可能在日期更早的段里）
+                ref.live = false;
+                return;
+            }
+            unindex(previous);
         }
+        byId.put(ref.id, ref);
+        if (ref.uploaded) uploadedCount++;
+        segment.add(ref);
+        if (ref.batchId != null) {
+            byBatchId.computeIfAbsent(ref.batchId, k -> new LinkedHashSet<>()).add(ref);
+        }
+        if (ref.partName != null) {
+            byPartName.computeIfAbsent(ref.partName, k -> new LinkedHashSet<>()).add(ref);
+        }
+    }
+
+    private void unindex(RecordRef ref) {
+        ref.live = false;
+        if (byId.remove(ref.id, ref) && ref.uploaded) uploadedCount--;
+        Segment segment = bySegment.get(ref.segment);
+        if (segment != null) segment.remove(ref);
+        removeFrom(byBatchId, ref.batchId, ref);
+        removeFrom(byPartName, ref.partName, ref);
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
+    /**
+     * 标记删除（已删除的记录保留在段的删除列表中，随快照保存，状态日志压缩时保留其删除标记）
+     */
+    private void markDeleted(RecordRef ref) {
+        ref.deleted = true;
+        if (ref.live) unindex(ref);
+        segment(ref.segment).deleted.add(ref);
+    }
 
-        LocalDate startDate = start.toLocalDate();
-        LocalDate endDate = end.toLocalDate();
+    private Segment segment(LocalDate date) {
+        return bySegment.computeIfAbsent(date, k -> new Segment());
+    }
 
-        // 计算需要查询的日期范围
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .filter(entity -> entity.getTimestamp() != null)
-                            .filter(entity -> {
-                                LocalDateTime timestamp = entity.getTimestamp();
-                                // 精确时间过滤：在 start 和 end 之间
-                                return !timestamp.isBefore(start) && !timestamp.isAfter(end);
-                            })
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+    private void setUploaded(RecordRef ref, boolean uploaded) {
+        if (ref.live && ref.uploaded != uploaded) {
+            uploadedCount += uploaded ? 1 : -1;
+        }
+        ref.uploaded = uploaded;
+    }
+
+    private static void removeFrom(Map<String, Set<RecordRef>> index, String key, RecordRef ref) {
+        if (key == null) return;
+        Set<RecordRef> refs = index.get(key);
+        if (refs != null) {
+            refs.remove(ref);
+            if (refs.isEmpty()) index.remove(key);
+        }
+    }
+
+    /**
+     * 读取索引快照、扫描段文件中快照之后的内容并重放状态日志，重建索引
+     */
+    private void rebuildIndex() {
+        long start = System.currentTimeMillis();
+        // 段+偏移 -> 记录（含已作废版本，用于重放状态日志）
+        Map<String, RecordRef> byPosition = new HashMap<>();
+        Map<LocalDate, SegmentSnapshot> snapshot = readSnapshot();
+        int snapshotSegments = 0;
+
+        lock.writeLock().lock();
+        try {
+            List<Path> segmentFiles;
+            try (Stream<Path> files = Files.list(recordsDir)) {
+                segmentFiles = files.filter(p -> p.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            }
+            for (Path file : segmentFiles) {
+                String name = file.getFileName().toString();
+                LocalDate date;
+                try {
+                    date = LocalDate.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (DateTimeParseException e) {
+                    logger.warn("Skip non-segment records file: {}", file);
+                    continue;
+                }
+                long from = 0;
+                SegmentSnapshot cached = snapshot.get(date);
+                if (cached != null && cached.end <= Files.size(file)) {
+                    for (RecordRef ref : cached.refs) {
+                        byPosition.put(positionKey(date, ref.offset), ref);
+                        index(ref);
+                    }
+                    from = cached.end;
+                    snapshotSegments++;
                 }
+                scanSegment(date, file, from, byPosition);
             }
-            current = current.plusDays(1);
+            replayStatusLog(byPosition);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to build records index at: " + recordsDir.toAbsolutePath(), e);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return results;
+        recoverIntents(byPosition.values());
+        if (indexScannedBytes > 0 || bytesSinceSnapshot.get() > 0) {
+            writeSnapshot();
+        }
+
+        indexBuildMs = System.currentTimeMillis() - start;
+        logger.info("Records index built: {} records in {} segments ({} from snapshot, {} bytes scanned), "
+                        + "{} status entries, {} ms",
+                byId.size(), bySegment.size(), snapshotSegments, indexScannedBytes, statusLogEntries, indexBuildMs);
     }
 
     /**
-     * 查询指定时间之后的记录（精确到时分秒）
+     * 补写意图日志中段文件里没有的记录（排队期间进程退出），然后清空意图日志
+     *
+     * @param stored 段文件中的全部记录（含已删除），已删除的记录不补写
      */
-    public List<InspectionEntity> findByTimestampAfter(LocalDateTime start) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
-            return Collections.emptyList();
+    private void recoverIntents(Collection<RecordRef> stored) {
+        if (!Files.exists(intentLog)) {
+            return;
+        }
+        Set<String> storedIds = new HashSet<>();
+        for (RecordRef ref : stored) {
+            storedIds.add(ref.id);
+        }
+        List<InspectionEntity> missing = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(intentLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                InspectionEntity entity;
+                try {
+                    entity = gson.fromJson(line, InspectionEntity.class);
+                } catch (Exception e) {
+                    // 崩溃时写了一半的行
+                    continue;
+                }
+                if (entity != null && entity.getId() != null && storedIds.add(entity.getId())) {
+                    missing.add(entity);
+                }
+            }
+            if (!missing.isEmpty()) {
+                insertAll(missing, true);
+                logger.warn("Recovered {} records from intent log", missing.size());
+            }
+            Files.delete(intentLog);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to recover intent log: " + intentLog.toAbsolutePath(), e);
         }
+        intentsRecovered = missing.size();
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
+    /**
+     * 从 from 开始扫描段文件，逐行建立索引
+     */
+    private void scanSegment(LocalDate date, Path file, long from, Map<String, RecordRef> byPosition)
+            throws IOException {
+        long offset = from;
+        long lineStart = from;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(4096);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(from);
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            byte[] chunk = buffer.array();
+            int n;
+            while ((n = channel.read(buffer)) > 0) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (chunk[i] == '\n') {
+                        line.write(chunk, start, i - start);
+                        indexLine(date, lineStart, line, byPosition);
+                        line.reset();
+                        start = i + 1;
+                        lineStart = offset + start;
+                    }
+                }
+                line.write(chunk, start, n - start);
+                offset += n;
+                buffer.clear();
+            }
+        }
+        if (line.size() > 0) {
+            indexLine(date, lineStart, line, byPosition);
+            // 上次写入中断留下的半行：补换行，避免后续追加的记录与其粘连
+            Files.write(file, new byte[]{'\n'}, StandardOpenOption.APPEND);
+            offset++;
+        }
+        indexScannedBytes += offset - from;
+        Segment segment = segment(date);
+        segment.end = Math.max(segment.end, offset);
+    }
 
-        LocalDate startDate = start.toLocalDate();
-        LocalDate today = LocalDate.now();
+    private void indexLine(LocalDate date, long offset, ByteArrayOutputStream line, Map<String, RecordRef> byPosition) {
+        String text = line.toString(StandardCharsets.UTF_8);
+        if (text.trim().isEmpty()) {
+            return;
+        }
+        IndexFields fields;
+        try {
+            fields = gson.fromJson(text, IndexFields.class);
+        } catch (Exception e) {
+            logger.warn("Skip unreadable line at {}:{}", date, offset);
+            return;
+        }
+        if (fields == null || fields.id == null) {
+            return;
+        }
+        RecordRef ref = new RecordRef(fields.id, date, offset, line.size(), fields.writeSeq, fields.timestamp,
+                fields.batchId, fields.partName, fields.uploaded);
+        byPosition.put(positionKey(date, offset), ref);
+        index(ref);
+    }
 
-        // 查询从 startDate 开始到今天（最多365天）
-        LocalDate current = startDate;
-        int daysSearched = 0;
-        int maxDays = 365;
-
-        while (!current.isAfter(today) && daysSearched < maxDays) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .filter(entity -> entity.getTimestamp() != null)
-                            .filter(entity -> !entity.getTimestamp().isBefore(start))
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+    private void replayStatusLog(Map<String, RecordRef> byPosition) throws IOException {
+        if (!Files.exists(statusLog)) {
+            return;
+        }
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(statusLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                lines++;
+                StatusEntry entry;
+                try {
+                    entry = gson.fromJson(line, StatusEntry.class);
+                } catch (Exception e) {
+                    continue;
+                }
+                RecordRef ref = entry == null || entry.seg == null ? null
+                        : byPosition.get(entry.seg + ":" + entry.off);
+                if (ref == null) continue;
+                if (StatusEntry.DELETE.equals(entry.op)) {
+                    if (!ref.deleted) markDeleted(ref);
+                } else if (StatusEntry.UPLOADED.equals(entry.op)) {
+                    setUploaded(ref, entry.value);
                 }
             }
-            current = current.plusDays(1);
-            daysSearched++;
         }
-        return results;
+        statusLogEntries = lines;
+        compactStatusLog(byPosition.values());
     }
 
     /**
-     * 查询指定时间之前的记录（精确到时分秒）
+     * 状态日志中的失效条目过多时重写为当前有效的状态
      */
-    public List<InspectionEntity> findByTimestampBefore(LocalDateTime end) {
-        if (!saveLocal || !Files.exists(recordsDir)) {
-            return Collections.emptyList();
+    private void compactStatusLog(Collection<RecordRef> refs) throws IOException {
+        List<StatusEntry> effective = new ArrayList<>();
+        for (RecordRef ref : refs) {
+            if (ref.deleted) {
+                effective.add(StatusEntry.delete(ref));
+            } else if (ref.uploaded != ref.storedUploaded) {
+                effective.add(StatusEntry.uploaded(ref, ref.uploaded));
+            }
         }
+        if (statusLogEntries - effective.size() < STATUS_COMPACT_THRESHOLD) {
+            return;
+        }
+        Path tmp = recordsDir.resolve(STATUS_LOG + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (StatusEntry entry : effective) {
+                writer.write(gson.toJson(entry));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, statusLog, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Compacted records status log: {} -> {} entries", statusLogEntries, effective.size());
+        statusLogEntries = effective.size();
+    }
 
-        List<InspectionEntity> results = new ArrayList<>();
+    // ==================== 索引快照 ====================
 
-        LocalDate endDate = end.toLocalDate();
+    /**
+     * 快照满 SNAPSHOT_INTERVAL_BYTES 后重写
+     */
+    private void checkpointIfDue() {
+        if (bytesSinceSnapshot.get() >= SNAPSHOT_INTERVAL_BYTES) {
+            writeSnapshot();
+        }
+    }
 
-        // 查询从最早记录到 endDate（最多365天）
-        LocalDate current = endDate;
-        int daysSearched = 0;
-        int maxDays = 365;
-
-        while (daysSearched < maxDays) {
-            Path targetFile = getRecordsFileForDate(current);
-            if (Files.exists(targetFile)) {
-                try (Stream<String> lines = Files.lines(targetFile)) {
-                    List<InspectionEntity> batch = lines
-                            .filter(line -> !line.trim().isEmpty())
-                            .map(line -> {
-                                try {
-                                    return gson.fromJson(line, InspectionEntity.class);
-                                } catch (Exception e) {
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .filter(entity -> entity.getTimestamp() != null)
-                            .filter(entity -> !entity.getTimestamp().isAfter(end))
-                            .collect(Collectors.toList());
-                    results.addAll(batch);
-                } catch (IOException e) {
-                    // 跳过读取失败的文件
+    /**
+     * 写索引快照：每个段已建索引的文件长度，以及段内有效记录和已删除记录的索引字段（取自记录行，不含状态日志）
+     * <p>
+     * 被新版本替换的记录不写入；上传状态和删除标记启动时仍以状态日志为准。
+     * 段内有已追加但尚未建索引的行（批量写入正在刷盘）时，快照只写到其中最小的偏移，之后的部分启动时重新扫描。
+     */
+    private void writeSnapshot() {
+        synchronized (snapshotLock) {
+            Path tmp = recordsDir.resolve(SNAPSHOT + ".tmp");
+            lock.readLock().lock();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(bySegment.size());
+                for (Map.Entry<LocalDate, Segment> entry : bySegment.entrySet()) {
+                    Segment segment = entry.getValue();
+                    long end = Math.min(segment.end, segment.pendingFrom);
+                    List<RecordRef> covered = new ArrayList<>(segment.refs.size() + segment.deleted.size());
+                    for (RecordRef ref : segment.refs) {
+                        if (ref.offset < end) covered.add(ref);
+                    }
+                    for (RecordRef ref : segment.deleted) {
+                        if (ref.offset < end) covered.add(ref);
+                    }
+                    out.writeUTF(entry.getKey().toString());
+                    out.writeLong(end);
+                    out.writeInt(covered.size());
+                    for (RecordRef ref : covered) {
+                        writeRef(out, ref);
+                    }
                 }
+                bytesSinceSnapshot.set(0);
+            } catch (IOException e) {
+                logger.warn("Failed to write records index snapshot: {}", e.getMessage());
+                return;
+            } finally {
+                lock.readLock().unlock();
+            }
+            try {
+                Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.warn("Failed to replace records index snapshot: {}", e.getMessage());
             }
-            current = current.minusDays(1);
-            daysSearched++;
         }
-        return results;
     }
 
     /**
-     * 查询指定日期未上传的记录
+     * 读取索引快照，不存在或无法读取时返回空（整段扫描）
      */
-    public List<InspectionEntity> findUnuploadedByDate(LocalDate date) {
-        if (!saveLocal) {
-            return Collections.emptyList();
+    private Map<LocalDate, SegmentSnapshot> readSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return Collections.emptyMap();
+        }
+        Map<LocalDate, SegmentSnapshot> segments = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                logger.warn("Ignore records index snapshot of unknown version");
+                return Collections.emptyMap();
+            }
+            int segmentCount = in.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                LocalDate date = LocalDate.parse(in.readUTF());
+                long end = in.readLong();
+                int count = in.readInt();
+                List<RecordRef> refs = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    refs.add(readRef(in, date));
+                }
+                // 段内按文件顺序建索引
+                refs.sort(Comparator.comparingLong(r -> r.offset));
+                segments.put(date, new SegmentSnapshot(end, refs));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignore unreadable records index snapshot: {}", e.getMessage());
+            return Collections.emptyMap();
         }
+        return segments;
+    }
 
-        Path targetFile = getRecordsFileForDate(date);
-        if (!Files.exists(targetFile)) {
-            return Collections.emptyList();
+    private static void writeRef(DataOutputStream out, RecordRef ref) throws IOException {
+        out.writeUTF(ref.id);
+        out.writeLong(ref.offset);
+        out.writeInt(ref.length);
+        out.writeLong(ref.seq);
+        writeNullable(out, ref.timestamp != null ? ref.timestamp.toString() : null);
+        writeNullable(out, ref.batchId);
+        writeNullable(out, ref.partName);
+        out.writeBoolean(ref.storedUploaded);
+    }
+
+    private static RecordRef readRef(DataInputStream in, LocalDate segment) throws IOException {
+        String id = in.readUTF();
+        long offset = in.readLong();
+        int length = in.readInt();
+        long seq = in.readLong();
+        String timestamp = readNullable(in);
+        String batchId = readNullable(in);
+        String partName = readNullable(in);
+        boolean uploaded = in.readBoolean();
+        return new RecordRef(id, segment, offset, length, seq,
+                timestamp != null ? LocalDateTime.parse(timestamp) : null, batchId, partName, uploaded);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static String positionKey(LocalDate segment, long offset) {
+        return segment + ":" + offset;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    // ==================== 内部结构 ====================
+
+    /**
+     * 记录变更回调
+     */
+    public interface ChangeListener {
+        /**
+         * @param previous 被替换或删除的记录
+         * @param current  新版本，删除时为 null
+         */
+        void onChange(InspectionEntity previous, InspectionEntity current);
+    }
+
+    /**
+     * 段内有效记录与已删除记录
+     */
+    private static final class Segment {
+        // 有效记录（文件顺序）
+        final Set<RecordRef> refs = new LinkedHashSet<>();
+        // 已删除的记录（写入快照）
+        final List<RecordRef> deleted = new ArrayList<>();
+        // 没有时间戳的有效记录数
+        int untimed;
+        // 已建索引的文件长度
+        long end;
+        // 已追加但尚未建索引的最小偏移（没有时为 Long.MAX_VALUE）
+        long pendingFrom = Long.MAX_VALUE;
+        // 进行中的批量追加数
+        int pendingAppends;
+
+        void beginAppend(long offset) {
+            pendingAppends++;
+            pendingFrom = Math.min(pendingFrom, offset);
         }
 
-        try (Stream<String> lines = Files.lines(targetFile)) {
-            return lines
-                    .filter(line -> !line.trim().isEmpty())
-                    .map(line -> {
-                        try {
-                            return gson.fromJson(line, InspectionEntity.class);
-                        } catch (Exception e) {
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .filter(entity -> !entity.isUploaded())
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            return Collections.emptyList();
+        void endAppend() {
+            if (--pendingAppends == 0) {
+                pendingFrom = Long.MAX_VALUE;
+            }
+        }
+
+        void add(RecordRef ref) {
+            if (refs.add(ref) && ref.timestamp == null) untimed++;
+        }
+
+        void remove(RecordRef ref) {
+            if (refs.remove(ref) && ref.timestamp == null) untimed--;
+        }
+    }
+
+    /**
+     * 快照中一个段的内容
+     */
+    private static final class SegmentSnapshot {
+        final long end;
+        final List<RecordRef> refs;
+
+        SegmentSnapshot(long end, List<RecordRef> refs) {
+            this.end = end;
+            this.refs = refs;
+        }
+    }
+
+    /**
+     * 记录位置与索引字段
+     */
+    private static final class RecordRef {
+        final String id;
+        final LocalDate segment;
+        final long offset;
+        final int length;
+        // 写入序号，越大越新（旧格式的记录行为 0）
+        final long seq;
+        final LocalDateTime timestamp;
+        final String batchId;
+        final String partName;
+        // 记录行中写入的上传状态
+        final boolean storedUploaded;
+        // 当前上传状态（状态日志覆盖记录行）
+        volatile boolean uploaded;
+        // false 表示已被新版本替换或已删除
+        volatile boolean live = true;
+        boolean deleted;
+
+        RecordRef(String id, LocalDate segment, long offset, int length, long seq, LocalDateTime timestamp,
+                  String batchId, String partName, boolean uploaded) {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.batchId = batchId;
+            this.partName = partName;
+            this.storedUploaded = uploaded;
+            this.uploaded = uploaded;
+        }
+
+        // 没有时间戳的记录按所在段的零点排序
+        LocalDateTime sortTime() {
+            return timestamp != null ? timestamp : segment.atStartOfDay();
+        }
+    }
+
+    /**
+     * 建索引时只解析的字段
+     */
+    private static final class IndexFields {
+        String id;
+        long writeSeq;
+        LocalDateTime timestamp;
+        String batchId;
+        String partName;
+        boolean uploaded;
+    }
+
+    /**
+     * 状态日志条目
+     */
+    private static final class StatusEntry {
+        static final String UPLOADED = "uploaded";
+        static final String DELETE = "delete";
+
+        String op;
+        String id;
+        String seg;
+        long off;
+        boolean value;
+
+        static StatusEntry uploaded(RecordRef ref, boolean value) {
+            StatusEntry entry = of(UPLOADED, ref);
+            entry.value = value;
+            return entry;
+        }
+
+        static StatusEntry delete(RecordRef ref) {
+            return of(DELETE, ref);
+        }
+
+        private static StatusEntry of(String op, RecordRef ref) {
+            StatusEntry entry = new StatusEntry();
+            entry.op = op;
+            entry.id = ref.id;
+            entry.seg = ref.segment.toString();
+            entry.off = ref.offset;
+            return entry;
         }
     }
 }
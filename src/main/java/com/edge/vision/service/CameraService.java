@@ -4,11 +4,13 @@ import com.edge.vision.config.YamlConfig;
 import com.edge.vision.core.camera.CameraSource;
 import com.edge.vision.core.camera.CameraSourceFactory;
 import com.edge.vision.core.stitcher.StitchStrategy;
+import com.edge.vision.util.MatTracker;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
 import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,7 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 @Service
 public class CameraService {
@@ -52,6 +55,10 @@ public class CameraService {
     private ScheduledExecutorService executor;
     private ExecutorService cameraExecutor;
 
+    // 复用的拼接画布（见 withStitchedImage）
+    private final Object stitchCanvasLock = new Object();
+    private Mat stitchCanvas;
+
     /**
      * 帧数据封装类，包含时间戳和序列号
      */
@@ -313,6 +320,13 @@ public class CameraService {
         currentFrames.clear();
         streamQueues.clear();
 
+        synchronized (stitchCanvasLock) {
+            if (stitchCanvas != null) {
+                stitchCanvas.release();
+                stitchCanvas = null;
+            }
+        }
+
         logger.info("All cameras stopped");
     }
 
@@ -348,6 +362,14 @@ public class CameraService {
      * 获取单个摄像头的当前帧（Base64）
      */
     public String getCameraImageBase64(int cameraIndex) {
+        byte[] jpeg = getCameraImageJpeg(cameraIndex);
+        return jpeg != null ? Base64.getEncoder().encodeToString(jpeg) : null;
+    }
+
+    /**
+     * 获取单个摄像头的当前帧（JPEG 原始字节），摄像头不可用或没有画面时返回 null
+     */
+    public byte[] getCameraImageJpeg(int cameraIndex) {
         if (cameraIndex < 0 || cameraIndex >= currentFrames.size()) {
             return null;
         }
@@ -362,12 +384,11 @@ public class CameraService {
             mob = new MatOfByte();
             MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
             if (Imgcodecs.imencode(".jpg", frame, mob, params)) {
-                byte[] bytes = mob.toArray();
-                return Base64.getEncoder().encodeToString(bytes);
+                return mob.toArray();
             }
             return null;
         } catch (Exception e) {
-            logger.error("Failed to encode camera {} frame to base64", cameraIndex, e);
+            logger.error("Failed to encode camera {} frame to jpeg", cameraIndex, e);
             return null;
         } finally {
             if (mob != null) {
@@ -394,7 +415,7 @@ public class CameraService {
         }
 
         // 返回克隆，避免原Mat被修改
-        return frame.clone();
+        return MatTracker.track(frame.clone(), "CameraService.getCameraImageMat");
     }
 
     /**
@@ -559,17 +580,35 @@ public class CameraService {
     }
 
     /**
-     * 获取拼接后的图像（用于检测）
+     * 获取所有摄像头当前帧的只读视图（用于拼接输入）
+     * <p>
+     * 视图与 currentFrames 共享像素数据并持有引用计数，采集线程替换并 release 旧帧时数据不会被回收，
+     * 因此无需为每次拼接克隆整帧。采集线程只会发布新帧、不会写入已发布的帧，视图内容是稳定的。
+     *
+     * @return 帧视图列表（调用方负责释放）；任一摄像头没有可用帧时返回 null
      */
-    public Mat getStitchedImage() {
+    private List<Mat> snapshotFrameViews() {
         List<Mat> frames = new ArrayList<>();
         for (int i = 0; i < cameraSources.size(); i++) {
             Mat frame = currentFrames.get(i);
             if (frame != null && !frame.empty()) {
-                frames.add(frame.clone());
+                frames.add(MatTracker.track(new Mat(frame, new Rect(0, 0, frame.cols(), frame.rows())),
+                        "CameraService.stitchInput"));
             }
         }
         if (frames.isEmpty() || frames.size() != cameraSources.size()) {
+            MatTracker.release(frames);
+            return null;
+        }
+        return frames;
+    }
+
+    /**
+     * 获取拼接后的图像（用于检测）
+     */
+    public Mat getStitchedImage() {
+        List<Mat> frames = snapshotFrameViews();
+        if (frames == null) {
             return null;
         }
         
@@ -581,14 +620,51 @@ public class CameraService {
             } else {
                 stitched = frames.get(0).clone();
             }
-            return stitched;
+            return MatTracker.track(stitched, "CameraService.getStitchedImage");
         } catch (Exception e) {
             logger.error("Failed to stitch images", e);
             return null;
         } finally {
-            for (Mat frame : frames) {
-                if (frame != null) frame.release();
+            MatTracker.release(frames);
+        }
+    }
+
+    /**
+     * 在复用画布上拼接当前帧，并把结果直接交给 consumer 处理（如推理、编码）
+     * <p>
+     * 拼接结果写入服务内部复用的画布，避免每次分配整张拼接图；单摄像头时直接传入帧视图，不做拷贝。
+     * 传给 consumer 的 Mat 只在回调期间有效：不得释放、不得在回调外持有，需要保留时请自行 clone()。
+     * 画布由锁保护，consumer 应尽快返回。
+     *
+     * @param consumer 拼接结果处理函数
+     * @return consumer 的返回值；无法获取图像时返回 null
+     */
+    public <T> T withStitchedImage(Function<Mat, T> consumer) {
+        List<Mat> frames = snapshotFrameViews();
+        if (frames == null) {
+            return null;
+        }
+
+        try {
+            if (frames.size() < 2) {
+                return consumer.apply(frames.get(0));
+            }
+            synchronized (stitchCanvasLock) {
+                if (stitchCanvas == null) {
+                    stitchCanvas = new Mat();
+                }
+                StitchStrategy stitchStrategy = (StitchStrategy) stitchConfigService.getStitchStrategy();
+                Mat stitched = stitchStrategy.stitchInto(frames, stitchCanvas);
+                if (stitched.empty()) {
+                    return null;
+                }
+                return consumer.apply(stitched);
             }
+        } catch (Exception e) {
+            logger.error("Failed to stitch images", e);
+            return null;
+        } finally {
+            MatTracker.release(frames);
         }
     }
 
@@ -623,43 +699,19 @@ public class CameraService {
      * 获取拼接后的 MJPEG 帧数据
      */
     public byte[] getStitchedMjpegFrame() {
-        List<Mat> frames = new ArrayList<>();
-        for (int i = 0; i < cameraSources.size(); i++) {
-            Mat frame = currentFrames.get(i);
-            if (frame != null && !frame.empty()) {
-                frames.add(frame.clone());
-            }
-        }
-        if (frames.isEmpty() || frames.size() != cameraSources.size()) {
-            return null;
-        }
-        
-        Mat stitched = null;
-        MatOfByte mob = null;
-        try {
-            if (frames.size() >= 2) {
-                StitchStrategy stitchStrategy = (StitchStrategy) stitchConfigService.getStitchStrategy();
-                stitched = stitchStrategy.stitch(frames);
-            } else {
-                stitched = frames.get(0);
-            }
-            
-            mob = new MatOfByte();
+        return withStitchedImage(stitched -> {
+            MatOfByte mob = new MatOfByte();
             MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
-            if (Imgcodecs.imencode(".jpg", stitched, mob, params)) {
-                return mob.toArray();
-            }
-            return null;
-        } catch (Exception e) {
-            logger.error("Failed to stitch images for MJPEG", e);
-            return null;
-        } finally {
-            if (mob != null) mob.release();
-            if (stitched != null && frames.size() >= 2) stitched.release();
-            for (Mat frame : frames) {
-                if (frame != null) frame.release();
+            try {
+                if (Imgcodecs.imencode(".jpg", stitched, mob, params)) {
+                    return mob.toArray();
+                }
+                return null;
+            } finally {
+                mob.release();
+                params.release();
             }
-        }
+        });
     }
 
     /**
@@ -23,6 +23,7 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -37,7 +38,16 @@ public class DataManager implements ApplicationListener<UploadEvent> {
     
     @Autowired
     private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private InspectionStatisticsService statisticsService;
+
+    @Autowired
+    private RecordWriter recordWriter;
     
+    // 导出时每次从索引读取的记录数
+    private static final int EXPORT_BATCH = 200;
+
     private final Gson gson = new Gson();
     private OkHttpClient httpClient;
     
@@ -52,54 +62,58 @@ public class DataManager implements ApplicationListener<UploadEvent> {
     }
     
     /**
-     * 保存检测记录
-     * @param entity 检测实体
-     * @param imageBase64 图像的base64编码
+     * 保存检测记录（异步组提交，见 {@link RecordWriter}）
+     * <p>
+     * 结果图路径在这里确定并写入记录，图片和记录由写入线程落盘；
+     * 记录写入后更新检测统计并触发上传事件。
+     *
+     * @param entity    检测实体
+     * @param imageJpeg 结果图 JPEG 原始字节，为 null 时不保存图片
+     * @return 记录写入后完成
      */
-    public void saveRecord(InspectionEntity entity, String imageBase64) throws IOException {
-        // 1. 保存图像到本地
-        if (imageBase64 != null && config.getSystem().isSaveLocal()) {
-            saveImage(entity, imageBase64);
-        }
-        
-        // 2. 保存记录到数据库
-        repository.insert(entity);
-        
-        // 3. 触发上传事件（异步）
-        if (StringUtils.hasText(config.getRemote().getUploadUrl())) {
-            eventPublisher.publishEvent(new UploadEvent(this, entity, entity.getImagePath()));
+    public CompletableFuture<InspectionEntity> saveRecord(InspectionEntity entity, byte[] imageJpeg) {
+        // 1. 确定图像保存位置
+        Path imageFile = null;
+        if (imageJpeg != null && config.getSystem().isSaveLocal()) {
+            imageFile = resolveImagePath(entity);
+        } else {
+            imageJpeg = null;
         }
+
+        // 2. 提交写入（图像和记录）
+        return recordWriter.submit(entity, imageJpeg, imageFile).thenApply(saved -> {
+            statisticsService.record(saved);
+
+            // 3. 触发上传事件（异步）
+            if (StringUtils.hasText(config.getRemote().getUploadUrl())) {
+                eventPublisher.publishEvent(new UploadEvent(this, saved, saved.getImagePath()));
+            }
+            return saved;
+        });
     }
-    
+
     /**
-     * 保存图像文件
+     * 确定图像文件路径，并把 API 访问路径写入记录
      * <p>
      * 存储路径: data/images/yyyy-MM-dd/partType/xxx.jpg
      * 相对路径（用于API访问）: /api/images/yyyy-MM-dd/partType/xxx.jpg
      */
-    private void saveImage(InspectionEntity entity, String imageBase64) throws IOException {
-        // 创建目录: data/images/yyyy-MM-dd/partType/
+    private Path resolveImagePath(InspectionEntity entity) {
+        // 目录: data/images/yyyy-MM-dd/partType/
         String partType = entity.getPartName() != null ? entity.getPartName() : "UNKNOWN";
         String dateStr = LocalDate.now().toString();
         Path dir = Paths.get("data", "images", dateStr, partType);
 
-        Files.createDirectories(dir);
-
         // 生成文件名: partType_timestamp.jpg
         String filename = partType + "_" +
                          entity.getTimestamp().toEpochSecond(java.time.ZoneOffset.UTC) +
                          ".jpg";
 
-        Path imagePath = dir.resolve(filename);
-
-        // 解码并保存
-        byte[] imageBytes = Base64.getDecoder().decode(imageBase64);
-        Files.write(imagePath, imageBytes);
-
         // 存储相对路径（用于API访问）
         // 格式: /api/images/yyyy-MM-dd/partType/xxx.jpg
         String relativePath = "/api/images/" + dateStr + "/" + partType + "/" + filename;
         entity.setImagePath(relativePath);
+        return dir.resolve(filename);
     }
     
     /**
@@ -187,107 +201,120 @@ public class DataManager implements ApplicationListener<UploadEvent> {
      */
     public PageResult queryRecords(LocalDateTime startDateTime, LocalDateTime endDateTime,
                                     String batchId, Integer page, Integer pageSize) {
-        java.util.List<InspectionEntity> results = new java.util.ArrayList<>();
-
-        // 按精确时间范围查询
-        if (startDateTime != null && endDateTime != null) {
-            results.addAll(repository.findByTimestampBetween(startDateTime, endDateTime));
-        } else if (startDateTime != null) {
-            results.addAll(repository.findByTimestampAfter(startDateTime));
-        } else if (endDateTime != null) {
-            results.addAll(repository.findByTimestampBefore(endDateTime));
-        }
-
-        // 按批次ID筛选
-        if (batchId != null) {
-            if (results.isEmpty()) {
-                results.addAll(repository.findByBatchId(batchId));
-            } else {
-                results = results.stream()
-                    .filter(r -> batchId.equals(r.getBatchId()))
-                    .collect(java.util.stream.Collectors.toList());
-            }
-        }
+        return queryRecords(startDateTime, endDateTime, batchId, null, null, page, pageSize);
+    }
 
-        // 如果没有筛选条件，查询所有
-        if (startDateTime == null && endDateTime == null && batchId == null) {
-            results.addAll(repository.findAll());
+    /**
+     * 查询记录（时间倒序，时间相同按 ID 倒序）
+     * <p>
+     * 过滤条件在记录索引上执行，只读取当前页的记录；总数也只查索引。
+     * 指定 cursor（上一页返回的 nextCursor）时从游标之后继续，忽略 page；
+     * 否则按 page 跳过前面的记录。pageSize 为空时返回全部符合条件的记录。
+     *
+     * @throws IllegalArgumentException cursor 格式错误
+     */
+    public PageResult queryRecords(LocalDateTime startDateTime, LocalDateTime endDateTime, String batchId,
+                                    String partName, String cursor, Integer page, Integer pageSize) {
+        boolean paged = pageSize != null && pageSize > 0;
+        int limit = paged ? pageSize : Integer.MAX_VALUE - 1;
+        int pageNo = page != null && page > 0 ? page : 1;
+
+        LocalDateTime afterTimestamp = null;
+        String afterId = null;
+        int skip = 0;
+        if (StringUtils.hasText(cursor)) {
+            String[] position = decodeCursor(cursor);
+            afterTimestamp = LocalDateTime.parse(position[0]);
+            afterId = position[1];
+        } else if (paged) {
+            skip = (int) Math.min(Integer.MAX_VALUE - limit - 1, (long) (pageNo - 1) * limit);
         }
 
-        // 去重
-        java.util.Set<String> seenIds = new java.util.HashSet<>();
-        results.removeIf(e -> !seenIds.add(e.getId()));
-
-        // 按时间倒序排序
-        results.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-
-        int total = results.size();
-
-        // 分页处理
-        if (page != null && pageSize != null && page > 0 && pageSize > 0) {
-            int startIndex = (page - 1) * pageSize;
-            if (startIndex >= total) {
-                return new PageResult(java.util.Collections.emptyList(), total, page, pageSize);
-            }
-            int endIndex = Math.min(startIndex + pageSize, total);
-            results = results.subList(startIndex, endIndex);
+        // 多取一条判断是否还有下一页
+        java.util.List<InspectionEntity> results = repository.findPage(startDateTime, endDateTime, batchId, partName,
+                afterTimestamp, afterId, skip, limit + 1);
+        String nextCursor = null;
+        if (results.size() > limit) {
+            results = results.subList(0, limit);
+            InspectionEntity last = results.get(limit - 1);
+            nextCursor = encodeCursor(repository.sortTimeOf(last), last.getId());
         }
 
-        return new PageResult(results, total, page != null ? page : 1, pageSize != null ? pageSize : total);
+        int total = (int) Math.min(Integer.MAX_VALUE,
+                repository.countMatching(startDateTime, endDateTime, batchId, partName));
+        PageResult result = new PageResult(results, total, pageNo, paged ? pageSize : total);
+        result.setNextCursor(nextCursor);
+        return result;
     }
 
     /**
-     * 查询记录（支持日期范围和分页）
+     * 查询记录（支持日期范围和分页，日期包含首尾两天）
      */
     public PageResult queryRecords(LocalDate startDate, LocalDate endDate, String batchId,
                                     Integer page, Integer pageSize) {
-        java.util.List<InspectionEntity> results = new java.util.ArrayList<>();
-
-        // 按时间范围查询
-        if (startDate != null && endDate != null) {
-            results.addAll(repository.findByDateBetween(startDate, endDate));
-        } else if (startDate != null) {
-            results.addAll(repository.findByDateAfter(startDate));
-        } else if (endDate != null) {
-            results.addAll(repository.findByDateBefore(endDate));
-        }
+        return queryRecords(startDate != null ? startDate.atStartOfDay() : null,
+                endDate != null ? endDate.atTime(java.time.LocalTime.MAX) : null,
+                batchId, null, null, page, pageSize);
+    }
 
-        // 按批次ID筛选
-        if (batchId != null) {
-            if (results.isEmpty()) {
-                results.addAll(repository.findByBatchId(batchId));
-            } else {
-                results = results.stream()
-                    .filter(r -> batchId.equals(r.getBatchId()))
-                    .collect(java.util.stream.Collectors.toList());
+    /**
+     * 逐条导出符合条件的记录（时间倒序）
+     * <p>
+     * 按游标每次从索引读取 EXPORT_BATCH 条，内存中只保留当前一批。
+     *
+     * @return 导出的记录数
+     */
+    public long exportRecords(LocalDateTime startDateTime, LocalDateTime endDateTime, String batchId,
+                              String partName, java.util.function.Consumer<InspectionEntity> consumer) {
+        long exported = 0;
+        LocalDateTime afterTimestamp = null;
+        String afterId = null;
+        while (true) {
+            java.util.List<InspectionEntity> batch = repository.findPage(startDateTime, endDateTime, batchId,
+                    partName, afterTimestamp, afterId, 0, EXPORT_BATCH);
+            for (InspectionEntity entity : batch) {
+                consumer.accept(entity);
+            }
+            exported += batch.size();
+            if (batch.size() < EXPORT_BATCH) {
+                return exported;
+            }
+            InspectionEntity last = batch.get(batch.size() - 1);
+            afterTimestamp = repository.sortTimeOf(last);
+            if (afterTimestamp == null) {
+                logger.warn("Export stopped at record removed during export: {}", last.getId());
+                return exported;
             }
+            afterId = last.getId();
         }
+    }
 
-        // 如果没有筛选条件，查询所有
-        if (startDate == null && endDate == null && batchId == null) {
-            results.addAll(repository.findAll());
+    /**
+     * 游标：最后一条记录的 排序时间|ID，Base64 URL 编码
+     * <p>
+     * 排序时间取自记录索引（{@link InspectionRepository#sortTimeOf}），没有时间戳的记录为所在段的零点。
+     */
+    private static String encodeCursor(LocalDateTime sortTime, String id) {
+        if (sortTime == null || id == null) {
+            return null;
         }
+        String position = sortTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(position.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
 
-        // 去重
-        java.util.Set<String> seenIds = new java.util.HashSet<>();
-        results.removeIf(e -> !seenIds.add(e.getId()));
-
-        // 按时间倒序排序
-        results.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-
-        int total = results.size();
-
-        // 分页处理
-        if (page != null && pageSize != null && page > 0 && pageSize > 0) {
-            int startIndex = (page - 1) * pageSize;
-            if (startIndex >= total) {
-                return new PageResult(java.util.Collections.emptyList(), total, page, pageSize);
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), java.nio.charset.StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            if (separator > 0 && separator < position.length() - 1) {
+                LocalDateTime.parse(position.substring(0, separator));
+                return new String[]{position.substring(0, separator), position.substring(separator + 1)};
             }
-            int endIndex = Math.min(startIndex + pageSize, total);
-            results = results.subList(startIndex, endIndex);
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            // 落到下面统一抛出
         }
-
-        return new PageResult(results, total, page != null ? page : 1, pageSize != null ? pageSize : total);
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
     }
 
     /**
@@ -302,12 +329,10 @@ public class DataManager implements ApplicationListener<UploadEvent> {
      * 获取统计数据
      */
     public java.util.Map<String, Object> getStatistics() {
-        java.util.Map<String, Object> stats = new java.util.HashMap<>();
-
-        java.util.List<InspectionEntity> allRecords = repository.findAll();
-
-        stats.put("totalRecords", allRecords.size());
-        stats.put("uploadedRecords", allRecords.stream().filter(InspectionEntity::isUploaded).count());
+        // 计数器和索引直接给出结果，不加载记录
+        java.util.Map<String, Object> stats = statisticsService.getSummary();
+        stats.put("totalRecords", repository.count());
+        stats.put("uploadedRecords", repository.countUploaded());
 
         return stats;
     }
@@ -321,6 +346,8 @@ public class DataManager implements ApplicationListener<UploadEvent> {
         private int page;
         private int pageSize;
         private int totalPages;
+        // 下一页游标（没有下一页时为 null）
+        private String nextCursor;
 
         public PageResult(java.util.List<InspectionEntity> data, int total, int page, int pageSize) {
             this.data = data != null ? data : java.util.Collections.emptyList();
@@ -370,8 +397,16 @@ public class DataManager implements ApplicationListener<UploadEvent> {
             this.totalPages = totalPages;
         }
 
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        public void setNextCursor(String nextCursor) {
+            this.nextCursor = nextCursor;
+        }
+
         public boolean hasNext() {
-            return page < totalPages;
+            return nextCursor != null;
         }
 
         public boolean hasPrevious() {
@@ -0,0 +1,460 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import com.edge.vision.model.InspectionEntity;
+import com.edge.vision.repository.InspectionRepository;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 检测统计聚合
+ * <p>
+ * 每次保存检测记录时增量更新计数器，记录内容被更新（产生新版本）或删除时减去原记录、计入新版本
+ * （通过 {@link InspectionRepository#addChangeListener} 回调），统计接口直接读取计数器，不再加载记录：
+ * - 总计：检测数、合格数、不合格数、合格率
+ * - 分组：按天（保留 stats-days 天）、按小时（最近 48 小时）、按工件类型、按批次（最近 1000 个批次）、按质检状态
+ * - 缺陷：未通过的特征比对按类别和比对状态计数
+ * - 耗时：各环节最近 60 分钟的滚动耗时直方图（每分钟一个槽，按固定桶计数，给出 p50/p95/p99 估计）
+ * <p>
+ * 启动时从磁盘重建：只扫描最近 stats-days 天、最多 stats-rebuild-max-records 条记录（逐天加载），
+ * 因此总计是"统计起始时间以来"的数字（统计起始时间之前的记录被更新或删除时不调整计数器）；
+ * 某一天只加载了一部分时，统计起始时间是当天加载的最早一条记录的时间，而不是当天零点；
+ * 全部历史记录数和已上传数由记录索引直接给出。
+ * 所有分组的大小都有上限，查询耗时与历史记录数量无关。
+ */
+@Service
+public class InspectionStatisticsService {
+    private static final Logger logger = LoggerFactory.getLogger(InspectionStatisticsService.class);
+
+    private static final int HOURS_RETAINED = 48;
+    private static final int MAX_BATCHES = 1000;
+
+    // 耗时直方图桶上界（毫秒），最后一个桶为 +∞
+    private static final long[] LATENCY_BOUNDS = {10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    private static final int LATENCY_WINDOW_MINUTES = 60;
+
+    @Autowired
+    private InspectionRepository repository;
+
+    @Autowired
+    private YamlConfig config;
+
+    // 用于把 meta 中的模型对象（新记录）和 Map（磁盘记录）统一成 JSON 读取
+    private final Gson gson = new Gson();
+
+    private final Counter total = new Counter();
+    private final TreeMap<LocalDate, Counter> byDay = new TreeMap<>();
+    private final TreeMap<LocalDateTime, Counter> byHour = new TreeMap<>();
+    private final Map<String, Counter> byPart = new TreeMap<>();
+    private final LinkedHashMap<String, Counter> byBatch = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Counter> eldest) {
+            return size() > MAX_BATCHES;
+        }
+    };
+    private final Map<String, Long> byStatus = new TreeMap<>();
+    private final Map<String, Long> defectsByClass = new TreeMap<>();
+    private final Map<String, Long> defectsByStatus = new TreeMap<>();
+    private final Map<String, LatencyHistogram> latencies = new TreeMap<>();
+
+    private int retentionDays;
+    private LocalDate since;
+    // 统计起始时间：早于此时间的记录没有计入计数器
+    private LocalDateTime sinceTime;
+    private long rebuildMs;
+    private long rebuildRecords;
+
+    @PostConstruct
+    public void init() {
+        YamlConfig.InspectionConfig inspection = config.getInspection();
+        this.retentionDays = Math.max(1, inspection.getStatsDays());
+        rebuild(retentionDays, Math.max(0, inspection.getStatsRebuildMaxRecords()));
+        repository.addChangeListener(this::replace);
+    }
+
+    /**
+     * 从最近的记录重建计数器（从最新的一天往前，逐天加载，达到条数上限即停止）
+     */
+    private synchronized void rebuild(int days, int maxRecords) {
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        since = today;
+        // 条数上限为 0 时不加载任何记录，启动前的记录都不计入
+        sinceTime = maxRecords > 0 ? today.atStartOfDay() : LocalDateTime.now();
+        long loaded = 0;
+        for (int i = 0; i < days && loaded < maxRecords; i++) {
+            LocalDate date = today.minusDays(i);
+            List<InspectionEntity> records = repository.findByDate(date);
+            if (records.isEmpty()) {
+                continue;
+            }
+            since = date;
+            sinceTime = date.atStartOfDay();
+            if (records.size() > maxRecords - loaded) {
+                records = newestOf(records, (int) (maxRecords - loaded));
+            }
+            for (InspectionEntity entity : records) {
+                apply(entity, 1);
+            }
+            loaded += records.size();
+        }
+        rebuildRecords = loaded;
+        rebuildMs = System.currentTimeMillis() - start;
+        logger.info("Inspection statistics rebuilt: {} records since {} in {} ms", loaded, since, rebuildMs);
+    }
+
+    /**
+     * 记录一次检测（保存检测记录时调用）
+     */
+    public synchronized void record(InspectionEntity entity) {
+        apply(entity, 1);
+    }
+
+    /**
+     * 记录被新版本替换或删除：减去原记录，计入新版本
+     *
+     * @param current 新版本，删除时为 null
+     */
+    private synchronized void replace(InspectionEntity previous, InspectionEntity current) {
+        if (counted(previous)) {
+            apply(previous, -1);
+        }
+        if (current != null && counted(current)) {
+            apply(current, 1);
+        }
+    }
+
+    /**
+     * 记录一个环节的耗时
+     *
+     * @param stage 环节名，例如 confirm.total、multi-camera.inference
+     */
+    public void recordLatency(String stage, long millis) {
+        LatencyHistogram histogram;
+        synchronized (this) {
+            histogram = latencies.computeIfAbsent(stage, k -> new LatencyHistogram());
+        }
+        histogram.record(millis);
+    }
+
+    /**
+     * 汇总统计（总计 + 今天 + 按工件类型）
+     */
+    public synchronized Map<String, Object> getSummary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        total.putInto(result, "totalInspections");
+        result.put("since", since.toString());
+        result.put("sinceTime", sinceTime.toString());
+        Counter today = byDay.get(LocalDate.now());
+        result.put("today", (today != null ? today : new Counter()).toMap());
+        result.put("byPart", toMaps(byPart));
+        return result;
+    }
+
+    /**
+     * 全部分组统计
+     */
+    public synchronized Map<String, Object> getDetails() {
+        Map<String, Object> result = getSummary();
+        prune(LocalDateTime.now());
+        Map<String, Object> days = new LinkedHashMap<>();
+        byDay.forEach((day, counter) -> days.put(day.toString(), counter.toMap()));
+        result.put("byDay", days);
+        Map<String, Object> hours = new LinkedHashMap<>();
+        byHour.forEach((hour, counter) -> hours.put(hour.toString(), counter.toMap()));
+        result.put("byHour", hours);
+        result.put("byBatch", toMaps(byBatch));
+        result.put("byStatus", new LinkedHashMap<>(byStatus));
+        Map<String, Object> defects = new LinkedHashMap<>();
+        defects.put("byClass", new LinkedHashMap<>(defectsByClass));
+        defects.put("byStatus", new LinkedHashMap<>(defectsByStatus));
+        result.put("defects", defects);
+        result.put("latency", getLatency());
+        result.put("rebuild", Map.of("records", rebuildRecords, "ms", rebuildMs));
+        return result;
+    }
+
+    /**
+     * 最近 60 分钟各环节耗时分布
+     */
+    public Map<String, Object> getLatency() {
+        List<Map.Entry<String, LatencyHistogram>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(latencies.entrySet());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : entries) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return result;
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 计入（delta = 1）或减去（delta = -1）一条记录；减去时已淘汰的分组不再调整，计数归零的分组移除
+     */
+    private void apply(InspectionEntity entity, int delta) {
+        boolean passed = entity.getPassed() != null
+                ? entity.getPassed() : "PASS".equalsIgnoreCase(entity.getQualityStatus());
+        LocalDateTime timestamp = entity.getTimestamp() != null ? entity.getTimestamp() : LocalDateTime.now();
+
+        total.add(passed, delta);
+        adjust(byDay, timestamp.toLocalDate(), passed, delta);
+        adjust(byHour, timestamp.truncatedTo(ChronoUnit.HOURS), passed, delta);
+        adjust(byPart, keyOf(entity.getPartName()), passed, delta);
+        if (entity.getBatchId() != null) {
+            adjust(byBatch, entity.getBatchId(), passed, delta);
+        }
+        adjust(byStatus, keyOf(entity.getQualityStatus()), delta);
+        countDefects(entity.getMeta(), delta);
+        prune(LocalDateTime.now());
+    }
+
+    /**
+     * 当天超出条数上限时按时间保留最新的 limit 条（与最早保留的记录同一时间的一并保留，没有时间戳的记录全部保留），
+     * 统计起始时间推进到保留的最早时间
+     */
+    private List<InspectionEntity> newestOf(List<InspectionEntity> records, int limit) {
+        List<InspectionEntity> timed = new ArrayList<>(records.size());
+        List<InspectionEntity> kept = new ArrayList<>();
+        for (InspectionEntity entity : records) {
+            if (entity.getTimestamp() == null) {
+                kept.add(entity);
+            } else {
+                timed.add(entity);
+            }
+        }
+        timed.sort(Comparator.comparing(InspectionEntity::getTimestamp).reversed());
+        if (timed.size() > limit) {
+            sinceTime = timed.get(limit - 1).getTimestamp();
+            for (InspectionEntity entity : timed) {
+                if (entity.getTimestamp().isBefore(sinceTime)) break;
+                kept.add(entity);
+            }
+        } else {
+            kept.addAll(timed);
+        }
+        return kept;
+    }
+
+    /**
+     * 记录是否在统计范围内（不早于统计起始时间）
+     */
+    private boolean counted(InspectionEntity entity) {
+        return entity.getTimestamp() == null || !entity.getTimestamp().isBefore(sinceTime);
+    }
+
+    private static <K> void adjust(Map<K, Counter> counters, K key, boolean passed, int delta) {
+        if (delta > 0) {
+            counters.computeIfAbsent(key, k -> new Counter()).add(passed, delta);
+        } else {
+            counters.computeIfPresent(key, (k, counter) -> {
+                counter.add(passed, delta);
+                return counter.count > 0 ? counter : null;
+            });
+        }
+    }
+
+    private static void adjust(Map<String, Long> counts, String key, int delta) {
+        if (delta > 0) {
+            counts.merge(key, (long) delta, Long::sum);
+        } else {
+            counts.computeIfPresent(key, (k, count) -> count + delta > 0 ? count + delta : null);
+        }
+    }
+
+    /**
+     * 统计未通过的特征比对（单摄像头：meta.templateComparisons；多摄像头：meta.cameraDetails[].templateComparisons）
+     */
+    private void countDefects(Map<String, Object> meta, int delta) {
+        if (meta == null) {
+            return;
+        }
+        countComparisons(toJson(meta.get("templateComparisons")), delta);
+        JsonElement cameras = toJson(meta.get("cameraDetails"));
+        if (cameras != null && cameras.isJsonArray()) {
+            for (JsonElement camera : cameras.getAsJsonArray()) {
+                if (camera.isJsonObject()) {
+                    countComparisons(camera.getAsJsonObject().get("templateComparisons"), delta);
+                }
+            }
+        }
+    }
+
+    private JsonElement toJson(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return gson.toJsonTree(value);
+        } catch (RuntimeException e) {
+            logger.debug("Skip unreadable comparisons: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void countComparisons(JsonElement comparisons, int delta) {
+        if (comparisons == null || !comparisons.isJsonArray()) {
+            return;
+        }
+        for (JsonElement element : comparisons.getAsJsonArray()) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject comparison = element.getAsJsonObject();
+            String status = text(comparison, "status");
+            if (status == null || "PASSED".equals(status)) {
+                continue;
+            }
+            String className = text(comparison, "className");
+            if (className == null) {
+                className = text(comparison, "featureName");
+            }
+            adjust(defectsByStatus, status, delta);
+            adjust(defectsByClass, keyOf(className), delta);
+        }
+    }
+
+    private static String text(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    private void prune(LocalDateTime now) {
+        LocalDate oldestDay = now.toLocalDate().minusDays(retentionDays - 1);
+        byDay.headMap(oldestDay).clear();
+        byHour.headMap(now.truncatedTo(ChronoUnit.HOURS).minusHours(HOURS_RETAINED - 1)).clear();
+    }
+
+    private static String keyOf(String value) {
+        return value != null ? value : "UNKNOWN";
+    }
+
+    private static Map<String, Object> toMaps(Map<String, Counter> counters) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        counters.forEach((key, counter) -> result.put(key, counter.toMap()));
+        return result;
+    }
+
+    /**
+     * 合格/不合格计数
+     */
+    private static final class Counter {
+        long count;
+        long passed;
+
+        void add(boolean pass, int delta) {
+            count += delta;
+            if (pass) passed += delta;
+        }
+
+        void putInto(Map<String, Object> map, String countKey) {
+            map.put(countKey, count);
+            map.put("passCount", passed);
+            map.put("failCount", count - passed);
+            map.put("passRate", count > 0 ? (double) passed / count : 0.0);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            putInto(map, "count");
+            return map;
+        }
+    }
+
+    /**
+     * 滚动耗时直方图：每分钟一个槽，记录时覆盖过期的槽
+     */
+    private static final class LatencyHistogram {
+        private final long[] minutes = new long[LATENCY_WINDOW_MINUTES];
+        private final long[][] buckets = new long[LATENCY_WINDOW_MINUTES][LATENCY_BOUNDS.length + 1];
+        private final long[] sums = new long[LATENCY_WINDOW_MINUTES];
+        private final long[] maxima = new long[LATENCY_WINDOW_MINUTES];
+
+        synchronized void record(long millis) {
+            long minute = System.currentTimeMillis() / 60000;
+            int slot = (int) (minute % LATENCY_WINDOW_MINUTES);
+            if (minutes[slot] != minute) {
+                minutes[slot] = minute;
+                Arrays.fill(buckets[slot], 0);
+                sums[slot] = 0;
+                maxima[slot] = 0;
+            }
+            buckets[slot][bucketOf(millis)]++;
+            sums[slot] += millis;
+            maxima[slot] = Math.max(maxima[slot], millis);
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            long minute = System.currentTimeMillis() / 60000;
+            long[] merged = new long[LATENCY_BOUNDS.length + 1];
+            long count = 0;
+            long sum = 0;
+            long max = 0;
+            for (int slot = 0; slot < LATENCY_WINDOW_MINUTES; slot++) {
+                if (minute - minutes[slot] >= LATENCY_WINDOW_MINUTES) {
+                    continue;
+                }
+                for (int b = 0; b < merged.length; b++) {
+                    merged[b] += buckets[slot][b];
+                    count += buckets[slot][b];
+                }
+                sum += sums[slot];
+                max = Math.max(max, maxima[slot]);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", count);
+            result.put("avgMs", count > 0 ? sum / count : 0);
+            result.put("maxMs", max);
+            result.put("p50Ms", percentile(merged, count, 0.50, max));
+            result.put("p95Ms", percentile(merged, count, 0.95, max));
+            result.put("p99Ms", percentile(merged, count, 0.99, max));
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int b = 0; b < merged.length; b++) {
+                histogram.put(b < LATENCY_BOUNDS.length ? "<=" + LATENCY_BOUNDS[b] : ">" + LATENCY_BOUNDS[b - 1], merged[b]);
+            }
+            result.put("histogram", histogram);
+            return result;
+        }
+
+        /**
+         * 百分位估计：返回所在桶的上界（最后一个桶返回最大值）
+         */
+        private static long percentile(long[] merged, long count, double p, long max) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int b = 0; b < merged.length; b++) {
+                seen += merged[b];
+                if (seen >= rank) {
+                    return b < LATENCY_BOUNDS.length ? Math.min(LATENCY_BOUNDS[b], max) : max;
+                }
+            }
+            return max;
+        }
+
+        private static int bucketOf(long millis) {
+            for (int b = 0; b < LATENCY_BOUNDS.length; b++) {
+                if (millis <= LATENCY_BOUNDS[b]) {
+                    return b;
+                }
+            }
+            return LATENCY_BOUNDS.length;
+        }
+    }
+}
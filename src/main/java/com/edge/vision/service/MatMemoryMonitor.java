@@ -0,0 +1,160 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import com.edge.vision.util.MatTracker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mat 原生内存监控服务
+ * <p>
+ * 根据 edge-vision.diagnostics 配置启用 {@link MatTracker}，定时扫描存活 Mat：
+ * - 通过 Actuator 暴露指标：edge.vision.mat.live / edge.vision.mat.live.bytes（按 site 标签区分分配位置）
+ * - 存活超过阈值的 Mat 以 WARN 级别输出（开启 mat-capture-stack 时附带分配调用栈）
+ */
+@Service
+public class MatMemoryMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(MatMemoryMonitor.class);
+
+    // 每轮扫描最多输出的泄漏条数，防止日志刷屏
+    private static final int MAX_LEAKS_LOGGED = 10;
+
+    @Autowired
+    private YamlConfig config;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // 已注册指标的分配位置
+    private final Set<String> registeredSites = ConcurrentHashMap.newKeySet();
+    // 已经报告过的泄漏（site + 存活时间起点），避免每轮重复输出同一条
+    private final Set<String> reportedLeaks = ConcurrentHashMap.newKeySet();
+
+    private volatile List<MatTracker.LeakReport> lastLeaks = Collections.emptyList();
+
+    @PostConstruct
+    public void init() {
+        YamlConfig.DiagnosticsConfig diagnostics = config.getDiagnostics();
+        MatTracker.configure(diagnostics.isMatTracking(), diagnostics.isMatCaptureStack());
+
+        if (diagnostics.isMatTracking()) {
+            if (meterRegistry != null) {
+                Gauge.builder("edge.vision.mat.live", MatTracker::getLiveCount)
+                        .description("Live tracked OpenCV Mats")
+                        .register(meterRegistry);
+                Gauge.builder("edge.vision.mat.live.bytes", MatTracker::getLiveBytes)
+                        .description("Native bytes held by live tracked Mats")
+                        .baseUnit("bytes")
+                        .register(meterRegistry);
+            }
+            logger.info("Mat tracking enabled - leak threshold: {}s, capture stack: {}",
+                    diagnostics.getMatLeakThresholdSeconds(), diagnostics.isMatCaptureStack());
+        }
+    }
+
+    /**
+     * 定时扫描存活 Mat
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void scan() {
+        if (!MatTracker.isEnabled()) {
+            return;
+        }
+
+        long thresholdMs = config.getDiagnostics().getMatLeakThresholdSeconds() * 1000L;
+        List<MatTracker.LeakReport> leaks = MatTracker.scan(thresholdMs);
+        lastLeaks = leaks;
+
+        registerSiteGauges();
+
+        Set<String> stillLeaking = new HashSet<>();
+        int logged = 0;
+        long now = System.currentTimeMillis();
+        for (MatTracker.LeakReport leak : leaks) {
+            // 分配时间（秒级）+ site 作为泄漏标识
+            String key = leak.getSite() + "@" + (now - leak.getAgeMs()) / 1000;
+            stillLeaking.add(key);
+            if (!reportedLeaks.add(key) || logged >= MAX_LEAKS_LOGGED) {
+                continue;
+            }
+            logged++;
+            if (leak.getStack() != null) {
+                logger.warn("Possible Mat leak: site={}, age={}s, bytes={}",
+                        leak.getSite(), leak.getAgeMs() / 1000, leak.getBytes(), leak.getStack());
+            } else {
+                logger.warn("Possible Mat leak: site={}, age={}s, bytes={}",
+                        leak.getSite(), leak.getAgeMs() / 1000, leak.getBytes());
+            }
+        }
+        reportedLeaks.retainAll(stillLeaking);
+
+        logger.debug("Mat scan: live={}, bytes={}, suspected leaks={}",
+                MatTracker.getLiveCount(), MatTracker.getLiveBytes(), leaks.size());
+    }
+
+    /**
+     * 获取内存统计（用于诊断接口）
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", MatTracker.isEnabled());
+        result.put("liveCount", MatTracker.getLiveCount());
+        result.put("liveBytes", MatTracker.getLiveBytes());
+
+        List<Map<String, Object>> sites = new ArrayList<>();
+        for (MatTracker.SiteStats stats : MatTracker.getSiteStats()) {
+            Map<String, Object> site = new LinkedHashMap<>();
+            site.put("site", stats.getSite());
+            site.put("live", stats.getLive());
+            site.put("liveBytes", stats.getLiveBytes());
+            site.put("allocated", stats.getAllocated());
+            site.put("released", stats.getReleased());
+            site.put("gcReclaimed", stats.getGcReclaimed());
+            sites.add(site);
+        }
+        sites.sort((a, b) -> Long.compare((Long) b.get("liveBytes"), (Long) a.get("liveBytes")));
+        result.put("sites", sites);
+
+        List<Map<String, Object>> leaks = new ArrayList<>();
+        for (MatTracker.LeakReport leak : lastLeaks) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("site", leak.getSite());
+            item.put("ageMs", leak.getAgeMs());
+            item.put("bytes", leak.getBytes());
+            if (leak.getStack() != null) {
+                item.put("stack", Arrays.stream(leak.getStack().getStackTrace())
+                        .map(StackTraceElement::toString)
+                        .toList());
+            }
+            leaks.add(item);
+        }
+        result.put("suspectedLeaks", leaks);
+        return result;
+    }
+
+    private void registerSiteGauges() {
+        if (meterRegistry == null) {
+            return;
+        }
+        for (MatTracker.SiteStats stats : MatTracker.getSiteStats()) {
+            if (registeredSites.add(stats.getSite())) {
+                Gauge.builder("edge.vision.mat.site.live", stats, MatTracker.SiteStats::getLive)
+                        .tag("site", stats.getSite())
+                        .register(meterRegistry);
+                Gauge.builder("edge.vision.mat.site.live.bytes", stats, MatTracker.SiteStats::getLiveBytes)
+                        .tag("site", stats.getSite())
+                        .baseUnit("bytes")
+                        .register(meterRegistry);
+            }
+        }
+    }
+}
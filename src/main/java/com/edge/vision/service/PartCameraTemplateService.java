@@ -5,7 +5,10 @@ import com.edge.vision.core.template.TemplateManager;
 import com.edge.vision.core.template.model.DetectedObject;
 import com.edge.vision.core.template.model.Template;
 import com.edge.vision.model.Detection;
+import com.edge.vision.util.RequestTimings;
 import com.edge.vision.util.VisionTool;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfByte;
@@ -25,7 +28,9 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 
 /**
  * 工件-摄像头-模板映射管理服务
@@ -43,13 +48,68 @@ public class PartCameraTemplateService {
     @Autowired
     private CameraService cameraService;
 
+    @Autowired
+    private ResultImageService resultImageService;
+
+    @Autowired
+    private InspectionStatisticsService statisticsService;
+
     @Value("${upload.path:uploads}")
     private String uploadPath;
 
+    // 多摄像头质检并行线程数，0 表示自动（CPU 核数 - 2，为推理预留核心）
+    @Value("${edge-vision.inspection.camera-parallelism:0}")
+    private int cameraParallelism;
+
+    // 是否在推理的同时开始模板定位
+    @Value("${edge-vision.inspection.overlap-localization:false}")
+    private boolean overlapLocalization;
+
+    // 为推理预留的核心数
+    private static final int RESERVED_CORES = 2;
+
+    // 各摄像头处理线程池（并行度为 1 时为 null，在调用线程串行处理）
+    private ExecutorService cameraExecutor;
+    private int cameraParallelismInUse = 1;
+    private volatile Map<String, Object> lastInspectionTimings = Collections.emptyMap();
+
     // 存储工件-摄像头-模板的映射关系
     // Key: partType, Value: Map<cameraId, templateId>
     private final Map<String, Map<Integer, String>> partCameraTemplateMap = new ConcurrentHashMap<>();
 
+    @PostConstruct
+    public void init() {
+        int parallelism = cameraParallelism > 0 ? cameraParallelism
+            : Math.max(1, Runtime.getRuntime().availableProcessors() - RESERVED_CORES);
+        cameraParallelismInUse = parallelism;
+        if (parallelism > 1) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            cameraExecutor = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread t = new Thread(r, "Inspect-Worker-" + threadIndex.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        logger.info("Multi-camera inspection parallelism: {}, overlap localization: {}",
+            parallelism, overlapLocalization && cameraExecutor != null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (cameraExecutor != null) {
+            cameraExecutor.shutdown();
+            try {
+                if (!cameraExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    cameraExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                cameraExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            cameraExecutor = null;
+        }
+    }
+
     /**
      * 获取工件的所有摄像头模板映射
      * 优先从内存map获取，如果为空则从模板元数据重建
@@ -265,11 +325,24 @@ public class PartCameraTemplateService {
      * 流程：
      * 1. 获取所有摄像头的图像和模板
      * 2. 一次性 predictBatch 获取所有检测结果
-     * 3. 根据模板类型分别处理：
+     * 3. 根据模板类型分别处理（各摄像头在有界线程池中并行，结果按摄像头顺序返回）：
      *    - 空模板：检测到任何特征 = 不合格
      *    - 正常模板：模板匹配 + 检测结果比对
+     * <p>
+     * 模板定位（SIFT 等）只依赖图像，不依赖检测结果；开启 overlap-localization 时在 predictBatch 之前提交，
+     * 与推理同时进行。各阶段耗时见 {@link #getLastInspectionTimings()}。
      */
     public List<CameraInspectionResult> inspect(String partType) throws OrtException, IOException {
+        return inspect(partType, false);
+    }
+
+    /**
+     * 多摄像头质检
+     *
+     * @param asyncImages true 时结果图交给 {@link ResultImageService} 后台渲染，
+     *                    imageUrl 为 /api/result-images/{id}，判定结果不等待绘制和编码
+     */
+    public List<CameraInspectionResult> inspect(String partType, boolean asyncImages) throws OrtException, IOException {
         long startTime = System.currentTimeMillis();
         logger.info("=== Starting multi-camera inspection for part: {} ===", partType);
 
@@ -303,14 +376,32 @@ public class PartCameraTemplateService {
 
             cameraDataList.add(new CameraImageData(cameraId, imageMat, template));
         }
+        long loadTime = System.currentTimeMillis() - loadStartTime;
         logger.info("Step 1 - Loaded {} camera images and templates in {} ms",
-            cameraDataList.size(), System.currentTimeMillis() - loadStartTime);
+            cameraDataList.size(), loadTime);
 
         if (cameraDataList.isEmpty()) {
             return results;
         }
 
+        Executor executor = cameraExecutor != null ? cameraExecutor : Runnable::run;
+        boolean overlap = overlapLocalization && cameraExecutor != null;
+        int cameraCount = cameraDataList.size();
+        CameraTimings[] timings = new CameraTimings[cameraCount];
+        List<CompletableFuture<List<DetectedObject>>> localizations = new ArrayList<>(cameraCount);
+        List<CompletableFuture<CameraInspectionResult>> evaluations = new ArrayList<>(cameraCount);
+
         try {
+            // 可选：在推理的同时开始模板定位
+            for (int i = 0; i < cameraCount; i++) {
+                CameraImageData data = cameraDataList.get(i);
+                int index = i;
+                timings[i] = new CameraTimings(data.cameraId);
+                localizations.add(overlap && !isEmptyTemplate(data.template)
+                    ? CompletableFuture.supplyAsync(() -> localize(data, timings[index]), executor)
+                    : null);
+            }
+
             // 步骤2：一次性 predictBatch 获取所有检测结果
             List<Mat> allImageMats = new ArrayList<>();
             for (CameraImageData data : cameraDataList) {
@@ -320,219 +411,407 @@ public class PartCameraTemplateService {
             long predictStartTime = System.currentTimeMillis();
             List<List<com.edge.vision.model.Detection>> allDetections =
                 inferenceEngineService.getDetailInferenceEngine().predictBatch(allImageMats);
-            long predictTime = System.currentTimeMillis() - predictStartTime;
+            long predictEndTime = System.currentTimeMillis();
+            long predictTime = predictEndTime - predictStartTime;
             logger.info("Step 2 - predictBatch completed for {} cameras in {} ms (avg: {} ms/camera)",
                 allImageMats.size(), predictTime, predictTime / allImageMats.size());
 
-            // 步骤3：根据每个摄像头模板类型分别处理
-            for (int i = 0; i < cameraDataList.size(); i++) {
-                long cameraStartTime = System.currentTimeMillis();
+            // 步骤3：各摄像头并行处理（定位已提交的接着定位结果处理，其余先定位再处理）
+            for (int i = 0; i < cameraCount; i++) {
                 CameraImageData data = cameraDataList.get(i);
-                Mat imageMat = data.imageMat;
-                Template template = data.template;
+                CameraTimings timing = timings[i];
                 List<com.edge.vision.model.Detection> detections = allDetections.get(i);
+                CompletableFuture<List<DetectedObject>> localization = localizations.get(i);
+                CompletableFuture<CameraInspectionResult> evaluation = localization != null
+                    ? localization.thenApplyAsync(objects -> evaluateCamera(data, detections, objects, timing, predictEndTime, asyncImages), executor)
+                    : CompletableFuture.supplyAsync(() -> evaluateCamera(data, detections,
+                        isEmptyTemplate(data.template) ? null : localize(data, timing), timing, predictEndTime, asyncImages), executor);
+                evaluations.add(evaluation);
+            }
 
-                if (detections == null) {
-                    detections = new ArrayList<>();
+            // 按摄像头顺序收集结果
+            for (CompletableFuture<CameraInspectionResult> evaluation : evaluations) {
+                results.add(join(evaluation));
+            }
+
+            long evaluateTime = System.currentTimeMillis() - predictEndTime;
+            recordTimings(partType, timings, loadTime, predictTime, evaluateTime, System.currentTimeMillis() - startTime);
+        } finally {
+            // 等待所有已提交的任务结束后再释放 Mat（异常路径上可能仍有任务在读图像）
+            awaitQuietly(localizations);
+            awaitQuietly(evaluations);
+            for (CameraImageData data : cameraDataList) {
+                if (data.imageMat != null) {
+                    data.imageMat.release();
                 }
-                logger.debug("Camera {}: {} YOLO detections", data.cameraId, detections.size());
+            }
+        }
 
-                // 检查是否为空模板
-                boolean isEmpty = template.getFeatures() == null || template.getFeatures().isEmpty() ||
-                    (template.getMetadata() != null && Boolean.TRUE.equals(template.getMetadata().get("emptyTemplate")));
-                logger.debug("Camera {}: isEmpty={}, featuresInTemplate={}",
-                    data.cameraId, isEmpty, template.getFeatures() != null ? template.getFeatures().size() : 0);
+        long totalTime = System.currentTimeMillis() - startTime;
+        logger.info("=== Multi-camera inspection completed: partType={}, cameras={}, results={}, totalTime={} ms ===",
+            partType, cameraDataList.size(), results.size(), totalTime);
 
-                List<FeatureComparisonInfo> features = new ArrayList<>();
-                boolean passed = false;
-                Mat resultMat = null;
+        return results;
+    }
 
-                if (isEmpty) {
-                    // 空模板：检测到任何特征 = 不合格
-                    passed = detections.isEmpty();
+    /**
+     * 最近一次多摄像头质检的耗时分解
+     * <p>
+     * loadMs / predictMs / evaluateMs 为主线程各阶段耗时（evaluateMs 从推理结束到全部摄像头处理完成）；
+     * cameras 为各摄像头的定位、比对、绘制编码耗时，以及推理结束后到该摄像头完成的时间（afterPredictMs），
+     * 其中最大者即关键路径（criticalPathCameraId）。
+     */
+    public Map<String, Object> getLastInspectionTimings() {
+        return lastInspectionTimings;
+    }
 
-                    // 转换检测结果为 FeatureInfo
-                    for (int j = 0; j < detections.size(); j++) {
-                        com.edge.vision.model.Detection det = detections.get(j);
-                        float[] bbox = det.getBbox();
-                        if (bbox != null && bbox.length >= 4) {
-                            FeatureComparisonInfo info = new FeatureComparisonInfo();
-                            info.featureId = "extra_" + j;
-                            info.featureName = det.getLabel();
-                            info.className = det.getLabel();
-                            info.classId = det.getClassId();
-                            info.detectedX = (bbox[0] + bbox[2]) / 2.0;
-                            info.detectedY = (bbox[1] + bbox[3]) / 2.0;
-                            info.status = "EXTRA";  // 多余特征
-                            features.add(info);
-                        }
-                    }
+    /**
+     * 检查是否为空模板（没有特征或元数据标记为空模板）
+     */
+    private boolean isEmptyTemplate(Template template) {
+        return template.getFeatures() == null || template.getFeatures().isEmpty() ||
+            (template.getMetadata() != null && Boolean.TRUE.equals(template.getMetadata().get("emptyTemplate")));
+    }
 
-                    // 绘制检测框
-                    resultMat = drawDetections(imageMat.clone(), detections);
+    /**
+     * 模板定位（只读图像，可与推理并行）
+     */
+    private List<DetectedObject> localize(CameraImageData data, CameraTimings timing) {
+        long calculateStartTime = System.currentTimeMillis();
+        List<DetectedObject> templateObjects = VisionTool.calculateTemplateCoordinates(data.template, data.imageMat);
+        timing.localizeMs = System.currentTimeMillis() - calculateStartTime;
+        logger.info("Camera {}: calculateTemplateCoordinates took {} ms, matched {} objects",
+            data.cameraId, timing.localizeMs, templateObjects != null ? templateObjects.size() : 0);
+        return templateObjects;
+    }
 
-                    logger.info("Camera {} (empty template): passed={}, detections={}, time={} ms",
-                        data.cameraId, passed, detections.size(), System.currentTimeMillis() - cameraStartTime);
+    /**
+     * 单个摄像头的质检处理
+     *
+     * @param templateObjects 模板定位结果，空模板时为 null
+     * @param predictEndTime  推理结束时间，用于计算该摄像头在关键路径上的耗时
+     * @param asyncImages     是否异步渲染结果图
+     */
+    private CameraInspectionResult evaluateCamera(CameraImageData data,
+                                                  List<com.edge.vision.model.Detection> detections,
+                                                  List<DetectedObject> templateObjects,
+                                                  CameraTimings timing,
+                                                  long predictEndTime,
+                                                  boolean asyncImages) {
+        CameraInspectionResult result = evaluateCamera(data, detections, templateObjects, timing, asyncImages);
+        timing.afterPredictMs = System.currentTimeMillis() - predictEndTime;
+        result.timings = timing.toMap();
+        return result;
+    }
 
-                } else {
-                    // 正常模板：模板匹配 + 检测结果比对
-                    long calculateStartTime = System.currentTimeMillis();
-                    List<DetectedObject> templateObjects = VisionTool.calculateTemplateCoordinates(template, imageMat);
-                    long calculateTime = System.currentTimeMillis() - calculateStartTime;
-                    logger.info("Camera {}: calculateTemplateCoordinates took {} ms, matched {} objects",
-                        data.cameraId, calculateTime, templateObjects != null ? templateObjects.size() : 0);
-
-                    // 校验1：检查是否匹配到任何特征
-                    if (templateObjects == null || templateObjects.isEmpty()) {
-                        // 工件摆错了，请调整工件方向或工件类型错误
-                        String errorMsg = "请调整工件方向";
-                        logger.warn("Camera {}: Template matching failed - {} (time: {} ms)",
-                            data.cameraId, errorMsg, System.currentTimeMillis() - cameraStartTime);
-
-                        // 转换结果图片（带检测框）
-                        resultMat = drawDetections(imageMat.clone(), detections);
-                        String resultImageBase64 = matToBase64(resultMat);
-                        resultMat.release();
-                        resultMat = null;
-
-                        results.add(new CameraInspectionResult(
-                            data.cameraId, template.getTemplateId(), false,
-                            "data:image/jpeg;base64," + resultImageBase64, errorMsg, new ArrayList<>()
-                        ));
-                        continue;
-                    }
+    private CameraInspectionResult evaluateCamera(CameraImageData data,
+                                                  List<com.edge.vision.model.Detection> yoloDetections,
+                                                  List<DetectedObject> templateObjects,
+                                                  CameraTimings timing,
+                                                  boolean asyncImages) {
+        long cameraStartTime = System.currentTimeMillis();
+        Mat imageMat = data.imageMat;
+        Template template = data.template;
+
+        List<com.edge.vision.model.Detection> detections = yoloDetections != null ? yoloDetections : new ArrayList<>();
+        logger.debug("Camera {}: {} YOLO detections", data.cameraId, detections.size());
+
+        // 检查是否为空模板
+        boolean isEmpty = isEmptyTemplate(template);
+        logger.debug("Camera {}: isEmpty={}, featuresInTemplate={}",
+            data.cameraId, isEmpty, template.getFeatures() != null ? template.getFeatures().size() : 0);
+
+        List<FeatureComparisonInfo> features = new ArrayList<>();
+        boolean passed = false;
+        UnaryOperator<Mat> painter = null;
+
+        if (isEmpty) {
+            // 空模板：检测到任何特征 = 不合格
+            passed = detections.isEmpty();
+
+            // 转换检测结果为 FeatureInfo
+            for (int j = 0; j < detections.size(); j++) {
+                com.edge.vision.model.Detection det = detections.get(j);
+                float[] bbox = det.getBbox();
+                if (bbox != null && bbox.length >= 4) {
+                    FeatureComparisonInfo info = new FeatureComparisonInfo();
+                    info.featureId = "extra_" + j;
+                    info.featureName = det.getLabel();
+                    info.className = det.getLabel();
+                    info.classId = det.getClassId();
+                    info.detectedX = (bbox[0] + bbox[2]) / 2.0;
+                    info.detectedY = (bbox[1] + bbox[3]) / 2.0;
+                    info.status = "EXTRA";  // 多余特征
+                    features.add(info);
+                }
+            }
 
-                    // 打印每个匹配对象的 insideBounds 状态
-                    for (int objIdx = 0; objIdx < templateObjects.size(); objIdx++) {
-                        DetectedObject obj = templateObjects.get(objIdx);
-                        logger.debug("Camera {}: templateObject[{}] insideBounds={}",
-                            data.cameraId, objIdx, obj.isInsideBounds());
-                    }
+            // 绘制检测框
+            painter = m -> drawDetections(m, detections);
 
-                    // 校验2：检查是否有特征超出边界（工件没对齐）
-                    boolean hasOutOfBounds = false;
-                    for (DetectedObject obj : templateObjects) {
-                        if (!obj.isInsideBounds()) {
-                            hasOutOfBounds = true;
-                            break;
-                        }
-                    }
+            logger.info("Camera {} (empty template): passed={}, detections={}, time={} ms",
+                data.cameraId, passed, detections.size(), System.currentTimeMillis() - cameraStartTime);
 
-                    if (hasOutOfBounds) {
-                        // 工件没对齐，请对齐到正确位置
-                        String errorMsg = "请对齐到正确位置";
-                        logger.warn("Camera {}: Template has out-of-bounds features - {} (time: {} ms)",
-                            data.cameraId, errorMsg, System.currentTimeMillis() - cameraStartTime);
-
-                        // 转换结果图片
-                        resultMat = drawDetections(imageMat.clone(), detections);
-                        String resultImageBase64 = matToBase64(resultMat);
-                        resultMat.release();
-                        resultMat = null;
-
-                        results.add(new CameraInspectionResult(
-                            data.cameraId, template.getTemplateId(), false,
-                            "data:image/jpeg;base64," + resultImageBase64, errorMsg, new ArrayList<>()
-                        ));
-                        continue;
-                    }
+        } else {
+            // 正常模板：模板匹配 + 检测结果比对
+            // 校验1：检查是否匹配到任何特征
+            if (templateObjects == null || templateObjects.isEmpty()) {
+                // 工件摆错了，请调整工件方向或工件类型错误
+                String errorMsg = "请调整工件方向";
+                logger.warn("Camera {}: Template matching failed - {} (time: {} ms)",
+                    data.cameraId, errorMsg, System.currentTimeMillis() - cameraStartTime);
+
+                // 转换结果图片（带检测框）
+                CameraInspectionResult result = new CameraInspectionResult(
+                    data.cameraId, template.getTemplateId(), false, null, errorMsg, new ArrayList<>()
+                );
+                attachImage(result, imageMat, m -> drawDetections(m, detections), asyncImages, timing);
+                return result;
+            }
 
-                    // 校验3：模板匹配结果通过，继续质检
-                    if (!validateTemplateObjects(templateObjects, template)) {
-                        logger.warn("Camera {}: Template validation failed (time: {} ms)",
-                            data.cameraId, System.currentTimeMillis() - cameraStartTime);
-                        results.add(new CameraInspectionResult(
-                            data.cameraId, template.getTemplateId(), false, null, new ArrayList<>()
-                        ));
-                        continue;
-                    }
+            // 打印每个匹配对象的 insideBounds 状态
+            for (int objIdx = 0; objIdx < templateObjects.size(); objIdx++) {
+                DetectedObject obj = templateObjects.get(objIdx);
+                logger.debug("Camera {}: templateObject[{}] insideBounds={}",
+                    data.cameraId, objIdx, obj.isInsideBounds());
+            }
 
-                    List<DetectedObject> detectedObjects = convertDetectionsToDetectedObjects(detections);
-                    logger.debug("Camera {}: converted {} YOLO detections to DetectedObject",
-                        data.cameraId, detectedObjects.size());
-
-                    // 比对结果
-                    long compareStartTime = System.currentTimeMillis();
-                    List<com.edge.vision.service.QualityStandardService.QualityEvaluationResult.TemplateComparison> comparisons =
-                        VisionTool.compareResults(
-                            templateObjects,
-                            detectedObjects,
-                            template.getToleranceX(),
-                            template.getToleranceY()
-                        );
-                    long compareTime = System.currentTimeMillis() - compareStartTime;
-                    logger.info("Camera {}: compareResults took {} ms, {} comparisons",
-                        data.cameraId, compareTime, comparisons.size());
-
-                    // 转换为 FeatureInfo
-                    for (var comp : comparisons) {
-                        FeatureComparisonInfo info = new FeatureComparisonInfo();
-                        info.featureId = comp.getFeatureId();
-                        info.featureName = comp.getFeatureName();
-                        info.className = comp.getClassName();
-                        info.classId = comp.getClassId();
-                        info.templateX = comp.getTemplatePosition() != null ? comp.getTemplatePosition().x : 0;
-                        info.templateY = comp.getTemplatePosition() != null ? comp.getTemplatePosition().y : 0;
-                        info.detectedX = comp.getDetectedPosition() != null ? comp.getDetectedPosition().x : 0;
-                        info.detectedY = comp.getDetectedPosition() != null ? comp.getDetectedPosition().y : 0;
-                        info.xError = comp.getXError();
-                        info.yError = comp.getYError();
-                        info.totalError = comp.getTotalError();
-                        info.toleranceX = comp.getToleranceX();
-                        info.toleranceY = comp.getToleranceY();
-                        info.withinTolerance = comp.isWithinTolerance();
-                        info.status = comp.getStatus().toString();
-                        features.add(info);
-                    }
+            // 校验2：检查是否有特征超出边界（工件没对齐）
+            boolean hasOutOfBounds = false;
+            for (DetectedObject obj : templateObjects) {
+                if (!obj.isInsideBounds()) {
+                    hasOutOfBounds = true;
+                    break;
+                }
+            }
+
+            if (hasOutOfBounds) {
+                // 工件没对齐，请对齐到正确位置
+                String errorMsg = "请对齐到正确位置";
+                logger.warn("Camera {}: Template has out-of-bounds features - {} (time: {} ms)",
+                    data.cameraId, errorMsg, System.currentTimeMillis() - cameraStartTime);
+
+                // 转换结果图片
+                CameraInspectionResult result = new CameraInspectionResult(
+                    data.cameraId, template.getTemplateId(), false, null, errorMsg, new ArrayList<>()
+                );
+                attachImage(result, imageMat, m -> drawDetections(m, detections), asyncImages, timing);
+                return result;
+            }
 
-                    passed = comparisons.stream()
-                        .allMatch(c -> c.getStatus() == com.edge.vision.core.quality.FeatureComparison.ComparisonStatus.PASSED);
+            // 校验3：模板匹配结果通过，继续质检
+            if (!validateTemplateObjects(templateObjects, template)) {
+                logger.warn("Camera {}: Template validation failed (time: {} ms)",
+                    data.cameraId, System.currentTimeMillis() - cameraStartTime);
+                return new CameraInspectionResult(
+                    data.cameraId, template.getTemplateId(), false, null, new ArrayList<>()
+                );
+            }
 
-                    // 绘制带框图片（YOLO检测框 + 模板比对结果）
-                    resultMat = drawDetectionsWithTemplate(imageMat.clone(), detections, comparisons);
+            List<DetectedObject> detectedObjects = convertDetectionsToDetectedObjects(detections);
+            logger.debug("Camera {}: converted {} YOLO detections to DetectedObject",
+                data.cameraId, detectedObjects.size());
+
+            // 比对结果
+            long compareStartTime = System.currentTimeMillis();
+            List<com.edge.vision.service.QualityStandardService.QualityEvaluationResult.TemplateComparison> comparisons =
+                VisionTool.compareResults(
+                    templateObjects,
+                    detectedObjects,
+                    template.getToleranceX(),
+                    template.getToleranceY()
+                );
+            timing.compareMs = System.currentTimeMillis() - compareStartTime;
+            logger.info("Camera {}: compareResults took {} ms, {} comparisons",
+                data.cameraId, timing.compareMs, comparisons.size());
+
+            // 转换为 FeatureInfo
+            for (var comp : comparisons) {
+                FeatureComparisonInfo info = new FeatureComparisonInfo();
+                info.featureId = comp.getFeatureId();
+                info.featureName = comp.getFeatureName();
+                info.className = comp.getClassName();
+                info.classId = comp.getClassId();
+                info.templateX = comp.getTemplatePosition() != null ? comp.getTemplatePosition().x : 0;
+                info.templateY = comp.getTemplatePosition() != null ? comp.getTemplatePosition().y : 0;
+                info.detectedX = comp.getDetectedPosition() != null ? comp.getDetectedPosition().x : 0;
+                info.detectedY = comp.getDetectedPosition() != null ? comp.getDetectedPosition().y : 0;
+                info.xError = comp.getXError();
+                info.yError = comp.getYError();
+                info.totalError = comp.getTotalError();
+                info.toleranceX = comp.getToleranceX();
+                info.toleranceY = comp.getToleranceY();
+                info.withinTolerance = comp.isWithinTolerance();
+                info.status = comp.getStatus().toString();
+                features.add(info);
+            }
 
-                    logger.info("Camera {} (normal template): passed={}, features={}, time={} ms",
-                        data.cameraId, passed, features.size(), System.currentTimeMillis() - cameraStartTime);
-                }
+            passed = comparisons.stream()
+                .allMatch(c -> c.getStatus() == com.edge.vision.core.quality.FeatureComparison.ComparisonStatus.PASSED);
 
-                // 转换结果图片为 base64
-                if (resultMat != null) {
-                    long encodeStartTime = System.currentTimeMillis();
-                    String resultImageBase64 = matToBase64(resultMat);
-                    logger.debug("Camera {}: image encoding took {} ms", data.cameraId, System.currentTimeMillis() - encodeStartTime);
-                    resultMat.release();
+            // 绘制带框图片（YOLO检测框 + 模板比对结果）
+            painter = m -> drawDetectionsWithTemplate(m, detections, comparisons);
 
-                    results.add(new CameraInspectionResult(
-                        data.cameraId,
-                        template.getTemplateId(),
-                        passed,
-                        "data:image/jpeg;base64," + resultImageBase64,
-                        features,detections
-                    ));
+            logger.info("Camera {} (normal template): passed={}, features={}, time={} ms",
+                data.cameraId, passed, features.size(), System.currentTimeMillis() - cameraStartTime);
+        }
+
+        // 绘制并转换结果图片
+        if (painter != null) {
+            CameraInspectionResult result = new CameraInspectionResult(
+                data.cameraId,
+                template.getTemplateId(),
+                passed,
+                null,
+                features,detections
+            );
+            attachImage(result, imageMat, painter, asyncImages, timing);
+            return result;
+        } else {
+            return new CameraInspectionResult(
+                data.cameraId,
+                template.getTemplateId(),
+                false,
+                null,
+                features
+            );
+        }
+    }
+
+    /**
+     * 在原图副本上绘制结果并编码
+     * <p>
+     * 同步模式写入 base64 data URL；异步模式提交到渲染队列，写入 /api/result-images/{id}。
+     * 原图在质检结束后释放，因此副本在这里同步复制，由绘制过程持有并释放。
+     */
+    private void attachImage(CameraInspectionResult result, Mat imageMat, UnaryOperator<Mat> painter,
+                             boolean asyncImages, CameraTimings timing) {
+        long renderStartTime = System.currentTimeMillis();
+        Mat canvas = imageMat.clone();
+        if (asyncImages) {
+            ResultImageService.RenderedImage image = resultImageService.submit(() -> {
+                Mat rendered = painter.apply(canvas);
+                try {
+                    return matToJpeg(rendered);
+                } finally {
+                    rendered.release();
+                }
+            });
+            result.imageUrl = image.getUrl();
+            result.imageId = image.getId();
+        } else {
+            Mat rendered = painter.apply(canvas);
+            try {
+                byte[] jpeg = matToJpeg(rendered);
+                if (resultImageService.isReferenceTransport(null)) {
+                    // 同步渲染，但只返回图片引用
+                    ResultImageService.RenderedImage image = resultImageService.store(jpeg);
+                    result.imageUrl = image.getUrl();
+                    result.imageId = image.getId();
                 } else {
-                    results.add(new CameraInspectionResult(
-                        data.cameraId,
-                        template.getTemplateId(),
-                        false,
-                        null,
-                        features
-                    ));
+                    result.imageUrl = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(jpeg);
                 }
+            } finally {
+                rendered.release();
             }
-        } finally {
-            // 释放所有 Mat
-            for (CameraImageData data : cameraDataList) {
-                if (data.imageMat != null) {
-                    data.imageMat.release();
-                }
+        }
+        timing.renderMs += System.currentTimeMillis() - renderStartTime;
+    }
+
+    /**
+     * 汇总并记录本次质检的耗时分解
+     */
+    private void recordTimings(String partType, CameraTimings[] timings,
+                               long loadTime, long predictTime, long evaluateTime, long totalTime) {
+        RequestTimings.record("load", loadTime);
+        RequestTimings.record("inference", predictTime);
+        RequestTimings.record("evaluate", evaluateTime);
+        statisticsService.recordLatency("multi-camera.inference", predictTime);
+        statisticsService.recordLatency("multi-camera.total", totalTime);
+        CameraTimings critical = timings[0];
+        List<Map<String, Object>> cameras = new ArrayList<>(timings.length);
+        for (CameraTimings timing : timings) {
+            if (timing.afterPredictMs > critical.afterPredictMs) {
+                critical = timing;
             }
+            Map<String, Object> camera = new LinkedHashMap<>();
+            camera.put("cameraId", timing.cameraId);
+            camera.putAll(timing.toMap());
+            cameras.add(camera);
         }
 
-        long totalTime = System.currentTimeMillis() - startTime;
-        logger.info("=== Multi-camera inspection completed: partType={}, cameras={}, results={}, totalTime={} ms ===",
-            partType, cameraDataList.size(), results.size(), totalTime);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("partType", partType);
+        summary.put("timestamp", System.currentTimeMillis());
+        summary.put("parallelism", cameraExecutor != null ? cameraParallelismInUse : 1);
+        summary.put("overlapLocalization", overlapLocalization && cameraExecutor != null);
+        summary.put("loadMs", loadTime);
+        summary.put("predictMs", predictTime);
+        summary.put("evaluateMs", evaluateTime);
+        summary.put("totalMs", totalTime);
+        summary.put("criticalPathCameraId", critical.cameraId);
+        summary.put("criticalPathMs", loadTime + predictTime + critical.afterPredictMs);
+        summary.put("cameras", cameras);
+        lastInspectionTimings = Collections.unmodifiableMap(summary);
+
+        logger.info("Inspection timings: load={} ms, predict={} ms, evaluate={} ms, critical path camera {} (+{} ms after predict)",
+            loadTime, predictTime, evaluateTime, critical.cameraId, critical.afterPredictMs);
+    }
 
-        return results;
+    /**
+     * 等待任务完成，任务异常时在调用线程重新抛出原始异常
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 等待所有任务结束（忽略异常，异常已由 join 抛出）
+     */
+    private static void awaitQuietly(List<? extends CompletableFuture<?>> futures) {
+        for (CompletableFuture<?> future : futures) {
+            if (future == null) continue;
+            try {
+                future.join();
+            } catch (RuntimeException ignored) {
+                // 已在收集结果时处理
+            }
+        }
+    }
+
+    /**
+     * 单个摄像头各阶段耗时（毫秒）
+     */
+    private static class CameraTimings {
+        final int cameraId;
+        volatile long localizeMs;
+        volatile long compareMs;
+        volatile long renderMs;
+        volatile long afterPredictMs;
+
+        CameraTimings(int cameraId) {
+            this.cameraId = cameraId;
+        }
+
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("localizeMs", localizeMs);
+            map.put("compareMs", compareMs);
+            map.put("renderMs", renderMs);
+            map.put("afterPredictMs", afterPredictMs);
+            return map;
+        }
     }
 
     /**
@@ -634,7 +913,8 @@ public class PartCameraTemplateService {
         public List<FeatureComparisonInfo> features;
 
         public java.util.List<Detection> details;
-
+        public String imageId;  // 异步结果图ID（仅异步模式）
+        public Map<String, Long> timings;  // 各阶段耗时（毫秒）
 
         public CameraInspectionResult(int cameraId, String templateId, boolean passed, String imageUrl, List<FeatureComparisonInfo> features) {
             this.cameraId = cameraId;
@@ -1096,11 +1376,18 @@ public class PartCameraTemplateService {
      * 将Mat转换为Base64字符串
      */
     private String matToBase64(Mat mat) {
+        return Base64.getEncoder().encodeToString(matToJpeg(mat));
+    }
+
+    /**
+     * 将Mat编码为JPEG字节
+     */
+    private byte[] matToJpeg(Mat mat) {
         MatOfByte mob = new MatOfByte();
         Imgcodecs.imencode(".jpg", mat, mob);
         byte[] bytes = mob.toArray();
         mob.release();
-        return Base64.getEncoder().encodeToString(bytes);
+        return bytes;
     }
 
     /**
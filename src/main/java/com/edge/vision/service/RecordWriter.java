@@ -0,0 +1,392 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import com.edge.vision.model.InspectionEntity;
+import com.edge.vision.repository.InspectionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检测记录异步写入（组提交）
+ * <p>
+ * 保存记录的请求线程只做三件事：把结果图（JPEG 原始字节）交给写图线程池、把记录追加到意图日志、放入队列，然后立即返回。
+ * 单个写入线程从队列取记录，凑满 record-batch-size 条或等待 record-commit-interval-ms 毫秒后：
+ * 等本批的结果图写完，按日期一次追加到段文件，每个段文件刷盘一次（record-fsync），再建立索引。
+ * <p>
+ * 持久性：意图日志默认只追加不刷盘，进程异常退出时排队中的记录可在重启时补写（见 InspectionRepository），
+ * 断电时最多丢失最近一个提交间隔内的记录；需要断电也不丢时开启 record-intent-fsync（每条记录多一次刷盘）。
+ * 队列清空后意图日志被截断。
+ * <p>
+ * 写入失败的记录保留在内存中，随下一批（空闲时每 RETRY_INTERVAL_MS 毫秒）重试，返回的 future 在重试成功后才完成，
+ * 因此保存后的统计和上传照常执行；只剩待重试的记录时意图日志重写为这些记录，不会无限增长。
+ * 待重试的记录超过 record-queue-capacity 时放弃最早的，其 future 以异常完成，记录不再保留。
+ * <p>
+ * 提交耗时、排队到落盘的耗时登记到 {@link InspectionStatisticsService} 的耗时直方图（record.commit / record.persist）。
+ */
+@Service
+public class RecordWriter {
+    private static final Logger logger = LoggerFactory.getLogger(RecordWriter.class);
+
+    // 停止时等待队列写完的最长时间
+    private static final long SHUTDOWN_WAIT_MS = 10000;
+    // 队列空闲时重试失败记录的间隔
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    @Autowired
+    private InspectionRepository repository;
+
+    @Autowired
+    private InspectionStatisticsService statisticsService;
+
+    @Autowired
+    private YamlConfig config;
+
+    private int batchSize;
+    private long commitIntervalNanos;
+    private boolean fsync;
+    private int queueCapacity;
+
+    private final LinkedBlockingQueue<PendingRecord> queue = new LinkedBlockingQueue<>();
+    private Semaphore permits;
+    private ExecutorService imageExecutor;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // 已写入意图日志但尚未提交的记录数（含待重试），意图日志中的条目数（受 intentLock 保护）
+    private final Object intentLock = new Object();
+    private long uncommitted;
+    private long loggedIntents;
+    // 提交失败、等待重试的记录（写入线程访问，数量另存一份供统计读取）
+    private final List<PendingRecord> retries = new ArrayList<>();
+    private volatile int retryPending;
+    private long lastFailureNanos;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong waitedSubmits = new AtomicLong();
+    private final AtomicLong imageWrites = new AtomicLong();
+    private final AtomicLong imageFailures = new AtomicLong();
+    private final AtomicLong totalCommitMs = new AtomicLong();
+    private final AtomicLong maxCommitMs = new AtomicLong();
+    private final AtomicLong totalPersistMs = new AtomicLong();
+    private final AtomicLong maxBatch = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        YamlConfig.SystemConfig system = config.getSystem();
+        this.batchSize = Math.max(1, system.getRecordBatchSize());
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, system.getRecordCommitIntervalMs()));
+        this.fsync = system.isRecordFsync();
+        this.queueCapacity = Math.max(1, system.getRecordQueueCapacity());
+        this.permits = new Semaphore(queueCapacity);
+
+        int imageThreads = Math.max(1, system.getImageWriteThreads());
+        AtomicInteger threadIndex = new AtomicInteger();
+        imageExecutor = Executors.newFixedThreadPool(imageThreads, r -> {
+            Thread t = new Thread(r, "Image-Writer-" + threadIndex.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "Record-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Record writer: batchSize={}, commitInterval={}ms, fsync={}, queueCapacity={}, imageThreads={}",
+            batchSize, system.getRecordCommitIntervalMs(), fsync, queueCapacity, imageThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 停止接收后把队列中的记录写完
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(SHUTDOWN_WAIT_MS);
+                if (writerThread.isAlive()) {
+                    logger.warn("Record writer did not drain in {} ms, {} records left in intent log",
+                        SHUTDOWN_WAIT_MS, queue.size());
+                    writerThread.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (imageExecutor != null) {
+            imageExecutor.shutdown();
+        }
+    }
+
+    /**
+     * 提交一条记录
+     *
+     * @param imageJpeg 结果图 JPEG 原始字节，为 null 时不写图片
+     * @param imageFile 结果图保存路径（imageJpeg 不为 null 时必填）
+     * @return 记录写入并建立索引后完成
+     */
+    public CompletableFuture<InspectionEntity> submit(InspectionEntity entity, byte[] imageJpeg, Path imageFile) {
+        if (!running) {
+            // 已停止（应用关闭中）：在调用线程中直接写入
+            if (imageJpeg != null) {
+                try {
+                    writeImage(imageFile, imageJpeg);
+                } catch (UncheckedIOException e) {
+                    imageFailed(entity, e.getCause());
+                }
+            }
+            repository.insert(entity);
+            committed.incrementAndGet();
+            return CompletableFuture.completedFuture(entity);
+        }
+
+        if (!permits.tryAcquire()) {
+            waitedSubmits.incrementAndGet();
+            permits.acquireUninterruptibly();
+        }
+        PendingRecord pending = new PendingRecord(entity);
+        try {
+            synchronized (intentLock) {
+                // 先序列化到意图日志再开始写图，写图失败时由写入线程清空图片路径
+                repository.logIntent(entity);
+                uncommitted++;
+                loggedIntents++;
+                pending.image = imageJpeg != null
+                    ? CompletableFuture.runAsync(() -> writeImage(imageFile, imageJpeg), imageExecutor)
+                    : CompletableFuture.completedFuture(null);
+                queue.add(pending);
+            }
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        submitted.incrementAndGet();
+        return pending.future;
+    }
+
+    /**
+     * 写入状态
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long done = committed.get();
+        long batchCount = batches.get();
+        result.put("running", running);
+        result.put("queueDepth", queue.size());
+        result.put("queueCapacity", queueCapacity);
+        synchronized (intentLock) {
+            result.put("uncommitted", uncommitted);
+            result.put("loggedIntents", loggedIntents);
+        }
+        result.put("retryPending", retryPending);
+        result.put("submitted", submitted.get());
+        result.put("committed", done);
+        result.put("failed", failed.get());
+        result.put("retried", retried.get());
+        result.put("abandoned", abandoned.get());
+        result.put("waitedSubmits", waitedSubmits.get());
+        result.put("batches", batchCount);
+        result.put("avgBatchSize", batchCount > 0 ? (double) done / batchCount : 0.0);
+        result.put("maxBatchSize", maxBatch.get());
+        result.put("avgCommitMs", batchCount > 0 ? (double) totalCommitMs.get() / batchCount : 0.0);
+        result.put("maxCommitMs", maxCommitMs.get());
+        result.put("avgPersistMs", done > 0 ? (double) totalPersistMs.get() / done : 0.0);
+        result.put("imageWrites", imageWrites.get());
+        result.put("imageFailures", imageFailures.get());
+        result.put("batchSize", batchSize);
+        result.put("commitIntervalMs", TimeUnit.NANOSECONDS.toMillis(commitIntervalNanos));
+        result.put("fsync", fsync);
+        return result;
+    }
+
+    // ==================== 写入线程 ====================
+
+    private void runWriter() {
+        List<PendingRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!retries.isEmpty()
+                        && System.nanoTime() - lastFailureNanos >= TimeUnit.MILLISECONDS.toNanos(RETRY_INTERVAL_MS)) {
+                        commit(batch);
+                    }
+                    continue;
+                }
+                batch.add(first);
+                // 凑批：直到满一批或超过提交间隔
+                long deadline = System.nanoTime() + commitIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingRecord next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable t) {
+                logger.error("Record writer error", t);
+            } finally {
+                batch.clear();
+            }
+        }
+        // 停止前最后重试一次，仍失败的留在意图日志中等重启补写
+        if (!retries.isEmpty()) {
+            commit(batch);
+            for (PendingRecord pending : retries) {
+                pending.future.completeExceptionally(
+                    new IllegalStateException("Record writer stopped, record kept in intent log for recovery"));
+            }
+        }
+    }
+
+    /**
+     * 提交一批记录（之前失败的记录排在前面一起重试）
+     */
+    private void commit(List<PendingRecord> batch) {
+        long start = System.nanoTime();
+        List<PendingRecord> records = new ArrayList<>(retries.size() + batch.size());
+        records.addAll(retries);
+        int retrying = retries.size();
+        retries.clear();
+        List<InspectionEntity> entities = new ArrayList<>(records.size() + batch.size());
+        for (PendingRecord pending : records) {
+            entities.add(pending.entity);
+        }
+        for (PendingRecord pending : batch) {
+            // 结果图写失败时清空图片路径，记录照常写入
+            try {
+                pending.image.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                imageFailed(pending.entity, cause);
+            }
+            records.add(pending);
+            entities.add(pending.entity);
+        }
+
+        Throwable error = null;
+        try {
+            // 部分写入后失败的记录重试时会重复写入，重复的行按写入序号以最新的为准
+            repository.insertAll(entities, fsync);
+        } catch (RuntimeException e) {
+            error = e;
+            lastFailureNanos = System.nanoTime();
+            logger.error("Failed to commit {} records ({} retried), will retry", records.size(), retrying, e);
+        }
+
+        long commitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        batches.incrementAndGet();
+        totalCommitMs.addAndGet(commitMs);
+        maxCommitMs.accumulateAndGet(commitMs, Math::max);
+        maxBatch.accumulateAndGet(records.size(), Math::max);
+        statisticsService.recordLatency("record.commit", commitMs);
+
+        List<PendingRecord> abandonedRecords = Collections.emptyList();
+        if (error != null) {
+            failed.addAndGet(batch.size());
+            // 超出上限时放弃最早的记录
+            int keepFrom = Math.max(0, records.size() - queueCapacity);
+            abandonedRecords = records.subList(0, keepFrom);
+            retries.addAll(records.subList(keepFrom, records.size()));
+        } else if (retrying > 0) {
+            retried.addAndGet(retrying);
+            logger.info("Committed {} records after a failed commit", retrying);
+        }
+        retryPending = retries.size();
+
+        synchronized (intentLock) {
+            uncommitted -= records.size() - retries.size();
+            if (uncommitted == 0) {
+                repository.clearIntents();
+                loggedIntents = 0;
+            } else if (uncommitted == retries.size() && loggedIntents > retries.size()) {
+                // 只剩待重试的记录：意图日志重写为这些记录
+                List<InspectionEntity> pendingEntities = new ArrayList<>(retries.size());
+                for (PendingRecord pending : retries) {
+                    pendingEntities.add(pending.entity);
+                }
+                if (repository.replaceIntents(pendingEntities)) {
+                    loggedIntents = retries.size();
+                }
+            }
+        }
+        permits.release(batch.size());
+
+        if (!abandonedRecords.isEmpty()) {
+            abandoned.addAndGet(abandonedRecords.size());
+            logger.error("Abandoned {} records after repeated commit failures", abandonedRecords.size());
+            for (PendingRecord pending : abandonedRecords) {
+                pending.future.completeExceptionally(error);
+            }
+        }
+        if (error != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (PendingRecord pending : records) {
+            long persistMs = TimeUnit.NANOSECONDS.toMillis(now - pending.submittedNanos);
+            committed.incrementAndGet();
+            totalPersistMs.addAndGet(persistMs);
+            statisticsService.recordLatency("record.persist", persistMs);
+            pending.future.complete(pending.entity);
+        }
+    }
+
+    /**
+     * 写结果图（在写图线程池中执行，不修改记录；失败时抛出 UncheckedIOException）
+     */
+    private void writeImage(Path imageFile, byte[] jpeg) {
+        try {
+            Files.createDirectories(imageFile.getParent());
+            Files.write(imageFile, jpeg);
+            imageWrites.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write image " + imageFile, e);
+        }
+    }
+
+    private void imageFailed(InspectionEntity entity, Throwable cause) {
+        imageFailures.incrementAndGet();
+        entity.setImagePath(null);
+        logger.error("Failed to write image for record {}", entity.getId(), cause);
+    }
+
+    /**
+     * 排队中的记录
+     */
+    private static final class PendingRecord {
+        final InspectionEntity entity;
+        final long submittedNanos = System.nanoTime();
+        final CompletableFuture<InspectionEntity> future = new CompletableFuture<>();
+        CompletableFuture<Void> image;
+
+        PendingRecord(InspectionEntity entity) {
+            this.entity = entity;
+        }
+    }
+}
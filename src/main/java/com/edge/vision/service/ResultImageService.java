@@ -0,0 +1,302 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 质检结果图异步渲染服务
+ * <p>
+ * 质检接口开启异步结果图时，判定结果和特征比对立即返回，带框结果图的绘制和 JPEG 编码提交到这里：
+ * - 有界渲染队列：固定线程数 + 固定容量队列，队列满或服务已停止时由提交线程自己渲染（背压，结果图不会丢）
+ * - 渲染完成的 JPEG 按 ID 保存在内存中，通过 /api/result-images/{id} 获取，或通过 SSE 订阅完成事件
+ * - 超过保留时间、数量上限或总字节预算（render-max-stored-mb）的结果图从最旧的开始淘汰
+ *   （需要长期保存的图片由检测记录写入磁盘）
+ * <p>
+ * 图片传输方式为 reference 时，同步接口也不再把 Base64 嵌入 JSON：已编码的 JPEG 通过 {@link #store} 保存，
+ * JSON 中只返回 /api/result-images/{id} 引用，客户端再按 ID 获取原始字节。
+ */
+@Service
+public class ResultImageService {
+    private static final Logger logger = LoggerFactory.getLogger(ResultImageService.class);
+
+    /**
+     * 结果图访问路径前缀
+     */
+    public static final String URL_PREFIX = "/api/result-images/";
+
+    /**
+     * 图片传输方式：JSON 中只返回图片引用
+     */
+    public static final String TRANSPORT_REFERENCE = "reference";
+
+    // 内存中最多保留的结果图数量
+    private static final int MAX_STORED_IMAGES = 512;
+
+    @Autowired
+    private YamlConfig config;
+
+    private ThreadPoolExecutor renderExecutor;
+    private long retentionMillis;
+    private long maxStoredBytes;
+    // 已保存结果图的 JPEG 总字节数（受 this 锁保护）
+    private long storedBytes;
+
+    // 结果图ID -> 渲染结果（按提交顺序，便于淘汰最旧的）
+    private final Map<String, RenderedImage> images = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<RenderedImage> order = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong totalRenderMs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        YamlConfig.InspectionConfig inspection = config.getInspection();
+        int threads = Math.max(1, inspection.getRenderThreads());
+        int capacity = Math.max(1, inspection.getRenderQueueCapacity());
+        this.retentionMillis = Math.max(1, inspection.getRenderRetentionSeconds()) * 1000L;
+        this.maxStoredBytes = Math.max(1, inspection.getRenderMaxStoredMb()) * 1024L * 1024L;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        renderExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            r -> {
+                Thread t = new Thread(r, "Result-Render-" + threadIndex.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            },
+            (r, executor) -> {
+                // 队列已满或已停止（应用关闭中）：在提交线程中渲染，保证结果图完成、渲染用的 Mat 被释放
+                callerRuns.incrementAndGet();
+                r.run();
+            });
+        logger.info("Result image renderer: threads={}, queueCapacity={}, retention={}s, maxStored={}MB, asyncByDefault={}, transport={}",
+            threads, capacity, retentionMillis / 1000, maxStoredBytes / (1024 * 1024),
+            inspection.isAsyncImages(), inspection.getImageTransport());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (renderExecutor != null) {
+            renderExecutor.shutdown();
+            try {
+                if (!renderExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    renderExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                renderExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 请求未指定时是否默认使用异步结果图
+     */
+    public boolean isAsyncByDefault() {
+        return config.getInspection().isAsyncImages();
+    }
+
+    /**
+     * 同步接口是否以引用方式返回图片
+     *
+     * @param requested 请求指定的传输方式（base64 / reference），为空时使用配置的默认值
+     */
+    public boolean isReferenceTransport(String requested) {
+        String transport = requested != null && !requested.isBlank()
+            ? requested : config.getInspection().getImageTransport();
+        return TRANSPORT_REFERENCE.equalsIgnoreCase(transport);
+    }
+
+    /**
+     * 保存已编码的 JPEG，返回可按 ID 获取的结果图
+     */
+    public RenderedImage store(byte[] jpeg) {
+        RenderedImage image = register();
+        stored.incrementAndGet();
+        account(image, jpeg);
+        image.future.complete(jpeg);
+        return image;
+    }
+
+    /**
+     * 提交渲染任务
+     *
+     * @param renderer 绘制并编码为 JPEG，负责释放自己使用的 Mat
+     * @return 结果图（ID、访问路径、完成通知）
+     */
+    public RenderedImage submit(Supplier<byte[]> renderer) {
+        RenderedImage image = register();
+        submitted.incrementAndGet();
+
+        CompletableFuture.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            byte[] jpeg = renderer.get();
+            totalRenderMs.addAndGet(System.currentTimeMillis() - start);
+            return jpeg;
+        }, renderExecutor).whenComplete((jpeg, error) -> {
+            if (error != null) {
+                failed.incrementAndGet();
+                logger.warn("Render result image {} failed: {}", image.id, error.getMessage());
+                image.future.completeExceptionally(error);
+            } else {
+                completed.incrementAndGet();
+                account(image, jpeg);
+                image.future.complete(jpeg);
+            }
+        });
+        return image;
+    }
+
+    /**
+     * 查找结果图，不存在或已淘汰时返回 null
+     */
+    public RenderedImage find(String id) {
+        return id == null ? null : images.get(id);
+    }
+
+    /**
+     * 已渲染完成的 JPEG，未完成、失败或不存在时返回 null
+     */
+    public byte[] getIfReady(String id) {
+        RenderedImage image = find(id);
+        if (image == null || !image.future.isDone() || image.future.isCompletedExceptionally()) {
+            return null;
+        }
+        return image.future.join();
+    }
+
+    /**
+     * 定时淘汰过期的结果图
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public synchronized void evictExpired() {
+        long deadline = System.currentTimeMillis() - retentionMillis;
+        RenderedImage oldest;
+        while ((oldest = order.peek()) != null && oldest.createdAt < deadline && oldest.future.isDone()) {
+            remove(order.poll());
+        }
+    }
+
+    /**
+     * 渲染队列统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long done = completed.get();
+        result.put("threads", renderExecutor.getMaximumPoolSize());
+        result.put("queueDepth", renderExecutor.getQueue().size());
+        result.put("queueRemaining", renderExecutor.getQueue().remainingCapacity());
+        result.put("active", renderExecutor.getActiveCount());
+        result.put("storedImages", images.size());
+        synchronized (this) {
+            result.put("storedBytes", storedBytes);
+        }
+        result.put("maxStoredBytes", maxStoredBytes);
+        result.put("submitted", submitted.get());
+        result.put("stored", stored.get());
+        result.put("completed", done);
+        result.put("failed", failed.get());
+        result.put("callerRuns", callerRuns.get());
+        result.put("evicted", evicted.get());
+        result.put("avgRenderMs", done > 0 ? totalRenderMs.get() / done : 0);
+        return result;
+    }
+
+    private RenderedImage register() {
+        RenderedImage image = new RenderedImage(UUID.randomUUID().toString().replace("-", ""));
+        images.put(image.id, image);
+        order.add(image);
+        evictExcess();
+        return image;
+    }
+
+    private synchronized void evictExcess() {
+        while (images.size() > MAX_STORED_IMAGES) {
+            RenderedImage oldest = order.poll();
+            if (oldest == null) {
+                break;
+            }
+            remove(oldest);
+        }
+    }
+
+    /**
+     * 记录已完成结果图的字节数，超出字节预算时从最旧的已完成结果图开始淘汰（至少保留刚完成的这一张）
+     * <p>
+     * 仍在渲染的结果图不占字节预算，淘汰它们腾不出空间，反而会让等待中的请求拿不到图，因此跳过
+     */
+    private synchronized void account(RenderedImage image, byte[] jpeg) {
+        if (jpeg == null || images.get(image.id) != image) {
+            return;
+        }
+        image.bytes = jpeg.length;
+        storedBytes += jpeg.length;
+        Iterator<RenderedImage> oldest = order.iterator();
+        while (storedBytes > maxStoredBytes && oldest.hasNext()) {
+            RenderedImage candidate = oldest.next();
+            if (candidate == image || candidate.bytes == 0) {
+                continue;
+            }
+            oldest.remove();
+            remove(candidate);
+        }
+    }
+
+    private synchronized void remove(RenderedImage image) {
+        if (image != null && images.remove(image.id, image)) {
+            storedBytes -= image.bytes;
+            evicted.incrementAndGet();
+        }
+    }
+
+    /**
+     * 异步渲染的结果图
+     */
+    public static class RenderedImage {
+        private final String id;
+        private final long createdAt = System.currentTimeMillis();
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        // 计入字节预算的 JPEG 大小（受 ResultImageService 锁保护）
+        private long bytes;
+
+        RenderedImage(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUrl() {
+            return URL_PREFIX + id;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * 渲染完成时返回 JPEG 字节，渲染失败时异常完成
+         */
+        public CompletableFuture<byte[]> getFuture() {
+            return future;
+        }
+    }
+}
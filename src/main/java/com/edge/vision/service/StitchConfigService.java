@@ -1,10 +1,14 @@
 package com.edge.vision.service;
 
 import com.edge.vision.config.YamlConfig;
+import com.edge.vision.core.stitcher.AutoStitchStrategy;
 import com.edge.vision.core.stitcher.ManualStitchStrategy;
+import com.edge.vision.core.stitcher.StitchExecutor;
+import com.edge.vision.util.FeatureBackend;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.opencv.imgproc.Imgproc;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,8 +26,9 @@ import java.util.*;
  * 负责拼接参数的持久化和运行时管理
  * <p>
  * 配置说明：
- * - yml 文件：只配置拼接策略 (simple/manual，移除 auto)
+ * - yml 文件：只配置拼接策略 (simple/manual/auto)，运行时可通过接口切换
  * - data/stitch-config.json：手动拼接参数配置 (x1, x2, y, h)
+ * - data/auto-stitch-calibration.json：自动拼接校准结果（auto 策略使用，重新校准时删除）
  * <p>
  * 参数说明：
  * - x1: 左切割线位置（保留从 x1 到右侧的区域）
@@ -52,8 +57,12 @@ public class StitchConfigService {
     // 配置文件路径（放在 data 目录）
     private static final String DATA_DIR = "data";
     private static final String CONFIG_FILE_NAME = "stitch-config.json";
+    private static final String AUTO_CALIBRATION_FILE_NAME = "auto-stitch-calibration.json";
     private Path configFilePath;
 
+    // 可用的拼接策略
+    public static final List<String> AVAILABLE_STRATEGIES = List.of("simple", "manual", "auto");
+
     // 默认拼接策略
     private String currentStrategy = "manual";
 
@@ -78,6 +87,9 @@ public class StitchConfigService {
         if (yamlConfig.getStitching() != null && yamlConfig.getStitching().getStrategy() != null) {
             currentStrategy = yamlConfig.getStitching().getStrategy();
         }
+        if (yamlConfig.getStitching() != null) {
+            StitchExecutor.configure(yamlConfig.getStitching().getParallelism());
+        }
 
         // 主动创建策略实例以加载配置文件
         currentStitchStrategy = createStitchStrategy();
@@ -92,6 +104,7 @@ public class StitchConfigService {
         if ("manual".equals(currentStrategy)) {
             savePersistedConfig();
         }
+        releaseStrategy(currentStitchStrategy);
     }
 
     /**
@@ -102,11 +115,11 @@ public class StitchConfigService {
     }
 
     /**
-     * 设置拼接策略（移除 auto 选项）
+     * 设置拼接策略（simple/manual/auto）
      */
     public synchronized void setStrategy(String strategy) {
-        if (!Arrays.asList("simple", "manual").contains(strategy)) {
-            throw new IllegalArgumentException("Invalid strategy: " + strategy + ". Only 'simple' and 'manual' are supported.");
+        if (!AVAILABLE_STRATEGIES.contains(strategy)) {
+            throw new IllegalArgumentException("Invalid strategy: " + strategy + ". Only 'simple', 'manual' and 'auto' are supported.");
         }
 
         // 如果从 manual 切换到其他策略，先保存配置
@@ -114,6 +127,8 @@ public class StitchConfigService {
             savePersistedConfig();
         }
 
+        // 释放旧策略的本地内存（auto 的校准文件保留，切回时直接加载）
+        releaseStrategy(this.currentStitchStrategy);
         this.currentStrategy = strategy;
         this.currentStitchStrategy = null; // 清除缓存，下次获取时重新创建
 
@@ -131,7 +146,27 @@ public class StitchConfigService {
     }
 
     /**
-     * 创建拼接策略实例（移除 auto）
+     * 重新校准自动拼接：清空校准结果并删除校准文件，下一帧重新做特征匹配
+     */
+    public synchronized void resetAutoCalibration() {
+        if (!"auto".equals(currentStrategy)) {
+            throw new IllegalStateException("Auto calibration can only be reset when strategy is 'auto'");
+        }
+        Object strategy = getStitchStrategy();
+        if (strategy instanceof AutoStitchStrategy) {
+            ((AutoStitchStrategy) strategy).resetCalibration();
+            logger.info("Reset auto stitch calibration");
+        }
+    }
+
+    private void releaseStrategy(Object strategy) {
+        if (strategy instanceof AutoStitchStrategy) {
+            ((AutoStitchStrategy) strategy).release();
+        }
+    }
+
+    /**
+     * 创建拼接策略实例
      */
     private Object createStitchStrategy() {
         switch (currentStrategy) {
@@ -139,6 +174,16 @@ public class StitchConfigService {
                 boolean enableBlend = yamlConfig.getStitching() != null && yamlConfig.getStitching().isEnableBlend();
                 return new com.edge.vision.core.stitcher.SimpleStitchStrategy(enableBlend);
 
+            case "auto":
+                // 校准结果持久化到 data 目录，重启后无需重新 SIFT 匹配
+                boolean lanczos = yamlConfig.getStitching() != null
+                        && "lanczos4".equalsIgnoreCase(yamlConfig.getStitching().getAutoInterpolation());
+                FeatureBackend backend = FeatureBackend.parse(
+                        yamlConfig.getStitching() != null ? yamlConfig.getStitching().getAutoFeatureBackend() : null,
+                        FeatureBackend.SIFT);
+                return new AutoStitchStrategy(configFilePath.resolveSibling(AUTO_CALIBRATION_FILE_NAME),
+                        lanczos ? Imgproc.INTER_LANCZOS4 : Imgproc.INTER_LINEAR, backend);
+
             case "manual":
                 ManualStitchStrategy manualStrategy = new ManualStitchStrategy();
                 // 从 JSON 文件加载保存的手动配置
@@ -387,7 +432,7 @@ public class StitchConfigService {
     public Map<String, Object> getAllConfigs() {
         Map<String, Object> result = new HashMap<>();
         result.put("currentStrategy", currentStrategy);
-        result.put("availableStrategies", Arrays.asList("simple", "manual"));
+        result.put("availableStrategies", AVAILABLE_STRATEGIES);
         result.put("configFilePath", configFilePath.toString());
 
         if (yamlConfig.getStitching() != null) {
@@ -0,0 +1,168 @@
+package com.edge.vision.util;
+
+import org.opencv.core.*;
+import org.opencv.features2d.*;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 特征提取后端
+ * <p>
+ * - SIFT：浮点描述子 + FLANN 匹配，最稳健，也最慢（CPU 上单路 150~400ms）
+ * - ORB / AKAZE：二进制描述子 + Hamming 暴力匹配，速度快数倍，纹理弱或尺度变化大时内点可能不足
+ * <p>
+ * 调用方在快速后端内点数不足时应回退到 SIFT。
+ * 检测器不是线程安全的，{@link #detector()} 按线程复用实例。
+ */
+public enum FeatureBackend {
+    SIFT(false),
+    ORB(true),
+    AKAZE(true);
+
+    // ORB 默认只取 500 个点，大图定位不够用
+    private static final int ORB_MAX_FEATURES = 5000;
+    // 二进制描述子距离分布更集中，ratio test 需要放宽
+    private static final float BINARY_MIN_RATIO = 0.8f;
+
+    private static final ThreadLocal<EnumMap<FeatureBackend, Feature2D>> DETECTORS =
+            ThreadLocal.withInitial(() -> new EnumMap<>(FeatureBackend.class));
+
+    private final boolean binary;
+
+    FeatureBackend(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * 是否为二进制描述子（CV_8U，Hamming 距离）
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * 当前线程独占的检测器实例
+     */
+    public Feature2D detector() {
+        return DETECTORS.get().computeIfAbsent(this, FeatureBackend::createDetector);
+    }
+
+    /**
+     * 创建与描述子类型匹配的新匹配器（匹配器持有训练数据，不在线程间共享）
+     */
+    public DescriptorMatcher createMatcher() {
+        return DescriptorMatcher.create(binary ? DescriptorMatcher.BRUTEFORCE_HAMMING : DescriptorMatcher.FLANNBASED);
+    }
+
+    /**
+     * 按后端调整 Lowe ratio 阈值
+     *
+     * @param siftRatio 调用方针对 SIFT 使用的阈值
+     */
+    public float ratio(float siftRatio) {
+        return binary ? Math.max(siftRatio, BINARY_MIN_RATIO) : siftRatio;
+    }
+
+    /**
+     * 解析配置值（不区分大小写），为空或无法识别时返回默认值
+     */
+    public static FeatureBackend parse(String name, FeatureBackend defaultBackend) {
+        if (name == null || name.isBlank()) {
+            return defaultBackend;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return defaultBackend;
+        }
+    }
+
+    /**
+     * 提取两幅灰度图的特征并做 KNN + ratio test，返回对应点
+     *
+     * @param query    查询图（结果中 queryPoints 的坐标系）
+     * @param train    训练图（结果中 trainPoints 的坐标系）
+     * @param siftRatio SIFT 下的 ratio 阈值（二进制后端自动放宽）
+     * @return 对应点；任一图无特征时返回空对应
+     */
+    public Correspondences match(Mat query, Mat train, float siftRatio) {
+        Feature2D detector = detector();
+        MatOfKeyPoint kpQuery = new MatOfKeyPoint();
+        MatOfKeyPoint kpTrain = new MatOfKeyPoint();
+        Mat descQuery = new Mat();
+        Mat descTrain = new Mat();
+        try {
+            detector.detectAndCompute(query, new Mat(), kpQuery, descQuery);
+            detector.detectAndCompute(train, new Mat(), kpTrain, descTrain);
+
+            Correspondences result = new Correspondences(this);
+            result.queryFeatures = kpQuery.rows();
+            result.trainFeatures = kpTrain.rows();
+            if (descQuery.empty() || descTrain.empty() || kpQuery.rows() < 2 || kpTrain.rows() < 2) {
+                return result;
+            }
+            if (!binary) {
+                if (descQuery.type() != CvType.CV_32F) descQuery.convertTo(descQuery, CvType.CV_32F);
+                if (descTrain.type() != CvType.CV_32F) descTrain.convertTo(descTrain, CvType.CV_32F);
+            }
+
+            List<MatOfDMatch> knnMatches = new ArrayList<>();
+            createMatcher().knnMatch(descQuery, descTrain, knnMatches, 2);
+
+            float ratio = ratio(siftRatio);
+            KeyPoint[] queryKps = kpQuery.toArray();
+            KeyPoint[] trainKps = kpTrain.toArray();
+            for (MatOfDMatch m : knnMatches) {
+                DMatch[] dm = m.toArray();
+                if (dm.length >= 2 && dm[0].distance < ratio * dm[1].distance) {
+                    result.queryPoints.add(queryKps[dm[0].queryIdx].pt);
+                    result.trainPoints.add(trainKps[dm[0].trainIdx].pt);
+                }
+                m.release();
+            }
+            return result;
+        } finally {
+            kpQuery.release();
+            kpTrain.release();
+            descQuery.release();
+            descTrain.release();
+        }
+    }
+
+    private Feature2D createDetector() {
+        switch (this) {
+            case ORB:
+                return org.opencv.features2d.ORB.create(ORB_MAX_FEATURES);
+            case AKAZE:
+                return org.opencv.features2d.AKAZE.create();
+            case SIFT:
+            default:
+                return org.opencv.features2d.SIFT.create();
+        }
+    }
+
+    /**
+     * 两幅图之间的特征对应点
+     */
+    public static class Correspondences {
+        private final FeatureBackend backend;
+        private final List<Point> queryPoints = new ArrayList<>();
+        private final List<Point> trainPoints = new ArrayList<>();
+        private int queryFeatures;
+        private int trainFeatures;
+
+        Correspondences(FeatureBackend backend) {
+            this.backend = backend;
+        }
+
+        public FeatureBackend getBackend() { return backend; }
+        public List<Point> getQueryPoints() { return queryPoints; }
+        public List<Point> getTrainPoints() { return trainPoints; }
+        public int getQueryFeatures() { return queryFeatures; }
+        public int getTrainFeatures() { return trainFeatures; }
+        public int size() { return queryPoints.size(); }
+    }
+}
@@ -0,0 +1,299 @@
+package com.edge.vision.util;
+
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.*;
+import org.opencv.video.Video;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单应性时序跟踪
+ * <p>
+ * 工位上工件在相邻两次检测之间几乎不动，每次都重做完整的特征提取 + 匹配 + RANSAC 很浪费。
+ * 完整定位成功后记录若干内点（模板坐标 + 场景坐标）和当时的场景灰度图；
+ * 下一帧用金字塔 LK 光流把这些点跟到新图上（正反向一致性校验），再用跟踪结果重新拟合单应性。
+ * <p>
+ * 以下情况视为未命中，调用方需要重新做完整定位：
+ * - 没有跟踪状态，或场景尺寸变化
+ * - 可靠跟踪点不足 / RANSAC 内点率过低
+ * - 连续跟踪帧数超过上限（防止误差累积，定期重新锚定）
+ * <p>
+ * 跟踪键由调用方决定（通常为 模板 ID + 场景尺寸，多摄像头模式下模板本身就是按摄像头区分的）。
+ */
+public final class HomographyTracker {
+
+    // 每个状态保留的跟踪点数上限
+    private static final int MAX_TRACK_POINTS = 64;
+    // 可靠跟踪点数下限
+    private static final int MIN_TRACK_POINTS = 12;
+    // 至少保留的跟踪点比例
+    private static final double MIN_TRACKED_RATIO = 0.6;
+    // 正反向光流误差上限（像素，处理尺度）
+    private static final double MAX_FB_ERROR = 1.0;
+    // 重新拟合单应性的 RANSAC 阈值与最低内点率
+    private static final double RANSAC_THRESH = 3.0;
+    private static final double MIN_INLIER_RATIO = 0.8;
+    private static final Size LK_WINDOW = new Size(21, 21);
+    private static final int LK_MAX_LEVEL = 3;
+
+    private static volatile boolean enabled = false;
+    private static volatile int maxTrackedFrames = 50;
+
+    private static final Map<String, TrackState> states = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong verifyFailures = new AtomicLong();
+    private static final AtomicLong reanchors = new AtomicLong();
+
+    private HomographyTracker() {
+    }
+
+    /**
+     * @param enable     是否启用跟踪
+     * @param maxFrames  连续跟踪帧数上限，超过后强制完整定位
+     */
+    public static void configure(boolean enable, int maxFrames) {
+        enabled = enable;
+        maxTrackedFrames = Math.max(1, maxFrames);
+        if (!enable) {
+            reset();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 尝试用上一帧的结果跟踪当前帧
+     *
+     * @param key       跟踪键
+     * @param sceneGray 当前帧灰度图（处理尺度，调用方负责释放）
+     * @return 新的单应性矩阵（模板原图 → 处理尺度场景图，调用方负责释放）；未命中返回 null
+     */
+    public static Mat track(String key, Mat sceneGray) {
+        if (!enabled) {
+            return null;
+        }
+        TrackState state = states.get(key);
+        if (state == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        synchronized (state) {
+            if (state.released || state.width != sceneGray.cols() || state.height != sceneGray.rows()) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (state.trackedFrames >= maxTrackedFrames) {
+                reanchors.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+
+            Mat h = verify(state, sceneGray);
+            if (h == null) {
+                verifyFailures.incrementAndGet();
+                misses.incrementAndGet();
+                states.remove(key, state);
+                state.release();
+                return null;
+            }
+            hits.incrementAndGet();
+            return h;
+        }
+    }
+
+    /**
+     * 完整定位成功后记录跟踪状态
+     *
+     * @param key            跟踪键
+     * @param sceneGray      当前帧灰度图（处理尺度，会被复制）
+     * @param templatePoints RANSAC 内点的模板坐标
+     * @param scenePoints    对应的场景坐标（处理尺度）
+     */
+    public static void update(String key, Mat sceneGray, List<Point> templatePoints, List<Point> scenePoints) {
+        if (!enabled || templatePoints.size() < MIN_TRACK_POINTS) {
+            return;
+        }
+        // 均匀抽取，避免跟踪点集中在局部
+        int n = templatePoints.size();
+        int count = Math.min(MAX_TRACK_POINTS, n);
+        Point[] tpl = new Point[count];
+        Point[] scene = new Point[count];
+        for (int i = 0; i < count; i++) {
+            int idx = (int) ((long) i * n / count);
+            tpl[i] = templatePoints.get(idx);
+            scene[i] = scenePoints.get(idx);
+        }
+
+        TrackState state = new TrackState(sceneGray.clone(), tpl, scene);
+        TrackState previous = states.put(key, state);
+        if (previous != null) {
+            synchronized (previous) {
+                previous.release();
+            }
+        }
+    }
+
+    /**
+     * 清除某模板的所有跟踪状态（模板更新/删除时调用）
+     *
+     * @param keyPrefix 跟踪键前缀（模板 ID）
+     */
+    public static void invalidate(String keyPrefix) {
+        states.entrySet().removeIf(e -> {
+            if (!e.getKey().startsWith(keyPrefix + "@")) {
+                return false;
+            }
+            synchronized (e.getValue()) {
+                e.getValue().release();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * 清除全部跟踪状态
+     */
+    public static void reset() {
+        for (String key : new ArrayList<>(states.keySet())) {
+            TrackState state = states.remove(key);
+            if (state != null) {
+                synchronized (state) {
+                    state.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 跟踪统计（命中率等）
+     */
+    public static Map<String, Object> getStatistics() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("maxTrackedFrames", maxTrackedFrames);
+        result.put("hits", h);
+        result.put("misses", m);
+        result.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        result.put("verifyFailures", verifyFailures.get());
+        result.put("reanchors", reanchors.get());
+        result.put("activeTracks", states.size());
+        return result;
+    }
+
+    // =========================================================
+    // 内部实现
+    // =========================================================
+
+    /**
+     * 光流跟踪 + 重新拟合单应性，成功时推进状态
+     */
+    private static Mat verify(TrackState state, Mat sceneGray) {
+        MatOfPoint2f prevPts = new MatOfPoint2f(state.scenePoints);
+        MatOfPoint2f nextPts = new MatOfPoint2f();
+        MatOfPoint2f backPts = new MatOfPoint2f();
+        MatOfByte status = new MatOfByte();
+        MatOfByte backStatus = new MatOfByte();
+        MatOfFloat err = new MatOfFloat();
+        MatOfPoint2f tplMat = null;
+        MatOfPoint2f sceneMat = null;
+        Mat inlierMask = new Mat();
+        try {
+            TermCriteria criteria = new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, 30, 0.01);
+            Video.calcOpticalFlowPyrLK(state.prevGray, sceneGray, prevPts, nextPts, status, err,
+                    LK_WINDOW, LK_MAX_LEVEL, criteria);
+            Video.calcOpticalFlowPyrLK(sceneGray, state.prevGray, nextPts, backPts, backStatus, err,
+                    LK_WINDOW, LK_MAX_LEVEL, criteria);
+
+            Point[] prev = state.scenePoints;
+            Point[] next = nextPts.toArray();
+            Point[] back = backPts.toArray();
+            byte[] ok = status.toArray();
+            byte[] backOk = backStatus.toArray();
+
+            List<Point> keptTpl = new ArrayList<>();
+            List<Point> keptScene = new ArrayList<>();
+            for (int i = 0; i < prev.length; i++) {
+                if (ok[i] == 0 || backOk[i] == 0) continue;
+                double dx = back[i].x - prev[i].x;
+                double dy = back[i].y - prev[i].y;
+                if (dx * dx + dy * dy > MAX_FB_ERROR * MAX_FB_ERROR) continue;
+                keptTpl.add(state.templatePoints[i]);
+                keptScene.add(next[i]);
+            }
+            if (keptTpl.size() < MIN_TRACK_POINTS || keptTpl.size() < prev.length * MIN_TRACKED_RATIO) {
+                return null;
+            }
+
+            tplMat = new MatOfPoint2f();
+            tplMat.fromList(keptTpl);
+            sceneMat = new MatOfPoint2f();
+            sceneMat.fromList(keptScene);
+            Mat h = Calib3d.findHomography(tplMat, sceneMat, Calib3d.RANSAC, RANSAC_THRESH, inlierMask);
+            if (h.empty()) {
+                return null;
+            }
+            int inliers = Core.countNonZero(inlierMask);
+            if (inliers < MIN_TRACK_POINTS || inliers < keptTpl.size() * MIN_INLIER_RATIO) {
+                h.release();
+                return null;
+            }
+
+            // 推进状态：只保留内点，参考帧换成当前帧
+            byte[] mask = new byte[(int) inlierMask.total()];
+            inlierMask.get(0, 0, mask);
+            List<Point> nextTpl = new ArrayList<>(inliers);
+            List<Point> nextScene = new ArrayList<>(inliers);
+            for (int i = 0; i < mask.length; i++) {
+                if (mask[i] != 0) {
+                    nextTpl.add(keptTpl.get(i));
+                    nextScene.add(keptScene.get(i));
+                }
+            }
+            state.templatePoints = nextTpl.toArray(new Point[0]);
+            state.scenePoints = nextScene.toArray(new Point[0]);
+            sceneGray.copyTo(state.prevGray);
+            state.trackedFrames++;
+            return h;
+        } finally {
+            prevPts.release();
+            nextPts.release();
+            backPts.release();
+            status.release();
+            backStatus.release();
+            err.release();
+            inlierMask.release();
+            if (tplMat != null) tplMat.release();
+            if (sceneMat != null) sceneMat.release();
+        }
+    }
+
+    private static class TrackState {
+        final Mat prevGray;
+        final int width;
+        final int height;
+        Point[] templatePoints;
+        Point[] scenePoints;
+        int trackedFrames;
+        boolean released;
+
+        TrackState(Mat prevGray, Point[] templatePoints, Point[] scenePoints) {
+            this.prevGray = prevGray;
+            this.width = prevGray.cols();
+            this.height = prevGray.rows();
+            this.templatePoints = templatePoints;
+            this.scenePoints = scenePoints;
+        }
+
+        void release() {
+            released = true;
+            prevGray.release();
+        }
+    }
+}
@@ -2,9 +2,6 @@ package com.edge.vision.util;
 
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.*;
-import org.opencv.features2d.DescriptorMatcher;
-import org.opencv.features2d.Feature2D;
-import org.opencv.features2d.SIFT;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
@@ -17,6 +14,39 @@ import java.util.List;
  */
 public class IndustrialObjectDetector {
 
+    private static final float RATIO_THRESH = 0.7f;
+    private static final double RANSAC_THRESH = 5.0;
+
+    // --- 由粗到精定位参数 ---
+    // 粗定位层场景图长边（像素）；场景长边不超过其 1.5 倍时直接全图定位
+    private static final int COARSE_MAX_SIDE = 1024;
+    // 粗定位层模板短边下限，模板缩得太小特征不足时跳过粗定位
+    private static final int COARSE_MIN_TEMPLATE_SIDE = 48;
+    // 粗定位可信的最少内点数
+    private static final int MIN_COARSE_INLIERS = 10;
+    // 精定位 ROI 外扩比例与最小外扩像素
+    private static final double ROI_MARGIN_RATIO = 0.15;
+    private static final int ROI_MIN_MARGIN = 32;
+    // ROI 占全图比例超过该值时直接全图定位（裁剪已无收益）
+    private static final double MAX_ROI_AREA_RATIO = 0.8;
+
+    // 特征后端；ORB/AKAZE 内点数低于 minInliers 时回退 SIFT
+    private final FeatureBackend backend;
+    private final int minInliers;
+
+    public IndustrialObjectDetector() {
+        this(FeatureBackend.SIFT, 0);
+    }
+
+    /**
+     * @param backend    特征后端
+     * @param minInliers 快速后端（ORB/AKAZE）回退 SIFT 的内点数阈值
+     */
+    public IndustrialObjectDetector(FeatureBackend backend, int minInliers) {
+        this.backend = backend != null ? backend : FeatureBackend.SIFT;
+        this.minInliers = minInliers;
+    }
+
 
 //    static {
 //        try {
@@ -56,10 +86,6 @@ public class IndustrialObjectDetector {
         // 定义所有需要手动释放的 Mat 对象，防止内存泄漏
         Mat imgTemplateGray = null;
         Mat imgSceneGray = null;
-        Mat descriptorsTemplate = null;
-        Mat descriptorsScene = null;
-        MatOfKeyPoint keypointsTemplate = null;
-        MatOfKeyPoint keypointsScene = null;
         Mat hMatrix = null;
         try {
             // 1. 图片校验
@@ -73,73 +99,14 @@ public class IndustrialObjectDetector {
             Imgproc.cvtColor(templateImage, imgTemplateGray, Imgproc.COLOR_BGR2GRAY);
             Imgproc.cvtColor(sceneImage, imgSceneGray, Imgproc.COLOR_BGR2GRAY);
 
-            // 3. 初始化特征检测器
-            Feature2D detector = SIFT.create();
-
-            keypointsTemplate = new MatOfKeyPoint();
-            keypointsScene = new MatOfKeyPoint();
-            descriptorsTemplate = new Mat();
-            descriptorsScene = new Mat();
-
-            // 4. 检测特征点并计算描述子
-            detector.detectAndCompute(imgTemplateGray, new Mat(), keypointsTemplate, descriptorsTemplate);
-            detector.detectAndCompute(imgSceneGray, new Mat(), keypointsScene, descriptorsScene);
-
-            if (descriptorsTemplate.empty() || descriptorsScene.empty()) {
-                return new DetectionResult(false, "无法提取特征点，图片可能过于模糊或无纹理");
-            }
-
-            // 5. 特征匹配
-            DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.FLANNBASED);
-            List<MatOfDMatch> knnMatches = new ArrayList<>();
-
-            if (descriptorsTemplate.type() != CvType.CV_32F) {
-                descriptorsTemplate.convertTo(descriptorsTemplate, CvType.CV_32F);
-            }
-            if (descriptorsScene.type() != CvType.CV_32F) {
-                descriptorsScene.convertTo(descriptorsScene, CvType.CV_32F);
-            }
-
-            matcher.knnMatch(descriptorsTemplate, descriptorsScene, knnMatches, 2);
-
-            // 6. Lowe's Ratio Test
-            float ratioThresh = 0.7f;
-            List<DMatch> listOfGoodMatches = new ArrayList<>();
-            for (MatOfDMatch match : knnMatches) {
-                DMatch[] dmatches = match.toArray();
-                if (dmatches.length >= 2 && dmatches[0].distance < ratioThresh * dmatches[1].distance) {
-                    listOfGoodMatches.add(dmatches[0]);
-                }
-            }
-
-            // 7. 校验匹配数量
-            if (listOfGoodMatches.size() < 4) {
-                return new DetectionResult(false, "匹配点不足 (" + listOfGoodMatches.size() + "<4)，无法定位工件");
-            }
-
-            // 8. 计算单应性矩阵
-            List<Point> objPoints = new ArrayList<>();
-            List<Point> scenePoints = new ArrayList<>();
-            List<KeyPoint> listOfKeypointsTemplate = keypointsTemplate.toList();
-            List<KeyPoint> listOfKeypointsScene = keypointsScene.toList();
-
-            for (DMatch goodMatch : listOfGoodMatches) {
-                objPoints.add(listOfKeypointsTemplate.get(goodMatch.queryIdx).pt);
-                scenePoints.add(listOfKeypointsScene.get(goodMatch.trainIdx).pt);
-            }
-
-            MatOfPoint2f objMat = new MatOfPoint2f();
-            objMat.fromList(objPoints);
-            MatOfPoint2f sceneMat = new MatOfPoint2f();
-            sceneMat.fromList(scenePoints);
-
-            hMatrix = Calib3d.findHomography(objMat, sceneMat, Calib3d.RANSAC, 5.0);
-
-            if (hMatrix.empty()) {
-                return new DetectionResult(false, "无法计算空间变换矩阵");
+            // 3. 特征匹配 + 单应性估计（快速后端内点不足时回退 SIFT）
+            Localization loc = localize(imgTemplateGray, imgSceneGray);
+            hMatrix = loc.homography;
+            if (loc.error != null) {
+                return new DetectionResult(false, loc.error);
             }
 
-            // 9. 坐标映射
+            // 4. 坐标映射
             Mat objCorners = new Mat(4, 1, CvType.CV_32FC2);
             Mat sceneCorners = new Mat(4, 1, CvType.CV_32FC2);
 
@@ -150,20 +117,19 @@ public class IndustrialObjectDetector {
 
             Core.perspectiveTransform(objCorners, sceneCorners, hMatrix);
 
-            // 10. 绘图
+            // 5. 角点结果
             Point[] corners = new Point[4];
             for (int i = 0; i < 4; i++) {
                 corners[i] = new Point(sceneCorners.get(i, 0));
             }
             DetectionResult result = new DetectionResult(true, "检测成功");
-            result.matchedCount = listOfGoodMatches.size();
+            result.matchedCount = loc.matched;
             result.corners = corners;
-            result.resultImage = sceneImage;
+            // 不绘制结果图：sceneImage 归调用方所有，不能作为 resultImage 交给调用方释放
+            result.resultImage = null;
 
             objCorners.release();
             sceneCorners.release();
-            objMat.release();
-            sceneMat.release();
 
             return result;
 
@@ -173,10 +139,6 @@ public class IndustrialObjectDetector {
         } finally {
             safeRelease(imgTemplateGray);
             safeRelease(imgSceneGray);
-            safeRelease(descriptorsTemplate);
-            safeRelease(descriptorsScene);
-            safeRelease(keypointsTemplate);
-            safeRelease(keypointsScene);
             safeRelease(hMatrix);
         }
     }
@@ -195,10 +157,6 @@ public class IndustrialObjectDetector {
         Mat imgScene = null;
         Mat imgTemplateGray = null;
         Mat imgSceneGray = null;
-        Mat descriptorsTemplate = null;
-        Mat descriptorsScene = null;
-        MatOfKeyPoint keypointsTemplate = null;
-        MatOfKeyPoint keypointsScene = null;
         Mat hMatrix = null;
         Mat resultImg = null;
 
@@ -208,87 +166,24 @@ public class IndustrialObjectDetector {
             imgTemplate = Imgcodecs.imread(templatePath); 
             imgScene = Imgcodecs.imread(scenePath);
             
-            // 读取灰度图用于特征提取 (速度更快，精度通常足够)
-            imgTemplateGray = Imgcodecs.imread(templatePath, Imgcodecs.IMREAD_GRAYSCALE);
-            imgSceneGray = Imgcodecs.imread(scenePath, Imgcodecs.IMREAD_GRAYSCALE);
-
             if (imgTemplate.empty() || imgScene.empty()) {
                 return new DetectionResult(false, "图片文件读取失败或路径不存在");
             }
 
-            // 2. 初始化特征检测器 (SIFT 通常比 ORB 更稳健，适合工业工件)
-            // 注意：如果你的 OpenCV 版本低于 4.4 且未编译 Contrib，SIFT 可能不可用，请改用 ORB.create()
-            Feature2D detector = SIFT.create(); 
-
-            keypointsTemplate = new MatOfKeyPoint();
-            keypointsScene = new MatOfKeyPoint();
-            descriptorsTemplate = new Mat();
-            descriptorsScene = new Mat();
-
-            // 3. 检测特征点并计算描述子
-            detector.detectAndCompute(imgTemplateGray, new Mat(), keypointsTemplate, descriptorsTemplate);
-            detector.detectAndCompute(imgSceneGray, new Mat(), keypointsScene, descriptorsScene);
-
-            if (descriptorsTemplate.empty() || descriptorsScene.empty()) {
-                return new DetectionResult(false, "无法提取特征点，图片可能过于模糊或无纹理");
-            }
-
-            // 4. 特征匹配 (使用 FLANN 匹配器，速度快于暴力匹配)
-            // SIFT/SURF 描述子是浮点型，建议用 FLANN；如果是 ORB (二进制)，建议用 BRUTEFORCE_HAMMING
-            DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.FLANNBASED);
-            List<MatOfDMatch> knnMatches = new ArrayList<>();
-            
-            // 必须检查描述子类型，防止类型不匹配导致的崩溃
-            if (descriptorsTemplate.type() != CvType.CV_32F) {
-                descriptorsTemplate.convertTo(descriptorsTemplate, CvType.CV_32F);
-            }
-            if (descriptorsScene.type() != CvType.CV_32F) {
-                descriptorsScene.convertTo(descriptorsScene, CvType.CV_32F);
-            }
-
-            matcher.knnMatch(descriptorsTemplate, descriptorsScene, knnMatches, 2);
-
-            // 5. Lowe's Ratio Test (筛选高质量匹配)
-            // 阈值 0.7 是经验值，越小越严格
-            float ratioThresh = 0.7f;
-            List<DMatch> listOfGoodMatches = new ArrayList<>();
-            for (MatOfDMatch match : knnMatches) {
-                DMatch[] dmatches = match.toArray();
-                if (dmatches.length >= 2 && dmatches[0].distance < ratioThresh * dmatches[1].distance) {
-                    listOfGoodMatches.add(dmatches[0]);
-                }
-            }
-
-            // 6. 校验匹配数量
-            // 至少需要 4 个点才能计算透视变换 (Homography)
-            if (listOfGoodMatches.size() < 4) {
-                return new DetectionResult(false, "匹配点不足 (" + listOfGoodMatches.size() + "<4)，无法定位工件");
-            }
-
-            // 7. 计算单应性矩阵 (Homography)
-            List<Point> objPoints = new ArrayList<>();
-            List<Point> scenePoints = new ArrayList<>();
-            List<KeyPoint> listOfKeypointsTemplate = keypointsTemplate.toList();
-            List<KeyPoint> listOfKeypointsScene = keypointsScene.toList();
-
-            for (DMatch goodMatch : listOfGoodMatches) {
-                objPoints.add(listOfKeypointsTemplate.get(goodMatch.queryIdx).pt);
-                scenePoints.add(listOfKeypointsScene.get(goodMatch.trainIdx).pt);
-            }
-
-            MatOfPoint2f objMat = new MatOfPoint2f();
-            objMat.fromList(objPoints);
-            MatOfPoint2f sceneMat = new MatOfPoint2f();
-            sceneMat.fromList(scenePoints);
-
-            // 使用 RANSAC 剔除误匹配点，阈值 5.0
-            hMatrix = Calib3d.findHomography(objMat, sceneMat, Calib3d.RANSAC, 5.0);
-
-            if (hMatrix.empty()) {
-                return new DetectionResult(false, "无法计算空间变换矩阵");
+            // 灰度图用于特征提取 (速度更快，精度通常足够)；由已解码的彩色图转换，避免再解码一次大图
+            imgTemplateGray = new Mat();
+            imgSceneGray = new Mat();
+            Imgproc.cvtColor(imgTemplate, imgTemplateGray, Imgproc.COLOR_BGR2GRAY);
+            Imgproc.cvtColor(imgScene, imgSceneGray, Imgproc.COLOR_BGR2GRAY);
+
+            // 2. 特征匹配 + 单应性估计（快速后端内点不足时回退 SIFT）
+            Localization loc = localize(imgTemplateGray, imgSceneGray);
+            hMatrix = loc.homography;
+            if (loc.error != null) {
+                return new DetectionResult(false, loc.error);
             }
 
-            // 8. 坐标映射 (获取工件在场景图中的四个角)
+            // 3. 坐标映射 (获取工件在场景图中的四个角)
             Mat objCorners = new Mat(4, 1, CvType.CV_32FC2);
             Mat sceneCorners = new Mat(4, 1, CvType.CV_32FC2);
 
@@ -299,7 +194,7 @@ public class IndustrialObjectDetector {
 
             Core.perspectiveTransform(objCorners, sceneCorners, hMatrix);
 
-            // 9. 绘图 (在原图上画出多边形)
+            // 4. 绘图 (在原图上画出多边形)
             resultImg = imgScene.clone();
             Point[] corners = new Point[4];
             for(int i=0; i<4; i++) {
@@ -319,15 +214,13 @@ public class IndustrialObjectDetector {
 
             // 构造成功结果
             DetectionResult result = new DetectionResult(true, "检测成功");
-            result.matchedCount = listOfGoodMatches.size();
+            result.matchedCount = loc.matched;
             result.corners = corners;
             result.resultImage = resultImg; // 注意：调用者需要负责释放这个 Mat
 
             // 释放中间过程的 Mat (resultImg 交给外部释放，这里不释放)
             objCorners.release();
             sceneCorners.release();
-            objMat.release();
-            sceneMat.release();
 
             return result;
 
@@ -335,20 +228,180 @@ public class IndustrialObjectDetector {
             e.printStackTrace();
             return new DetectionResult(false, "发生异常: " + e.getMessage());
         } finally {
-            // 10. 统一资源释放 (非常重要！防止内存泄漏)
+            // 5. 统一资源释放 (非常重要！防止内存泄漏)
             safeRelease(imgTemplate);
             safeRelease(imgScene);
             safeRelease(imgTemplateGray);
             safeRelease(imgSceneGray);
-            safeRelease(descriptorsTemplate);
-            safeRelease(descriptorsScene);
-            safeRelease(keypointsTemplate);
-            safeRelease(keypointsScene);
             safeRelease(hMatrix);
             // 注意：resultImg 没有在这里释放，因为它被返回出去了
         }
     }
 
+    /**
+     * 单应性估计结果
+     */
+    private static class Localization {
+        Mat homography;      // 模板 → 场景（失败时为 null）
+        int matched;         // ratio test 后的匹配数
+        int inliers;         // RANSAC 内点数
+        String error;        // 失败原因
+    }
+
+    /**
+     * 由粗到精定位
+     * <p>
+     * 1. 场景图和模板同比例缩小到长边约 {@link #COARSE_MAX_SIDE}，在粗层上估计单应性
+     * 2. 把模板四角投影回原图，外扩一定边距得到 ROI
+     * 3. 只在 ROI 内用原分辨率精定位，再平移回整图坐标
+     * <p>
+     * 返回的单应性与整图定位含义相同（模板原图 → 场景原图）。
+     * 场景图不大、模板缩小后过小、粗定位不可信或精定位失败时，退回整图定位。
+     */
+    private Localization localize(Mat templateGray, Mat sceneGray) {
+        int maxSide = Math.max(sceneGray.cols(), sceneGray.rows());
+        double scale = (double) COARSE_MAX_SIDE / maxSide;
+        if (maxSide <= COARSE_MAX_SIDE * 1.5
+                || Math.min(templateGray.cols(), templateGray.rows()) * scale < COARSE_MIN_TEMPLATE_SIDE) {
+            return localizeWithFallback(templateGray, sceneGray);
+        }
+
+        Rect roi = predictRoi(templateGray, sceneGray, scale);
+        if (roi == null) {
+            return localizeWithFallback(templateGray, sceneGray);
+        }
+
+        Mat sceneRoi = sceneGray.submat(roi);
+        Localization fine;
+        try {
+            fine = localizeWithFallback(templateGray, sceneRoi);
+        } finally {
+            sceneRoi.release();
+        }
+        if (fine.homography == null || fine.inliers < MIN_COARSE_INLIERS) {
+            safeRelease(fine.homography);
+            return localizeWithFallback(templateGray, sceneGray);
+        }
+
+        // ROI 坐标 → 整图坐标：H = T(roi.x, roi.y) · H_roi
+        double[] h = new double[9];
+        fine.homography.get(0, 0, h);
+        for (int c = 0; c < 3; c++) {
+            h[c] += roi.x * h[6 + c];
+            h[3 + c] += roi.y * h[6 + c];
+        }
+        fine.homography.put(0, 0, h);
+        return fine;
+    }
+
+    /**
+     * 在缩小的场景图上粗定位，返回精定位 ROI（原图坐标）
+     *
+     * @return ROI；粗定位失败或 ROI 接近整图时返回 null
+     */
+    private Rect predictRoi(Mat templateGray, Mat sceneGray, double scale) {
+        Mat tplSmall = new Mat();
+        Mat sceneSmall = new Mat();
+        Localization coarse = null;
+        MatOfPoint2f tplCorners = null;
+        MatOfPoint2f sceneCorners = null;
+        try {
+            Imgproc.resize(templateGray, tplSmall, new Size(), scale, scale, Imgproc.INTER_AREA);
+            Imgproc.resize(sceneGray, sceneSmall, new Size(), scale, scale, Imgproc.INTER_AREA);
+
+            coarse = localizeWithFallback(tplSmall, sceneSmall);
+            if (coarse.homography == null || coarse.inliers < MIN_COARSE_INLIERS) {
+                return null;
+            }
+
+            tplCorners = new MatOfPoint2f(
+                    new Point(0, 0), new Point(tplSmall.cols(), 0),
+                    new Point(tplSmall.cols(), tplSmall.rows()), new Point(0, tplSmall.rows()));
+            sceneCorners = new MatOfPoint2f();
+            Core.perspectiveTransform(tplCorners, sceneCorners, coarse.homography);
+
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (Point p : sceneCorners.toArray()) {
+                minX = Math.min(minX, p.x / scale);
+                minY = Math.min(minY, p.y / scale);
+                maxX = Math.max(maxX, p.x / scale);
+                maxY = Math.max(maxY, p.y / scale);
+            }
+            double marginX = Math.max(ROI_MIN_MARGIN, (maxX - minX) * ROI_MARGIN_RATIO);
+            double marginY = Math.max(ROI_MIN_MARGIN, (maxY - minY) * ROI_MARGIN_RATIO);
+            int x0 = (int) Math.max(0, Math.floor(minX - marginX));
+            int y0 = (int) Math.max(0, Math.floor(minY - marginY));
+            int x1 = (int) Math.min(sceneGray.cols(), Math.ceil(maxX + marginX));
+            int y1 = (int) Math.min(sceneGray.rows(), Math.ceil(maxY + marginY));
+            if (x1 - x0 < templateGray.cols() / 4 || y1 - y0 < templateGray.rows() / 4) {
+                // 投影退化
+                return null;
+            }
+            if ((double) (x1 - x0) * (y1 - y0) > MAX_ROI_AREA_RATIO * sceneGray.cols() * sceneGray.rows()) {
+                return null;
+            }
+            return new Rect(x0, y0, x1 - x0, y1 - y0);
+        } finally {
+            tplSmall.release();
+            sceneSmall.release();
+            if (coarse != null) safeRelease(coarse.homography);
+            if (tplCorners != null) tplCorners.release();
+            if (sceneCorners != null) sceneCorners.release();
+        }
+    }
+
+    /**
+     * 特征匹配 + 单应性估计，快速后端内点不足时回退 SIFT
+     */
+    private Localization localizeWithFallback(Mat templateGray, Mat sceneGray) {
+        Localization loc = localize(backend, templateGray, sceneGray);
+        if (backend != FeatureBackend.SIFT && loc.inliers < minInliers) {
+            safeRelease(loc.homography);
+            loc = localize(FeatureBackend.SIFT, templateGray, sceneGray);
+        }
+        return loc;
+    }
+
+    private Localization localize(FeatureBackend featureBackend, Mat templateGray, Mat sceneGray) {
+        Localization loc = new Localization();
+
+        // 检测特征点、计算描述子并做 Lowe's Ratio Test (阈值 0.7 是经验值，越小越严格)
+        FeatureBackend.Correspondences matches = featureBackend.match(templateGray, sceneGray, RATIO_THRESH);
+        if (matches.getQueryFeatures() == 0 || matches.getTrainFeatures() == 0) {
+            loc.error = "无法提取特征点，图片可能过于模糊或无纹理";
+            return loc;
+        }
+
+        // 至少需要 4 个点才能计算透视变换 (Homography)
+        loc.matched = matches.size();
+        if (matches.size() < 4) {
+            loc.error = "匹配点不足 (" + matches.size() + "<4)，无法定位工件";
+            return loc;
+        }
+
+        MatOfPoint2f objMat = new MatOfPoint2f();
+        objMat.fromList(matches.getQueryPoints());
+        MatOfPoint2f sceneMat = new MatOfPoint2f();
+        sceneMat.fromList(matches.getTrainPoints());
+        Mat inlierMask = new Mat();
+        try {
+            // 使用 RANSAC 剔除误匹配点
+            Mat h = Calib3d.findHomography(objMat, sceneMat, Calib3d.RANSAC, RANSAC_THRESH, inlierMask);
+            if (h.empty()) {
+                loc.error = "无法计算空间变换矩阵";
+                return loc;
+            }
+            loc.homography = h;
+            loc.inliers = Core.countNonZero(inlierMask);
+            return loc;
+        } finally {
+            objMat.release();
+            sceneMat.release();
+            inlierMask.release();
+        }
+    }
+
     /**
      * 安全释放 Mat 资源的辅助方法
      */
@@ -0,0 +1,258 @@
+package com.edge.vision.util;
+
+import org.opencv.core.Mat;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mat 原生内存追踪器
+ * <p>
+ * OpenCV 的 Mat 像素数据分配在堆外，JVM 堆监控看不到，忘记 release() 时只能等 GC 触发 finalize 回收，
+ * 边缘设备上很容易因原生内存持续增长而被 OOM Killer 杀掉。
+ * <p>
+ * 使用方式：
+ * - 分配处：{@code Mat m = MatTracker.track(frame.clone(), "CameraService.readCamera")}
+ * - 释放处：{@code MatTracker.release(m)}（直接调用 m.release() 也可以，扫描时会识别为已释放）
+ * <p>
+ * 未启用时 track() 直接返回原对象，无额外开销。
+ * 追踪只持有 Mat 的弱引用，不会改变 Mat 的生命周期。
+ */
+public final class MatTracker {
+
+    private static volatile boolean enabled = false;
+    private static volatile boolean captureStack = false;
+
+    // Key: Mat.nativeObj（Mat 存活期间唯一）
+    private static final Map<Long, Allocation> liveAllocations = new ConcurrentHashMap<>();
+    // Key: 分配位置
+    private static final Map<String, SiteStats> siteStats = new ConcurrentHashMap<>();
+
+    private MatTracker() {
+    }
+
+    /**
+     * 启用/关闭追踪
+     *
+     * @param enable       是否启用
+     * @param captureStacks 是否记录分配调用栈（开销较大，仅排查泄漏时开启）
+     */
+    public static void configure(boolean enable, boolean captureStacks) {
+        enabled = enable;
+        captureStack = captureStacks;
+        if (!enable) {
+            liveAllocations.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 登记一个新分配的 Mat
+     *
+     * @param mat  新分配的 Mat
+     * @param site 分配位置，建议使用 "类名.方法名" 格式
+     * @return 原 Mat（便于链式写法）
+     */
+    public static <T extends Mat> T track(T mat, String site) {
+        if (!enabled || mat == null) {
+            return mat;
+        }
+        SiteStats stats = siteStats.computeIfAbsent(site, SiteStats::new);
+        Allocation previous = liveAllocations.put(mat.nativeObj,
+                new Allocation(mat, site, captureStack ? new Throwable("Mat allocated at " + site) : null));
+        if (previous == null) {
+            stats.allocated.incrementAndGet();
+        } else if (previous.stats() != stats) {
+            // 同一 Mat 被重复登记到不同位置，以最后一次为准
+            previous.stats().released.incrementAndGet();
+            stats.allocated.incrementAndGet();
+        }
+        return mat;
+    }
+
+    /**
+     * 创建并登记一个空 Mat
+     */
+    public static Mat newMat(String site) {
+        return track(new Mat(), site);
+    }
+
+    /**
+     * 释放 Mat 并取消登记（null 安全）
+     */
+    public static void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (enabled) {
+            Allocation allocation = liveAllocations.remove(mat.nativeObj);
+            if (allocation != null) {
+                allocation.stats().released.incrementAndGet();
+            }
+        }
+        mat.release();
+    }
+
+    /**
+     * 批量释放（null 安全）
+     */
+    public static void release(Collection<? extends Mat> mats) {
+        if (mats == null) {
+            return;
+        }
+        for (Mat mat : mats) {
+            release(mat);
+        }
+    }
+
+    /**
+     * 扫描存活的 Mat，刷新各分配位置的字节数统计，并返回存活超过阈值的疑似泄漏
+     * <p>
+     * - 已被 GC 回收但从未 release 的 Mat 记为 gcReclaimed（说明依赖 finalize 回收，同样需要修复）
+     * - 曾有数据、现在为空（被直接 release）的 Mat 立即视为正常释放，不再计入存活
+     * - 登记后一直为空的 Mat（newMat 占位、尚未写入）不计入字节数，超过阈值仍为空时视为已释放
+     *
+     * @param leakThresholdMs 存活时间阈值（毫秒）
+     * @return 疑似泄漏列表，按存活时间从长到短排序
+     */
+    public static List<LeakReport> scan(long leakThresholdMs) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+
+        long now = System.currentTimeMillis();
+        Map<SiteStats, Long> bytesBySite = new HashMap<>();
+        List<LeakReport> leaks = new ArrayList<>();
+
+        Iterator<Map.Entry<Long, Allocation>> it = liveAllocations.entrySet().iterator();
+        while (it.hasNext()) {
+            Allocation allocation = it.next().getValue();
+            Mat mat = allocation.ref.get();
+            if (mat == null) {
+                it.remove();
+                allocation.stats().gcReclaimed.incrementAndGet();
+                continue;
+            }
+            long ageMs = now - allocation.createdAt;
+            if (mat.nativeObj == 0 || mat.empty()) {
+                if (allocation.filled || ageMs >= leakThresholdMs) {
+                    it.remove();
+                    allocation.stats().released.incrementAndGet();
+                }
+                continue;
+            }
+            allocation.filled = true;
+            long bytes = mat.total() * mat.elemSize();
+            bytesBySite.merge(allocation.stats(), bytes, Long::sum);
+            if (ageMs >= leakThresholdMs) {
+                leaks.add(new LeakReport(allocation.site, ageMs, bytes, allocation.stack));
+            }
+        }
+
+        for (SiteStats stats : siteStats.values()) {
+            stats.liveBytes = bytesBySite.getOrDefault(stats, 0L);
+        }
+
+        leaks.sort(Comparator.comparingLong(LeakReport::getAgeMs).reversed());
+        return leaks;
+    }
+
+    /**
+     * 各分配位置的统计快照
+     */
+    public static Collection<SiteStats> getSiteStats() {
+        return Collections.unmodifiableCollection(siteStats.values());
+    }
+
+    /**
+     * 当前存活 Mat 数量
+     */
+    public static long getLiveCount() {
+        return liveAllocations.size();
+    }
+
+    /**
+     * 最近一次扫描得到的存活字节数
+     */
+    public static long getLiveBytes() {
+        long total = 0;
+        for (SiteStats stats : siteStats.values()) {
+            total += stats.liveBytes;
+        }
+        return total;
+    }
+
+    // =========================================================
+    // 数据结构
+    // =========================================================
+
+    private static class Allocation {
+        final WeakReference<Mat> ref;
+        final String site;
+        final long createdAt;
+        final Throwable stack;
+        // 登记时或某次扫描时有数据（之后变空说明已被直接 release）
+        volatile boolean filled;
+
+        Allocation(Mat mat, String site, Throwable stack) {
+            this.ref = new WeakReference<>(mat);
+            this.site = site;
+            this.createdAt = System.currentTimeMillis();
+            this.stack = stack;
+            this.filled = !mat.empty();
+        }
+
+        SiteStats stats() {
+            return siteStats.get(site);
+        }
+    }
+
+    /**
+     * 单个分配位置的计数
+     */
+    public static class SiteStats {
+        private final String site;
+        private final AtomicLong allocated = new AtomicLong();
+        private final AtomicLong released = new AtomicLong();
+        private final AtomicLong gcReclaimed = new AtomicLong();
+        private volatile long liveBytes;
+
+        SiteStats(String site) {
+            this.site = site;
+        }
+
+        public String getSite() { return site; }
+        public long getAllocated() { return allocated.get(); }
+        public long getReleased() { return released.get(); }
+        public long getGcReclaimed() { return gcReclaimed.get(); }
+        public long getLive() { return allocated.get() - released.get() - gcReclaimed.get(); }
+        public long getLiveBytes() { return liveBytes; }
+    }
+
+    /**
+     * 疑似泄漏记录
+     */
+    public static class LeakReport {
+        private final String site;
+        private final long ageMs;
+        private final long bytes;
+        private final Throwable stack;
+
+        public LeakReport(String site, long ageMs, long bytes, Throwable stack) {
+            this.site = site;
+            this.ageMs = ageMs;
+            this.bytes = bytes;
+            this.stack = stack;
+        }
+
+        public String getSite() { return site; }
+        public long getAgeMs() { return ageMs; }
+        public long getBytes() { return bytes; }
+        public Throwable getStack() { return stack; }
+    }
+}
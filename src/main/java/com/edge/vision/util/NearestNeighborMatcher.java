@@ -0,0 +1,240 @@
+package com.edge.vision.util;
+
+import com.edge.vision.core.template.model.DetectedObject;
+import com.edge.vision.core.topology.AssignmentSolver;
+
+import java.util.*;
+
+/**
+ * 模板点与检测点的最近邻匹配
+ * <p>
+ * 检测点按类别分桶，每个桶再按边长为匹配距离阈值的均匀网格索引。
+ * 距离小于阈值的候选点一定落在模板点所在格子及其周围 8 个格子内，
+ * 因此每个模板点只需检查附近少量候选，整体接近 O(T + D)。
+ * <p>
+ * 两种分配方式：
+ * - 贪心（默认）：按模板顺序，每个模板点取距离最近的未占用同类检测点，与原双重循环结果完全一致
+ * - 最优：按"同类且距离小于阈值"连边，对每个连通分量先求匹配数最多、再求距离之和最小的一一分配，
+ *   避免先处理的模板点抢走后面模板点唯一可用的检测点
+ */
+public final class NearestNeighborMatcher {
+
+    private NearestNeighborMatcher() {
+    }
+
+    /**
+     * 匹配模板点与检测点
+     *
+     * @param templateObjs 模板点
+     * @param detections   检测点
+     * @param maxDistance  匹配距离阈值（严格小于）
+     * @param optimal      是否在连通分量内求最优分配
+     * @return result[i] 为模板点 i 匹配到的检测点下标，未匹配为 -1
+     */
+    public static int[] match(List<DetectedObject> templateObjs, List<DetectedObject> detections,
+                              double maxDistance, boolean optimal) {
+        int[] assignment = new int[templateObjs.size()];
+        Arrays.fill(assignment, -1);
+        if (templateObjs.isEmpty() || detections.isEmpty()) {
+            return assignment;
+        }
+
+        Map<String, Map<Long, List<Integer>>> index = buildIndex(detections, maxDistance);
+        if (optimal) {
+            matchOptimal(templateObjs, detections, index, maxDistance, assignment);
+        } else {
+            matchGreedy(templateObjs, detections, index, maxDistance, assignment);
+        }
+        return assignment;
+    }
+
+    // =========================================================
+    // 贪心匹配
+    // =========================================================
+
+    private static void matchGreedy(List<DetectedObject> templateObjs, List<DetectedObject> detections,
+                                    Map<String, Map<Long, List<Integer>>> index, double maxDistance,
+                                    int[] assignment) {
+        boolean[] used = new boolean[detections.size()];
+        for (int t = 0; t < templateObjs.size(); t++) {
+            DetectedObject tObj = templateObjs.get(t);
+            Map<Long, List<Integer>> grid = index.get(classKey(tObj));
+            if (grid == null) continue;
+
+            double px = tObj.getCenter().x;
+            double py = tObj.getCenter().y;
+            long cx = cell(px, maxDistance);
+            long cy = cell(py, maxDistance);
+
+            int best = -1;
+            double bestDist = Double.MAX_VALUE;
+            for (long gx = cx - 1; gx <= cx + 1; gx++) {
+                for (long gy = cy - 1; gy <= cy + 1; gy++) {
+                    List<Integer> bucket = grid.get(cellKey(gx, gy));
+                    if (bucket == null) continue;
+                    for (int d : bucket) {
+                        if (used[d]) continue;
+                        double dist = distance(px, py, detections.get(d));
+                        // 距离相同时取下标小的，与逐个扫描的结果保持一致
+                        if (dist < maxDistance && (dist < bestDist || (dist == bestDist && d < best))) {
+                            bestDist = dist;
+                            best = d;
+                        }
+                    }
+                }
+            }
+            if (best >= 0) {
+                used[best] = true;
+                assignment[t] = best;
+            }
+        }
+    }
+
+    // =========================================================
+    // 连通分量内最优分配
+    // =========================================================
+
+    private static void matchOptimal(List<DetectedObject> templateObjs, List<DetectedObject> detections,
+                                     Map<String, Map<Long, List<Integer>>> index, double maxDistance,
+                                     int[] assignment) {
+        int tCount = templateObjs.size();
+        // 并查集：0..T-1 为模板点，T..T+D-1 为检测点
+        int[] parent = new int[tCount + detections.size()];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+
+        // 候选边
+        List<int[]> edges = new ArrayList<>();
+        List<Double> edgeDist = new ArrayList<>();
+        for (int t = 0; t < tCount; t++) {
+            DetectedObject tObj = templateObjs.get(t);
+            Map<Long, List<Integer>> grid = index.get(classKey(tObj));
+            if (grid == null) continue;
+
+            double px = tObj.getCenter().x;
+            double py = tObj.getCenter().y;
+            long cx = cell(px, maxDistance);
+            long cy = cell(py, maxDistance);
+            for (long gx = cx - 1; gx <= cx + 1; gx++) {
+                for (long gy = cy - 1; gy <= cy + 1; gy++) {
+                    List<Integer> bucket = grid.get(cellKey(gx, gy));
+                    if (bucket == null) continue;
+                    for (int d : bucket) {
+                        double dist = distance(px, py, detections.get(d));
+                        if (dist < maxDistance) {
+                            edges.add(new int[]{t, d});
+                            edgeDist.add(dist);
+                            union(parent, t, tCount + d);
+                        }
+                    }
+                }
+            }
+        }
+
+        // 按连通分量分组
+        Map<Integer, List<Integer>> componentEdges = new LinkedHashMap<>();
+        for (int e = 0; e < edges.size(); e++) {
+            int root = find(parent, edges.get(e)[0]);
+            componentEdges.computeIfAbsent(root, k -> new ArrayList<>()).add(e);
+        }
+
+        for (List<Integer> compEdges : componentEdges.values()) {
+            if (compEdges.size() == 1) {
+                int[] edge = edges.get(compEdges.get(0));
+                assignment[edge[0]] = edge[1];
+                continue;
+            }
+
+            // 分量内局部编号
+            Map<Integer, Integer> rowOf = new LinkedHashMap<>();
+            Map<Integer, Integer> colOf = new LinkedHashMap<>();
+            for (int e : compEdges) {
+                int[] edge = edges.get(e);
+                rowOf.putIfAbsent(edge[0], rowOf.size());
+                colOf.putIfAbsent(edge[1], colOf.size());
+            }
+
+            // 代价：候选边为距离，非候选为 noMatch（大于分量内任意一组匹配的距离之和），
+            // 因此先保证匹配数最多，再使匹配距离之和最小
+            int rows = rowOf.size();
+            int colCount = colOf.size();
+            double noMatch = maxDistance * (rows + colCount + 1);
+            double[] cost = new double[rows * colCount];
+            Arrays.fill(cost, noMatch);
+            for (int e : compEdges) {
+                int[] edge = edges.get(e);
+                cost[rowOf.get(edge[0]) * colCount + colOf.get(edge[1])] = edgeDist.get(e);
+            }
+            int[] local = AssignmentSolver.solve(cost, rows, colCount);
+
+            int[] cols = new int[colCount];
+            for (Map.Entry<Integer, Integer> entry : colOf.entrySet()) {
+                cols[entry.getValue()] = entry.getKey();
+            }
+            for (Map.Entry<Integer, Integer> entry : rowOf.entrySet()) {
+                int c = local[entry.getValue()];
+                // 非候选边视为未匹配
+                if (c >= 0 && cost[entry.getValue() * colCount + c] < noMatch) {
+                    assignment[entry.getKey()] = cols[c];
+                }
+            }
+        }
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra != rb) parent[rb] = ra;
+    }
+
+    // =========================================================
+    // 索引
+    // =========================================================
+
+    /**
+     * 类别 → 网格格子 → 检测点下标（格子内按下标升序）
+     */
+    private static Map<String, Map<Long, List<Integer>>> buildIndex(List<DetectedObject> detections,
+                                                                   double cellSize) {
+        Map<String, Map<Long, List<Integer>>> index = new HashMap<>();
+        for (int i = 0; i < detections.size(); i++) {
+            DetectedObject d = detections.get(i);
+            String key = classKey(d);
+            if (key == null || d.getCenter() == null) continue;
+            long k = cellKey(cell(d.getCenter().x, cellSize), cell(d.getCenter().y, cellSize));
+            index.computeIfAbsent(key, c -> new HashMap<>())
+                    .computeIfAbsent(k, c -> new ArrayList<>())
+                    .add(i);
+        }
+        return index;
+    }
+
+    /**
+     * 类别键（与原实现一致按类名忽略大小写比较）
+     */
+    private static String classKey(DetectedObject obj) {
+        return obj.getClassName() == null || obj.getCenter() == null
+                ? null : obj.getClassName().toLowerCase(Locale.ROOT);
+    }
+
+    private static long cell(double v, double cellSize) {
+        return (long) Math.floor(v / cellSize);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xffffffffL);
+    }
+
+    private static double distance(double px, double py, DetectedObject d) {
+        double dx = px - d.getCenter().x;
+        double dy = py - d.getCenter().y;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
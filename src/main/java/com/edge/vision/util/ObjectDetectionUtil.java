@@ -4,6 +4,7 @@ import org.opencv.core.*;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
@@ -19,8 +20,10 @@ public class ObjectDetectionUtil {
     private static final Logger logger = LoggerFactory.getLogger(ObjectDetectionUtil.class);
     private final IndustrialObjectDetector detector;
 
-    public ObjectDetectionUtil() {
-        this.detector = new IndustrialObjectDetector();
+    public ObjectDetectionUtil(@Value("${edge-vision.inspection.feature-backend:sift}") String featureBackend,
+                               @Value("${edge-vision.inspection.feature-min-inliers:15}") int featureMinInliers) {
+        this.detector = new IndustrialObjectDetector(
+                FeatureBackend.parse(featureBackend, FeatureBackend.SIFT), featureMinInliers);
     }
 
     /**
@@ -0,0 +1,70 @@
+package com.edge.vision.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 请求内的分阶段耗时
+ * <p>
+ * RequestLoggingFilter 在请求开始时绑定到当前线程，业务代码通过 {@link #record} 登记各阶段耗时，
+ * 请求结束时汇总到一行访问日志中（例如 stages=inference:85,draw:12,encode:6,save:3）。
+ * <p>
+ * 只记录请求线程上的阶段；没有绑定（后台线程、非 HTTP 调用）时 record() 直接忽略，无额外开销。
+ */
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    // 阶段名 -> 累计毫秒（同名阶段多次登记时累加）
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    private RequestTimings() {
+    }
+
+    /**
+     * 在当前线程开始记录（由过滤器调用）
+     */
+    public static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * 结束当前线程的记录（由过滤器调用）
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 登记当前请求的一个阶段耗时
+     */
+    public static void record(String stage, long millis) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.stages.merge(stage, millis, Long::sum);
+        }
+    }
+
+    public Map<String, Long> getStages() {
+        return stages;
+    }
+
+    /**
+     * 格式化为 a:1,b:2，没有阶段时返回 "-"
+     */
+    public String format() {
+        if (stages.isEmpty()) {
+            return "-";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : stages.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
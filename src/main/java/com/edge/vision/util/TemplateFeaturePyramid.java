@@ -0,0 +1,237 @@
+package com.edge.vision.util;
+
+import org.opencv.core.*;
+import org.opencv.features2d.Feature2D;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 模板特征金字塔
+ * <p>
+ * 场景图在匹配前会被缩小到 PROCESS_WIDTH，如果模板特征取自原分辨率图像，SIFT 需要跨越很大的尺度差，
+ * 特征点多、内点率低，RANSAC 也更费时。这里在保存模板时按多个尺度各提取一次特征，
+ * 匹配时选择与场景处理尺度最接近的一层。
+ * <p>
+ * - 相邻层尺度相差 √2，最小一层的短边不低于 {@link #MIN_LEVEL_SIZE} 像素
+ * - 关键点坐标统一换算回模板原图坐标，匹配得到的单应性矩阵与原来含义一致（模板原图 → 处理尺度场景图）
+ * - 以二进制文件持久化在模板 JSON 旁边，启动时直接加载，无需重新提取
+ */
+public final class TemplateFeaturePyramid {
+
+    // 文件格式标识与版本
+    private static final int MAGIC = 0x54465059; // "TFPY"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final double LEVEL_STEP = Math.sqrt(0.5);
+    private static final int MIN_LEVEL_SIZE = 96;
+    private static final int MAX_LEVELS = 8;
+
+    private final List<Level> levels;
+
+    private TemplateFeaturePyramid(List<Level> levels) {
+        this.levels = Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * 单层特征
+     */
+    public static final class Level {
+        private final double scale;
+        private final KeyPoint[] keyPoints;
+        private final Mat descriptors;
+
+        Level(double scale, KeyPoint[] keyPoints, Mat descriptors) {
+            this.scale = scale;
+            this.keyPoints = keyPoints;
+            this.descriptors = descriptors;
+        }
+
+        /** 该层相对模板原图的缩放比例 */
+        public double getScale() { return scale; }
+        /** 关键点（坐标为模板原图坐标） */
+        public KeyPoint[] getKeyPoints() { return keyPoints; }
+        /** 描述子（SIFT 为 CV_32F，ORB/AKAZE 为 CV_8U；行与关键点一一对应） */
+        public Mat getDescriptors() { return descriptors; }
+    }
+
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * 从模板灰度图构建金字塔
+     *
+     * @param gray     模板灰度图（原分辨率）
+     * @param detector 特征检测器（调用方保证线程独占）
+     */
+    public static TemplateFeaturePyramid build(Mat gray, Feature2D detector) {
+        List<Level> levels = new ArrayList<>();
+        if (gray.empty()) {
+            return new TemplateFeaturePyramid(levels);
+        }
+        int minSide = Math.min(gray.cols(), gray.rows());
+
+        double scale = 1.0;
+        while (levels.size() < MAX_LEVELS && (levels.isEmpty() || minSide * scale >= MIN_LEVEL_SIZE)) {
+            Mat img = gray;
+            if (scale < 1.0) {
+                img = new Mat();
+                Imgproc.resize(gray, img, new Size(), scale, scale, Imgproc.INTER_AREA);
+            }
+
+            MatOfKeyPoint kp = new MatOfKeyPoint();
+            Mat desc = new Mat();
+            try {
+                detector.detectAndCompute(img, new Mat(), kp, desc);
+                if (!desc.empty()) {
+                    // 浮点描述子统一为 CV_32F；二进制描述子（ORB/AKAZE）保持 CV_8U
+                    if (desc.depth() != CvType.CV_8U && desc.type() != CvType.CV_32F) {
+                        desc.convertTo(desc, CvType.CV_32F);
+                    }
+                    KeyPoint[] points = kp.toArray();
+                    // 换算回原图坐标
+                    for (KeyPoint p : points) {
+                        p.pt.x /= scale;
+                        p.pt.y /= scale;
+                        p.size /= (float) scale;
+                    }
+                    levels.add(new Level(scale, points, desc));
+                } else {
+                    desc.release();
+                }
+            } finally {
+                kp.release();
+                if (img != gray) img.release();
+            }
+            scale *= LEVEL_STEP;
+        }
+        return new TemplateFeaturePyramid(levels);
+    }
+
+    /**
+     * 选择与场景处理尺度最接近的一层（按对数距离）
+     *
+     * @param sceneScale 场景图缩放比例（处理尺寸 / 原尺寸）
+     * @return 层下标；金字塔为空时返回 -1
+     */
+    public int selectLevel(double sceneScale) {
+        int best = -1;
+        double bestDist = Double.MAX_VALUE;
+        for (int i = 0; i < levels.size(); i++) {
+            double dist = Math.abs(Math.log(levels.get(i).scale / sceneScale));
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 释放所有描述子
+     */
+    public void release() {
+        for (Level level : levels) {
+            level.descriptors.release();
+        }
+    }
+
+    // =========================================================
+    // 持久化
+    // =========================================================
+
+    /**
+     * 写入文件（先写临时文件再替换，避免半截文件）
+     * <p>
+     * 只持久化 SIFT（CV_32F）金字塔；二进制描述子提取很快，按需在内存中构建。
+     */
+    public void write(Path path) throws IOException {
+        for (Level level : levels) {
+            if (level.descriptors.type() != CvType.CV_32F) {
+                throw new IOException("Only CV_32F descriptors can be persisted");
+            }
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(levels.size());
+            for (Level level : levels) {
+                out.writeDouble(level.scale);
+                out.writeInt(level.keyPoints.length);
+                for (KeyPoint p : level.keyPoints) {
+                    out.writeDouble(p.pt.x);
+                    out.writeDouble(p.pt.y);
+                    out.writeFloat(p.size);
+                    out.writeFloat(p.angle);
+                    out.writeFloat(p.response);
+                    out.writeInt(p.octave);
+                }
+                int rows = level.descriptors.rows();
+                int cols = level.descriptors.cols();
+                float[] data = new float[rows * cols];
+                level.descriptors.get(0, 0, data);
+                out.writeInt(rows);
+                out.writeInt(cols);
+                for (float v : data) {
+                    out.writeFloat(v);
+                }
+            }
+        }
+        Files.move(tmp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 从文件读取
+     *
+     * @throws IOException 文件损坏或版本不兼容
+     */
+    public static TemplateFeaturePyramid read(Path path) throws IOException {
+        List<Level> levels = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported template feature file: " + path);
+            }
+            int levelCount = in.readInt();
+            for (int l = 0; l < levelCount; l++) {
+                double scale = in.readDouble();
+                int n = in.readInt();
+                KeyPoint[] points = new KeyPoint[n];
+                for (int i = 0; i < n; i++) {
+                    double x = in.readDouble();
+                    double y = in.readDouble();
+                    float size = in.readFloat();
+                    float angle = in.readFloat();
+                    float response = in.readFloat();
+                    int octave = in.readInt();
+                    points[i] = new KeyPoint((float) x, (float) y, size, angle, response, octave, -1);
+                    // 构造函数只接受 float 坐标，这里保留 double 精度
+                    points[i].pt.x = x;
+                    points[i].pt.y = y;
+                }
+                int rows = in.readInt();
+                int cols = in.readInt();
+                if (rows != n) {
+                    throw new IOException("Corrupted template feature file: " + path);
+                }
+                float[] data = new float[rows * cols];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = in.readFloat();
+                }
+                Mat desc = new Mat(rows, cols, CvType.CV_32F);
+                desc.put(0, 0, data);
+                levels.add(new Level(scale, points, desc));
+            }
+        } catch (IOException e) {
+            for (Level level : levels) level.descriptors.release();
+            throw e;
+        }
+        return new TemplateFeaturePyramid(levels);
+    }
+}
@@ -7,10 +7,10 @@ import com.edge.vision.service.QualityStandardService;
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.*;
 import org.opencv.features2d.DescriptorMatcher;
-import org.opencv.features2d.Feature2D;
-import org.opencv.features2d.SIFT;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -25,6 +25,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * 优化记录: 引入 SIFT 特征缓存 + 场景图降采样以提升性能
  */
 public class VisionTool {
+    private static final Logger logger = LoggerFactory.getLogger(VisionTool.class);
 
     // 算法参数
     private static final double RANSAC_THRESH = 5.0;
@@ -39,27 +40,162 @@ public class VisionTool {
     private static final int PROCESS_WIDTH = 1280;
 
     // --- 缓存层 ---
-    // Key: templateId, Value: 特征数据
+    // Key: templateId, Value: 特征数据 + 已训练的 FLANN 索引
     private static final Map<String, TemplateCacheData> templateCache = new ConcurrentHashMap<>();
 
+    // 默认定位特征后端与快速后端的最小内点数（由 TemplateManager 按配置设置）
+    private static volatile FeatureBackend defaultFeatureBackend = FeatureBackend.SIFT;
+    private static volatile int minFastBackendInliers = 15;
+    // 比对时是否在连通分量内求最优分配（默认贪心最近邻）
+    private static volatile boolean optimalAssignment = false;
+
     // 内部类：缓存数据结构
     private static class TemplateCacheData {
-        MatOfKeyPoint keyPoints;
-        Mat descriptors;
+        final String imagePath;
+        // 各特征后端的多尺度模板特征及索引（SIFT 在创建时就绪，ORB/AKAZE 首次使用时构建）
+        private final Map<FeatureBackend, IndexedPyramid> indices = new EnumMap<>(FeatureBackend.class);
+        private boolean released;
+
+        public TemplateCacheData(String imagePath, TemplateFeaturePyramid siftPyramid) {
+            this.imagePath = imagePath;
+            indices.put(FeatureBackend.SIFT, new IndexedPyramid(FeatureBackend.SIFT, siftPyramid));
+        }
+
+        /**
+         * 场景描述子在与场景处理尺度最接近的模板层上做 KNN 匹配（queryIdx 为场景点，trainIdx 为模板点）
+         * <p>
+         * 匹配器不保证并发安全，同一模板的匹配串行执行；不同模板互不影响。
+         *
+         * @return 匹配结果；缓存已失效（模板被更新/删除）时返回 null
+         */
+        synchronized TemplateMatches knnMatch(FeatureBackend backend, double sceneScale, Mat queryDescriptors, int k) {
+            if (released) return null;
+            IndexedPyramid index = indices.get(backend);
+            if (index == null) {
+                index = buildIndex(backend);
+                indices.put(backend, index);
+            }
+            int level = index.pyramid.selectLevel(sceneScale);
+            if (level < 0) return new TemplateMatches(new KeyPoint[0], new ArrayList<>());
+
+            List<MatOfDMatch> knnMatches = new ArrayList<>();
+            index.matchers[level].knnMatch(queryDescriptors, knnMatches, k);
+            return new TemplateMatches(index.pyramid.getLevels().get(level).getKeyPoints(), knnMatches);
+        }
 
-        public TemplateCacheData(MatOfKeyPoint keyPoints, Mat descriptors) {
-            this.keyPoints = keyPoints;
-            this.descriptors = descriptors;
+        private IndexedPyramid buildIndex(FeatureBackend backend) {
+            Mat imgTpl = Imgcodecs.imread(imagePath, Imgcodecs.IMREAD_GRAYSCALE);
+            try {
+                return new IndexedPyramid(backend, TemplateFeaturePyramid.build(imgTpl, backend.detector()));
+            } finally {
+                imgTpl.release();
+            }
+        }
+
+        /**
+         * 释放原生资源（等待进行中的匹配结束）
+         */
+        synchronized void release() {
+            if (released) return;
+            released = true;
+            for (IndexedPyramid index : indices.values()) {
+                index.release();
+            }
         }
     }
 
+    // 单个后端的金字塔 + 每层一个以模板描述子为训练集的匹配器（FLANN 的 KD 树只在创建时构建一次）
+    private static class IndexedPyramid {
+        final TemplateFeaturePyramid pyramid;
+        final DescriptorMatcher[] matchers;
+
+        IndexedPyramid(FeatureBackend backend, TemplateFeaturePyramid pyramid) {
+            this.pyramid = pyramid;
+            List<TemplateFeaturePyramid.Level> levels = pyramid.getLevels();
+            this.matchers = new DescriptorMatcher[levels.size()];
+            for (int i = 0; i < levels.size(); i++) {
+                matchers[i] = backend.createMatcher();
+                matchers[i].add(Collections.singletonList(levels.get(i).getDescriptors()));
+                matchers[i].train();
+            }
+        }
+
+        void release() {
+            for (DescriptorMatcher matcher : matchers) {
+                matcher.clear();
+            }
+            pyramid.release();
+        }
+    }
+
+    // 单次匹配结果：所用模板层的关键点 + KNN 匹配
+    private static class TemplateMatches {
+        final KeyPoint[] templateKeyPoints;
+        final List<MatOfDMatch> knnMatches;
+
+        TemplateMatches(KeyPoint[] templateKeyPoints, List<MatOfDMatch> knnMatches) {
+            this.templateKeyPoints = templateKeyPoints;
+            this.knnMatches = knnMatches;
+        }
+    }
+
+    // 单应性估计结果
+    private static class HomographyEstimate {
+        final Mat homography;
+        final int inliers;
+        // RANSAC 内点（模板原图坐标 / 处理尺度场景坐标），用于初始化时序跟踪
+        final List<org.opencv.core.Point> inlierTemplatePoints;
+        final List<org.opencv.core.Point> inlierScenePoints;
+
+        HomographyEstimate(Mat homography, int inliers,
+                           List<org.opencv.core.Point> inlierTemplatePoints,
+                           List<org.opencv.core.Point> inlierScenePoints) {
+            this.homography = homography;
+            this.inliers = inliers;
+            this.inlierTemplatePoints = inlierTemplatePoints;
+            this.inlierScenePoints = inlierScenePoints;
+        }
+    }
+
+    /**
+     * 设置默认定位特征后端（模板未单独指定时使用）
+     *
+     * @param backend     默认后端
+     * @param minInliers  ORB/AKAZE 内点数低于该值时回退 SIFT
+     */
+    public static void configureFeatureBackend(FeatureBackend backend, int minInliers) {
+        defaultFeatureBackend = backend != null ? backend : FeatureBackend.SIFT;
+        minFastBackendInliers = minInliers;
+    }
+
+    /**
+     * 设置模板点与检测点的分配方式
+     *
+     * @param optimal true: 连通分量内最优分配；false: 按模板顺序贪心取最近
+     */
+    public static void configureMatchAssignment(boolean optimal) {
+        optimalAssignment = optimal;
+    }
+
     // =========================================================
     // 1. 建模方法 (Create Template)
     // =========================================================
     public static Template createTemplate(String base64Origin, int[] cropRect, List<DetectedObject> features, String templateId) throws IOException {
-        // ... (保持原有逻辑不变) ...
         Mat original = base64ToMat(base64Origin);
         if (original == null || original.empty()) throw new IllegalArgumentException("Invalid Base64 Image");
+        try {
+            return createTemplate(original, cropRect, features, templateId);
+        } finally {
+            original.release();
+        }
+    }
+
+    /**
+     * 直接从图像建模（不经过 Base64 编解码）
+     * @param original 原图（调用方负责释放）
+     */
+    public static Template createTemplate(Mat original, int[] cropRect, List<DetectedObject> features, String templateId) throws IOException {
+        if (original == null || original.empty()) throw new IllegalArgumentException("Invalid Image");
 
         Mat cropped = null;
         try {
@@ -122,12 +258,11 @@ public class VisionTool {
             template.setImageSize(size);
 
             // 建模时顺便清除旧缓存（如果有）
-            templateCache.remove(templateId);
+            clearCache(templateId);
 
             return template;
 
         } finally {
-            if (original != null) original.release();
             if (cropped != null) cropped.release();
         }
     }
@@ -147,17 +282,12 @@ public class VisionTool {
         Mat hMatrix = null;
 
         // 临时变量，需要在 finally 中释放
-        MatOfKeyPoint kpScene = null;
-        Mat descScene = null;
-        MatOfPoint2f matPtsTpl = null;
-        MatOfPoint2f matPtsScene = null;
         MatOfPoint2f srcMat = null;
         MatOfPoint2f dstMat = null;
 
         try {
-            // --- 优化点 1: 从缓存获取模板特征 (0ms) ---
-            TemplateCacheData tplData = getOrComputeTemplateFeatures(template);
-            if (tplData == null || tplData.descriptors.empty()) return new ArrayList<>();
+            // --- 优化点 1: 预先确认模板特征金字塔和已训练的索引在缓存中 (0ms) ---
+            if (getOrComputeTemplateFeatures(template) == null) return new ArrayList<>();
 
             // 2. 准备场景图（转灰度图）
             if (sceneMat.channels() > 1) {
@@ -183,50 +313,23 @@ public class VisionTool {
                 imgSceneResized = imgScene; // 引用传递，无需释放
             }
 
-            // 3. SIFT 特征提取 (在小图上运行，速度极大提升)
-            Feature2D detector = SIFT.create();
-            kpScene = new MatOfKeyPoint();
-            descScene = new Mat();
-            detector.detectAndCompute(imgSceneResized, new Mat(), kpScene, descScene);
-
-            if (descScene.empty()) return new ArrayList<>();
-
-            // 4. FLANN 匹配
-            DescriptorMatcher matcher = DescriptorMatcher.create(DescriptorMatcher.FLANNBASED);
-            List<MatOfDMatch> knnMatches = new ArrayList<>();
-
-            // 确保类型一致 (SIFT 默认是 CV_32F，但也做防御性转换)
-            if (tplData.descriptors.type() != CvType.CV_32F) tplData.descriptors.convertTo(tplData.descriptors, CvType.CV_32F);
-            if (descScene.type() != CvType.CV_32F) descScene.convertTo(descScene, CvType.CV_32F);
-
-            matcher.knnMatch(tplData.descriptors, descScene, knnMatches, 2);
-
-            // 5. Ratio Test 筛选
-            List<DMatch> goodMatches = new ArrayList<>();
-            for (MatOfDMatch m : knnMatches) {
-                DMatch[] dm = m.toArray();
-                if (dm.length >= 2 && dm[0].distance < MATCH_RATIO * dm[1].distance) {
-                    goodMatches.add(dm[0]);
+            // 3. 时序跟踪：工件未移动或只有小幅移动时，用光流跟踪上一帧的内点直接得到单应性
+            String trackKey = trackingKey(template.getTemplateId(), imgSceneResized);
+            hMatrix = HomographyTracker.track(trackKey, imgSceneResized);
+
+            // 4~6. 跟踪未命中：特征匹配 + 单应性估计；快速后端（ORB/AKAZE）内点不足时回退 SIFT
+            if (hMatrix == null) {
+                FeatureBackend backend = FeatureBackend.parse(template.getFeatureBackend(), defaultFeatureBackend);
+                HomographyEstimate estimate = estimateHomography(template, backend, imgSceneResized, scaleFactor);
+                if (backend != FeatureBackend.SIFT && (estimate == null || estimate.inliers < minFastBackendInliers)) {
+                    if (estimate != null) estimate.homography.release();
+                    estimate = estimateHomography(template, FeatureBackend.SIFT, imgSceneResized, scaleFactor);
                 }
+                if (estimate == null) return new ArrayList<>();
+                hMatrix = estimate.homography;
+                HomographyTracker.update(trackKey, imgSceneResized,
+                        estimate.inlierTemplatePoints, estimate.inlierScenePoints);
             }
-            if (goodMatches.size() < MIN_MATCH_COUNT) return new ArrayList<>();
-
-            // 6. 计算单应性矩阵 (Homography)
-            List<org.opencv.core.Point> ptsTpl = new ArrayList<>();
-            List<org.opencv.core.Point> ptsScene = new ArrayList<>();
-            List<KeyPoint> kpTplList = tplData.keyPoints.toList();
-            List<KeyPoint> kpSceneList = kpScene.toList();
-
-            for (DMatch m : goodMatches) {
-                ptsTpl.add(kpTplList.get(m.queryIdx).pt);
-                ptsScene.add(kpSceneList.get(m.trainIdx).pt);
-            }
-
-            matPtsTpl = new MatOfPoint2f(); matPtsTpl.fromList(ptsTpl);
-            matPtsScene = new MatOfPoint2f(); matPtsScene.fromList(ptsScene);
-            hMatrix = Calib3d.findHomography(matPtsTpl, matPtsScene, Calib3d.RANSAC, RANSAC_THRESH);
-
-            if (hMatrix.empty()) return new ArrayList<>();
 
             // 7. 坐标透视变换
             List<org.opencv.core.Point> srcPoints = new ArrayList<>();
@@ -248,6 +351,8 @@ public class VisionTool {
             double transformedArea = calculateBoundingBoxArea(dstList);
             // 如果变换后的面积小于原始面积的MIN_AREA_RATIO，说明匹配失败
             if (originalArea > 0 && transformedArea < originalArea * MIN_AREA_RATIO) {
+                // 不要从退化结果继续跟踪
+                HomographyTracker.invalidate(template.getTemplateId());
                 return new ArrayList<>();
             }
 
@@ -298,20 +403,100 @@ public class VisionTool {
             e.printStackTrace();
             return new ArrayList<>();
         } finally {
-            // 资源释放 (注意不要释放缓存中的 tplData 和传入的 sceneMat)
+            // 资源释放 (注意不要释放缓存中的模板特征和传入的 sceneMat)
             if (imgScene != null && imgScene != sceneMat) imgScene.release();
             // 只有当 imgSceneResized 是独立创建的对象时才释放
             if (imgSceneResized != null && imgSceneResized != imgScene && imgSceneResized != sceneMat) imgSceneResized.release();
             if (hMatrix != null) hMatrix.release();
-            if (kpScene != null) kpScene.release();
-            if (descScene != null) descScene.release();
-            if (matPtsTpl != null) matPtsTpl.release();
-            if (matPtsScene != null) matPtsScene.release();
             if (srcMat != null) srcMat.release();
             if (dstMat != null) dstMat.release();
         }
     }
 
+    /**
+     * 在处理尺度的场景灰度图上提取特征，与模板对应层匹配并估计单应性（模板原图 → 处理尺度场景图）
+     *
+     * @return 估计结果；特征或匹配不足时返回 null
+     */
+    private static HomographyEstimate estimateHomography(Template template, FeatureBackend backend,
+                                                         Mat imgScene, double scaleFactor) {
+        MatOfKeyPoint kpScene = new MatOfKeyPoint();
+        Mat descScene = new Mat();
+        MatOfPoint2f matPtsTpl = null;
+        MatOfPoint2f matPtsScene = null;
+        Mat inlierMask = null;
+        try {
+            // 特征提取 (在小图上运行，速度极大提升)
+            backend.detector().detectAndCompute(imgScene, new Mat(), kpScene, descScene);
+            if (descScene.empty()) return null;
+
+            // 确保类型一致 (SIFT 默认是 CV_32F，但也做防御性转换)
+            if (!backend.isBinary() && descScene.type() != CvType.CV_32F) descScene.convertTo(descScene, CvType.CV_32F);
+
+            // 匹配：选取与场景处理尺度一致的模板层（模板与场景原图同分辨率，场景缩放了 scaleFactor）
+            TemplateCacheData tplData = getOrComputeTemplateFeatures(template);
+            TemplateMatches matches = tplData == null ? null : tplData.knnMatch(backend, scaleFactor, descScene, 2);
+            if (matches == null && tplData != null) {
+                // 匹配期间模板被更新，重新取一次缓存
+                tplData = getOrComputeTemplateFeatures(template);
+                matches = tplData == null ? null : tplData.knnMatch(backend, scaleFactor, descScene, 2);
+            }
+            if (matches == null) return null;
+
+            // Ratio Test 筛选
+            float ratio = backend.ratio(MATCH_RATIO);
+            List<DMatch> goodMatches = new ArrayList<>();
+            for (MatOfDMatch m : matches.knnMatches) {
+                DMatch[] dm = m.toArray();
+                if (dm.length >= 2 && dm[0].distance < ratio * dm[1].distance) {
+                    goodMatches.add(dm[0]);
+                }
+                m.release();
+            }
+            if (goodMatches.size() < MIN_MATCH_COUNT) return null;
+
+            // 计算单应性矩阵 (Homography)
+            List<org.opencv.core.Point> ptsTpl = new ArrayList<>();
+            List<org.opencv.core.Point> ptsScene = new ArrayList<>();
+            KeyPoint[] kpSceneArray = kpScene.toArray();
+            for (DMatch m : goodMatches) {
+                ptsTpl.add(matches.templateKeyPoints[m.trainIdx].pt);
+                ptsScene.add(kpSceneArray[m.queryIdx].pt);
+            }
+
+            matPtsTpl = new MatOfPoint2f(); matPtsTpl.fromList(ptsTpl);
+            matPtsScene = new MatOfPoint2f(); matPtsScene.fromList(ptsScene);
+            inlierMask = new Mat();
+            Mat h = Calib3d.findHomography(matPtsTpl, matPtsScene, Calib3d.RANSAC, RANSAC_THRESH, inlierMask);
+            if (h.empty()) return null;
+
+            byte[] mask = new byte[(int) inlierMask.total()];
+            inlierMask.get(0, 0, mask);
+            List<org.opencv.core.Point> inlierTpl = new ArrayList<>();
+            List<org.opencv.core.Point> inlierScene = new ArrayList<>();
+            for (int i = 0; i < mask.length; i++) {
+                if (mask[i] != 0) {
+                    inlierTpl.add(ptsTpl.get(i));
+                    inlierScene.add(ptsScene.get(i));
+                }
+            }
+            return new HomographyEstimate(h, inlierTpl.size(), inlierTpl, inlierScene);
+        } finally {
+            kpScene.release();
+            descScene.release();
+            if (matPtsTpl != null) matPtsTpl.release();
+            if (matPtsScene != null) matPtsScene.release();
+            if (inlierMask != null) inlierMask.release();
+        }
+    }
+
+    /**
+     * 时序跟踪键：模板 ID + 处理尺度场景尺寸（多摄像头模式下模板按摄像头区分）
+     */
+    private static String trackingKey(String templateId, Mat imgScene) {
+        return templateId + "@" + imgScene.cols() + "x" + imgScene.rows();
+    }
+
     /**
      * 基于模板计算新图中的坐标 (SIFT + Homography + Downsampling + Caching)
      * @param template 模板对象
@@ -331,62 +516,135 @@ public class VisionTool {
     }
 
     /**
-     * 辅助方法：从缓存获取模板特征，如果缓存不存在则计算并存入
+     * 辅助方法：从缓存获取模板特征，如果缓存不存在则加载（或计算）特征金字塔并训练 FLANN 索引后存入
      * (线程安全)
+     * <p>
+     * 优先读取保存模板时持久化的特征文件（{@link Template#getFeaturesPath()}），不存在或损坏时从模板图片现场计算。
      */
     public static TemplateCacheData getOrComputeTemplateFeatures(Template template) {
         String tplId = template.getTemplateId();
 
         return templateCache.computeIfAbsent(tplId, k -> {
-            Mat imgTpl = null;
             try {
-                // 读取模板图片
-                imgTpl = Imgcodecs.imread(template.getImagePath(), Imgcodecs.IMREAD_GRAYSCALE);
-                if (imgTpl == null || imgTpl.empty()) return null;
-
-                // 计算 SIFT 特征 (只做一次)
-                Feature2D detector = SIFT.create();
-                MatOfKeyPoint kpTpl = new MatOfKeyPoint();
-                Mat descTpl = new Mat();
-                detector.detectAndCompute(imgTpl, new Mat(), kpTpl, descTpl);
-
-                if (descTpl.empty()) return null;
-
+                TemplateFeaturePyramid pyramid = loadPersistedPyramid(template);
+                if (pyramid == null) {
+                    pyramid = computePyramid(template);
+                }
+                if (pyramid == null) return null;
+                if (pyramid.getLevels().isEmpty()) {
+                    pyramid.release();
+                    return null;
+                }
                 // 返回数据 (KeyPoints 和 Descriptors 将驻留内存)
-                return new TemplateCacheData(kpTpl, descTpl);
+                return new TemplateCacheData(template.getImagePath(), pyramid);
             } catch (Exception e) {
                 e.printStackTrace();
                 return null;
-            } finally {
-                // 释放图片像素数据，保留特征数据
-                if (imgTpl != null) imgTpl.release();
             }
         });
     }
 
+    /**
+     * 保存模板时调用：计算特征金字塔并写入特征文件，同时替换内存缓存
+     *
+     * @param template     模板对象（需已设置 imagePath）
+     * @param featuresPath 特征文件路径
+     * @throws IOException 模板图片无法读取或写文件失败
+     */
+    public static void saveTemplateFeatures(Template template, Path featuresPath) throws IOException {
+        TemplateFeaturePyramid pyramid = computePyramid(template);
+        if (pyramid == null) {
+            throw new IOException("Cannot read template image: " + template.getImagePath());
+        }
+        try {
+            pyramid.write(featuresPath);
+        } catch (IOException e) {
+            pyramid.release();
+            throw e;
+        }
+
+        clearCache(template.getTemplateId());
+        if (!pyramid.getLevels().isEmpty()) {
+            TemplateCacheData data = new TemplateCacheData(template.getImagePath(), pyramid);
+            TemplateCacheData previous = templateCache.put(template.getTemplateId(), data);
+            if (previous != null) previous.release();
+        } else {
+            pyramid.release();
+        }
+    }
+
+    private static TemplateFeaturePyramid loadPersistedPyramid(Template template) {
+        String featuresPath = template.getFeaturesPath();
+        if (featuresPath == null || !Files.exists(Paths.get(featuresPath))) return null;
+        try {
+            return TemplateFeaturePyramid.read(Paths.get(featuresPath));
+        } catch (IOException e) {
+            // 文件损坏时退回现场计算
+            logger.warn("Failed to read template features {}, recomputing", featuresPath, e);
+            return null;
+        }
+    }
+
+    private static TemplateFeaturePyramid computePyramid(Template template) {
+        if (template.getImagePath() == null) return null;
+        Mat imgTpl = Imgcodecs.imread(template.getImagePath(), Imgcodecs.IMREAD_GRAYSCALE);
+        try {
+            if (imgTpl == null || imgTpl.empty()) return null;
+            // 计算 SIFT 特征金字塔 (只做一次)
+            return TemplateFeaturePyramid.build(imgTpl, FeatureBackend.SIFT.detector());
+        } finally {
+            // 释放图片像素数据，保留特征数据
+            if (imgTpl != null) imgTpl.release();
+        }
+    }
+
     /**
      * 手动清理缓存 (例如更新模板时调用)
      */
     public static void clearCache(String templateId) {
+        if (templateId == null) return;
+        HomographyTracker.invalidate(templateId);
         TemplateCacheData data = templateCache.remove(templateId);
         if (data != null) {
-            if (data.descriptors != null) data.descriptors.release();
-            if (data.keyPoints != null) data.keyPoints.release();
+            data.release();
+        }
+    }
+
+    /**
+     * 清理全部模板缓存
+     */
+    public static void clearAllCaches() {
+        for (String templateId : new ArrayList<>(templateCache.keySet())) {
+            clearCache(templateId);
         }
     }
 
     // =========================================================
-    // 3. 比对方法 (Compare Results) - 保持不变
+    // 3. 比对方法 (Compare Results)
     // =========================================================
     public static List<QualityStandardService.QualityEvaluationResult.TemplateComparison> compareResults(
             List<DetectedObject> templateObjs,
             List<DetectedObject> yoloObjs,double defaultToleranceX,double defaultToleranceY) {
+        return compareResults(templateObjs, yoloObjs, defaultToleranceX, defaultToleranceY, optimalAssignment);
+    }
+
+    /**
+     * 比对模板点与检测点
+     * <p>
+     * 检测点按类别 + 网格索引（格子边长为 MATCH_DISTANCE_THRESHOLD），每个模板点只检查附近的同类候选。
+     *
+     * @param optimal true: 连通分量内最优分配；false: 按模板顺序贪心取最近（与原逐个扫描结果一致）
+     */
+    public static List<QualityStandardService.QualityEvaluationResult.TemplateComparison> compareResults(
+            List<DetectedObject> templateObjs,
+            List<DetectedObject> yoloObjs,double defaultToleranceX,double defaultToleranceY, boolean optimal) {
 
-        // ... (保持原代码逻辑不变) ...
         List<QualityStandardService.QualityEvaluationResult.TemplateComparison> results = new ArrayList<>();
         boolean[] yoloMatched = new boolean[yoloObjs.size()];
+        int[] assignment = NearestNeighborMatcher.match(templateObjs, yoloObjs, MATCH_DISTANCE_THRESHOLD, optimal);
 
-        for (DetectedObject tObj : templateObjs) {
+        for (int t = 0; t < templateObjs.size(); t++) {
+            DetectedObject tObj = templateObjs.get(t);
             QualityStandardService.QualityEvaluationResult.TemplateComparison comp = new QualityStandardService.QualityEvaluationResult.TemplateComparison();
 
             comp.setFeatureName(tObj.getClassName());
@@ -396,27 +654,9 @@ public class VisionTool {
             comp.setToleranceX(defaultToleranceX);
             comp.setToleranceY(defaultToleranceY);
 
-            DetectedObject bestMatch = null;
-            int bestMatchIdx = -1;
-            double minTotalErr = Double.MAX_VALUE;
-
-            for (int i = 0; i < yoloObjs.size(); i++) {
-                if (yoloMatched[i]) continue;
-                DetectedObject yObj = yoloObjs.get(i);
-                if (!tObj.getClassName().equalsIgnoreCase(yObj.getClassName())) continue;
-
-                double dx = Math.abs(tObj.getCenter().x - yObj.getCenter().x);
-                double dy = Math.abs(tObj.getCenter().y - yObj.getCenter().y);
-                double totalErr = Math.sqrt(dx * dx + dy * dy);
-
-                if (totalErr < MATCH_DISTANCE_THRESHOLD && totalErr < minTotalErr) {
-                    minTotalErr = totalErr;
-                    bestMatch = yObj;
-                    bestMatchIdx = i;
-                }
-            }
-
-            if (bestMatch != null) {
+            int bestMatchIdx = assignment[t];
+            if (bestMatchIdx >= 0) {
+                DetectedObject bestMatch = yoloObjs.get(bestMatchIdx);
                 yoloMatched[bestMatchIdx] = true;
                 double xErr = Math.abs(tObj.getCenter().x - bestMatch.getCenter().x);
                 double yErr = Math.abs(tObj.getCenter().y - bestMatch.getCenter().y);
@@ -424,7 +664,7 @@ public class VisionTool {
                 comp.setDetectedPosition(bestMatch.getCenter());
                 comp.setXError(xErr);
                 comp.setYError(yErr);
-                comp.setTotalError(minTotalErr);
+                comp.setTotalError(Math.sqrt(xErr * xErr + yErr * yErr));
 
                 if (xErr <= defaultToleranceX && yErr <= defaultToleranceY) {
                     comp.setStatus(FeatureComparison.ComparisonStatus.PASSED);
@@ -493,7 +733,11 @@ public class VisionTool {
             if (base64.contains(",")) base64 = base64.split(",")[1];
             byte[] data = Base64.getDecoder().decode(base64);
             MatOfByte mob = new MatOfByte(data);
-            return Imgcodecs.imdecode(mob, flags);
+            try {
+                return MatTracker.track(Imgcodecs.imdecode(mob, flags), "VisionTool.base64ToMat");
+            } finally {
+                mob.release();
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return null;
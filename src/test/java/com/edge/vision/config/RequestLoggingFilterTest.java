@@ -0,0 +1,48 @@
+package com.edge.vision.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestLoggingFilterTest {
+
+    @Test
+    void captureHeaderIsIgnoredByDefault() throws Exception {
+        RequestLoggingFilter filter = start(false);
+        filter.doFilter(captureRequest(), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertTrue(filter.getCaptures().isEmpty());
+    }
+
+    @Test
+    void captureHeaderIsHonouredWhenEnabled() throws Exception {
+        RequestLoggingFilter filter = start(true);
+        filter.doFilter(captureRequest(), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertEquals(1, filter.getCaptures().size());
+        assertEquals("/api/test", filter.getCaptures().get(0).uri);
+    }
+
+    private static RequestLoggingFilter start(boolean headerEnabled) {
+        YamlConfig config = new YamlConfig();
+        config.setDiagnostics(new YamlConfig.DiagnosticsConfig());
+        config.getDiagnostics().setRequestCaptureHeaderEnabled(headerEnabled);
+
+        RequestLoggingFilter filter = new RequestLoggingFilter();
+        ReflectionTestUtils.setField(filter, "config", config);
+        filter.init();
+        return filter;
+    }
+
+    private static MockHttpServletRequest captureRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/test");
+        request.addHeader(RequestLoggingFilter.CAPTURE_HEADER, "true");
+        request.setContentType("application/json");
+        request.setContent("{}".getBytes());
+        return request;
+    }
+}
@@ -0,0 +1,32 @@
+package com.edge.vision.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManualTemplateControllerTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void manualTempDirStaysUnderManualTemp() {
+        ManualTemplateController controller = new ManualTemplateController();
+        ReflectionTestUtils.setField(controller, "uploadPath", uploadDir.toString());
+        Path base = uploadDir.toAbsolutePath().normalize().resolve("manual-temp");
+
+        assertEquals(base.resolve("part-A"), tempDir(controller, "part-A"));
+
+        for (String partType : new String[]{"..", "../x", "a/../../x", "a/b", "a\\b", "..\\x", ".", "/etc", "a\0b"}) {
+            assertNull(tempDir(controller, partType), partType);
+        }
+    }
+
+    private static Path tempDir(ManualTemplateController controller, String partType) {
+        return ReflectionTestUtils.invokeMethod(controller, "manualTempDir", partType);
+    }
+}
@@ -0,0 +1,205 @@
+package com.edge.vision.core.topology;
+
+import com.edge.vision.core.template.model.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RANSAC 旋转估计与原实现（每次迭代分配内点列表、逐对重算 atan2、固定迭代次数）在合成旋转布局上的对比
+ */
+class CoordinateBasedMatcherTest {
+
+    private static final int LAYOUTS = 2000;
+
+    private final CoordinateBasedMatcher matcher = new CoordinateBasedMatcher();
+
+    @Test
+    void precomputedRotationsMatchLegacyExactly() {
+        List<Layout> layouts = layouts(LAYOUTS, 0.45, 2.0);
+        for (Layout layout : layouts) {
+            Double legacy = legacyRotationAngle(layout.template, layout.detected, matcher.getMinInlierRatio());
+            Double current = matcher.estimateRotationAngle(layout.template, layout.detected, 0.0);
+            assertEquals(legacy, current, "layout with " + layout.template.size() + " pairs, angle " + layout.angle);
+        }
+    }
+
+    @Test
+    void adaptiveTerminationStaysCloseToLegacy() {
+        List<Layout> layouts = layouts(LAYOUTS, 0.45, 2.0);
+        for (double confidence : new double[]{0.99, 0.999999}) {
+            int compared = 0;
+            int identical = 0;
+            int grossErrors = 0;
+            int legacyGrossErrors = 0;
+            double sumError = 0;
+            double legacySumError = 0;
+            for (Layout layout : layouts) {
+                Double legacy = legacyRotationAngle(layout.template, layout.detected, matcher.getMinInlierRatio());
+                Double adaptive = matcher.estimateRotationAngle(layout.template, layout.detected, confidence);
+                if (Objects.equals(legacy, adaptive)) identical++;
+                if (legacy == null || legacy == 0.0 || adaptive == null || adaptive == 0.0) {
+                    continue;
+                }
+                compared++;
+                double error = Math.abs(adaptive - layout.angle);
+                double legacyError = Math.abs(legacy - layout.angle);
+                sumError += error;
+                legacySumError += legacyError;
+                // 离群点使质心偏移，两种实现都会有少量布局偏离真实角度超过内点阈值（3°）
+                if (error >= 3.0) grossErrors++;
+                if (legacyError >= 3.0) legacyGrossErrors++;
+            }
+            String summary = "confidence " + confidence + ": compared " + compared + ", identical " + identical
+                    + ", gross " + grossErrors + " vs legacy " + legacyGrossErrors
+                    + ", mean error " + sumError / compared + " vs legacy " + legacySumError / compared;
+            assertTrue(compared > LAYOUTS / 4, summary);
+            // 提前结束只允许轻微变差
+            assertTrue(grossErrors <= legacyGrossErrors + LAYOUTS / 200, summary);
+            assertTrue(sumError / compared < legacySumError / compared + 0.1, summary);
+        }
+    }
+
+    @Test
+    void rejectsTooFewPairsAndSmallRotations() {
+        List<Point> template = List.of(new Point(0, 0), new Point(100, 0));
+        assertNull(matcher.estimateRotationAngle(template, template, 0.0));
+
+        Layout layout = layout(new Random(1), 20, 0.2, 0.0, 0.0);
+        assertEquals(0.0, matcher.estimateRotationAngle(layout.template, layout.detected, 0.0));
+    }
+
+    // ==================== 合成布局 ====================
+
+    private static final class Layout {
+        final double angle;
+        final List<Point> template;
+        final List<Point> detected;
+
+        Layout(double angle, List<Point> template, List<Point> detected) {
+            this.angle = angle;
+            this.template = template;
+            this.detected = detected;
+        }
+    }
+
+    /**
+     * 固定种子生成：3-62 个匹配对、±30° 旋转、平移、0-maxOutlierRatio 的离群点和高斯噪声
+     */
+    private static List<Layout> layouts(int count, double maxOutlierRatio, double noise) {
+        Random random = new Random(42);
+        List<Layout> layouts = new ArrayList<>(count);
+        for (int l = 0; l < count; l++) {
+            int n = 3 + random.nextInt(60);
+            double angle = (random.nextDouble() * 2 - 1) * 30;
+            layouts.add(layout(random, n, angle, random.nextDouble() * maxOutlierRatio, noise));
+        }
+        return layouts;
+    }
+
+    private static Layout layout(Random random, int n, double angle, double outlierRatio, double noise) {
+        double cos = Math.cos(Math.toRadians(angle)), sin = Math.sin(Math.toRadians(angle));
+        double tx = random.nextGaussian() * 200, ty = random.nextGaussian() * 200;
+        List<Point> template = new ArrayList<>(n);
+        List<Point> detected = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double x = random.nextDouble() * 5000, y = random.nextDouble() * 5000;
+            template.add(new Point(x, y));
+            if (random.nextDouble() < outlierRatio) {
+                detected.add(new Point(random.nextDouble() * 5000, random.nextDouble() * 5000));
+            } else {
+                double dx = x - 2500, dy = y - 2500;
+                detected.add(new Point(
+                        2500 + cos * dx - sin * dy + tx + random.nextGaussian() * noise,
+                        2500 + sin * dx + cos * dy + ty + random.nextGaussian() * noise));
+            }
+        }
+        return new Layout(angle, template, detected);
+    }
+
+    // ==================== 原实现 ====================
+
+    private static Double legacyRotationAngle(List<Point> templatePositions, List<Point> detectedPositions,
+                                              double requiredInlierRatio) {
+        int n = templatePositions.size();
+        if (n < 3) {
+            return null;
+        }
+        final int maxIterations = Math.min(100, n * 10);
+        final double angleThreshold = Math.toRadians(3.0);
+        Random random = new Random(42);
+        int maxInliers = 0;
+        List<Integer> bestInliers = new ArrayList<>();
+
+        double templateCx = 0.0, templateCy = 0.0, detectedCx = 0.0, detectedCy = 0.0;
+        for (int i = 0; i < n; i++) {
+            templateCx += templatePositions.get(i).x;
+            templateCy += templatePositions.get(i).y;
+            detectedCx += detectedPositions.get(i).x;
+            detectedCy += detectedPositions.get(i).y;
+        }
+        templateCx /= n;
+        templateCy /= n;
+        detectedCx /= n;
+        detectedCy /= n;
+
+        for (int iter = 0; iter < maxIterations; iter++) {
+            int idx1 = random.nextInt(n);
+            int idx2;
+            do {
+                idx2 = random.nextInt(n);
+            } while (idx2 == idx1);
+            double rotationFromPair = (legacyPairRotation(templatePositions.get(idx1), detectedPositions.get(idx1),
+                    templateCx, templateCy, detectedCx, detectedCy)
+                    + legacyPairRotation(templatePositions.get(idx2), detectedPositions.get(idx2),
+                    templateCx, templateCy, detectedCx, detectedCy)) / 2.0;
+
+            List<Integer> inliers = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                double angleDiff = legacyPairRotation(templatePositions.get(i), detectedPositions.get(i),
+                        templateCx, templateCy, detectedCx, detectedCy) - rotationFromPair;
+                while (angleDiff > Math.PI) angleDiff -= 2 * Math.PI;
+                while (angleDiff < -Math.PI) angleDiff += 2 * Math.PI;
+                if (Math.abs(angleDiff) < angleThreshold) {
+                    inliers.add(i);
+                }
+            }
+            if (inliers.size() > maxInliers) {
+                maxInliers = inliers.size();
+                bestInliers = inliers;
+            }
+        }
+
+        if ((double) maxInliers / n < requiredInlierRatio) {
+            return 0.0;
+        }
+        List<Double> rotations = new ArrayList<>();
+        for (int i : bestInliers) {
+            rotations.add(legacyPairRotation(templatePositions.get(i), detectedPositions.get(i),
+                    templateCx, templateCy, detectedCx, detectedCy));
+        }
+        Collections.sort(rotations);
+        int size = rotations.size();
+        double finalRotation = size % 2 == 0
+                ? (rotations.get(size / 2 - 1) + rotations.get(size / 2)) / 2.0
+                : rotations.get(size / 2);
+        double rotationDeg = Math.toDegrees(finalRotation);
+        return Math.abs(rotationDeg) < 0.5 ? 0.0 : rotationDeg;
+    }
+
+    private static double legacyPairRotation(Point templatePos, Point detectedPos,
+                                             double templateCx, double templateCy,
+                                             double detectedCx, double detectedCy) {
+        double angleDiff = Math.atan2(detectedPos.y - detectedCy, detectedPos.x - detectedCx)
+                - Math.atan2(templatePos.y - templateCy, templatePos.x - templateCx);
+        while (angleDiff > Math.PI) angleDiff -= 2 * Math.PI;
+        while (angleDiff < -Math.PI) angleDiff += 2 * Math.PI;
+        return angleDiff;
+    }
+}
@@ -0,0 +1,92 @@
+package com.edge.vision.core.topology;
+
+import com.edge.vision.core.template.model.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结构数组滤波器组与矩阵版 KalmanFilter（每条轨迹一个滤波器）的结果对比，以及轨迹过期
+ */
+class KalmanFilterBankTest {
+
+    @Test
+    void matchesMatrixFilterPerTrack() {
+        int tracks = 1000;
+        int steps = 20;
+        Random random = new Random(42);
+        double[] baseX = new double[tracks];
+        double[] baseY = new double[tracks];
+        for (int i = 0; i < tracks; i++) {
+            baseX[i] = random.nextDouble() * 5000;
+            baseY[i] = random.nextDouble() * 5000;
+        }
+
+        Map<String, KalmanFilter> filters = new HashMap<>();
+        KalmanFilterBank bank = new KalmanFilterBank();
+        double[] out = new double[2];
+        double maxDiff = 0;
+        for (int step = 0; step < steps; step++) {
+            for (int i = 0; i < tracks; i++) {
+                String id = "track_" + i;
+                Point measurement = new Point(baseX[i] + step + random.nextGaussian() * 5,
+                        baseY[i] + step + random.nextGaussian() * 5);
+                KalmanFilter filter = filters.get(id);
+                if (filter == null) {
+                    filter = new KalmanFilter();
+                    filter.init(measurement);
+                    filters.put(id, filter);
+                } else {
+                    filter.update(measurement);
+                }
+                assertEquals(step > 0, bank.smooth(id, measurement.x, measurement.y, out));
+
+                Point expected = filter.getEstimatedPosition();
+                maxDiff = Math.max(maxDiff, Math.hypot(out[0] - expected.x, out[1] - expected.y));
+                if (i == 0) {
+                    assertEquals(filter.getPositionUncertainty(), bank.getPositionUncertainty(id), 1e-9);
+                }
+            }
+        }
+        assertTrue(maxDiff < 1e-9, "max estimate difference " + maxDiff);
+        assertEquals(tracks, bank.size());
+    }
+
+    @Test
+    void defaultBankNeverEvicts() throws Exception {
+        KalmanFilterBank bank = new KalmanFilterBank();
+        bank.smooth("a", new Point(1, 1));
+        Thread.sleep(5);
+        assertEquals(0, bank.evictStale());
+        assertEquals(1, bank.size());
+
+        KalmanFilter.Manager manager = new KalmanFilter.Manager();
+        manager.smooth("a", new Point(1, 1));
+        Thread.sleep(5);
+        assertEquals(0, manager.getBank().evictStale());
+        assertEquals(1, manager.size());
+    }
+
+    @Test
+    void evictsTracksPastConfiguredTtl() throws Exception {
+        KalmanFilterBank bank = new KalmanFilterBank(0.033, 0.1, 5.0, 1);
+        bank.smooth("stale", new Point(1, 1));
+        Thread.sleep(5);
+        bank.smooth("fresh", new Point(2, 2));
+
+        assertEquals(1, bank.evictStale());
+        assertEquals(1, bank.size());
+        assertNull(bank.predict("stale"));
+        assertNotNull(bank.predict("fresh"));
+        assertEquals(1, bank.getEvictedCount());
+
+        // 淘汰后重新出现的轨迹从观测值重新开始
+        double[] out = new double[2];
+        assertFalse(bank.smooth("stale", 7, 8, out));
+        assertArrayEquals(new double[]{7, 8}, out);
+    }
+}
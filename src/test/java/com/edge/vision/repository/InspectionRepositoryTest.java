@@ -0,0 +1,277 @@
+package com.edge.vision.repository;
+
+import com.edge.vision.model.InspectionEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InspectionRepositoryTest {
+
+    private static final LocalDateTime DAY1 = LocalDateTime.of(2024, 1, 2, 10, 0);
+    private static final LocalDateTime DAY2 = LocalDateTime.of(2024, 1, 5, 10, 0);
+
+    @TempDir
+    Path dataDir;
+
+    private final List<InspectionRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeAll() {
+        opened.forEach(InspectionRepository::close);
+    }
+
+    // ==================== 意图日志 ====================
+
+    @Test
+    void recoversQueuedRecordsFromIntentLog() {
+        InspectionRepository repository = open(false);
+        InspectionEntity stored = entity("A", DAY1);
+        InspectionEntity queued = entity("B", DAY1);
+        repository.logIntent(stored);
+        repository.logIntent(queued);
+        repository.insert(stored);
+        // 进程在 B 提交前退出：不清空意图日志
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("B").isPresent());
+        assertEquals(2, restarted.count());
+        assertEquals(1L, restarted.getStatistics().get("intentsRecovered"));
+        assertFalse(Files.exists(dataDir.resolve("records/intent.log")));
+    }
+
+    @Test
+    void doesNotResurrectDeletedRecordsFromIntentLog() {
+        InspectionRepository repository = open(false);
+        InspectionEntity entity = entity("A", DAY1);
+        repository.logIntent(entity);
+        repository.insert(entity);
+        repository.delete("A");
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("A").isEmpty());
+        assertEquals(0, restarted.count());
+    }
+
+    @Test
+    void skipsTornIntentLineAndReplacedIntents() throws Exception {
+        InspectionRepository repository = open(true);
+        repository.logIntent(entity("A", DAY1));
+        repository.logIntent(entity("B", DAY1));
+        // 只保留 B，再追加一条写了一半的意图
+        assertTrue(repository.replaceIntents(List.of(entity("B", DAY1))));
+        repository.logIntent(entity("C", DAY1));
+        Files.write(dataDir.resolve("records/intent.log"), "{\"id\":\"D\",\"time".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("A").isEmpty());
+        assertTrue(restarted.findById("B").isPresent());
+        assertTrue(restarted.findById("C").isPresent());
+        assertTrue(restarted.findById("D").isEmpty());
+    }
+
+    // ==================== 索引重建 ====================
+
+    @Test
+    void replaysUpdatesAndDeletesAcrossRestart() {
+        InspectionRepository repository = open(false);
+        InspectionEntity a = entity("A", DAY1);
+        InspectionEntity b = entity("B", DAY1);
+        repository.insert(a);
+        repository.insert(b);
+        repository.insert(entity("C", DAY1));
+        a.setPartName("other");
+        repository.update(a);
+        b.setUploaded(true);
+        repository.update(b);
+        repository.delete("C");
+        crash(repository);
+
+        // 全量扫描重建，然后从关闭时写的快照重建
+        for (int round = 0; round < 2; round++) {
+            InspectionRepository restarted = open(false);
+            assertEquals("other", restarted.findById("A").orElseThrow().getPartName());
+            assertTrue(restarted.findById("B").orElseThrow().isUploaded());
+            assertTrue(restarted.findById("C").isEmpty());
+            assertEquals(2, restarted.count());
+            assertEquals(1, restarted.countUploaded());
+            restarted.close();
+            opened.remove(restarted);
+        }
+    }
+
+    @Test
+    void loadsSnapshotAndScansOnlyTheTail() throws Exception {
+        InspectionRepository repository = open(false);
+        repository.insert(entity("A", DAY1));
+        repository.close();
+        opened.remove(repository);
+
+        InspectionRepository second = open(false);
+        assertEquals(0L, second.getStatistics().get("indexScannedBytes"));
+        second.insert(entity("B", DAY1));
+        crash(second);
+
+        long size = Files.size(segmentFile(DAY1));
+        InspectionRepository restarted = open(false);
+        long scanned = (Long) restarted.getStatistics().get("indexScannedBytes");
+        assertTrue(scanned > 0 && scanned < size, "scanned " + scanned + " of " + size);
+        assertTrue(restarted.findById("A").isPresent());
+        assertTrue(restarted.findById("B").isPresent());
+    }
+
+    @Test
+    void rescansSegmentTruncatedBelowSnapshotEnd() throws Exception {
+        InspectionRepository repository = open(false);
+        repository.insert(entity("A", DAY1));
+        repository.insert(entity("B", DAY1));
+        repository.close();
+        opened.remove(repository);
+
+        // 只保留第一行
+        Path file = segmentFile(DAY1);
+        byte[] bytes = Files.readAllBytes(file);
+        int firstLine = indexOf(bytes, (byte) '\n') + 1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(firstLine);
+        }
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("A").isPresent());
+        assertTrue(restarted.findById("B").isEmpty());
+        assertEquals(1, restarted.count());
+    }
+
+    @Test
+    void tornLastLineIsSkippedAndTerminated() throws Exception {
+        InspectionRepository repository = open(false);
+        repository.insert(entity("A", DAY1));
+        repository.close();
+        opened.remove(repository);
+        Files.write(segmentFile(DAY1), "{\"id\":\"B\",\"time".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("B").isEmpty());
+        restarted.insert(entity("C", DAY1));
+        crash(restarted);
+
+        InspectionRepository again = open(false);
+        assertTrue(again.findById("A").isPresent());
+        assertTrue(again.findById("C").isPresent());
+        assertEquals(2, again.count());
+    }
+
+    @Test
+    void compactsStatusLogWithManyDeadEntries() throws Exception {
+        InspectionRepository repository = open(false);
+        InspectionEntity entity = entity("A", DAY1);
+        repository.insert(entity);
+        for (int i = 0; i < 1101; i++) {
+            entity.setUploaded(!entity.isUploaded());
+            repository.update(entity);
+        }
+        assertEquals(1101L, repository.getStatistics().get("statusLogEntries"));
+        crash(repository);
+
+        InspectionRepository restarted = open(false);
+        assertEquals(1L, restarted.getStatistics().get("statusLogEntries"));
+        assertEquals(1, Files.readAllLines(dataDir.resolve("records/status.log")).size());
+        assertTrue(restarted.findById("A").orElseThrow().isUploaded());
+        assertEquals(1, restarted.countUploaded());
+    }
+
+    @Test
+    void versionMovedToEarlierSegmentWinsOnRebuild() throws Exception {
+        InspectionRepository repository = open(false);
+        InspectionEntity entity = entity("A", DAY2);
+        repository.insert(entity);
+        entity.setTimestamp(DAY1);
+        repository.update(entity);
+        crash(repository);
+        Files.deleteIfExists(dataDir.resolve("records/index.snapshot"));
+
+        InspectionRepository restarted = open(false);
+        assertEquals(DAY1, restarted.findById("A").orElseThrow().getTimestamp());
+        assertEquals(1, restarted.count());
+        assertTrue(restarted.findByDate(DAY2.toLocalDate()).isEmpty());
+        assertEquals(1, restarted.findByDate(DAY1.toLocalDate()).size());
+    }
+
+    @Test
+    void snapshotDoesNotCoverRowsAppendedButNotYetIndexed() {
+        InspectionRepository repository = open(false);
+        InspectionEntity a = entity("A", DAY1);
+        repository.insert(a);
+
+        // 模拟批量写入正在刷盘：B 已追加到段文件但还没建索引
+        LocalDate date = DAY1.toLocalDate();
+        List<?> refs = ReflectionTestUtils.invokeMethod(repository, "appendToFile", date, List.of(entity("B", DAY1)));
+        Map<?, ?> segments = (Map<?, ?>) ReflectionTestUtils.getField(repository, "bySegment");
+        long offset = (Long) ReflectionTestUtils.getField(refs.get(0), "offset");
+        ReflectionTestUtils.invokeMethod(segments.get(date), "beginAppend", offset);
+
+        // 同一段的更新把已建索引的长度推过 B，此时写快照
+        a.setPartName("other");
+        repository.update(a);
+        ReflectionTestUtils.invokeMethod(repository, "writeSnapshot");
+        crash(repository);
+
+        InspectionRepository restarted = open(false);
+        assertTrue(restarted.findById("B").isPresent());
+        assertEquals("other", restarted.findById("A").orElseThrow().getPartName());
+        assertEquals(2, restarted.count());
+    }
+
+    // ==================== 辅助 ====================
+
+    private InspectionRepository open(boolean intentFsync) {
+        InspectionRepository repository = new InspectionRepository();
+        ReflectionTestUtils.setField(repository, "saveLocal", true);
+        ReflectionTestUtils.setField(repository, "intentFsync", intentFsync);
+        repository.init(dataDir);
+        opened.add(repository);
+        return repository;
+    }
+
+    /**
+     * 不关闭（不写关闭快照），模拟进程退出
+     */
+    private void crash(InspectionRepository repository) {
+        opened.remove(repository);
+    }
+
+    private Path segmentFile(LocalDateTime timestamp) {
+        return dataDir.resolve("records/" + timestamp.toLocalDate() + ".jsonl");
+    }
+
+    private static int indexOf(byte[] bytes, byte value) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static InspectionEntity entity(String id, LocalDateTime timestamp) {
+        InspectionEntity entity = new InspectionEntity();
+        entity.setId(id);
+        entity.setTimestamp(timestamp);
+        entity.setBatchId("batch");
+        entity.setPartName("part");
+        return entity;
+    }
+}
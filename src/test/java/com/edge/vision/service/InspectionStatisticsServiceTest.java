@@ -0,0 +1,102 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import com.edge.vision.model.InspectionEntity;
+import com.edge.vision.repository.InspectionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InspectionStatisticsServiceTest {
+
+    @Test
+    void truncatedRebuildOnlyAdjustsLoadedRecords() {
+        LocalDateTime start = LocalDate.now().atStartOfDay();
+        List<InspectionEntity> today = new ArrayList<>();
+        // 文件顺序与时间顺序不一致
+        for (int minute : new int[]{10, 50, 20, 40, 30}) {
+            today.add(entity("R" + minute, start.plusMinutes(minute)));
+        }
+        StubRepository repository = new StubRepository(Map.of(LocalDate.now(), today));
+        InspectionStatisticsService service = start(repository, 2);
+
+        assertEquals(2, totalOf(service));
+        assertEquals(start.plusMinutes(40).toString(), service.getSummary().get("sinceTime"));
+
+        // 未加载的记录被删除或更新时不调整计数器
+        repository.listener.onChange(today.get(0), null);
+        repository.listener.onChange(today.get(4), entity("R30", start.plusMinutes(30)));
+        assertEquals(2, totalOf(service));
+
+        // 已加载的记录照常调整
+        repository.listener.onChange(today.get(1), null);
+        assertEquals(1, totalOf(service));
+    }
+
+    @Test
+    void fullyLoadedDaysCountFromStartOfOldestDay() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        InspectionEntity old = entity("old", yesterday.atTime(8, 0));
+        StubRepository repository = new StubRepository(Map.of(
+                LocalDate.now(), List.of(entity("new", LocalDateTime.now())),
+                yesterday, List.of(old)));
+        InspectionStatisticsService service = start(repository, 100);
+
+        assertEquals(2, totalOf(service));
+        assertEquals(yesterday.toString(), service.getSummary().get("since"));
+        repository.listener.onChange(old, null);
+        assertEquals(1, totalOf(service));
+    }
+
+    private static InspectionStatisticsService start(InspectionRepository repository, int maxRecords) {
+        YamlConfig config = new YamlConfig();
+        config.setInspection(new YamlConfig.InspectionConfig());
+        config.getInspection().setStatsRebuildMaxRecords(maxRecords);
+
+        InspectionStatisticsService service = new InspectionStatisticsService();
+        ReflectionTestUtils.setField(service, "repository", repository);
+        ReflectionTestUtils.setField(service, "config", config);
+        service.init();
+        return service;
+    }
+
+    private static long totalOf(InspectionStatisticsService service) {
+        return ((Number) service.getSummary().get("totalInspections")).longValue();
+    }
+
+    private static InspectionEntity entity(String id, LocalDateTime timestamp) {
+        InspectionEntity entity = new InspectionEntity();
+        entity.setId(id);
+        entity.setTimestamp(timestamp);
+        entity.setPassed(true);
+        entity.setPartName("part");
+        return entity;
+    }
+
+    /**
+     * 按日期返回固定记录的存储
+     */
+    private static final class StubRepository extends InspectionRepository {
+        private final Map<LocalDate, List<InspectionEntity>> byDate;
+        ChangeListener listener;
+
+        StubRepository(Map<LocalDate, List<InspectionEntity>> byDate) {
+            this.byDate = byDate;
+        }
+
+        @Override
+        public List<InspectionEntity> findByDate(LocalDate date) {
+            return byDate.getOrDefault(date, Collections.emptyList());
+        }
+
+        @Override
+        public void addChangeListener(ChangeListener listener) {
+            this.listener = listener;
+        }
+    }
+}
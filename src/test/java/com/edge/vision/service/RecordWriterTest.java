@@ -0,0 +1,153 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import com.edge.vision.model.InspectionEntity;
+import com.edge.vision.repository.InspectionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RecordWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void failedCommitCompletesFutureAfterRetry() throws Exception {
+        StubRepository repository = new StubRepository(1);
+        writer = start(repository, 1024);
+
+        InspectionEntity entity = new InspectionEntity();
+        CompletableFuture<InspectionEntity> future = writer.submit(entity, null, null);
+
+        // 第一次提交失败后 future 保持未完成，空闲重试成功后正常完成
+        assertSame(entity, future.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(entity.getId()), repository.inserted);
+        assertTrue(repository.clears.get() > 0);
+
+        Map<String, Object> stats = writer.getStatistics();
+        assertEquals(1L, stats.get("failed"));
+        assertEquals(1L, stats.get("retried"));
+        assertEquals(0, stats.get("retryPending"));
+        assertEquals(0L, stats.get("uncommitted"));
+    }
+
+    @Test
+    void imageFailureClearsPathAndIsCountedOnce() throws Exception {
+        StubRepository repository = new StubRepository(0);
+        writer = start(repository, 1024);
+
+        // 父路径是普通文件，写图失败
+        Path blocker = Files.write(tempDir.resolve("blocker"), new byte[1]);
+        InspectionEntity entity = new InspectionEntity();
+        entity.setImagePath("/api/images/x.jpg");
+        InspectionEntity saved = writer.submit(entity, new byte[]{1}, blocker.resolve("x.jpg"))
+            .get(5, TimeUnit.SECONDS);
+
+        assertNull(saved.getImagePath());
+        Map<String, Object> stats = writer.getStatistics();
+        assertEquals(1L, stats.get("imageFailures"));
+        assertEquals(0L, stats.get("imageWrites"));
+    }
+
+    @Test
+    void retriesBeyondCapacityAreAbandonedAndIntentLogRewritten() throws Exception {
+        StubRepository repository = new StubRepository(Integer.MAX_VALUE);
+        writer = start(repository, 2);
+
+        List<CompletableFuture<InspectionEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(writer.submit(new InspectionEntity(), null, null));
+        }
+
+        // 最早的记录被放弃，意图日志重写为仍待重试的两条
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> futures.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals("disk failure", error.getCause().getMessage());
+        assertFalse(futures.get(1).isDone());
+        assertFalse(futures.get(2).isDone());
+        assertEquals(2, repository.lastReplaced.size());
+
+        Map<String, Object> stats = writer.getStatistics();
+        assertEquals(1L, stats.get("abandoned"));
+        assertEquals(2, stats.get("retryPending"));
+        assertEquals(2L, stats.get("loggedIntents"));
+    }
+
+    private RecordWriter start(InspectionRepository repository, int queueCapacity) {
+        YamlConfig config = new YamlConfig();
+        config.setSystem(new YamlConfig.SystemConfig());
+        config.setInspection(new YamlConfig.InspectionConfig());
+        config.getSystem().setRecordQueueCapacity(queueCapacity);
+
+        RecordWriter recordWriter = new RecordWriter();
+        ReflectionTestUtils.setField(recordWriter, "repository", repository);
+        ReflectionTestUtils.setField(recordWriter, "statisticsService", new InspectionStatisticsService());
+        ReflectionTestUtils.setField(recordWriter, "config", config);
+        recordWriter.init();
+        return recordWriter;
+    }
+
+    /**
+     * 前 failures 次批量写入失败的内存存储
+     */
+    private static final class StubRepository extends InspectionRepository {
+        final List<String> inserted = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger clears = new AtomicInteger();
+        volatile List<InspectionEntity> lastReplaced = Collections.emptyList();
+        private int failures;
+
+        StubRepository(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void logIntent(InspectionEntity entity) {
+            if (entity.getId() == null) {
+                entity.setId(UUID.randomUUID().toString());
+            }
+        }
+
+        @Override
+        public void clearIntents() {
+            clears.incrementAndGet();
+        }
+
+        @Override
+        public boolean replaceIntents(List<InspectionEntity> entities) {
+            lastReplaced = new ArrayList<>(entities);
+            return true;
+        }
+
+        @Override
+        public synchronized void insertAll(List<InspectionEntity> entities, boolean force) {
+            if (failures > 0) {
+                failures--;
+                throw new RuntimeException("disk failure");
+            }
+            for (InspectionEntity entity : entities) {
+                inserted.add(entity.getId());
+            }
+        }
+    }
+}
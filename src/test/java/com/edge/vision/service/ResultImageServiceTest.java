@@ -0,0 +1,71 @@
+package com.edge.vision.service;
+
+import com.edge.vision.config.YamlConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultImageServiceTest {
+
+    private static final int HALF_BUDGET = 600 * 1024;
+
+    private ResultImageService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void byteBudgetEvictsOldestCompletedImages() {
+        service = start(1);
+        ResultImageService.RenderedImage first = service.store(new byte[HALF_BUDGET]);
+        ResultImageService.RenderedImage second = service.store(new byte[HALF_BUDGET]);
+
+        assertNull(service.find(first.getId()));
+        assertNotNull(service.getIfReady(second.getId()));
+    }
+
+    @Test
+    void byteBudgetSkipsImagesStillRendering() throws Exception {
+        service = start(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResultImageService.RenderedImage rendering = service.submit(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new byte[1];
+        });
+        ResultImageService.RenderedImage first = service.store(new byte[HALF_BUDGET]);
+        ResultImageService.RenderedImage second = service.store(new byte[HALF_BUDGET]);
+
+        // 仍在渲染的结果图不被淘汰，淘汰最旧的已完成结果图
+        assertSame(rendering, service.find(rendering.getId()));
+        assertNull(service.find(first.getId()));
+        assertNotNull(service.find(second.getId()));
+
+        release.countDown();
+        assertEquals(1, rendering.getFuture().get(5, TimeUnit.SECONDS).length);
+        assertNotNull(service.getIfReady(rendering.getId()));
+    }
+
+    private static ResultImageService start(int maxStoredMb) {
+        YamlConfig config = new YamlConfig();
+        config.setInspection(new YamlConfig.InspectionConfig());
+        config.getInspection().setRenderMaxStoredMb(maxStoredMb);
+
+        ResultImageService service = new ResultImageService();
+        ReflectionTestUtils.setField(service, "config", config);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,76 @@
+package com.edge.vision.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatTrackerTest {
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @BeforeEach
+    void enable() {
+        MatTracker.configure(true, false);
+    }
+
+    @AfterEach
+    void disable() {
+        MatTracker.configure(false, false);
+    }
+
+    @Test
+    void directlyReleasedMatIsNotCountedAsLive() {
+        Mat mat = MatTracker.track(new Mat(4, 4, CvType.CV_8UC1), "test.direct");
+        mat.release();
+
+        assertTrue(MatTracker.scan(HOUR_MS).isEmpty());
+        assertEquals(0, MatTracker.getLiveCount());
+        MatTracker.SiteStats stats = site("test.direct");
+        assertEquals(1, stats.getReleased());
+        assertEquals(0, stats.getLive());
+    }
+
+    @Test
+    void emptyPlaceholderStaysTrackedUntilFilled() {
+        Mat mat = MatTracker.newMat("test.placeholder");
+        assertTrue(MatTracker.scan(HOUR_MS).isEmpty());
+        assertEquals(1, MatTracker.getLiveCount());
+
+        mat.create(4, 4, CvType.CV_8UC1);
+        MatTracker.scan(HOUR_MS);
+        assertEquals(16, site("test.placeholder").getLiveBytes());
+
+        mat.release();
+        MatTracker.scan(HOUR_MS);
+        assertEquals(0, MatTracker.getLiveCount());
+        assertEquals(0, site("test.placeholder").getLive());
+    }
+
+    @Test
+    void matHeldPastThresholdIsReported() {
+        Mat mat = MatTracker.track(new Mat(4, 4, CvType.CV_8UC1), "test.leak");
+
+        assertEquals(1, MatTracker.scan(0).size());
+        assertEquals("test.leak", MatTracker.scan(0).get(0).getSite());
+
+        MatTracker.release(mat);
+        assertTrue(MatTracker.scan(0).isEmpty());
+    }
+
+    private static MatTracker.SiteStats site(String name) {
+        return MatTracker.getSiteStats().stream()
+                .filter(stats -> stats.getSite().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}